@@ -0,0 +1,85 @@
+package org.valkyrienskies.mod.common.collision;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.joml.Matrix3d;
+import org.joml.Vector3d;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Feeds a synthetic list of contact points through {@link CollisionImpulseSolver}, the same way {@link
+ * WorldPhysicsCollider} does during a physics tick. Run with the gc profiler to check that no memory is allocated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CollisionImpulseSolverBenchmark {
+
+    @Param({"64", "1024"})
+    private int contacts;
+
+    private CollisionImpulseSolver solver;
+    private Vector3d linearVelocity;
+    private Vector3d angularVelocity;
+    private Matrix3d moiTensor;
+    private Matrix3d invMOITensor;
+    // Every contact uses 9 doubles: inBody, axis, and offset
+    private double[] contactData;
+
+    private final Vector3d inBody = new Vector3d();
+    private final Vector3d axis = new Vector3d();
+    private final Vector3d offset = new Vector3d();
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(0);
+        solver = new CollisionImpulseSolver();
+        linearVelocity = new Vector3d();
+        angularVelocity = new Vector3d();
+        moiTensor = new Matrix3d().scaling(2000, 3500, 2500);
+        invMOITensor = moiTensor.invert(new Matrix3d());
+
+        contactData = new double[contacts * 9];
+        for (int i = 0; i < contacts; i++) {
+            final int index = i * 9;
+            // A contact point somewhere on the bottom of a 16x4x16 ship
+            contactData[index] = random.nextDouble() * 16 - 8;
+            contactData[index + 1] = -2;
+            contactData[index + 2] = random.nextDouble() * 16 - 8;
+            // Mostly pushing the ship up, like the contacts of a ship resting on the ground
+            final int axisDirection = random.nextBoolean() ? 1 : random.nextInt(3);
+            final double axisSign = axisDirection == 1 || random.nextBoolean() ? 1 : -1;
+            contactData[index + 3 + axisDirection] = axisSign;
+            final double penetration = random.nextDouble() * .25;
+            contactData[index + 6 + axisDirection] = -axisSign * penetration;
+        }
+    }
+
+    @Benchmark
+    public void applyContacts(Blackhole blackhole) {
+        // Start every iteration from the same state, so the results don't depend on the previous iteration
+        linearVelocity.set(0, -4, 1);
+        angularVelocity.set(.1, .2, -.1);
+        solver.setBody(linearVelocity, angularVelocity, 1000, moiTensor, invMOITensor, .99);
+
+        final double[] data = contactData;
+        for (int i = 0; i < contacts; i++) {
+            final int index = i * 9;
+            inBody.set(data[index], data[index + 1], data[index + 2]);
+            axis.set(data[index + 3], data[index + 4], data[index + 5]);
+            offset.set(data[index + 6], data[index + 7], data[index + 8]);
+            solver.applyCollisionImpulse(inBody, axis, offset);
+        }
+
+        blackhole.consume(linearVelocity.x + linearVelocity.y + linearVelocity.z);
+        blackhole.consume(angularVelocity.x + angularVelocity.y + angularVelocity.z);
+    }
+}
@@ -0,0 +1,67 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import java.util.concurrent.TimeUnit;
+import net.minecraft.util.math.AxisAlignedBB;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares {@link SectionBitmapBlockPosSetAABB} with {@link SmallBlockPosSetAABB} on the blocks of a solid box shaped
+ * ship.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BlockPosSetAABBBenchmark {
+
+    private static final int CENTER_X = 5_120_000;
+    private static final int CENTER_Z = 51_200;
+
+    @Param({"1000", "100000"})
+    private int blocks;
+
+    @Param({"section_bitmap", "small"})
+    private String implementation;
+
+    private IBlockPosSetAABB filledSet;
+    private int edgeX, edgeY, edgeZ;
+
+    @Setup
+    public void setup() {
+        final int height = (int) Math.max(1, Math.cbrt(blocks / 4.0));
+        final int width = (int) Math.ceil(Math.sqrt((double) blocks / height));
+        filledSet = implementation.equals("small") ?
+            new SmallBlockPosSetAABB(CENTER_X, 0, CENTER_Z, 1024, 1024, 1024) :
+            new SectionBitmapBlockPosSetAABB(CENTER_X, CENTER_Z);
+        for (int i = 0; i < blocks; i++) {
+            filledSet.add(CENTER_X + i % width - width / 2, 64 + i / (width * width),
+                CENTER_Z + (i / width) % width - width / 2);
+        }
+        // A block on the edge of the ship, which changes the AABB when it is removed
+        edgeX = CENTER_X + width - 1 - width / 2;
+        edgeY = 64;
+        edgeZ = CENTER_Z + width - 1 - width / 2;
+    }
+
+    @Benchmark
+    public void forEach(Blackhole blackhole) {
+        filledSet.forEach((x, y, z) -> blackhole.consume(x + y + z));
+    }
+
+    /**
+     * Breaking and placing a block on the edge of the ship, then making the new AABB like a ship does every tick.
+     */
+    @Benchmark
+    public AxisAlignedBB makeAABBAfterChange() {
+        filledSet.remove(edgeX, edgeY, edgeZ);
+        filledSet.add(edgeX, edgeY, edgeZ);
+        return filledSet.makeAABB();
+    }
+}
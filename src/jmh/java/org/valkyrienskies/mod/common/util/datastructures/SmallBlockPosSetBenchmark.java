@@ -0,0 +1,105 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares {@link SmallBlockPosSet} with the implementation it replaced, {@link TroveBlockPosSet}, on the blocks of a
+ * solid box shaped ship. Run with the gc profiler to compare how much memory building the sets allocates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SmallBlockPosSetBenchmark {
+
+    private static final int CENTER_X = 5_120_000;
+    private static final int CENTER_Z = 51_200;
+
+    @Param({"1000", "100000"})
+    private int blocks;
+
+    @Param({"open_addressing", "trove"})
+    private String implementation;
+
+    // The positions as x, y, z triples, in a random order
+    private int[] positions;
+    private IBlockPosSet filledSet;
+
+    @Setup
+    public void setup() {
+        // A box that is twice as wide as it is tall, like most ships
+        final int height = (int) Math.max(1, Math.cbrt(blocks / 4.0));
+        final int width = (int) Math.ceil(Math.sqrt((double) blocks / height));
+        positions = new int[blocks * 3];
+        for (int i = 0; i < blocks; i++) {
+            positions[i * 3] = CENTER_X + i % width - width / 2;
+            positions[i * 3 + 1] = 64 + i / (width * width);
+            positions[i * 3 + 2] = CENTER_Z + (i / width) % width - width / 2;
+        }
+        final Random random = new Random(0);
+        for (int i = blocks - 1; i > 0; i--) {
+            final int swap = random.nextInt(i + 1);
+            for (int j = 0; j < 3; j++) {
+                final int temp = positions[i * 3 + j];
+                positions[i * 3 + j] = positions[swap * 3 + j];
+                positions[swap * 3 + j] = temp;
+            }
+        }
+        filledSet = fill(createSet());
+    }
+
+    private IBlockPosSet createSet() {
+        return implementation.equals("trove") ?
+            new TroveBlockPosSet(CENTER_X, CENTER_Z) : new SmallBlockPosSet(CENTER_X, CENTER_Z);
+    }
+
+    private IBlockPosSet fill(IBlockPosSet set) {
+        final int[] positions = this.positions;
+        for (int i = 0; i < positions.length; i += 3) {
+            set.add(positions[i], positions[i + 1], positions[i + 2]);
+        }
+        return set;
+    }
+
+    @Benchmark
+    public IBlockPosSet add() {
+        return fill(createSet());
+    }
+
+    @Benchmark
+    public int contains() {
+        final int[] positions = this.positions;
+        int found = 0;
+        for (int i = 0; i < positions.length; i += 3) {
+            // Half of the lookups miss
+            if (filledSet.contains(positions[i], positions[i + 1] + (i & 1) * 128, positions[i + 2])) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public void forEach(Blackhole blackhole) {
+        filledSet.forEach((x, y, z) -> blackhole.consume(x + y + z));
+    }
+
+    @Benchmark
+    public IBlockPosSet addThenRemove() {
+        final IBlockPosSet set = fill(createSet());
+        final int[] positions = this.positions;
+        for (int i = 0; i < positions.length; i += 3) {
+            set.remove(positions[i], positions[i + 1], positions[i + 2]);
+        }
+        return set;
+    }
+}
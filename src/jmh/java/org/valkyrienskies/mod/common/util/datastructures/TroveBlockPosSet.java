@@ -0,0 +1,108 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import java.util.Iterator;
+import javax.annotation.Nonnull;
+import net.minecraft.util.math.BlockPos;
+import org.valkyrienskies.mod.common.util.VSIterationUtils;
+
+/**
+ * The implementation {@link SmallBlockPosSet} used before it switched to an open addressing table, which stores every
+ * position in a list and in a map from position to list index. Only kept as the baseline of {@link
+ * SmallBlockPosSetBenchmark}.
+ */
+public class TroveBlockPosSet implements IBlockPosSet {
+
+    private static final int BOT_12_BITS = 0x00000FFF;
+    private static final int BOT_8_BITS = 0x000000FF;
+
+    private final TIntList compressedBlockPosList = new TIntArrayList();
+    private final TIntIntMap listValueToIndex = new TIntIntHashMap();
+    private final int centerX, centerZ;
+
+    public TroveBlockPosSet(int centerX, int centerZ) {
+        this.centerX = centerX;
+        this.centerZ = centerZ;
+    }
+
+    @Override
+    public boolean add(int x, int y, int z) {
+        int compressedPos = compress(x, y, z);
+        if (listValueToIndex.containsKey(compressedPos)) {
+            return false;
+        }
+        compressedBlockPosList.add(compressedPos);
+        listValueToIndex.put(compressedPos, compressedBlockPosList.size() - 1);
+        return true;
+    }
+
+    @Override
+    public boolean remove(int x, int y, int z) {
+        int compressedPos = compress(x, y, z);
+        if (!listValueToIndex.containsKey(compressedPos)) {
+            return false;
+        }
+        int elementIndex = listValueToIndex.get(compressedPos);
+        if (elementIndex == compressedBlockPosList.size() - 1) {
+            compressedBlockPosList.removeAt(elementIndex);
+        } else {
+            int lastElementValue = compressedBlockPosList.removeAt(compressedBlockPosList.size() - 1);
+            compressedBlockPosList.set(elementIndex, lastElementValue);
+            listValueToIndex.put(lastElementValue, elementIndex);
+        }
+        listValueToIndex.remove(compressedPos);
+        return true;
+    }
+
+    @Override
+    public boolean contains(int x, int y, int z) {
+        return listValueToIndex.containsKey(compress(x, y, z));
+    }
+
+    @Override
+    public boolean canStore(int x, int y, int z) {
+        int xLocal = x - centerX;
+        int zLocal = z - centerZ;
+        return !(y < 0 | y > 255 | xLocal < -2048 | xLocal > 2047 | zLocal < -2048 | zLocal > 2047);
+    }
+
+    @Override
+    public int size() {
+        return compressedBlockPosList.size();
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<BlockPos> iterator() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void forEach(@Nonnull VSIterationUtils.IntTernaryConsumer action) {
+        TIntIterator iterator = compressedBlockPosList.iterator();
+        while (iterator.hasNext()) {
+            int compressed = iterator.next();
+            int z = compressed >> 20;
+            int y = (compressed >> 12) & BOT_8_BITS;
+            int x = (compressed & BOT_12_BITS) << 20 >> 20;
+            action.accept(x + centerX, y, z + centerZ);
+        }
+    }
+
+    @Override
+    public void clear() {
+        compressedBlockPosList.clear();
+        listValueToIndex.clear();
+    }
+
+    private int compress(int x, int y, int z) {
+        int xBits = (x - centerX) & BOT_12_BITS;
+        int yBits = y & BOT_8_BITS;
+        int zBits = (z - centerZ) & BOT_12_BITS;
+        return xBits | (yBits << 12) | (zBits << 20);
+    }
+}
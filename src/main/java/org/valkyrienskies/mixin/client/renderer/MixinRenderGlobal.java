@@ -57,6 +57,13 @@ public abstract class MixinRenderGlobal {
     @Shadow
     public WorldClient world;
 
+    @Shadow
+    private int frameCount;
+
+    // The camera used to cull ships, made once per frame and shared by all the block layers of that frame
+    private ICamera shipCullingCamera = null;
+    private int shipCullingCameraFrame = -1;
+
     @Shadow
     public static void drawSelectionBoundingBox(AxisAlignedBB box, float red, float green,
                                                 float blue, float alpha) {
@@ -240,12 +247,24 @@ public abstract class MixinRenderGlobal {
         RenderHelper.disableStandardItemLighting();
 
         // This probably won't work with strange mods, but I'm too lazy to do it better
-        ICamera icamera = new Frustum();
-        Entity entity = this.mc.getRenderViewEntity();
-        double d0 = entity.lastTickPosX + (entity.posX - entity.lastTickPosX) * (double)partialTicks;
-        double d1 = entity.lastTickPosY + (entity.posY - entity.lastTickPosY) * (double)partialTicks;
-        double d2 = entity.lastTickPosZ + (entity.posZ - entity.lastTickPosZ) * (double)partialTicks;
-        icamera.setPosition(d0, d1, d2);
+        if (shipCullingCamera == null || shipCullingCameraFrame != frameCount) {
+            // Making a Frustum reads the matrices back from OpenGL, so only do it once per frame. The ship renderers
+            // also use the camera to tell when their cached culling results are outdated.
+            shipCullingCamera = new Frustum();
+            shipCullingCameraFrame = frameCount;
+            Entity entity = this.mc.getRenderViewEntity();
+            double d0 = entity.lastTickPosX + (entity.posX - entity.lastTickPosX) * (double)partialTicks;
+            double d1 = entity.lastTickPosY + (entity.posY - entity.lastTickPosY) * (double)partialTicks;
+            double d2 = entity.lastTickPosZ + (entity.posZ - entity.lastTickPosZ) * (double)partialTicks;
+            shipCullingCamera.setPosition(d0, d1, d2);
+
+            // Every ship, not only the ones we're about to render, so that the compiled sections of ships that
+            // aren't visible don't keep holding on to their buffers
+            for (PhysicsObject physicsObject : ValkyrienUtils.getPhysObjWorld(world).getAllLoadedPhysObj()) {
+                physicsObject.getShipRenderer().uploadFinishedSections();
+            }
+        }
+        ICamera icamera = shipCullingCamera;
 
         for (PhysicsObject physicsObject : ValkyrienUtils.getPhysObjWorld(world).getAllLoadedPhysObj()) {
             GL11.glPushMatrix();
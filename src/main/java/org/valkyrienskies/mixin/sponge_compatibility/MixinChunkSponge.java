@@ -13,6 +13,7 @@ import org.spongepowered.common.bridge.world.chunk.ChunkBridge;
 import org.valkyrienskies.mod.common.ships.QueryableShipData;
 import org.valkyrienskies.mod.common.ships.ShipData;
 import org.valkyrienskies.mod.common.ships.ShipDataMethods;
+import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator;
 
 import java.util.Optional;
 
@@ -27,7 +28,7 @@ public abstract class MixinChunkSponge {
 
     @Inject(method = "bridge$setBlockState", at = @At("HEAD"), remap = false)
     private void onPreSpongeBridgeSetBlockState(BlockPos pos, IBlockState newState, IBlockState currentState, BlockChangeFlag flag, CallbackInfoReturnable<IBlockState> cir) {
-        if (!world.isRemote) {
+        if (!world.isRemote && ShipChunkAllocator.isBlockInShipyard(pos)) {
             QueryableShipData queryableShipData = QueryableShipData.get(world);
             Optional<ShipData> shipDataOptional = queryableShipData.getShipFromChunk(pos.getX() >> 4, pos.getZ() >> 4);
             shipDataOptional.ifPresent(shipData -> ShipDataMethods.onSetBlockState(shipData, pos, currentState, newState));
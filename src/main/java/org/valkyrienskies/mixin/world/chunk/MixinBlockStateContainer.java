@@ -46,6 +46,28 @@ public class MixinBlockStateContainer implements ITerrainOctreeProvider {
         liquidOctree.set(x & 15, y & 15, z & 15, isStateLiquid);
     }
 
+    @Override
+    public void setWithoutOctreeUpdate(int index, IBlockState state) {
+        if (state == null) {
+            state = AIR_BLOCK_STATE;
+        }
+        // idFor() can resize the storage, so it has to be called first
+        final int i = this.palette.idFor(state);
+        this.storage.setAt(index, i);
+
+        final int x = index & 0xF;
+        final int z = (index & 0xF0) >> 4;
+        final int y = (index & 0xF00) >> 8;
+        solidOctree.setWithoutOctreeUpdate(x, y, z, state.getMaterial().isSolid());
+        liquidOctree.setWithoutOctreeUpdate(x, y, z, state.getMaterial().isLiquid());
+    }
+
+    @Override
+    public void rebuildOctrees() {
+        solidOctree.rebuildOctree();
+        liquidOctree.rebuildOctree();
+    }
+
     @Override
     public IBitOctree getSolidOctree() {
         return solidOctree;
@@ -61,7 +61,8 @@ public abstract class MixinChunk {
      */
     @Inject(method = "setBlockState", at = @At("HEAD"))
     private void pre_setBlockState(BlockPos pos, IBlockState state, CallbackInfoReturnable<IBlockState> cir) {
-        if (!world.isRemote) {
+        // Most block changes aren't in the shipyard, reject those before doing anything else
+        if (!world.isRemote && ShipChunkAllocator.isChunkInShipyard(x, z)) {
             IBlockState oldState = getBlockState(pos);
             QueryableShipData queryableShipData = QueryableShipData.get(world);
             Optional<ShipData> shipDataOptional = queryableShipData.getShipFromChunk(pos.getX() >> 4, pos.getZ() >> 4);
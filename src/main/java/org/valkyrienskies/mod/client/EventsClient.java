@@ -11,6 +11,7 @@ import net.minecraft.world.World;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraftforge.client.event.DrawBlockHighlightEvent;
 import net.minecraftforge.client.event.ModelBakeEvent;
+import net.minecraftforge.client.event.RenderGameOverlayEvent;
 import net.minecraftforge.client.event.RenderWorldLastEvent;
 import net.minecraftforge.client.event.TextureStitchEvent;
 import net.minecraftforge.client.event.sound.PlaySoundEvent;
@@ -23,6 +24,7 @@ import net.minecraftforge.fml.common.gameevent.TickEvent.RenderTickEvent;
 import org.joml.Vector3d;
 import org.joml.Vector3dc;
 import org.lwjgl.opengl.GL11;
+import org.valkyrienskies.mod.client.render.FastBlockModelRenderer;
 import org.valkyrienskies.mod.client.render.GibsModelRegistry;
 import org.valkyrienskies.mod.common.config.VSConfig;
 import org.valkyrienskies.mod.common.entity.EntityShipMovementData;
@@ -167,6 +169,16 @@ public class EventsClient {
         GibsModelRegistry.onModelBakeEvent(event);
     }
 
+    /**
+     * Shows how well the block model buffers are cached on the debug screen.
+     */
+    @SubscribeEvent
+    public void onRenderDebugText(RenderGameOverlayEvent.Text event) {
+        if (Minecraft.getMinecraft().gameSettings.showDebugInfo) {
+            event.getLeft().add("VS block model buffers: " + FastBlockModelRenderer.VERTEX_BUFFER_CACHE);
+        }
+    }
+
     // Used to store the lastTickPos variables of entities, that way we can restore them to their original values after
     // the rendering code has finished.
     private static final WeakHashMap<Entity, Vector3dc> lastPositionsMap = new WeakHashMap<>();
@@ -1,5 +1,8 @@
 package org.valkyrienskies.mod.client.render;
 
+import gnu.trove.impl.Constants;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
 import java.util.HashMap;
 import java.util.Map;
 import net.minecraft.block.state.IBlockState;
@@ -18,6 +21,8 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL20;
+import org.valkyrienskies.mod.common.config.VSConfig;
+import org.valkyrienskies.mod.common.util.datastructures.LongKeyLRUCache;
 
 // TODO: Upon further inspection this class does the exact opposite of what its name implies 
 // and takes a stupid slow approach to rendering simple geometries. Remove this and create a 
@@ -25,10 +30,17 @@ import org.lwjgl.opengl.GL20;
 public class FastBlockModelRenderer {
 
     public static final Map<IBlockState, BufferBuilder.State> blockstateToVertexData = new HashMap<IBlockState, BufferBuilder.State>();
-    // Maps IBlockState to a map that maps brightness to VertexBuffer that are already uploaded to gpu memory.
-    public static final Map<IBlockState, Map<Integer, VertexBuffer>> blockstateBrightnessToVertexBuffer = new HashMap<IBlockState, Map<Integer, VertexBuffer>>();
-
-    // Be careful to only use this on the main thread. Using it on other threads will break stuff.
+    // The VertexBuffers that are already uploaded to gpu memory, keyed by the index of the IBlockState and the
+    // brightness. Every brightness needs its own buffer, so this is bounded to not fill up the gpu memory. Evicted
+    // buffers are deleted right away, which is always on the render thread.
+    public static final LongKeyLRUCache<VertexBuffer> VERTEX_BUFFER_CACHE = new LongKeyLRUCache<>(
+        VSConfig.blockModelBufferCacheSize, VertexBuffer::deleteGlBuffers);
+    // Gives every IBlockState rendered a small index for the keys of VERTEX_BUFFER_CACHE.
+    private static final TObjectIntMap<IBlockState> BLOCKSTATE_INDICES = new TObjectIntHashMap<>(
+        Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, -1);
+
+    // Be careful to only use this on the main thread. Using it on other threads will break stuff. Ship chunk sections
+    // are compiled into their own buffers instead, see ShipSectionCompiler.
     public static final BufferBuilder VERTEX_BUILDER = new BufferBuilder(500000);
     // Used to make sure that when we simulate rendering models they're not affected by light from other blocks.
     private static final BlockPos offsetPos = new BlockPos(0, 512, 0);
@@ -49,11 +61,9 @@ public class FastBlockModelRenderer {
 
         // We're using the VBO, check if a compiled VertexBuffer already exists. If
         // there isn't one we will create it, then render.
-        if (!blockstateBrightnessToVertexBuffer.containsKey(blockstateToRender)) {
-            blockstateBrightnessToVertexBuffer
-                .put(blockstateToRender, new HashMap<Integer, VertexBuffer>());
-        }
-        if (!blockstateBrightnessToVertexBuffer.get(blockstateToRender).containsKey(brightness)) {
+        final long vertexBufferKey = getVertexBufferKey(blockstateToRender, brightness);
+        VertexBuffer blockVertexBuffer = VERTEX_BUFFER_CACHE.get(vertexBufferKey);
+        if (blockVertexBuffer == null) {
             // We have to create the VertexBuffer
             BufferBuilder.State bufferBuilderState = blockstateToVertexData.get(blockstateToRender);
 
@@ -79,7 +89,7 @@ public class FastBlockModelRenderer {
                 }
             }
 
-            VertexBuffer blockVertexBuffer = new VertexBuffer(DefaultVertexFormats.BLOCK);
+            blockVertexBuffer = new VertexBuffer(DefaultVertexFormats.BLOCK);
             // Now that the VERTEX_BUILDER has been filled with all the render data, we must
             // upload it to the gpu.
             // The VERTEX_UPLOADER copies the state of the VERTEX_BUILDER to
@@ -87,9 +97,9 @@ public class FastBlockModelRenderer {
             VERTEX_BUILDER.finishDrawing();
             VERTEX_BUILDER.reset();
             blockVertexBuffer.bufferData(VERTEX_BUILDER.getByteBuffer());
-            // Put the VertexBuffer for that data into the Map for future rendering.
-            blockstateBrightnessToVertexBuffer.get(blockstateToRender)
-                .put(brightness, blockVertexBuffer);
+            // Put the VertexBuffer for that data into the cache for future rendering.
+            VERTEX_BUFFER_CACHE.setCapacity(VSConfig.blockModelBufferCacheSize);
+            VERTEX_BUFFER_CACHE.put(vertexBufferKey, blockVertexBuffer);
         }
 
         // Just to test the look of the State in case I ever need to.
@@ -101,8 +111,16 @@ public class FastBlockModelRenderer {
             tessellator.draw();
         }
 
-        renderVertexBuffer(
-            blockstateBrightnessToVertexBuffer.get(blockstateToRender).get(brightness));
+        renderVertexBuffer(blockVertexBuffer);
+    }
+
+    private static long getVertexBufferKey(IBlockState state, int brightness) {
+        int index = BLOCKSTATE_INDICES.get(state);
+        if (index == -1) {
+            index = BLOCKSTATE_INDICES.size();
+            BLOCKSTATE_INDICES.put(state, index);
+        }
+        return ((long) index << 32) | (brightness & 0xFFFFFFFFL);
     }
 
     public static void renderVertexBuffer(VertexBuffer vertexBuffer) {
@@ -179,7 +179,7 @@ public class GibsModelRegistry {
         // Also clean up FastBlockModelRenderer
         // TODO: Merge the functionality of Fast and Gibs eventually.
         FastBlockModelRenderer.blockstateToVertexData.clear();
-        FastBlockModelRenderer.blockstateBrightnessToVertexBuffer.clear();
+        FastBlockModelRenderer.VERTEX_BUFFER_CACHE.clear();
     }
 
     public static boolean isOptifineShadersEnabled() {
@@ -73,6 +73,15 @@ public class PhysObjectRenderManager {
         GL11.glPopMatrix();
     }
 
+    /**
+     * @see PhysRenderChunk#uploadFinishedSections()
+     */
+    public void uploadFinishedSections() {
+        for (PhysRenderChunk renderChunk : renderChunks.values()) {
+            renderChunk.uploadFinishedSections();
+        }
+    }
+
     public void killRenderers() {
         if (renderChunks != null) {
             for (PhysRenderChunk renderChunk : renderChunks.values()) {
@@ -1,13 +1,14 @@
 package org.valkyrienskies.mod.client.render;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-import net.minecraft.block.state.IBlockState;
+import lombok.extern.log4j.Log4j2;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.*;
+import net.minecraft.client.renderer.culling.Frustum;
 import net.minecraft.client.renderer.culling.ICamera;
 import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
 import net.minecraft.client.renderer.vertex.VertexBuffer;
@@ -15,22 +16,24 @@ import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.BlockRenderLayer;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.BlockPos.MutableBlockPos;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
-import net.minecraftforge.client.ForgeHooksClient;
-import net.minecraftforge.client.MinecraftForgeClient;
+import org.joml.Matrix4dc;
 import org.lwjgl.opengl.GL11;
-import org.valkyrienskies.mod.common.collision.Polygon;
+import org.valkyrienskies.mod.client.render.ShipSectionCompiler.CompiledSection;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
-import valkyrienwarfare.api.TransformType;
 
+@Log4j2
 public class PhysRenderChunk {
 
     public IVSRenderChunk[] renderChunks = new IVSRenderChunk[16];
     public PhysicsObject toRender;
     public Chunk chunk;
     private List<TileEntity> tileEntitiesToRender;
+    // Which sections were in the frustum of cullingCamera. A new camera is made every frame, and it's the same for
+    // every block layer of that frame, so the sections only have to be culled once per frame.
+    private final boolean[] sectionsInFrustum = new boolean[16];
+    private ICamera cullingCamera;
 
     public PhysRenderChunk(PhysicsObject toRender, Chunk chunk) {
         this.toRender = toRender;
@@ -53,17 +56,32 @@ public class PhysRenderChunk {
     }
 
     public void renderBlockLayer(BlockRenderLayer layerToRender, double partialTicks, int pass, ICamera iCamera) {
+        if (iCamera != cullingCamera) {
+            final Matrix4dc shipToWorld = toRender.getShipTransformationManager().getRenderTransform()
+                .getSubspaceToGlobal();
+            for (int i = 0; i < 16; i++) {
+                IVSRenderChunk renderChunk = renderChunks[i];
+                sectionsInFrustum[i] = renderChunk != null && renderChunk.isInFrustum(iCamera, shipToWorld);
+            }
+            cullingCamera = iCamera;
+        }
+        for (int i = 0; i < 16; i++) {
+            // Only render chunks that can be shown by the camera.
+            if (sectionsInFrustum[i]) {
+                renderChunks[i].renderBlockLayer(layerToRender, partialTicks, pass);
+            }
+        }
+    }
+
+    /**
+     * Uploads the sections that finished compiling, so that they give their buffers back to the pool even if they're
+     * culled. Must be called once per frame, before the first block layer is rendered.
+     */
+    public void uploadFinishedSections() {
         for (int i = 0; i < 16; i++) {
             IVSRenderChunk renderChunk = renderChunks[i];
             if (renderChunk != null) {
-                AxisAlignedBB renderChunkBB = new AxisAlignedBB(chunk.x << 4, renderChunk.minY(), chunk.z << 4, (chunk.x << 4) + 16, renderChunk.minY() + 16, (chunk.z << 4) + 16);
-                Polygon polygon = new Polygon(renderChunkBB, toRender.getShipTransformationManager().getRenderTransform(), TransformType.SUBSPACE_TO_GLOBAL);
-                AxisAlignedBB inWorldBB = polygon.getEnclosedAABB();
-
-                // Only render chunks that can be shown by the camera.
-                if (iCamera.isBoundingBoxInFrustum(inWorldBB)) {
-                    renderChunk.renderBlockLayer(layerToRender, partialTicks, pass);
-                }
+                renderChunk.uploadFinishedSection();
             }
         }
     }
@@ -89,6 +107,8 @@ public class PhysRenderChunk {
                 renderChunks[layerY] = renderLayer;
             }
         }
+        // Cull the changed sections again
+        cullingCamera = null;
     }
 
     void killRenderChunk() {
@@ -100,9 +120,52 @@ public class PhysRenderChunk {
         }
     }
 
+    /**
+     * Checks if the box given in ship coordinates is in the frustum of camera once shipToWorld is applied, without
+     * allocating anything.
+     */
+    private static boolean isShipBoxInFrustum(ICamera camera, Matrix4dc shipToWorld, double minX, double minY,
+                                              double minZ, double maxX, double maxY, double maxZ) {
+        if (camera == null) {
+            return true;
+        }
+        final double centerX = (minX + maxX) * .5, centerY = (minY + maxY) * .5, centerZ = (minZ + maxZ) * .5;
+        final double extentX = (maxX - minX) * .5, extentY = (maxY - minY) * .5, extentZ = (maxZ - minZ) * .5;
+        // The smallest world AABB around the rotated box has the rotated center, and each of its half extents is the
+        // sum of the box half extents weighted by the absolute values of the matching row of the rotation.
+        final double worldCenterX = shipToWorld.m00() * centerX + shipToWorld.m10() * centerY
+            + shipToWorld.m20() * centerZ + shipToWorld.m30();
+        final double worldCenterY = shipToWorld.m01() * centerX + shipToWorld.m11() * centerY
+            + shipToWorld.m21() * centerZ + shipToWorld.m31();
+        final double worldCenterZ = shipToWorld.m02() * centerX + shipToWorld.m12() * centerY
+            + shipToWorld.m22() * centerZ + shipToWorld.m32();
+        final double worldExtentX = Math.abs(shipToWorld.m00()) * extentX + Math.abs(shipToWorld.m10()) * extentY
+            + Math.abs(shipToWorld.m20()) * extentZ;
+        final double worldExtentY = Math.abs(shipToWorld.m01()) * extentX + Math.abs(shipToWorld.m11()) * extentY
+            + Math.abs(shipToWorld.m21()) * extentZ;
+        final double worldExtentZ = Math.abs(shipToWorld.m02()) * extentX + Math.abs(shipToWorld.m12()) * extentY
+            + Math.abs(shipToWorld.m22()) * extentZ;
+
+        if (camera instanceof Frustum) {
+            return ((Frustum) camera).isBoxInFrustum(worldCenterX - worldExtentX, worldCenterY - worldExtentY,
+                worldCenterZ - worldExtentZ, worldCenterX + worldExtentX, worldCenterY + worldExtentY,
+                worldCenterZ + worldExtentZ);
+        }
+        return camera.isBoundingBoxInFrustum(new AxisAlignedBB(worldCenterX - worldExtentX,
+            worldCenterY - worldExtentY, worldCenterZ - worldExtentZ, worldCenterX + worldExtentX,
+            worldCenterY + worldExtentY, worldCenterZ + worldExtentZ));
+    }
+
     private interface IVSRenderChunk {
         void renderBlockLayer(BlockRenderLayer layerToRender, double partialTicks, int pass);
 
+        boolean isInFrustum(ICamera camera, Matrix4dc shipToWorld);
+
+        /**
+         * Replaces the geometry with the compiled section, if it has finished compiling.
+         */
+        void uploadFinishedSection();
+
         void markDirty();
 
         void deleteRenderChunk();
@@ -112,24 +175,34 @@ public class PhysRenderChunk {
         int maxY();
     }
 
-    private class RenderLayerVBO implements IVSRenderChunk {
-
-        Chunk chunkToRender;
-        int yMin, yMax;
-        VertexBuffer cutoutBuffer, cutoutMippedBuffer, solidBuffer, translucentBuffer;
-        PhysRenderChunk parent;
-        boolean needsCutoutUpdate, needsCutoutMippedUpdate, needsSolidUpdate, needsTranslucentUpdate;
-
-        RenderLayerVBO(Chunk chunk, int yMin, int yMax, PhysRenderChunk parent) {
-            chunkToRender = chunk;
+    /**
+     * Compiles its section on a {@link ShipSectionCompiler} thread whenever it is dirty and visible. The previous
+     * geometry keeps rendering until the new geometry is done, and then it is uploaded at the start of the next frame.
+     */
+    private abstract static class CompiledRenderLayer implements IVSRenderChunk {
+
+        private static final BlockRenderLayer[] LAYERS = BlockRenderLayer.values();
+        // How many times in a row a section may fail to compile before we wait for its blocks to change
+        private static final int MAX_FAILED_COMPILES = 3;
+
+        final Chunk chunkToRender;
+        final int yMin, yMax;
+        final PhysRenderChunk parent;
+        // Which layers had any geometry in the last uploaded section
+        final boolean[] hasGeometry = new boolean[LAYERS.length];
+        boolean needsUpdate;
+        CompletableFuture<CompiledSection> pendingSection;
+        int failedCompiles;
+        // The bounds of the geometry in ship coordinates, or of the whole section until the geometry is compiled.
+        // Empty if there is no geometry.
+        int boundsMinX, boundsMinY, boundsMinZ, boundsMaxX, boundsMaxY, boundsMaxZ;
+
+        CompiledRenderLayer(Chunk chunk, int yMin, int yMax, PhysRenderChunk parent) {
+            this.chunkToRender = chunk;
             this.yMin = yMin;
             this.yMax = yMax;
             this.parent = parent;
             markDirty();
-            cutoutBuffer = null;
-            cutoutMippedBuffer = null;
-            solidBuffer = null;
-            translucentBuffer = null;
         }
 
         public int minY() {
@@ -141,319 +214,178 @@ public class PhysRenderChunk {
         }
 
         public void markDirty() {
-            needsCutoutUpdate = true;
-            needsCutoutMippedUpdate = true;
-            needsSolidUpdate = true;
-            needsTranslucentUpdate = true;
+            needsUpdate = true;
+            failedCompiles = 0;
+            // The blocks could be anywhere in the section now
+            boundsMinX = chunkToRender.x << 4;
+            boundsMinY = yMin;
+            boundsMinZ = chunkToRender.z << 4;
+            boundsMaxX = boundsMinX + 16;
+            boundsMaxY = yMax + 1;
+            boundsMaxZ = boundsMinZ + 16;
         }
 
-        public void deleteRenderChunk() {
-            clearRenderLists();
+        public boolean isInFrustum(ICamera camera, Matrix4dc shipToWorld) {
+            return boundsMinY < boundsMaxY && isShipBoxInFrustum(camera, shipToWorld, boundsMinX, boundsMinY,
+                boundsMinZ, boundsMaxX, boundsMaxY, boundsMaxZ);
         }
 
-        private void clearRenderLists() {
-            if (cutoutBuffer != null)
-                cutoutBuffer.deleteGlBuffers();
-            if (cutoutMippedBuffer != null)
-                cutoutMippedBuffer.deleteGlBuffers();
-            if (solidBuffer != null)
-                solidBuffer.deleteGlBuffers();
-            if (translucentBuffer != null)
-                translucentBuffer.deleteGlBuffers();
+        public void deleteRenderChunk() {
+            if (pendingSection != null) {
+                // Still compiling, give the buffers back once it's done
+                pendingSection.thenAccept(CompiledSection::release);
+                pendingSection = null;
+            }
+            clearRenderLists();
         }
 
         public void renderBlockLayer(BlockRenderLayer layerToRender, double partialTicks, int pass) {
-            switch (layerToRender) {
-                case CUTOUT:
-                    if (needsCutoutUpdate) {
-                        updateList(layerToRender);
-                    }
-                    FastBlockModelRenderer.renderVertexBuffer(cutoutBuffer);
-                    break;
-                case CUTOUT_MIPPED:
-                    if (needsCutoutMippedUpdate) {
-                        updateList(layerToRender);
-                    }
-                    FastBlockModelRenderer.renderVertexBuffer(cutoutMippedBuffer);
-                    break;
-                case SOLID:
-                    if (needsSolidUpdate) {
-                        updateList(layerToRender);
-                    }
-                    FastBlockModelRenderer.renderVertexBuffer(solidBuffer);
-                    break;
-                case TRANSLUCENT:
-                    if (needsTranslucentUpdate) {
-                        updateList(layerToRender);
-                    }
-                    FastBlockModelRenderer.renderVertexBuffer(translucentBuffer);
-                    break;
-                default:
-                    break;
+            if (layerToRender == BlockRenderLayer.SOLID) {
+                compileIfNeeded();
+            }
+            if (hasGeometry[layerToRender.ordinal()]) {
+                renderLayer(layerToRender);
             }
         }
 
-        private void updateList(BlockRenderLayer layerToUpdate) {
-            if (parent.toRender.getShipRenderer() == null) {
+        public void uploadFinishedSection() {
+            if (pendingSection == null || !pendingSection.isDone()) {
                 return;
             }
-            BlockPos offsetPos = parent.toRender.getShipRenderer().offsetPos;
-            if (offsetPos == null) {
+            final CompiledSection section;
+            try {
+                section = pendingSection.join();
+            } catch (CompletionException e) {
+                failedCompiles++;
+                log.error("Failed to compile the ship section at chunk " + chunkToRender.x + ", " + chunkToRender.z
+                    + " y " + yMin + " (attempt " + failedCompiles + ")", e.getCause());
+                if (failedCompiles < MAX_FAILED_COMPILES) {
+                    needsUpdate = true;
+                }
                 return;
+            } finally {
+                pendingSection = null;
             }
-            // Tessellator tessellator = Tessellator.getInstance();
-            // BufferBuilder worldrenderer = tessellator.getBuffer();
-            BufferBuilder vsChunkBuilder = FastBlockModelRenderer.VERTEX_BUILDER;
-            vsChunkBuilder.begin(GL11.GL_QUADS, DefaultVertexFormats.BLOCK);
-            vsChunkBuilder.setTranslation(-offsetPos.getX(), -offsetPos.getY(), -offsetPos.getZ());
-
-            // The vertex buffer we're going to render this 16x16x16 chunk into
-            VertexBuffer renderBuffer;
-
-            switch (layerToUpdate) {
-                case CUTOUT:
-                    if (cutoutBuffer != null) {
-                        cutoutBuffer.deleteGlBuffers();
-                    }
-                    cutoutBuffer = new VertexBuffer(DefaultVertexFormats.BLOCK);
-                    renderBuffer = cutoutBuffer;
-                    break;
-                case CUTOUT_MIPPED:
-                    if (cutoutMippedBuffer != null) {
-                        cutoutMippedBuffer.deleteGlBuffers();
-                    }
-                    cutoutMippedBuffer = new VertexBuffer(DefaultVertexFormats.BLOCK);
-                    renderBuffer = cutoutMippedBuffer;
-                    break;
-                case SOLID:
-                    if (solidBuffer != null) {
-                        solidBuffer.deleteGlBuffers();
-                    }
-                    solidBuffer = new VertexBuffer(DefaultVertexFormats.BLOCK);
-                    renderBuffer = solidBuffer;
-                    break;
-                case TRANSLUCENT:
-                    if (translucentBuffer != null) {
-                        translucentBuffer.deleteGlBuffers();
-                    }
-                    translucentBuffer = new VertexBuffer(DefaultVertexFormats.BLOCK);
-                    renderBuffer = translucentBuffer;
-                    break;
-                default:
-                    throw new IllegalStateException("Unexpected value: " + layerToUpdate);
+            failedCompiles = 0;
+            for (final BlockRenderLayer layer : LAYERS) {
+                hasGeometry[layer.ordinal()] = !section.isEmpty(layer);
+                if (hasGeometry[layer.ordinal()]) {
+                    uploadLayer(layer, section.getBuffer(layer));
+                }
             }
+            if (!needsUpdate) {
+                // Otherwise keep the bounds of the whole section until the next compile is done
+                boundsMinX = section.getMinX();
+                boundsMinY = section.getMinY();
+                boundsMinZ = section.getMinZ();
+                boundsMaxX = section.getMaxX();
+                boundsMaxY = section.getMaxY();
+                boundsMaxZ = section.getMaxZ();
+            }
+            section.release();
+        }
 
-            // Be careful with render layers
-            BlockRenderLayer oldLayer = MinecraftForgeClient.getRenderLayer();
-            ForgeHooksClient.setRenderLayer(layerToUpdate);
-            MutableBlockPos pos = new MutableBlockPos();
-            for (int x = chunkToRender.x * 16; x < chunkToRender.x * 16 + 16; x++) {
-                for (int z = chunkToRender.z * 16; z < chunkToRender.z * 16 + 16; z++) {
-                    for (int y = yMin; y <= yMax; y++) {
-                        pos.setPos(x, y, z);
-                        IBlockState iblockstate = chunkToRender.getBlockState(pos);
-                        try {
-                            if (iblockstate.getBlock()
-                                .canRenderInLayer(iblockstate, layerToUpdate)) {
-                                Minecraft.getMinecraft().getBlockRendererDispatcher()
-                                    .renderBlock(iblockstate, pos, chunkToRender.world, vsChunkBuilder);
-                            }
-                        } catch (NullPointerException e) {
-                            System.out.println("Something was null!");
-                        }
-                    }
+        private void compileIfNeeded() {
+            // Only start compiling again after the last one is done, any changes made in the meantime are picked up
+            // by the next one
+            if (needsUpdate && pendingSection == null) {
+                if (parent.toRender.getShipRenderer() == null) {
+                    return;
+                }
+                BlockPos offsetPos = parent.toRender.getShipRenderer().offsetPos;
+                if (offsetPos == null) {
+                    return;
                 }
+                needsUpdate = false;
+                pendingSection = ShipSectionCompiler.compileAsync(chunkToRender, yMin, offsetPos);
             }
+        }
 
-            vsChunkBuilder.finishDrawing();
-            renderBuffer.bufferData(vsChunkBuilder.getByteBuffer());
-            vsChunkBuilder.reset();
+        /**
+         * Replaces the geometry of layer with the finished buffer. Only called if the buffer has any vertices.
+         */
+        abstract void uploadLayer(BlockRenderLayer layer, BufferBuilder buffer);
 
-            // Fix the old render layer
-            ForgeHooksClient.setRenderLayer(oldLayer);
+        abstract void renderLayer(BlockRenderLayer layer);
 
-            vsChunkBuilder.setTranslation(0, 0, 0);
+        abstract void clearRenderLists();
+    }
 
-            switch (layerToUpdate) {
-                case CUTOUT:
-                    needsCutoutUpdate = false;
-                    break;
-                case CUTOUT_MIPPED:
-                    needsCutoutMippedUpdate = false;
-                    break;
-                case SOLID:
-                    needsSolidUpdate = false;
-                    break;
-                case TRANSLUCENT:
-                    needsTranslucentUpdate = false;
-                    break;
-                default:
-                    break;
+    private static class RenderLayerVBO extends CompiledRenderLayer {
+
+        final VertexBuffer[] layerBuffers = new VertexBuffer[BlockRenderLayer.values().length];
+
+        RenderLayerVBO(Chunk chunk, int yMin, int yMax, PhysRenderChunk parent) {
+            super(chunk, yMin, yMax, parent);
+        }
+
+        @Override
+        void clearRenderLists() {
+            for (int i = 0; i < layerBuffers.length; i++) {
+                if (layerBuffers[i] != null) {
+                    layerBuffers[i].deleteGlBuffers();
+                    layerBuffers[i] = null;
+                }
+            }
+        }
+
+        @Override
+        void uploadLayer(BlockRenderLayer layer, BufferBuilder buffer) {
+            if (layerBuffers[layer.ordinal()] == null) {
+                layerBuffers[layer.ordinal()] = new VertexBuffer(DefaultVertexFormats.BLOCK);
             }
+            layerBuffers[layer.ordinal()].bufferData(buffer.getByteBuffer());
+        }
+
+        @Override
+        void renderLayer(BlockRenderLayer layer) {
+            FastBlockModelRenderer.renderVertexBuffer(layerBuffers[layer.ordinal()]);
         }
     }
 
-    public static class RenderLayerDisplayList implements IVSRenderChunk {
+    public static class RenderLayerDisplayList extends CompiledRenderLayer {
+
+        private static final WorldVertexBufferUploader VERTEX_UPLOADER = new WorldVertexBufferUploader();
 
-        Chunk chunkToRender;
-        int yMin, yMax;
-        int glCallListCutout, glCallListCutoutMipped, glCallListSolid, glCallListTranslucent;
-        PhysRenderChunk parent;
-        boolean needsCutoutUpdate, needsCutoutMippedUpdate, needsSolidUpdate, needsTranslucentUpdate;
+        final int glCallListCutout, glCallListCutoutMipped, glCallListSolid, glCallListTranslucent;
 
         RenderLayerDisplayList(Chunk chunk, int yMin, int yMax, PhysRenderChunk parent) {
-            chunkToRender = chunk;
-            this.yMin = yMin;
-            this.yMax = yMax;
-            this.parent = parent;
-            markDirty();
+            super(chunk, yMin, yMax, parent);
             glCallListCutout = GLAllocation.generateDisplayLists(4);
             glCallListCutoutMipped = glCallListCutout + 1;
             glCallListSolid = glCallListCutout + 2;
             glCallListTranslucent = glCallListCutout + 3;
         }
 
-        public int minY() {
-            return yMin;
-        }
-
-        public int maxY() {
-            return yMax;
-        }
-
-        public void markDirty() {
-            needsCutoutUpdate = true;
-            needsCutoutMippedUpdate = true;
-            needsSolidUpdate = true;
-            needsTranslucentUpdate = true;
+        @Override
+        void clearRenderLists() {
+            GLAllocation.deleteDisplayLists(glCallListCutout, 4);
         }
 
-        public void deleteRenderChunk() {
-            clearRenderLists();
-        }
-
-        private void clearRenderLists() {
-            GLAllocation.deleteDisplayLists(glCallListCutout);
-            GLAllocation.deleteDisplayLists(glCallListCutoutMipped);
-            GLAllocation.deleteDisplayLists(glCallListSolid);
-            GLAllocation.deleteDisplayLists(glCallListTranslucent);
+        @Override
+        void uploadLayer(BlockRenderLayer layer, BufferBuilder buffer) {
+            GL11.glNewList(getCallList(layer), GL11.GL_COMPILE);
+            VERTEX_UPLOADER.draw(buffer);
+            GL11.glEndList();
         }
 
-        public void renderBlockLayer(BlockRenderLayer layerToRender, double partialTicks,
-                                     int pass) {
-            switch (layerToRender) {
-                case CUTOUT:
-                    if (needsCutoutUpdate) {
-                        updateList(layerToRender);
-                    }
-                    GL11.glCallList(glCallListCutout);
-                    break;
-                case CUTOUT_MIPPED:
-                    if (needsCutoutMippedUpdate) {
-                        updateList(layerToRender);
-                    }
-                    GL11.glCallList(glCallListCutoutMipped);
-                    break;
-                case SOLID:
-                    if (needsSolidUpdate) {
-                        updateList(layerToRender);
-                    }
-                    GL11.glCallList(glCallListSolid);
-                    break;
-                case TRANSLUCENT:
-                    if (needsTranslucentUpdate) {
-                        updateList(layerToRender);
-                    }
-                    GL11.glCallList(glCallListTranslucent);
-                    break;
-                default:
-                    break;
-            }
+        @Override
+        void renderLayer(BlockRenderLayer layer) {
+            GL11.glCallList(getCallList(layer));
         }
 
-        private void updateList(BlockRenderLayer layerToUpdate) {
-            if (parent.toRender.getShipRenderer() == null) {
-                return;
-            }
-            BlockPos offsetPos = parent.toRender.getShipRenderer().offsetPos;
-            if (offsetPos == null) {
-                return;
-            }
-            Tessellator tessellator = Tessellator.getInstance();
-            BufferBuilder worldrenderer = tessellator.getBuffer();
-            worldrenderer.begin(7, DefaultVertexFormats.BLOCK);
-            worldrenderer.setTranslation(-offsetPos.getX(), -offsetPos.getY(), -offsetPos.getZ());
-            GL11.glPushMatrix();
-            switch (layerToUpdate) {
-                case CUTOUT:
-                    GLAllocation.deleteDisplayLists(glCallListCutout);
-                    GL11.glNewList(glCallListCutout, GL11.GL_COMPILE);
-                    break;
-                case CUTOUT_MIPPED:
-                    GLAllocation.deleteDisplayLists(glCallListCutoutMipped);
-                    GL11.glNewList(glCallListCutoutMipped, GL11.GL_COMPILE);
-                    break;
-                case SOLID:
-                    GLAllocation.deleteDisplayLists(glCallListSolid);
-                    GL11.glNewList(glCallListSolid, GL11.GL_COMPILE);
-                    break;
-                case TRANSLUCENT:
-                    GLAllocation.deleteDisplayLists(glCallListTranslucent);
-                    GL11.glNewList(glCallListTranslucent, GL11.GL_COMPILE);
-                    break;
-                default:
-                    break;
-            }
-
-            GlStateManager.pushMatrix();
-            // worldrenderer.begin(GL11.GL_QUADS, DefaultVertexFormats.BLOCK);
-            IBlockState iblockstate;
-
-            BlockRenderLayer oldLayer = MinecraftForgeClient.getRenderLayer();
-            ForgeHooksClient.setRenderLayer(layerToUpdate);
-            MutableBlockPos pos = new MutableBlockPos();
-            for (int x = chunkToRender.x * 16; x < chunkToRender.x * 16 + 16; x++) {
-                for (int z = chunkToRender.z * 16; z < chunkToRender.z * 16 + 16; z++) {
-                    for (int y = yMin; y <= yMax; y++) {
-                        pos.setPos(x, y, z);
-                        iblockstate = chunkToRender.getBlockState(pos);
-                        try {
-                            if (iblockstate.getBlock()
-                                    .canRenderInLayer(iblockstate, layerToUpdate)) {
-                                Minecraft.getMinecraft().getBlockRendererDispatcher()
-                                        .renderBlock(iblockstate, pos, chunkToRender.world,
-                                                worldrenderer);
-                            }
-                        } catch (NullPointerException e) {
-                            System.out.println(
-                                    "Something was null! LValkyrienSkiesBase/render/PhysRenderChunk#updateList");
-                        }
-                    }
-                }
-            }
-            tessellator.draw();
-            // worldrenderer.finishDrawing();
-            ForgeHooksClient.setRenderLayer(oldLayer);
-            GlStateManager.popMatrix();
-            GL11.glEndList();
-            GL11.glPopMatrix();
-            worldrenderer.setTranslation(0, 0, 0);
-
-            switch (layerToUpdate) {
+        private int getCallList(BlockRenderLayer layer) {
+            switch (layer) {
                 case CUTOUT:
-                    needsCutoutUpdate = false;
-                    break;
+                    return glCallListCutout;
                 case CUTOUT_MIPPED:
-                    needsCutoutMippedUpdate = false;
-                    break;
+                    return glCallListCutoutMipped;
                 case SOLID:
-                    needsSolidUpdate = false;
-                    break;
+                    return glCallListSolid;
                 case TRANSLUCENT:
-                    needsTranslucentUpdate = false;
-                    break;
+                    return glCallListTranslucent;
                 default:
-                    break;
+                    throw new IllegalStateException("Unexpected value: " + layer);
             }
         }
     }
@@ -0,0 +1,199 @@
+package org.valkyrienskies.mod.client.render;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.BlockRendererDispatcher;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
+import net.minecraft.util.BlockRenderLayer;
+import net.minecraft.util.EnumBlockRenderType;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.BlockPos.MutableBlockPos;
+import net.minecraft.world.ChunkCache;
+import net.minecraft.world.IBlockAccess;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraftforge.client.ForgeHooksClient;
+import net.minecraftforge.client.MinecraftForgeClient;
+import org.lwjgl.opengl.GL11;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the geometry of ship chunk sections on worker threads, so that changing the blocks of a big ship doesn't
+ * stall the render thread.
+ * <p>
+ * Every section is compiled into its own set of {@link BufferBuilder}s, one per {@link BlockRenderLayer}. The render
+ * thread only has to upload the finished buffers and then {@link CompiledSection#release()} them, which returns the
+ * buffers to a shared pool to be used by the next section.
+ */
+@Log4j2
+public class ShipSectionCompiler {
+
+    private static final int THREAD_COUNT = Math.max(1, Math.min(4,
+        Runtime.getRuntime().availableProcessors() / 2));
+    private static final ExecutorService COMPILE_THREADS = Executors.newFixedThreadPool(THREAD_COUNT,
+        new ThreadFactoryBuilder().setNameFormat("VS Ship Section Compiler %d").setDaemon(true).build());
+
+    private static final BlockRenderLayer[] LAYERS = BlockRenderLayer.values();
+    // Initial size of the pooled buffers in ints, they grow by themselves if a section needs more
+    private static final int INITIAL_BUFFER_SIZE = 0x10000;
+    // The most buffers kept around for reuse, any more than that are left to the garbage collector
+    private static final int MAX_POOLED_BUFFERS = THREAD_COUNT * LAYERS.length * 2;
+    private static final Queue<BufferBuilder> BUFFER_POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED_BUFFER_COUNT = new AtomicInteger();
+
+    /**
+     * Starts compiling the 16x16x16 section of chunk with the given minimum y. Must be called from the render thread,
+     * because it takes a snapshot of the chunks around the section.
+     *
+     * @param offsetPos Subtracted from the positions of all the vertices, see {@link PhysObjectRenderManager#offsetPos}
+     */
+    public static CompletableFuture<CompiledSection> compileAsync(Chunk chunk, int minY, BlockPos offsetPos) {
+        final BlockPos minPos = new BlockPos(chunk.x << 4, minY, chunk.z << 4);
+        final BlockPos maxPos = minPos.add(15, 15, 15);
+        // Blocks look at their neighbours to decide which faces to render, so include a block around the section
+        final IBlockAccess world = new ChunkCache(chunk.getWorld(), minPos.add(-1, -1, -1), maxPos.add(1, 1, 1), 1);
+        return CompletableFuture.supplyAsync(() -> compile(world, minPos, maxPos, offsetPos), COMPILE_THREADS);
+    }
+
+    private static CompiledSection compile(IBlockAccess world, BlockPos minPos, BlockPos maxPos,
+                                           BlockPos offsetPos) {
+        final BlockRendererDispatcher dispatcher = Minecraft.getMinecraft().getBlockRendererDispatcher();
+        final CompiledSection section = new CompiledSection();
+        // The render layer is thread local, but set it back anyways in case this thread is used for anything else
+        final BlockRenderLayer oldLayer = MinecraftForgeClient.getRenderLayer();
+        try {
+            for (int i = 0; i < LAYERS.length; i++) {
+                final BufferBuilder buffer = takeBuffer();
+                section.buffers[i] = buffer;
+                buffer.begin(GL11.GL_QUADS, DefaultVertexFormats.BLOCK);
+                buffer.setTranslation(-offsetPos.getX(), -offsetPos.getY(), -offsetPos.getZ());
+            }
+
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+            final MutableBlockPos pos = new MutableBlockPos();
+            for (int x = minPos.getX(); x <= maxPos.getX(); x++) {
+                for (int z = minPos.getZ(); z <= maxPos.getZ(); z++) {
+                    for (int y = minPos.getY(); y <= maxPos.getY(); y++) {
+                        pos.setPos(x, y, z);
+                        final IBlockState state = world.getBlockState(pos);
+                        if (state.getRenderType() == EnumBlockRenderType.INVISIBLE) {
+                            continue;
+                        }
+                        minX = Math.min(minX, x);
+                        minY = Math.min(minY, y);
+                        minZ = Math.min(minZ, z);
+                        maxX = Math.max(maxX, x);
+                        maxY = Math.max(maxY, y);
+                        maxZ = Math.max(maxZ, z);
+                        for (int i = 0; i < LAYERS.length; i++) {
+                            if (!state.getBlock().canRenderInLayer(state, LAYERS[i])) {
+                                continue;
+                            }
+                            ForgeHooksClient.setRenderLayer(LAYERS[i]);
+                            try {
+                                dispatcher.renderBlock(state, pos, world, section.buffers[i]);
+                            } catch (NullPointerException e) {
+                                // Some blocks expect things the ChunkCache doesn't have, skip them instead of
+                                // losing the whole section
+                                log.error("Failed to render " + state + " at " + pos + " in layer " + LAYERS[i], e);
+                            }
+                        }
+                    }
+                }
+            }
+
+            for (final BufferBuilder buffer : section.buffers) {
+                buffer.setTranslation(0, 0, 0);
+                buffer.finishDrawing();
+            }
+            if (minX <= maxX) {
+                // Some models stick out of their block, so grow the bounds by a block but stay inside the section
+                section.minX = Math.max(minX - 1, minPos.getX());
+                section.minY = Math.max(minY - 1, minPos.getY());
+                section.minZ = Math.max(minZ - 1, minPos.getZ());
+                section.maxX = Math.min(maxX + 1, maxPos.getX()) + 1;
+                section.maxY = Math.min(maxY + 1, maxPos.getY()) + 1;
+                section.maxZ = Math.min(maxZ + 1, maxPos.getZ()) + 1;
+            }
+            return section;
+        } catch (RuntimeException e) {
+            section.release();
+            throw e;
+        } finally {
+            ForgeHooksClient.setRenderLayer(oldLayer);
+        }
+    }
+
+    private static BufferBuilder takeBuffer() {
+        final BufferBuilder buffer = BUFFER_POOL.poll();
+        if (buffer == null) {
+            return new BufferBuilder(INITIAL_BUFFER_SIZE);
+        }
+        POOLED_BUFFER_COUNT.decrementAndGet();
+        return buffer;
+    }
+
+    private static void returnBuffer(BufferBuilder buffer) {
+        if (buffer.isDrawing) {
+            // Only happens when compiling failed part of the way through
+            buffer.finishDrawing();
+        }
+        buffer.reset();
+        if (POOLED_BUFFER_COUNT.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            BUFFER_POOL.add(buffer);
+        } else {
+            POOLED_BUFFER_COUNT.decrementAndGet();
+        }
+    }
+
+    /**
+     * The geometry of one ship chunk section, with a finished {@link BufferBuilder} for every render layer.
+     */
+    public static class CompiledSection {
+
+        private final BufferBuilder[] buffers = new BufferBuilder[LAYERS.length];
+        // The bounds of the blocks with any geometry, all 0 if there are none
+        @Getter
+        private int minX, minY, minZ, maxX, maxY, maxZ;
+
+        private CompiledSection() {
+        }
+
+        /**
+         * @return The finished buffer for layer, only valid until this section is released.
+         */
+        public BufferBuilder getBuffer(BlockRenderLayer layer) {
+            return buffers[layer.ordinal()];
+        }
+
+        /**
+         * @return True if nothing in this section renders in layer.
+         */
+        public boolean isEmpty(BlockRenderLayer layer) {
+            return buffers[layer.ordinal()].getVertexCount() == 0;
+        }
+
+        /**
+         * Returns the buffers of this section to the pool. Call this once the buffers have been uploaded.
+         */
+        public void release() {
+            for (int i = 0; i < buffers.length; i++) {
+                if (buffers[i] != null) {
+                    returnBuffer(buffers[i]);
+                    buffers[i] = null;
+                }
+            }
+        }
+    }
+
+}
@@ -37,6 +37,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.joml.Vector3d;
 import org.joml.Vector3dc;
+import org.valkyrienskies.mod.common.capability.VSCapabilityRegistry;
+import org.valkyrienskies.mod.common.capability.VSWorldDataCapability;
 import org.valkyrienskies.mod.common.config.VSConfig;
 import org.valkyrienskies.mod.common.entity.EntityMountable;
 import org.valkyrienskies.mod.common.ships.entity_interaction.EntityDraggable;
@@ -169,6 +171,13 @@ public class EventsCommon {
         lastPositions.clear();
         IHasShipManager shipManager = (IHasShipManager) event.getWorld();
         shipManager.getManager().onWorldUnload();
+        if (!event.getWorld().isRemote) {
+            // Make sure the ships are on disk before the game exits, or before this world is loaded again
+            VSWorldDataCapability worldData = event.getWorld().getCapability(VSCapabilityRegistry.VS_WORLD_DATA, null);
+            if (worldData != null) {
+                worldData.flushWrites();
+            }
+        }
     }
 
     @SubscribeEvent(priority = EventPriority.HIGHEST)
@@ -18,10 +18,13 @@ import org.valkyrienskies.mod.common.capability.framework.VSDefaultCapabilitySto
 import org.valkyrienskies.mod.common.capability.framework.VSDefaultCapabilityTransientStorage;
 
 import javax.annotation.Nonnull;
+import java.io.File;
 
 @EventBusSubscriber(modid = ValkyrienSkiesMod.MOD_ID)
 public class VSCapabilityRegistry {
 
+    private static final String SHIP_DATA_FILE_NAME = "valkyrienskies_ships.dat";
+
     @CapabilityInject(VSWorldDataCapability.class)
     public static final Capability<VSWorldDataCapability> VS_WORLD_DATA = getNull();
 
@@ -30,9 +33,19 @@ public class VSCapabilityRegistry {
 
     @SubscribeEvent
     public static void attachWorldCapabilities(AttachCapabilitiesEvent<World> event) {
+        VSDefaultCapabilityProvider<VSWorldDataCapability> provider = new VSDefaultCapabilityProvider<>(VS_WORLD_DATA);
         event.addCapability(
-            new ResourceLocation(ValkyrienSkiesMod.MOD_ID, "world_data_capability"),
-            new VSDefaultCapabilityProvider<>(VS_WORLD_DATA));
+            new ResourceLocation(ValkyrienSkiesMod.MOD_ID, "world_data_capability"), provider);
+
+        World world = event.getObject();
+        if (!world.isRemote) {
+            // Keep the ships next to the other saved data of the dimension
+            File dimensionDirectory = world.provider.getSaveFolder() == null ?
+                world.getSaveHandler().getWorldDirectory() :
+                new File(world.getSaveHandler().getWorldDirectory(), world.provider.getSaveFolder());
+            provider.getCapability(VS_WORLD_DATA, null)
+                .setSaveFile(new File(dimensionDirectory, "data/" + SHIP_DATA_FILE_NAME));
+        }
     }
 
     @SubscribeEvent
@@ -1,14 +1,35 @@
 package org.valkyrienskies.mod.common.capability;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import javax.annotation.Nullable;
+import lombok.extern.log4j.Log4j2;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagByteArray;
+import net.minecraft.util.EnumFacing;
 import org.valkyrienskies.mod.common.capability.framework.VSDefaultCapability;
+import org.valkyrienskies.mod.common.ships.ShipData;
 import org.valkyrienskies.mod.common.ships.ship_world.VSWorldData;
+import org.valkyrienskies.mod.common.ships.ship_world.VSWorldDataFileWriter;
+import org.valkyrienskies.mod.common.ships.ship_world.VSWorldDataSerializer;
 
 /**
  * This sort of class basically only exists because Java generics are trash
+ * <p>
+ * Saves with {@link VSWorldDataSerializer} rather than plain CBOR. Worlds saved as plain CBOR are still read, and
+ * are converted the next time the world saves.
+ * <p>
+ * Server worlds are given a save file with {@link #setSaveFile(File)}. Their data is written to that file in the
+ * background by a {@link VSWorldDataFileWriter}, and the NBT is left empty once the file holds a complete save.
+ * Until then, like on the first save after converting a world, the data is written to the NBT as well.
  */
+@Log4j2
 public class VSWorldDataCapability extends VSDefaultCapability<VSWorldData> {
 
+    private final VSWorldDataSerializer serializer = new VSWorldDataSerializer();
+    @Nullable
+    private VSWorldDataFileWriter fileWriter;
+
     public VSWorldDataCapability(ObjectMapper mapper) {
         super(VSWorldData.class, VSWorldData::new, mapper);
     }
@@ -17,4 +38,79 @@ public class VSWorldDataCapability extends VSDefaultCapability<VSWorldData> {
         super(VSWorldData.class, VSWorldData::new);
     }
 
+    public void setSaveFile(File file) {
+        this.fileWriter = new VSWorldDataFileWriter(file);
+    }
+
+    /**
+     * Blocks until the last save has been written to the save file.
+     */
+    public void flushWrites() {
+        if (fileWriter != null) {
+            fileWriter.flush();
+        }
+    }
+
+    @Nullable
+    @Override
+    public NBTTagByteArray writeNBT(EnumFacing side) {
+        long time = System.currentTimeMillis();
+        try {
+            byte[] value = serializer.write(get());
+            log.debug("VS serialization took {} ms. Writing data of size {} KB. ({})",
+                System.currentTimeMillis() - time, value.length / Math.pow(2, 10),
+                VSWorldData.class.getSimpleName());
+            if (fileWriter != null) {
+                // Check before queueing the write, so the NBT is only left empty once an earlier save is on disk
+                final boolean fileWritten = fileWriter.hasWrittenFile();
+                fileWriter.writeAsync(value);
+                if (fileWritten) {
+                    return new NBTTagByteArray(new byte[0]);
+                }
+            }
+            return new NBTTagByteArray(value);
+        } catch (Exception ex) {
+            log.error("Failed to write VS world data in the binary format, writing it as CBOR instead", ex);
+            // CBOR writes the block positions fields directly, so they must be decoded
+            get().getQueryableShipData().forEach(ShipData::loadBlockPositions);
+            return super.writeNBT(side);
+        }
+    }
+
+    @Override
+    public VSWorldData readNBT(NBTBase base, EnumFacing side) {
+        byte[] value = base instanceof NBTTagByteArray ? ((NBTTagByteArray) base).getByteArray() : null;
+        try {
+            if (fileWriter != null && (value == null || value.length == 0)) {
+                value = fileWriter.read();
+                if (value == null) {
+                    log.fatal("The ship data file {} is missing! Ships will probably be missing",
+                        fileWriter.getFile());
+                    set(new VSWorldData());
+                    return get();
+                }
+            }
+        } catch (Exception ex) {
+            log.fatal("Failed to read your ship data? Ships will probably be missing", ex);
+            set(new VSWorldData());
+            return get();
+        }
+
+        if (value == null || !VSWorldDataSerializer.isBinaryFormat(value)) {
+            // Saved before the binary format existed
+            return super.readNBT(base, side);
+        }
+
+        long time = System.currentTimeMillis();
+        try {
+            set(serializer.read(value));
+            log.info("VS deserialization took {} ms. Reading data of size {} KB.",
+                System.currentTimeMillis() - time, value.length / Math.pow(2, 10));
+        } catch (Exception ex) {
+            log.fatal("Failed to read your ship data? Ships will probably be missing", ex);
+            set(new VSWorldData());
+        }
+        return get();
+    }
+
 }
@@ -0,0 +1,183 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.joml.Matrix3dc;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+import org.valkyrienskies.mod.common.physics.PhysicsCalculations;
+
+/**
+ * Applies the impulses generated by collision contact points to the velocity of a rigid body. All of the temporary
+ * vectors are preallocated, so processing a contact point doesn't allocate any memory.
+ * <p>
+ * Not thread safe, every collider must have its own solver.
+ */
+public class CollisionImpulseSolver {
+
+    // Our ideal velocity is to negate the velocity at the point, and the collision offset.
+    private static final double OFFSET_VELOCITY_MULTIPLIER = 2;
+    // Below this speed our collision coefficient of restitution is zero.
+    private static final double RESTITUTION_SLOP = .5D;
+
+    // The state of the body we're applying impulses to
+    private Vector3d linearVelocity;
+    private Vector3d angularVelocity;
+    private Matrix3dc moiTensor;
+    private Matrix3dc invMOITensor;
+    private double mass;
+    private double invMass;
+    private double dragForPhysTick;
+
+    // Temp variables
+    private final Vector3d velocityAtPoint;
+    private final Vector3d crossTemp;
+    private final Vector3d collisionImpulse;
+    private final Vector3d contactNormal;
+    private final Vector3d frictionVector;
+    private final Vector3d deltaVelocity;
+    private final Vector3d deltaAngularVelocity;
+    private final Vector3d rotationAxis;
+
+    public CollisionImpulseSolver() {
+        this.velocityAtPoint = new Vector3d();
+        this.crossTemp = new Vector3d();
+        this.collisionImpulse = new Vector3d();
+        this.contactNormal = new Vector3d();
+        this.frictionVector = new Vector3d();
+        this.deltaVelocity = new Vector3d();
+        this.deltaAngularVelocity = new Vector3d();
+        this.rotationAxis = new Vector3d();
+    }
+
+    /**
+     * Sets the body that impulses are applied to. The velocity vectors are modified directly by
+     * {@link #applyCollisionImpulse(Vector3dc, Vector3dc, Vector3dc)}.
+     */
+    public void setBody(Vector3d linearVelocity, Vector3d angularVelocity, double mass, Matrix3dc moiTensor,
+        Matrix3dc invMOITensor, double dragForPhysTick) {
+        this.linearVelocity = linearVelocity;
+        this.angularVelocity = angularVelocity;
+        this.mass = mass;
+        this.invMass = 1.0 / mass;
+        this.moiTensor = moiTensor;
+        this.invMOITensor = invMOITensor;
+        this.dragForPhysTick = dragForPhysTick;
+    }
+
+    public void setBody(PhysicsCalculations calculator) {
+        setBody(calculator.getLinearVelocity(), calculator.getAngularVelocity(), calculator.getMass(),
+            calculator.getPhysMOITensor(), calculator.getPhysInvMOITensor(), calculator.getDragForPhysTick());
+    }
+
+    /**
+     * Takes all of the math generated before, and directly adds the result to the body velocities.
+     *
+     * @param inBody       The collision position relative to the center of mass of the body
+     * @param axis         The collision normal
+     * @param offsetVector The penetration of the collision along the axis
+     */
+    public void applyCollisionImpulse(Vector3dc inBody, Vector3dc axis, Vector3dc offsetVector) {
+        final Vector3d velocityAtPointOfCollision = angularVelocity.cross(inBody, velocityAtPoint)
+            .add(linearVelocity);
+        velocityAtPointOfCollision.add(offsetVector.x() * OFFSET_VELOCITY_MULTIPLIER,
+            offsetVector.y() * OFFSET_VELOCITY_MULTIPLIER, offsetVector.z() * OFFSET_VELOCITY_MULTIPLIER);
+
+        final Vector3d firstCross = inBody.cross(axis, crossTemp);
+        invMOITensor.transform(firstCross);
+        final Vector3d secondCross = firstCross.cross(inBody);
+
+        double impulseMagnitude = -velocityAtPointOfCollision.dot(axis) / (invMass + secondCross.dot(axis));
+
+        final double collisionSpeed = Math.abs(velocityAtPointOfCollision.dot(axis));
+        if (collisionSpeed > RESTITUTION_SLOP) {
+            impulseMagnitude *= (1 + WorldPhysicsCollider.COEFFICIENT_OF_RESTITUTION);
+        } else {
+            // TODO: Need to reduce this value by some factor
+            // impulseMagnitude *= .5D;
+        }
+
+        final Vector3d collisionImpulseForce = axis.mul(impulseMagnitude, collisionImpulse);
+
+        // This is just an optimized way to add this force as quickly as possible.
+        // Added collisionImpulseForce.dot(inBody) > 0 to force all collision to move in
+        // the direction towards the in body vector.
+        if (collisionImpulseForce.dot(offsetVector) < 0 && collisionImpulseForce.dot(inBody) < 0) {
+            addFrictionToNormalForce(velocityAtPointOfCollision, collisionImpulseForce, inBody);
+            linearVelocity.add(collisionImpulseForce.x * invMass, collisionImpulseForce.y * invMass,
+                collisionImpulseForce.z * invMass);
+
+            final Vector3d thirdCross = inBody.cross(collisionImpulseForce, crossTemp);
+            invMOITensor.transform(thirdCross);
+            angularVelocity.add(thirdCross);
+        }
+    }
+
+    // Applies the friction force generated by the collision.
+    // The magnitude of this vector must be adjusted to minimize energy
+    private void addFrictionToNormalForce(Vector3dc momentumAtPoint, Vector3d impulseVector, Vector3dc inBody) {
+        impulseVector.normalize(contactNormal);
+
+        momentumAtPoint.normalize(frictionVector);
+        frictionVector.mul(impulseVector.length() * WorldPhysicsCollider.KINETIC_FRICTION_COEFFICIENT);
+
+        if (frictionVector.dot(momentumAtPoint) > 0) {
+            frictionVector.mul(-1D);
+        }
+
+        // Remove all friction components along the impulse vector
+        final double frictionImpulseDot = frictionVector.dot(contactNormal);
+        frictionVector.sub(contactNormal.x * frictionImpulseDot, contactNormal.y * frictionImpulseDot,
+            contactNormal.z * frictionImpulseDot);
+
+        final double inertiaScalarAlongAxis = getInertiaAlongRotationAxis();
+        // The change in velocity vector
+        final Vector3dc initialVelocity = linearVelocity;
+        // Don't forget to multiply by delta t
+        frictionVector.mul(invMass * dragForPhysTick, deltaVelocity);
+
+        final double A = initialVelocity.lengthSquared();
+        final double B = 2 * initialVelocity.dot(deltaVelocity);
+        final double C = deltaVelocity.lengthSquared();
+
+        final Vector3dc initialAngularVelocity = angularVelocity;
+        inBody.cross(frictionVector, deltaAngularVelocity);
+        // This might need to be 1 / inertiaScalarAlongAxis
+        deltaAngularVelocity.mul(dragForPhysTick / inertiaScalarAlongAxis);
+
+        double D = initialAngularVelocity.lengthSquared();
+        double E = 2 * deltaAngularVelocity.dot(initialAngularVelocity);
+        double F = deltaAngularVelocity.lengthSquared();
+
+        // This is tied to PhysicsCalculations line 430
+        if (initialAngularVelocity.lengthSquared() < .05 && initialVelocity.lengthSquared() < .05) {
+            // Remove rotational friction if we are rotating slow enough
+            D = E = F = 0;
+        }
+
+        // The coefficients of energy as a function of energyScaleFactor in the form (A
+        // + B * k + c * k^2)
+        final double secondCoefficient = B * mass + E * inertiaScalarAlongAxis;
+        final double thirdCoefficient = C * mass + F * inertiaScalarAlongAxis;
+
+        double scaleFactor = -secondCoefficient / (thirdCoefficient * 2);
+
+        if (Double.isNaN(scaleFactor)) {
+            scaleFactor = 0;
+        } else {
+            scaleFactor = Math.max(0, Math.min(scaleFactor, 1));
+            frictionVector.mul(scaleFactor);
+        }
+
+        // ===== Friction Scaling Code End =====
+
+        impulseVector.add(frictionVector);
+    }
+
+    /**
+     * Same as {@link PhysicsCalculations#getInertiaAlongRotationAxis()}, without allocating a new vector.
+     */
+    private double getInertiaAlongRotationAxis() {
+        angularVelocity.normalize(rotationAxis);
+        moiTensor.transform(rotationAxis);
+        return rotationAxis.length();
+    }
+}
@@ -8,6 +8,7 @@ import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import org.joml.Vector3d;
 import org.joml.Vector3dc;
+import org.valkyrienskies.mod.common.config.VSConfig;
 import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetector;
 import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
 import org.valkyrienskies.mod.common.util.VSIterationUtils;
@@ -19,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -32,6 +34,8 @@ public class ShipCollisionTask implements Callable<Void> {
     private final MutableBlockPos inLocalPos;
     private final Vector3d inWorld;
     private final List<CollisionInformationHolder> collisionInformationGenerated;
+    // Only used when collisions are deterministic, reseeded every time this task is run
+    private final Random random;
     private IBlockState inWorldState;
     // public TIntArrayList foundPairs = new TIntArrayList();
 
@@ -42,25 +46,29 @@ public class ShipCollisionTask implements Callable<Void> {
         this.inLocalPos = new MutableBlockPos();
         this.inWorld = new Vector3d();
         this.collisionInformationGenerated = new ArrayList<>();
+        this.random = new Random();
         this.inWorldState = null;
 
         int size = toTask.getCachedPotentialHitSize();
-        if (taskStartIndex + MAX_TASKS_TO_CHECK > size + 1) {
-            tasksToCheck = size + 1 - taskStartIndex;
-        } else {
-            tasksToCheck = MAX_TASKS_TO_CHECK;
-        }
+        tasksToCheck = Math.min(MAX_TASKS_TO_CHECK, size - taskStartIndex);
     }
 
     @Override
     public Void call() {
-        for (int index = taskStartIndex; index < tasksToCheck + 1; index++) {
+        // Hits may have been removed from the cache since this task was created
+        final int taskEndIndex = Math.min(taskStartIndex + tasksToCheck, toTask.getCachedPotentialHitSize());
+        for (int index = taskStartIndex; index < taskEndIndex; index++) {
             int integer = toTask.getCachedPotentialHit(index);
             processNumber(integer);
         }
 
         // Shuffle this so that WorldPhysicsCollider performs better
-        Collections.shuffle(collisionInformationGenerated, ThreadLocalRandom.current());
+        if (VSConfig.deterministicCollisions) {
+            random.setSeed(toTask.getCollisionSeed() + taskStartIndex);
+            Collections.shuffle(collisionInformationGenerated, random);
+        } else {
+            Collections.shuffle(collisionInformationGenerated, ThreadLocalRandom.current());
+        }
 
         return null;
     }
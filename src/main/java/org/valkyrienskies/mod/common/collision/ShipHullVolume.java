@@ -0,0 +1,130 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
+
+import java.util.Arrays;
+
+/**
+ * The solid blocks of a ship in ship space, merged into vertical runs of up to {@link #MAX_RUN_LENGTH} blocks.
+ * <p>
+ * The water forces are calculated for every run instead of for every block. Splitting long runs keeps the forces
+ * accurate when the ship is tilted, because every run only samples the water at its center.
+ */
+public class ShipHullVolume {
+
+    public static final int MAX_RUN_LENGTH = 4;
+
+    // The x, z, minY and length of every run
+    private int[] runs = new int[4 * 64];
+    private int runCount = 0;
+    private int blockCount = 0;
+    // The solid bits of the chunk being added, 256 bits for each of the 256 columns
+    private final long[] columnBits = new long[256 * 4];
+
+    public void clear() {
+        runCount = 0;
+        blockCount = 0;
+    }
+
+    /**
+     * Adds the solid blocks of a chunk.
+     *
+     * @param solidOctrees The solid octree of every section of the chunk, or null for empty sections.
+     */
+    public void addChunk(int chunkX, int chunkZ, IBitOctree[] solidOctrees) {
+        Arrays.fill(columnBits, 0);
+        boolean hasSolidBlocks = false;
+        for (int storageY = 0; storageY < solidOctrees.length; storageY++) {
+            final IBitOctree octree = solidOctrees[storageY];
+            if (octree == null) {
+                continue;
+            }
+            final int baseY = storageY << 4;
+            octree.forEachSetBitInRange(0, 0, 0, 15, 15, 15, (x, y, z) -> {
+                final int blockY = baseY | y;
+                columnBits[((z << 4) | x) << 2 | (blockY >> 6)] |= 1L << (blockY & 63);
+            });
+            hasSolidBlocks = true;
+        }
+        if (!hasSolidBlocks) {
+            return;
+        }
+
+        for (int column = 0; column < 256; column++) {
+            final int x = (chunkX << 4) + (column & 15);
+            final int z = (chunkZ << 4) + (column >> 4);
+            int runStart = nextBit(column, 0, true);
+            while (runStart < 256) {
+                final int runEnd = nextBit(column, runStart, false);
+                for (int y = runStart; y < runEnd; y += MAX_RUN_LENGTH) {
+                    addRun(x, z, y, Math.min(MAX_RUN_LENGTH, runEnd - y));
+                }
+                runStart = nextBit(column, runEnd, true);
+            }
+        }
+    }
+
+    public int getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * @return The number of solid blocks in all the runs.
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    public int getRunX(int run) {
+        return runs[run * 4];
+    }
+
+    public int getRunZ(int run) {
+        return runs[run * 4 + 1];
+    }
+
+    /**
+     * @return The y of the lowest block of the run.
+     */
+    public int getRunMinY(int run) {
+        return runs[run * 4 + 2];
+    }
+
+    /**
+     * @return The number of blocks in the run.
+     */
+    public int getRunLength(int run) {
+        return runs[run * 4 + 3];
+    }
+
+    private void addRun(int x, int z, int minY, int length) {
+        if (runCount * 4 == runs.length) {
+            runs = Arrays.copyOf(runs, runs.length * 2);
+        }
+        runs[runCount * 4] = x;
+        runs[runCount * 4 + 1] = z;
+        runs[runCount * 4 + 2] = minY;
+        runs[runCount * 4 + 3] = length;
+        runCount++;
+        blockCount += length;
+    }
+
+    /**
+     * @return The first y at or above from where the bit of the column equals value, or 256 if there is none.
+     */
+    private int nextBit(int column, int from, boolean value) {
+        while (from < 256) {
+            long word = columnBits[column << 2 | (from >> 6)];
+            if (!value) {
+                word = ~word;
+            }
+            word &= -1L << (from & 63);
+            if (word != 0) {
+                return (from & ~63) + Long.numberOfTrailingZeros(word);
+            }
+            from = (from & ~63) + 64;
+        }
+        return 256;
+    }
+
+}
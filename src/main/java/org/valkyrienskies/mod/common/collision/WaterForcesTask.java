@@ -1,28 +1,24 @@
 package org.valkyrienskies.mod.common.collision;
 
-import gnu.trove.list.TIntList;
-import net.minecraft.util.math.BlockPos;
-import net.minecraft.world.chunk.Chunk;
-import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import org.joml.Vector3d;
 import org.joml.Vector3dc;
 import org.valkyrienskies.mod.common.physics.PhysicsCalculations;
-import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetector;
 import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
-import org.valkyrienskies.mod.common.util.JOML;
-import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
-import org.valkyrienskies.mod.common.util.datastructures.ITerrainOctreeProvider;
 import valkyrienwarfare.api.TransformType;
 
 import java.util.concurrent.Callable;
 
+/**
+ * Computes the water buoyancy and drag forces of a ship from the part of its {@link ShipHullVolume} that is under the
+ * water of a {@link WaterHeightfield}.
+ * <p>
+ * Every run of the hull is treated as a line segment from the bottom to the top of its blocks, and the water is
+ * sampled at the middle of that segment. The part of the segment between the bottom and the top of the water is the
+ * volume that run displaces.
+ */
 public class WaterForcesTask implements Callable<Void> {
 
-    public final static int MAX_TASKS_TO_CHECK = 500;
-
-    // The radius of the sphere that represents each water block in meters.
-    private static final double SPHERE_RADIUS = .5;
     // Acceleration in m/s^2
     private static final double GRAVITY_ACCELERATION = 9.8;
     // Mass in kg
@@ -31,26 +27,30 @@ public class WaterForcesTask implements Callable<Void> {
     private static final double DENSITY_OF_WATER = 1000;
     // Dimensionless constant. Higher values mean more damping force from water.
     private static final double DRAG_COEFFICIENT_OF_WATER = .3;
-    // The radius, in meters, of the AABB of water blocks and terrain blocks.
-    private static final double AABB_RADIUS = .5;
+    // The area the drag force acts on for every cubic meter of water displaced, in m^2. This is the cross section of
+    // a sphere with a radius of .5 meters.
+    private static final double DRAG_AREA_PER_CUBIC_METER = Math.PI * .5 * .5;
+    // Below this difference in y the runs are treated as horizontal.
+    private static final double HORIZONTAL_RUN_THRESHOLD = 1e-6;
 
     private final PhysicsObject parent;
-    private final BlockPos colliderCenter;
-    private final TIntList waterHitsToCheck;
-    private final int minHitIndex, maxHitIndex;
+    private final ShipHullVolume hullVolume;
+    private final WaterHeightfield waterHeightfield;
     private final Vector3d addedForce, addedTorque;
 
-    public WaterForcesTask(final PhysicsObject parent, final BlockPos colliderCenter, final TIntList waterHitsToCheck,
-                           final int minHitIndex, final int maxHitIndex) {
+    public WaterForcesTask(final PhysicsObject parent, final ShipHullVolume hullVolume,
+                           final WaterHeightfield waterHeightfield) {
         this.parent = parent;
-        this.colliderCenter = colliderCenter;
-        this.waterHitsToCheck = waterHitsToCheck;
-        this.minHitIndex = minHitIndex;
-        this.maxHitIndex = maxHitIndex;
+        this.hullVolume = hullVolume;
+        this.waterHeightfield = waterHeightfield;
         this.addedForce = new Vector3d();
         this.addedTorque = new Vector3d();
     }
 
+    public PhysicsObject getParent() {
+        return parent;
+    }
+
     /**
      * Adds the computed force and torque to the parent ship
      */
@@ -60,99 +60,75 @@ public class WaterForcesTask implements Callable<Void> {
     }
 
     /**
-     * Computes the force and torque resulting from the water collisions handled by this task.
+     * Computes the force and torque resulting from the parts of the hull that are under water.
      */
     @Override
     public Void call() {
-        final BlockPos.MutableBlockPos currentPos = new BlockPos.MutableBlockPos();
         final ShipTransform physicsTransform = parent.getShipTransformationManager().getCurrentPhysicsTransform();
         final PhysicsCalculations physicsEngine = parent.getPhysicsCalculations();
 
         // Vector objects reused in this method.
-        final Vector3d temp0 = new Vector3d();
-        final Vector3d temp1 = new Vector3d();
-        final Vector3d temp2 = new Vector3d();
-        final Vector3d temp3 = new Vector3d();
-        final Vector3d temp4 = new Vector3d();
-        final Vector3d temp5 = new Vector3d();
-        final Vector3d temp6 = new Vector3d();
-        final Vector3d temp7 = new Vector3d();
-        final Vector3d temp8 = new Vector3d();
-        final Vector3d temp9 = new Vector3d();
-
-        for (int index = minHitIndex; index <= maxHitIndex; index++) {
-            final int waterHitPosHash = waterHitsToCheck.get(index);
-            SpatialDetector.setPosWithRespectTo(waterHitPosHash, colliderCenter, currentPos);
-
-            final Vector3dc waterPosInShipSpace = physicsTransform.transformPositionNew(JOML.convertDouble(currentPos, temp0).add(.5, .5, .5), TransformType.GLOBAL_TO_SUBSPACE);
-
-            final int minX = (int) Math.floor(waterPosInShipSpace.x() - .5);
-            final int minY = (int) Math.floor(waterPosInShipSpace.y() - .5);
-            final int minZ = (int) Math.floor(waterPosInShipSpace.z() - .5);
-
-            final int maxX = (int) Math.ceil(waterPosInShipSpace.x() + .5);
-            final int maxY = (int) Math.ceil(waterPosInShipSpace.y() + .5);
-            final int maxZ = (int) Math.ceil(waterPosInShipSpace.z() + .5);
-
-            final Vector3dc waterPosInWorld = JOML.convertDouble(currentPos, temp1).add(.5, .5, .5);
-
-            for (int x = minX; x <= maxX; x++) {
-                for (int z = minZ; z <= maxZ; z++) {
-                    final Chunk chunk = parent.getChunkClaim().containsChunk(x >> 4, z >> 4) ? parent.getChunkAt(x >> 4, z >> 4) : null;
-                    if (chunk == null)
-                        continue;
-                    for (int y = minY; y <= maxY; y++) {
-                        final ExtendedBlockStorage blockStorage = chunk.storageArrays[y >> 4];
-                        if (blockStorage != null) {
-                            final IBitOctree terrainOctree = ((ITerrainOctreeProvider) blockStorage.data).getSolidOctree();
-                            if (terrainOctree.get(x & 15, y & 15, z & 15)) {
-                                // Assume both the water block and terrain block are spheres, then compute the volume
-                                // that overlaps
-                                final Vector3dc shipSolidBlockPosInWorld = physicsTransform.transformPositionNew(temp2.set(x + .5, y + .5, z + .5), TransformType.SUBSPACE_TO_GLOBAL);
-
-                                final double volumeDisplaced = calculateAABBOverlap(
-                                        waterPosInWorld.x() - shipSolidBlockPosInWorld.x(),
-                                        waterPosInWorld.y() - shipSolidBlockPosInWorld.y(),
-                                        waterPosInWorld.z() - shipSolidBlockPosInWorld.z()
-                                );
-
-                                if (volumeDisplaced <= 0) {
-                                    // No intersection
-                                    continue;
-                                }
-
-                                // Collision position is average of ship solid block pos and water pos
-                                final Vector3dc collisionPosInWorld = shipSolidBlockPosInWorld.add(waterPosInWorld, temp3).mul(.5);
-
-                                final Vector3dc buoyancyForce = temp4.set(0, volumeDisplaced * GRAVITY_ACCELERATION * MASS_OF_CUBIC_METER_OF_WATER, 0);
-                                final Vector3dc collisionPosRelativeToShipCenterInWorld = temp5.set(collisionPosInWorld).sub(physicsTransform.getPosX(), physicsTransform.getPosY(), physicsTransform.getPosZ());
-
-                                addForceAtPoint(collisionPosRelativeToShipCenterInWorld, buoyancyForce, temp7);
-
-                                {
-                                    // Compute water damping force
-                                    final Vector3dc velocity = physicsEngine.getVelocityAtPoint(collisionPosRelativeToShipCenterInWorld, temp9);
-
-                                    if (!isVectorLengthZero(velocity)) {
-                                        // TODO: This is WRONG, but it'll do for now
-                                        // The distance between the water block and the solid block its pushing upwards
-                                        double distance = waterPosInWorld.distance(shipSolidBlockPosInWorld);
-                                        final double area = Math.PI * (SPHERE_RADIUS - (distance * .5)) * (SPHERE_RADIUS - (distance * .5));
-                                        final double velocitySquared = velocity.lengthSquared();
-
-                                        // Drag formula from https://en.wikipedia.org/wiki/Drag_(physics)
-                                        final double forceMagnitude = (.5) * DENSITY_OF_WATER * velocitySquared * DRAG_COEFFICIENT_OF_WATER * area;
-
-                                        final Vector3dc dragForce = temp6.set(velocity).normalize().mul(-forceMagnitude);
-
-                                        addForceAtPoint(collisionPosRelativeToShipCenterInWorld, dragForce, temp8);
-                                    }
-                                }
-                            }
-                        }
-                    }
+        final Vector3d runBottom = new Vector3d();
+        final Vector3d runTop = new Vector3d();
+        final Vector3d forcePos = new Vector3d();
+        final Vector3d force = new Vector3d();
+        final Vector3d velocity = new Vector3d();
+        final Vector3d torque = new Vector3d();
+
+        for (int run = 0; run < hullVolume.getRunCount(); run++) {
+            final double x = hullVolume.getRunX(run) + .5;
+            final double z = hullVolume.getRunZ(run) + .5;
+            final int minY = hullVolume.getRunMinY(run);
+            final int length = hullVolume.getRunLength(run);
+            physicsTransform.transformPosition(runBottom.set(x, minY, z), TransformType.SUBSPACE_TO_GLOBAL);
+            physicsTransform.transformPosition(runTop.set(x, minY + length, z), TransformType.SUBSPACE_TO_GLOBAL);
+
+            final int columnX = (int) Math.floor((runBottom.x + runTop.x) * .5);
+            final int columnZ = (int) Math.floor((runBottom.z + runTop.z) * .5);
+            if (!waterHeightfield.hasWater(columnX, columnZ)) {
+                continue;
+            }
+            final double waterBottom = waterHeightfield.getWaterBottom(columnX, columnZ);
+            final double waterTop = waterHeightfield.getWaterTop(columnX, columnZ);
+
+            // Find the part of the run between the bottom and top of the water, as the interval [minT, maxT] of
+            // runBottom + t * (runTop - runBottom).
+            final double minT, maxT;
+            final double deltaY = runTop.y - runBottom.y;
+            if (Math.abs(deltaY) < HORIZONTAL_RUN_THRESHOLD) {
+                if (runBottom.y < waterBottom || runBottom.y > waterTop) {
+                    continue;
+                }
+                minT = 0;
+                maxT = 1;
+            } else {
+                final double waterBottomT = (waterBottom - runBottom.y) / deltaY;
+                final double waterTopT = (waterTop - runBottom.y) / deltaY;
+                minT = Math.max(0, Math.min(waterBottomT, waterTopT));
+                maxT = Math.min(1, Math.max(waterBottomT, waterTopT));
+                if (maxT <= minT) {
+                    continue;
                 }
             }
+            final double volumeDisplaced = (maxT - minT) * length;
+
+            // The forces act on the middle of the part under water
+            runBottom.lerp(runTop, (minT + maxT) * .5, forcePos)
+                .sub(physicsTransform.getPosX(), physicsTransform.getPosY(), physicsTransform.getPosZ());
+
+            force.set(0, volumeDisplaced * GRAVITY_ACCELERATION * MASS_OF_CUBIC_METER_OF_WATER, 0);
+            addForceAtPoint(forcePos, force, torque);
+
+            // Compute water damping force
+            physicsEngine.getVelocityAtPoint(forcePos, velocity);
+            if (!isVectorLengthZero(velocity)) {
+                final double area = volumeDisplaced * DRAG_AREA_PER_CUBIC_METER;
+                // Drag formula from https://en.wikipedia.org/wiki/Drag_(physics)
+                final double forceMagnitude = (.5) * DENSITY_OF_WATER * velocity.lengthSquared()
+                    * DRAG_COEFFICIENT_OF_WATER * area;
+                force.set(velocity).normalize().mul(-forceMagnitude);
+                addForceAtPoint(forcePos, force, torque);
+            }
         }
 
         return null;
@@ -166,26 +142,9 @@ public class WaterForcesTask implements Callable<Void> {
         addedTorque.add(torqueFromForce);
     }
 
-    /**
-     * Computes the volume of the overlap of two AABB with radius {@link #AABB_RADIUS}.
-     * @param xOffset The offset between the two AABBs in the x direction
-     * @param yOffset The offset between the two AABBs in the y direction
-     * @param zOffset The offset between the two AABBs in the z direction
-     * @return The volume of overlap between both AABBs
-     */
-    private static double calculateAABBOverlap(double xOffset, double yOffset, double zOffset) {
-        xOffset = Math.abs(xOffset);
-        yOffset = Math.abs(yOffset);
-        zOffset = Math.abs(zOffset);
-        if (xOffset >= AABB_RADIUS * 2 || yOffset >= AABB_RADIUS * 2 || zOffset >= AABB_RADIUS * 2) {
-            return 0;
-        }
-        return (AABB_RADIUS * 2 - xOffset) * (AABB_RADIUS * 2 - yOffset) * (AABB_RADIUS * 2 - zOffset);
-    }
-
     private static final double VECTOR_LENGTH_SQUARED_ZERO_THRESHOLD = .01;
 
     private static boolean isVectorLengthZero(Vector3dc vector) {
         return vector.lengthSquared() < VECTOR_LENGTH_SQUARED_ZERO_THRESHOLD;
     }
-}
\ No newline at end of file
+}
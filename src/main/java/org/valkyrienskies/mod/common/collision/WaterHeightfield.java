@@ -0,0 +1,88 @@
+package org.valkyrienskies.mod.common.collision;
+
+import java.util.Arrays;
+
+/**
+ * The lowest and highest liquid block of every world column in a rectangle. Sampled from the liquid octrees once per
+ * collision cache update, so that the water forces don't have to look at the water blocks.
+ */
+public class WaterHeightfield {
+
+    private int minX, minZ, sizeX, sizeZ;
+    // The y of the lowest liquid block and one above the highest liquid block of every column
+    private int[] bottom = new int[0];
+    private int[] top = new int[0];
+    private boolean hasWater = false;
+
+    /**
+     * Removes all the water and changes the sampled rectangle.
+     *
+     * @param maxX Inclusive
+     * @param maxZ Inclusive
+     */
+    public void reset(int minX, int minZ, int maxX, int maxZ) {
+        this.minX = minX;
+        this.minZ = minZ;
+        this.sizeX = Math.max(maxX - minX + 1, 0);
+        this.sizeZ = Math.max(maxZ - minZ + 1, 0);
+        final int columns = sizeX * sizeZ;
+        if (bottom.length < columns) {
+            bottom = new int[columns];
+            top = new int[columns];
+        }
+        Arrays.fill(bottom, 0, columns, Integer.MAX_VALUE);
+        Arrays.fill(top, 0, columns, Integer.MIN_VALUE);
+        hasWater = false;
+    }
+
+    /**
+     * Removes all the water.
+     */
+    public void clear() {
+        reset(0, 0, -1, -1);
+    }
+
+    public void addLiquidBlock(int x, int y, int z) {
+        final int index = getIndex(x, z);
+        if (index < 0) {
+            return;
+        }
+        bottom[index] = Math.min(bottom[index], y);
+        top[index] = Math.max(top[index], y + 1);
+        hasWater = true;
+    }
+
+    public boolean hasWater() {
+        return hasWater;
+    }
+
+    public boolean hasWater(int x, int z) {
+        final int index = getIndex(x, z);
+        return index >= 0 && top[index] > bottom[index];
+    }
+
+    /**
+     * @return The y of the bottom of the lowest liquid block in the column. Only meaningful if the column has water.
+     */
+    public int getWaterBottom(int x, int z) {
+        return bottom[getIndex(x, z)];
+    }
+
+    /**
+     * @return The y of the top of the highest liquid block in the column. Only meaningful if the column has water.
+     */
+    public int getWaterTop(int x, int z) {
+        return top[getIndex(x, z)];
+    }
+
+    // Returns -1 for columns outside of the rectangle
+    private int getIndex(int x, int z) {
+        final int localX = x - minX;
+        final int localZ = z - minZ;
+        if (localX < 0 || localZ < 0 || localX >= sizeX || localZ >= sizeZ) {
+            return -1;
+        }
+        return localX * sizeZ + localZ;
+    }
+
+}
@@ -2,6 +2,12 @@ package org.valkyrienskies.mod.common.collision;
 
 import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TLongIntMap;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
@@ -10,8 +16,10 @@ import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.ChunkCache;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import net.minecraft.world.gen.structure.StructureBoundingBox;
 import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.apache.commons.lang3.tuple.Triple;
+import org.joml.Matrix4d;
 import org.joml.Vector3d;
 import org.joml.Vector3dc;
 import org.valkyrienskies.mod.common.ValkyrienSkiesMod;
@@ -28,6 +36,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Consumer;
 
@@ -55,8 +64,13 @@ public class WorldPhysicsCollider {
 
     // Greater coefficients result in more friction
     public static final double KINETIC_FRICTION_COEFFICIENT = .15D;
-    // Use ThreadLocalRandom because its much faster than Random.
-    private final ThreadLocalRandom rand;
+    // The maximum distance (in blocks) any point in the collision region can move relative to the ship since the
+    // last full cache rebuild before incremental updates are no longer accurate, and we must rebuild the cache.
+    public static final double MAX_INCREMENTAL_DRIFT = .25D;
+    // Used instead of ThreadLocalRandom when collisions must be deterministic, reseeded every physics tick.
+    private final Random collisionRandom;
+    private final long collisionSeed;
+    private long collisionTicks;
     private final Collection<ShipCollisionTask> tasks;
     private final PhysicsCalculations calculator;
     private final PhysicsObject parent;
@@ -67,21 +81,61 @@ public class WorldPhysicsCollider {
     private boolean updateCollisionTasksCache;
     private BlockPos centerPotentialHit;
 
+    // The state of the world when the collision cache was last updated, used by incremental cache updates. A null
+    // cachedRegion means the cache must be fully rebuilt.
+    private StructureBoundingBox cachedRegion;
+    private ShipTransform cachedRegionTransform;
+    private int cachedRegionShipModificationCount;
+    private TLongObjectMap<IBitOctree> cachedSectionOctrees;
+    private TLongIntMap cachedSectionModificationCounts;
+    // The world sections as they were right before the blocks were looked at, which become the cached sections once
+    // the update is done. Taking them before means changes made while we're looking are picked up next time.
+    private TLongObjectMap<IBitOctree> nextSectionOctrees;
+    private TLongIntMap nextSectionModificationCounts;
+    private final TLongSet dirtySections;
+    // Temp variables used by incremental cache updates
+    private final Matrix4d driftTransform;
+    private final Vector3d driftTemp;
+    private final MutableBlockPos hitPos;
+    // Applies the impulses of collision points to the ship, without allocating anything
+    private final CollisionImpulseSolver impulseSolver;
+    // Temp variables used when processing collision tasks
+    private final MutableBlockPos collisionInWorldPos;
+    private final MutableBlockPos collisionInLocalPos;
+    private final Vector3d collisionInBody;
+
     public WorldPhysicsCollider(PhysicsCalculations calculations) {
         this.calculator = calculations;
         this.parent = calculations.getParent();
         this.cachedPotentialHits = new TIntArrayList();
         this.cachedHitsToRemove = new TIntArrayList();
-        this.rand = ThreadLocalRandom.current();
+        this.collisionRandom = new Random();
+        this.collisionSeed = parent.getUuid().getMostSignificantBits() ^ parent.getUuid().getLeastSignificantBits();
+        this.collisionTicks = 0;
         this.tasks = new ArrayList<>();
         this.ticksSinceCacheUpdate = 25D;
         this.updateCollisionTasksCache = true;
         this.centerPotentialHit = null;
+        this.cachedRegion = null;
+        this.cachedSectionOctrees = new TLongObjectHashMap<>();
+        this.cachedSectionModificationCounts = new TLongIntHashMap();
+        this.nextSectionOctrees = new TLongObjectHashMap<>();
+        this.nextSectionModificationCounts = new TLongIntHashMap();
+        this.dirtySections = new TLongHashSet();
+        this.driftTransform = new Matrix4d();
+        this.driftTemp = new Vector3d();
+        this.hitPos = new MutableBlockPos();
+        this.impulseSolver = new CollisionImpulseSolver();
+        this.collisionInWorldPos = new MutableBlockPos();
+        this.collisionInLocalPos = new MutableBlockPos();
+        this.collisionInBody = new Vector3d();
     }
 
     public void tickUpdatingTheCollisionCache() {
         // Multiply by 20 to convert seconds (physTickSpeed) into ticks
         ticksSinceCacheUpdate += calculator.getPhysicsTimeDeltaPerPhysTick();
+        collisionTicks++;
+        collisionRandom.setSeed(getCollisionSeed());
         for (int i = 0; i < cachedHitsToRemove.size(); i++) {
             cachedPotentialHits.remove(cachedHitsToRemove.get(i));
         }
@@ -104,13 +158,27 @@ public class WorldPhysicsCollider {
             }
             updateCollisionTasksCache = false;
         }
-        cachedPotentialHits.shuffle(rand);
+        cachedPotentialHits.shuffle(getCollisionRandom());
         toAdd.addAll(tasks);
     }
 
+    /**
+     * @return The seed of the random used by this physics tick, only depends on the ship and the number of physics
+     * ticks that have passed. Used by the collision tasks to shuffle their results deterministically.
+     */
+    long getCollisionSeed() {
+        return collisionSeed + collisionTicks * 0x9E3779B97F4A7C15L;
+    }
+
+    private Random getCollisionRandom() {
+        return VSConfig.deterministicCollisions ? collisionRandom : ThreadLocalRandom.current();
+    }
+
     public void processCollisionTask(ShipCollisionTask task) {
-        MutableBlockPos inWorldPos = new MutableBlockPos();
-        MutableBlockPos inLocalPos = new MutableBlockPos();
+        final MutableBlockPos inWorldPos = collisionInWorldPos;
+        final MutableBlockPos inLocalPos = collisionInLocalPos;
+        // The inertia tensors are replaced every physics tick, so update the solver before using it
+        impulseSolver.setBody(calculator);
 
         Iterator<CollisionInformationHolder> collisionIterator = task
             .getCollisionInformationIterator();
@@ -289,139 +357,11 @@ public class WorldPhysicsCollider {
     }
 
     private void handleCollision(final Vector3dc collisionPos, final Vector3dc axis, final Vector3dc offsetVector, final double impulseApplied) {
-        Vector3d inBody = new Vector3d(
+        final Vector3dc inBody = collisionInBody.set(
                 collisionPos.x() - parent.getShipTransform().getPosX(),
                 collisionPos.y() - parent.getShipTransform().getPosY(),
                 collisionPos.z() - parent.getShipTransform().getPosZ());
-        Vector3d momentumAtPoint = calculator
-                .getVelocityAtPoint(inBody);
-        calculateCollisionImpulseForce(inBody, momentumAtPoint, axis, offsetVector, false,
-                false, impulseApplied);
-    }
-
-    // Finally, the end of all this spaghetti code! This step takes all of the math
-    // generated before, and it directly adds the result to Ship velocities
-    private void calculateCollisionImpulseForce(Vector3dc inBody,
-                                                Vector3d velocityAtPointOfCollision,
-                                                Vector3dc axis,
-                                                Vector3dc offsetVector,
-                                                boolean didBlockBreakInShip,
-                                                boolean didBlockBreakInWorld,
-                                                double impulseApplied) {
-        // Our ideal velocity is to negate the velocity at the point, and the collision offset.
-        final double multiplier = 2;
-
-        velocityAtPointOfCollision.add(offsetVector.x() * multiplier, offsetVector.y() * multiplier, offsetVector.z() * multiplier);
-
-
-
-        Vector3d firstCross = inBody.cross(axis, new Vector3d());
-
-        calculator.getPhysInvMOITensor().transform(firstCross);
-
-        Vector3d secondCross = firstCross.cross(inBody);
-
-        double impulseMagnitude = -velocityAtPointOfCollision.dot(axis)
-            / (calculator.getInvMass() + secondCross.dot(axis));
-
-        // Below this speed our collision coefficient of restitution is zero.
-        final double slopR = .5D;
-        double collisionSpeed = Math.abs(velocityAtPointOfCollision.dot(axis));
-        if (collisionSpeed > slopR) {
-            impulseMagnitude *= (1 + COEFFICIENT_OF_RESTITUTION);
-        } else {
-            // TODO: Need to reduce this value by some factor
-            // impulseMagnitude *= .5D;
-        }
-
-        Vector3d collisionImpulseForce = axis.mul(impulseMagnitude, new Vector3d());
-
-        // This is just an optimized way to add this force as quickly as possible.
-        // Added collisionImpulseForce.dot(inBody) > 0 to force all collision to move in
-        // the direction towards the in body vector.
-        if (collisionImpulseForce.dot(offsetVector) < 0 && collisionImpulseForce.dot(inBody) < 0) {
-            // collisionImpulseForce.multiply(1.8D);
-            double collisionVelocity = velocityAtPointOfCollision.dot(axis);
-
-            addFrictionToNormalForce(velocityAtPointOfCollision, collisionImpulseForce, inBody);
-            calculator.getLinearVelocity().add(collisionImpulseForce.mul(calculator.getInvMass(), new Vector3d()));
-            Vector3d thirdCross = inBody.cross(collisionImpulseForce, new Vector3d());
-
-            calculator.getPhysInvMOITensor().transform(thirdCross);
-
-            calculator.getAngularVelocity().add(thirdCross, calculator.getAngularVelocity());
-        }
-    }
-
-    // Applies the friction force generated by the collision.
-    // The magnitude of this vector must be adjusted to minimize energy
-    private void addFrictionToNormalForce(Vector3dc momentumAtPoint, Vector3d impulseVector, Vector3dc inBody) {
-        Vector3d contactNormal = new Vector3d(impulseVector);
-        contactNormal.normalize();
-
-        Vector3d frictionVector = new Vector3d(momentumAtPoint);
-        frictionVector.normalize();
-        frictionVector.mul(impulseVector.length() * KINETIC_FRICTION_COEFFICIENT);
-
-        if (frictionVector.dot(momentumAtPoint) > 0) {
-            frictionVector.mul(-1D);
-        }
-
-        // Remove all friction components along the impulse vector
-        double frictionImpulseDot = frictionVector.dot(contactNormal);
-        Vector3d toRemove = contactNormal.mul(frictionImpulseDot, new Vector3d());
-        frictionVector.sub(toRemove);
-
-        double inertiaScalarAlongAxis = parent.getPhysicsCalculations()
-            .getInertiaAlongRotationAxis();
-        // The change in velocity vector
-        Vector3dc initialVelocity = parent.getPhysicsCalculations().getLinearVelocity();
-        // Don't forget to multiply by delta t
-        Vector3d deltaVelocity = new Vector3d(frictionVector);
-        deltaVelocity.mul(parent.getPhysicsCalculations().getInvMass() * parent.getPhysicsCalculations()
-                .getDragForPhysTick());
-
-        double A = initialVelocity.lengthSquared();
-        double B = 2 * initialVelocity.dot(deltaVelocity);
-        double C = deltaVelocity.lengthSquared();
-
-        Vector3d initialAngularVelocity = new Vector3d(parent.getPhysicsCalculations().getAngularVelocity());
-        Vector3d deltaAngularVelocity = inBody.cross(frictionVector, new Vector3d());
-        // This might need to be 1 / inertiaScalarAlongAxis
-        deltaAngularVelocity.mul(parent.getPhysicsCalculations().getDragForPhysTick() / inertiaScalarAlongAxis);
-
-        double D = initialAngularVelocity.lengthSquared();
-        double E = 2 * deltaAngularVelocity.dot(initialAngularVelocity);
-        double F = deltaAngularVelocity.lengthSquared();
-
-        // This is tied to PhysicsCalculations line 430
-        if (initialAngularVelocity.lengthSquared() < .05 && initialVelocity.lengthSquared() < .05) {
-            // Remove rotational friction if we are rotating slow enough
-            D = E = F = 0;
-        }
-
-        // The coefficients of energy as a function of energyScaleFactor in the form (A
-        // + B * k + c * k^2)
-        double firstCoefficient =
-            A * parent.getPhysicsCalculations().getMass() + D * inertiaScalarAlongAxis;
-        double secondCoefficient =
-            B * parent.getPhysicsCalculations().getMass() + E * inertiaScalarAlongAxis;
-        double thirdCoefficient =
-            C * parent.getPhysicsCalculations().getMass() + F * inertiaScalarAlongAxis;
-
-        double scaleFactor = -secondCoefficient / (thirdCoefficient * 2);
-
-        if (new Double(scaleFactor).isNaN()) {
-            scaleFactor = 0;
-        } else {
-            scaleFactor = Math.max(0, Math.min(scaleFactor, 1));
-            frictionVector.mul(scaleFactor);
-        }
-
-        // System.out.println(scaleFactor);
-        // ===== Friction Scaling Code End =====
-
-        impulseVector.add(frictionVector);
+        impulseSolver.applyCollisionImpulse(inBody, axis, offsetVector);
     }
 
     // TODO: The greatest physics lag starts here.
@@ -430,21 +370,30 @@ public class WorldPhysicsCollider {
         // This is being used to occasionally offset the collision cache update, in the
         // hopes this will prevent multiple ships from all updating
         // in the same tick
-        if (Math.random() > .5) {
+        if (getCollisionRandom().nextDouble() > .5) {
             ticksSinceCacheUpdate -= .05D;
         }
-        int oldSize = cachedPotentialHits.size();
+
+        AxisAlignedBB shipBBOriginal = parent.getPhysicsTransformAABB();
+
+        // Try to only update the parts of the cache that have changed, if we can't then rebuild the whole thing.
+        if (shipBBOriginal != null && VSConfig.incrementalCollisionCacheUpdate
+            && updateCollisionCacheIncremental(shipBBOriginal.grow(3))) {
+            return;
+        }
+        cachedRegion = null;
+
         // Resets the potential hits array in O(1) time! Isn't that something.
         // cachedPotentialHits.resetQuick();
         cachedPotentialHits.clear();
 
-        AxisAlignedBB shipBBOriginal = parent.getPhysicsTransformAABB();
-
         if (shipBBOriginal == null) {
             return;
         }
 
         final AxisAlignedBB shipBB = shipBBOriginal.grow(3);
+        // Read before looking at the ship blocks, for the same reason as nextSectionOctrees
+        final int shipModificationCount = parent.getSolidModificationCount();
 
         // Use the physics tick collision box instead of the game tick collision box.
         // We are using grow(3) on both because for some reason if we don't then ships start
@@ -492,6 +441,11 @@ public class WorldPhysicsCollider {
         int maxY = max.getY();
         int maxZ = max.getZ();
 
+        final StructureBoundingBox region = getCollisionRegion(shipBB);
+        if (region != null && canHashRegion(region)) {
+            snapshotSections(cache, region);
+        }
+
         // More multithreading!
         if (VSConfig.MULTITHREADING_SETTINGS.multithreadCollisionCacheUpdate &&
             parent.getBlockPositions().size() > 100) {
@@ -516,6 +470,7 @@ public class WorldPhysicsCollider {
             .join();
 
             tasks.forEach(task -> cachedPotentialHits.addAll(task.getRight()));
+            recordCachedRegion(region, shipModificationCount);
         } else {
             // Cast to double to avoid overflow errors
             double size = ((double) (chunkMaxX - chunkMinX)) * ((double) (chunkMaxZ - chunkMinZ));
@@ -530,7 +485,238 @@ public class WorldPhysicsCollider {
                         maxY, maxZ, shipBB, cachedPotentialHits);
                 }
             }
+            recordCachedRegion(region, shipModificationCount);
+        }
+    }
+
+    /**
+     * Updates the collision cache by only looking at the world blocks that entered the collision region since the
+     * last update, and the world sections whose blocks have changed since the last update. Hits that left the
+     * collision region are removed.
+     *
+     * @return False if the cache couldn't be updated incrementally, and must be fully rebuilt instead.
+     */
+    private boolean updateCollisionCacheIncremental(AxisAlignedBB shipBB) {
+        final ChunkCache cache = parent.getCachedSurroundingChunks();
+        // If the ship blocks change while we're updating, the count we compare stays the old one and we'll see it
+        // next time
+        if (cachedRegion == null || cache == null || centerPotentialHit == null
+            || cachedRegionShipModificationCount != parent.getSolidModificationCount()) {
+            return false;
+        }
+
+        final StructureBoundingBox newRegion = getCollisionRegion(shipBB);
+        if (newRegion == null || !canHashRegion(newRegion) || hasDriftedSinceRebuild(newRegion)) {
+            return false;
+        }
+        final StructureBoundingBox oldRegion = cachedRegion;
+
+        // First find the world sections whose solid blocks changed since we last looked at them
+        snapshotSections(cache, newRegion);
+        dirtySections.clear();
+        for (int chunkX = newRegion.minX >> 4; chunkX <= newRegion.maxX >> 4; chunkX++) {
+            for (int chunkZ = newRegion.minZ >> 4; chunkZ <= newRegion.maxZ >> 4; chunkZ++) {
+                for (int storageY = newRegion.minY >> 4; storageY <= newRegion.maxY >> 4; storageY++) {
+                    final long sectionKey = getSectionKey(chunkX, storageY, chunkZ);
+                    // Sections without an octree have no entries, and the counts of those are both 0
+                    if (nextSectionOctrees.get(sectionKey) != cachedSectionOctrees.get(sectionKey)
+                        || nextSectionModificationCounts.get(sectionKey)
+                        != cachedSectionModificationCounts.get(sectionKey)) {
+                        dirtySections.add(sectionKey);
+                    }
+                }
+            }
+        }
+
+        // Then remove the hits that left the collision region, or are in a section we're about to check again
+        int keptHits = 0;
+        for (int i = 0; i < cachedPotentialHits.size(); i++) {
+            final int hash = cachedPotentialHits.get(i);
+            SpatialDetector.setPosWithRespectTo(hash, centerPotentialHit, hitPos);
+            if (newRegion.isVecInside(hitPos) && !dirtySections
+                .contains(getSectionKey(hitPos.getX() >> 4, hitPos.getY() >> 4, hitPos.getZ() >> 4))) {
+                cachedPotentialHits.set(keptHits++, hash);
+            }
+        }
+        cachedPotentialHits.remove(keptHits, cachedPotentialHits.size() - keptHits);
+
+        // Finally add the hits from the blocks that entered the collision region, and from the dirty sections
+        for (int chunkX = newRegion.minX >> 4; chunkX <= newRegion.maxX >> 4; chunkX++) {
+            for (int chunkZ = newRegion.minZ >> 4; chunkZ <= newRegion.maxZ >> 4; chunkZ++) {
+                for (int storageY = newRegion.minY >> 4; storageY <= newRegion.maxY >> 4; storageY++) {
+                    final int minX = Math.max(newRegion.minX, chunkX << 4);
+                    final int minY = Math.max(newRegion.minY, storageY << 4);
+                    final int minZ = Math.max(newRegion.minZ, chunkZ << 4);
+                    final int maxX = Math.min(newRegion.maxX, (chunkX << 4) + 15);
+                    final int maxY = Math.min(newRegion.maxY, (storageY << 4) + 15);
+                    final int maxZ = Math.min(newRegion.maxZ, (chunkZ << 4) + 15);
+                    if (dirtySections.contains(getSectionKey(chunkX, storageY, chunkZ))) {
+                        updateCollisionCacheSequential(cache, chunkX, chunkZ, minX, minY, minZ, maxX, maxY, maxZ,
+                            shipBB, cachedPotentialHits);
+                    } else {
+                        updateCollisionCacheOutsideRegion(cache, chunkX, chunkZ, minX, minY, minZ, maxX, maxY,
+                            maxZ, oldRegion, shipBB);
+                    }
+                }
+            }
         }
+
+        swapCachedSections();
+        cachedRegion = newRegion;
+        return true;
+    }
+
+    /**
+     * Checks the blocks within the given range of a single chunk that aren't inside of the given region. The
+     * blocks outside of the region are split into at most 6 boxes.
+     */
+    private void updateCollisionCacheOutsideRegion(ChunkCache cache, int chunkX, int chunkZ, int minX, int minY,
+        int minZ, int maxX, int maxY, int maxZ, StructureBoundingBox region, AxisAlignedBB shipBB) {
+        if (!region.intersectsWith(minX, minZ, maxX, maxZ) || minY > region.maxY || maxY < region.minY) {
+            updateCollisionCacheSequential(cache, chunkX, chunkZ, minX, minY, minZ, maxX, maxY, maxZ, shipBB,
+                cachedPotentialHits);
+            return;
+        }
+        if (minX < region.minX) {
+            updateCollisionCacheSequential(cache, chunkX, chunkZ, minX, minY, minZ, region.minX - 1, maxY, maxZ,
+                shipBB, cachedPotentialHits);
+        }
+        if (maxX > region.maxX) {
+            updateCollisionCacheSequential(cache, chunkX, chunkZ, region.maxX + 1, minY, minZ, maxX, maxY, maxZ,
+                shipBB, cachedPotentialHits);
+        }
+        final int innerMinX = Math.max(minX, region.minX);
+        final int innerMaxX = Math.min(maxX, region.maxX);
+        if (minY < region.minY) {
+            updateCollisionCacheSequential(cache, chunkX, chunkZ, innerMinX, minY, minZ, innerMaxX,
+                region.minY - 1, maxZ, shipBB, cachedPotentialHits);
+        }
+        if (maxY > region.maxY) {
+            updateCollisionCacheSequential(cache, chunkX, chunkZ, innerMinX, region.maxY + 1, minZ, innerMaxX,
+                maxY, maxZ, shipBB, cachedPotentialHits);
+        }
+        final int innerMinY = Math.max(minY, region.minY);
+        final int innerMaxY = Math.min(maxY, region.maxY);
+        if (minZ < region.minZ) {
+            updateCollisionCacheSequential(cache, chunkX, chunkZ, innerMinX, innerMinY, minZ, innerMaxX,
+                innerMaxY, region.minZ - 1, shipBB, cachedPotentialHits);
+        }
+        if (maxZ > region.maxZ) {
+            updateCollisionCacheSequential(cache, chunkX, chunkZ, innerMinX, innerMinY, region.maxZ + 1,
+                innerMaxX, innerMaxY, maxZ, shipBB, cachedPotentialHits);
+        }
+    }
+
+    /**
+     * Remembers the state of the world and the ship after a full rebuild of the collision cache, so that the next
+     * updates can be incremental.
+     *
+     * @param region                The collision region, its sections must have been passed to snapshotSections()
+     *                              before the rebuild
+     * @param shipModificationCount The solid modification count of the ship from before the rebuild
+     */
+    private void recordCachedRegion(StructureBoundingBox region, int shipModificationCount) {
+        if (region == null || !canHashRegion(region)) {
+            cachedRegion = null;
+            return;
+        }
+        cachedRegionTransform = parent.getShipTransformationManager().getCurrentPhysicsTransform();
+        cachedRegionShipModificationCount = shipModificationCount;
+        swapCachedSections();
+        cachedRegion = region;
+    }
+
+    /**
+     * Records the solid octree and its modification count of every world section in the region into
+     * nextSectionOctrees.
+     */
+    private void snapshotSections(ChunkCache cache, StructureBoundingBox region) {
+        nextSectionOctrees.clear();
+        nextSectionModificationCounts.clear();
+        for (int chunkX = region.minX >> 4; chunkX <= region.maxX >> 4; chunkX++) {
+            for (int chunkZ = region.minZ >> 4; chunkZ <= region.maxZ >> 4; chunkZ++) {
+                for (int storageY = region.minY >> 4; storageY <= region.maxY >> 4; storageY++) {
+                    final IBitOctree octree = getSolidOctree(cache, chunkX, storageY, chunkZ);
+                    if (octree != null) {
+                        final long sectionKey = getSectionKey(chunkX, storageY, chunkZ);
+                        nextSectionOctrees.put(sectionKey, octree);
+                        nextSectionModificationCounts.put(sectionKey, octree.getModificationCount());
+                    }
+                }
+            }
+        }
+    }
+
+    private void swapCachedSections() {
+        final TLongObjectMap<IBitOctree> octrees = cachedSectionOctrees;
+        cachedSectionOctrees = nextSectionOctrees;
+        nextSectionOctrees = octrees;
+        final TLongIntMap modificationCounts = cachedSectionModificationCounts;
+        cachedSectionModificationCounts = nextSectionModificationCounts;
+        nextSectionModificationCounts = modificationCounts;
+    }
+
+    /**
+     * @return The world blocks whose centers are inside of shipBB, or null if there are none.
+     */
+    private static StructureBoundingBox getCollisionRegion(AxisAlignedBB shipBB) {
+        final int minY = Math.max(MathHelper.floor(shipBB.minY - .5) + 1, 0);
+        final int maxY = Math.min(MathHelper.ceil(shipBB.maxY - .5) - 1, 255);
+        if (minY > maxY) {
+            return null;
+        }
+        return new StructureBoundingBox(MathHelper.floor(shipBB.minX - .5) + 1, minY,
+            MathHelper.floor(shipBB.minZ - .5) + 1, MathHelper.ceil(shipBB.maxX - .5) - 1, maxY,
+            MathHelper.ceil(shipBB.maxZ - .5) - 1);
+    }
+
+    /**
+     * @return True if every block in the region can be hashed with respect to centerPotentialHit.
+     */
+    private boolean canHashRegion(StructureBoundingBox region) {
+        return region.minX - centerPotentialHit.getX() >= -SpatialDetector.maxRangeHalved
+            && region.maxX - centerPotentialHit.getX() < SpatialDetector.maxRangeHalved
+            && region.minZ - centerPotentialHit.getZ() >= -SpatialDetector.maxRangeHalved
+            && region.maxZ - centerPotentialHit.getZ() < SpatialDetector.maxRangeHalved;
+    }
+
+    /**
+     * @return True if any corner of the region has moved more than MAX_INCREMENTAL_DRIFT relative to the ship since
+     * the last full rebuild. Because the movement is rigid, the corners always move the farthest.
+     */
+    private boolean hasDriftedSinceRebuild(StructureBoundingBox region) {
+        final ShipTransform currentTransform = parent.getShipTransformationManager().getCurrentPhysicsTransform();
+        currentTransform.getSubspaceToGlobal().mul(cachedRegionTransform.getGlobalToSubspace(), driftTransform);
+        for (int i = 0; i < 8; i++) {
+            final double cornerX = (i & 1) == 0 ? region.minX : region.maxX + 1;
+            final double cornerY = (i & 2) == 0 ? region.minY : region.maxY + 1;
+            final double cornerZ = (i & 4) == 0 ? region.minZ : region.maxZ + 1;
+            driftTransform.transformPosition(driftTemp.set(cornerX, cornerY, cornerZ));
+            if (driftTemp.distanceSquared(cornerX, cornerY, cornerZ)
+                > MAX_INCREMENTAL_DRIFT * MAX_INCREMENTAL_DRIFT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static IBitOctree getSolidOctree(ChunkCache cache, int chunkX, int storageY, int chunkZ) {
+        final int arrayChunkX = chunkX - cache.chunkX;
+        final int arrayChunkZ = chunkZ - cache.chunkZ;
+        if (arrayChunkX < 0 || arrayChunkZ < 0 || arrayChunkX > cache.chunkArray.length - 1
+            || arrayChunkZ > cache.chunkArray[0].length - 1
+            || cache.chunkArray[arrayChunkX][arrayChunkZ] == null) {
+            return null;
+        }
+        final ExtendedBlockStorage storage = cache.chunkArray[arrayChunkX][arrayChunkZ].storageArrays[storageY];
+        if (storage == null) {
+            return null;
+        }
+        return ((ITerrainOctreeProvider) storage.data).getSolidOctree();
+    }
+
+    private static long getSectionKey(int chunkX, int storageY, int chunkZ) {
+        return ((long) (chunkX & 0xFFFFFFF) << 32) | ((long) (chunkZ & 0xFFFFFFF) << 4) | storageY;
     }
 
     private void updateCollisionCacheSequential(ChunkCache cache, int chunkX, int chunkZ, int minX,
@@ -551,132 +737,123 @@ public class WorldPhysicsCollider {
             for (int storageY = minY >> 4; storageY <= maxY >> 4; storageY++) {
                 ExtendedBlockStorage extendedblockstorage = chunk.storageArrays[storageY];
                 if (extendedblockstorage != null) {
-                    int minStorageX = chunkX << 4;
-                    int minStorageY = storageY << 4;
-                    int minStorageZ = chunkZ << 4;
-
-                    int maxStorageX = minStorageX + 16;
-                    int maxStorageY = minStorageY + 16;
-                    int maxStorageZ = minStorageZ + 16;
+                    final int minStorageX = chunkX << 4;
+                    final int minStorageY = storageY << 4;
+                    final int minStorageZ = chunkZ << 4;
 
                     final ITerrainOctreeProvider provider = (ITerrainOctreeProvider) extendedblockstorage.data;
                     final IBitOctree octree = provider.getSolidOctree();
 
-                    for (int x = minStorageX; x < maxStorageX; x++) {
-                        for (int y = minStorageY; y < maxStorageY; y++) {
-                            for (int z = minStorageZ; z < maxStorageZ; z++) {
-                                checkForCollision(x, y, z, extendedblockstorage, octree, temp1,
-                                    temp2, temp3,
-                                    shipBB, output);
-                            }
-                        }
-                    }
+                    // Only visit the solid blocks of this storage within the collision range, the octree lets us
+                    // skip over the empty (usually air) parts of the storage without checking every block.
+                    octree.forEachSetBitInRange(minX - minStorageX, minY - minStorageY, minZ - minStorageZ,
+                        maxX - minStorageX, maxY - minStorageY, maxZ - minStorageZ,
+                        (x, y, z) -> checkForCollision(minStorageX + x, minStorageY + y, minStorageZ + z, temp1,
+                            temp2, temp3, shipBB, output));
                 }
             }
         }
     }
 
-    private void checkForCollision(int x, int y, int z, ExtendedBlockStorage storage,
-        IBitOctree octree, Vector3d inLocal,
+    // The caller is responsible for only calling this on solid world blocks
+    private void checkForCollision(int x, int y, int z, Vector3d inLocal,
         Vector3d inBody,
         Vector3d speedInBody, AxisAlignedBB shipBB, TIntList output) {
-        if (octree.get(x & 15, y & 15, z & 15)) {
-            inLocal.x = x + .5D;
-            inLocal.y = y + .5D;
-            inLocal.z = z + .5D;
-            // TODO: Something
-            // parent.coordTransform.fromGlobalToLocal(inLocal);
-            if (inLocal.x > shipBB.minX && inLocal.x < shipBB.maxX && inLocal.y > shipBB.minY
-                && inLocal.y < shipBB.maxY
-                && inLocal.z > shipBB.minZ && inLocal.z < shipBB.maxZ) {
-                parent.getShipTransformationManager().getCurrentPhysicsTransform()
-                    .transformPosition(inLocal, TransformType.GLOBAL_TO_SUBSPACE);
-
-                inLocal.sub(parent.getCenterCoord(), inBody);
-                // parent.physicsProcessor.setVectorToVelocityAtPoint(inBody, speedInBody);
-                // speedInBody.multiply(-parent.physicsProcessor.getPhysicsTimeDeltaPerGameTick());
-
-                // TODO: This isnt ideal, but we do gain a lot of performance.
-                speedInBody.zero();
-
-                // double RANGE_CHECK = 1;
-
-                int minX, minY, minZ, maxX, maxY, maxZ;
-                if (speedInBody.x > 0) {
-                    minX = MathHelper.floor(inLocal.x - RANGE_CHECK);
-                    maxX = MathHelper.floor(inLocal.x + RANGE_CHECK + speedInBody.x);
-                } else {
-                    minX = MathHelper.floor(inLocal.x - RANGE_CHECK + speedInBody.x);
-                    maxX = MathHelper.floor(inLocal.x + RANGE_CHECK);
-                }
+        inLocal.x = x + .5D;
+        inLocal.y = y + .5D;
+        inLocal.z = z + .5D;
+        // TODO: Something
+        // parent.coordTransform.fromGlobalToLocal(inLocal);
+        if (inLocal.x > shipBB.minX && inLocal.x < shipBB.maxX && inLocal.y > shipBB.minY
+            && inLocal.y < shipBB.maxY
+            && inLocal.z > shipBB.minZ && inLocal.z < shipBB.maxZ) {
+            parent.getShipTransformationManager().getCurrentPhysicsTransform()
+                .transformPosition(inLocal, TransformType.GLOBAL_TO_SUBSPACE);
+
+            inLocal.sub(parent.getCenterCoord(), inBody);
+            // parent.physicsProcessor.setVectorToVelocityAtPoint(inBody, speedInBody);
+            // speedInBody.multiply(-parent.physicsProcessor.getPhysicsTimeDeltaPerGameTick());
+
+            // TODO: This isnt ideal, but we do gain a lot of performance.
+            speedInBody.zero();
+
+            // double RANGE_CHECK = 1;
+
+            int minX, minY, minZ, maxX, maxY, maxZ;
+            if (speedInBody.x > 0) {
+                minX = MathHelper.floor(inLocal.x - RANGE_CHECK);
+                maxX = MathHelper.floor(inLocal.x + RANGE_CHECK + speedInBody.x);
+            } else {
+                minX = MathHelper.floor(inLocal.x - RANGE_CHECK + speedInBody.x);
+                maxX = MathHelper.floor(inLocal.x + RANGE_CHECK);
+            }
 
-                if (speedInBody.y > 0) {
-                    minY = MathHelper.floor(inLocal.y - RANGE_CHECK);
-                    maxY = MathHelper.floor(inLocal.y + RANGE_CHECK + speedInBody.y);
-                } else {
-                    minY = MathHelper.floor(inLocal.y - RANGE_CHECK + speedInBody.y);
-                    maxY = MathHelper.floor(inLocal.y + RANGE_CHECK);
-                }
+            if (speedInBody.y > 0) {
+                minY = MathHelper.floor(inLocal.y - RANGE_CHECK);
+                maxY = MathHelper.floor(inLocal.y + RANGE_CHECK + speedInBody.y);
+            } else {
+                minY = MathHelper.floor(inLocal.y - RANGE_CHECK + speedInBody.y);
+                maxY = MathHelper.floor(inLocal.y + RANGE_CHECK);
+            }
 
-                if (speedInBody.z > 0) {
-                    minZ = MathHelper.floor(inLocal.z - RANGE_CHECK);
-                    maxZ = MathHelper.floor(inLocal.z + RANGE_CHECK + speedInBody.z);
-                } else {
-                    minZ = MathHelper.floor(inLocal.z - RANGE_CHECK + speedInBody.z);
-                    maxZ = MathHelper.floor(inLocal.z + RANGE_CHECK);
-                }
+            if (speedInBody.z > 0) {
+                minZ = MathHelper.floor(inLocal.z - RANGE_CHECK);
+                maxZ = MathHelper.floor(inLocal.z + RANGE_CHECK + speedInBody.z);
+            } else {
+                minZ = MathHelper.floor(inLocal.z - RANGE_CHECK + speedInBody.z);
+                maxZ = MathHelper.floor(inLocal.z + RANGE_CHECK);
+            }
 
-                minY = Math.min(255, Math.max(minY, 0));
-                maxY = Math.min(255, Math.max(maxY, 0));
-
-                // int localX = MathHelper.floor(inLocal.X);
-                // int localY = MathHelper.floor(inLocal.Y);
-                // int localZ = MathHelper.floor(inLocal.Z);
-
-                // tooTiredToName(localX, localY, localZ, x, y, z);
-                // if (false)
-                // maxX = Math.min(maxX, minX << 4);
-                // maxZ = Math.min(maxZ, minZ << 4);
-
-                Chunk chunkIn00 = parent.getChunkClaim().containsChunk(minX >> 4, minZ >> 4) ? parent.getChunkAt(minX >> 4, minZ >> 4) : null;
-                Chunk chunkIn01 = parent.getChunkClaim().containsChunk(minX >> 4, maxZ >> 4) ? parent.getChunkAt(minX >> 4, maxZ >> 4) : null;
-                Chunk chunkIn10 = parent.getChunkClaim().containsChunk(maxX >> 4, minZ >> 4) ? parent.getChunkAt(maxX >> 4, minZ >> 4) : null;
-                Chunk chunkIn11 = parent.getChunkClaim().containsChunk(maxX >> 4, maxZ >> 4) ? parent.getChunkAt(maxX >> 4, maxZ >> 4) : null;
-
-                breakThisLoop:
-                for (int localX = minX; localX < maxX; localX++) {
-                    for (int localZ = minZ; localZ < maxZ; localZ++) {
-                        Chunk theChunk;
-                        if (localX >> 4 == minX >> 4) {
-                            if (localZ >> 4 == minZ >> 4) {
-                                theChunk = chunkIn00;
-                            } else {
-                                theChunk = chunkIn01;
-                            }
+            minY = Math.min(255, Math.max(minY, 0));
+            maxY = Math.min(255, Math.max(maxY, 0));
+
+            // int localX = MathHelper.floor(inLocal.X);
+            // int localY = MathHelper.floor(inLocal.Y);
+            // int localZ = MathHelper.floor(inLocal.Z);
+
+            // tooTiredToName(localX, localY, localZ, x, y, z);
+            // if (false)
+            // maxX = Math.min(maxX, minX << 4);
+            // maxZ = Math.min(maxZ, minZ << 4);
+
+            Chunk chunkIn00 = parent.getChunkClaim().containsChunk(minX >> 4, minZ >> 4) ? parent.getChunkAt(minX >> 4, minZ >> 4) : null;
+            Chunk chunkIn01 = parent.getChunkClaim().containsChunk(minX >> 4, maxZ >> 4) ? parent.getChunkAt(minX >> 4, maxZ >> 4) : null;
+            Chunk chunkIn10 = parent.getChunkClaim().containsChunk(maxX >> 4, minZ >> 4) ? parent.getChunkAt(maxX >> 4, minZ >> 4) : null;
+            Chunk chunkIn11 = parent.getChunkClaim().containsChunk(maxX >> 4, maxZ >> 4) ? parent.getChunkAt(maxX >> 4, maxZ >> 4) : null;
+
+            breakThisLoop:
+            for (int localX = minX; localX < maxX; localX++) {
+                for (int localZ = minZ; localZ < maxZ; localZ++) {
+                    Chunk theChunk;
+                    if (localX >> 4 == minX >> 4) {
+                        if (localZ >> 4 == minZ >> 4) {
+                            theChunk = chunkIn00;
                         } else {
-                            if (localZ >> 4 == minZ >> 4) {
-                                theChunk = chunkIn10;
-                            } else {
-                                theChunk = chunkIn11;
-                            }
+                            theChunk = chunkIn01;
                         }
-                        if (theChunk == null) {
-                            // No collision here
-                            continue;
+                    } else {
+                        if (localZ >> 4 == minZ >> 4) {
+                            theChunk = chunkIn10;
+                        } else {
+                            theChunk = chunkIn11;
                         }
-                        for (int localY = minY; localY < maxY; localY++) {
-                            boolean result = checkForCollisionFast(theChunk, localX, localY,
-                                localZ, x, y, z, output);
-                            if (result) {
-                                break breakThisLoop;
-                            }
-
-                            /*
-                             * if (false) // TODO: This code isn't thread safe. try { boolean result =
-                             * tooTiredToName(localX, localY, localZ, x, y, z); if (result) { break
-                             * breakThisLoop; } } catch (Exception e) { e.printStackTrace(); }
-                             */
+                    }
+                    if (theChunk == null) {
+                        // No collision here
+                        continue;
+                    }
+                    for (int localY = minY; localY < maxY; localY++) {
+                        boolean result = checkForCollisionFast(theChunk, localX, localY,
+                            localZ, x, y, z, output);
+                        if (result) {
+                            break breakThisLoop;
                         }
+
+                        /*
+                         * if (false) // TODO: This code isn't thread safe. try { boolean result =
+                         * tooTiredToName(localX, localY, localZ, x, y, z); if (result) { break
+                         * breakThisLoop; } } catch (Exception e) { e.printStackTrace(); }
+                         */
                     }
                 }
             }
@@ -1,5 +1,7 @@
 package org.valkyrienskies.mod.common.command;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.log4j.Log4j2;
 import net.minecraft.command.ICommandSender;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.util.math.Vec3d;
@@ -19,11 +21,16 @@ import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject.DeconstructS
 import org.valkyrienskies.mod.common.ships.ship_world.WorldServerShipManager;
 import org.valkyrienskies.mod.common.util.JOML;
 import org.valkyrienskies.mod.common.util.ValkyrienUtils;
+import org.valkyrienskies.mod.common.util.datastructures.ConcurrentHistogram;
+import org.valkyrienskies.mod.common.util.multithreaded.PhysicsTickMetrics;
+import org.valkyrienskies.mod.common.util.multithreaded.PhysicsTickMetrics.Phase;
 import org.valkyrienskies.mod.common.util.multithreaded.VSWorldPhysicsLoop;
 import picocli.CommandLine.*;
 import picocli.CommandLine.Model.CommandSpec;
 
 import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
 import java.util.stream.Collectors;
 
 @Command(name = "valkyrienskies", aliases = "vs",
@@ -35,6 +42,7 @@ import java.util.stream.Collectors;
         DisableShip.class,
         GC.class,
         TPS.class,
+        PhysicsMetrics.class,
         TeleportTo.class,
         DeconstructShip.class,
         DeleteShip.class,
@@ -167,6 +175,75 @@ public class MainCommand implements Runnable {
         }
     }
 
+    @Log4j2
+    @Command(name = "physics-metrics", aliases = "metrics")
+    static class PhysicsMetrics implements Runnable {
+
+        @Inject
+        ICommandSender sender;
+
+        @Option(names = {"--world", "-w"}, completionCandidates = WorldAutocompleter.class)
+        World world;
+
+        @Option(names = {"--ships", "-s"}, description = "The number of most expensive ships to show")
+        int shipsToShow = 5;
+
+        @Option(names = {"--dump", "-d"}, description = "Write all the metrics to a json file")
+        boolean dump;
+
+        @Option(names = {"--reset", "-r"}, description = "Reset the metrics after showing them")
+        boolean reset;
+
+        @Override
+        public void run() {
+            if (world == null) {
+                world = sender.getEntityWorld();
+            }
+
+            VSWorldPhysicsLoop worldPhysicsThread = ((WorldServerShipManager) ((IHasShipManager) world)
+                .getManager()).getPhysicsLoop();
+
+            if (worldPhysicsThread == null) {
+                sender.sendMessage(new TextComponentString("That world doesn't have a physics thread"));
+                return;
+            }
+
+            PhysicsTickMetrics metrics = worldPhysicsThread.getTickMetrics();
+            if (dump) {
+                File dumpFile = world.getMinecraftServer().getFile(String.format("vs-physics-metrics-%d-%d.json",
+                    world.provider.getDimension(), System.currentTimeMillis()));
+                try {
+                    new ObjectMapper().writerWithDefaultPrettyPrinter()
+                        .writeValue(dumpFile, metrics.toMachineReadable());
+                    sender.sendMessage(new TextComponentString(
+                        "Wrote the physics metrics to " + dumpFile.getAbsolutePath()));
+                } catch (IOException e) {
+                    log.error("Failed to write the physics metrics to " + dumpFile.getAbsolutePath(), e);
+                    sender.sendMessage(new TextComponentString("Failed to write the physics metrics"));
+                }
+            } else {
+                StringBuilder message = new StringBuilder("Physics tick phases (mean / p50 / p99 / max ms):");
+                for (Phase phase : Phase.values()) {
+                    ConcurrentHistogram phaseTimes = metrics.getPhaseTimes(phase);
+                    message.append(String.format("\n%s: %.3f / %.3f / %.3f / %.3f", phase,
+                        phaseTimes.getMean() / 1e6, phaseTimes.getValueAtPercentile(50) / 1e6,
+                        phaseTimes.getValueAtPercentile(99) / 1e6, phaseTimes.getMax() / 1e6));
+                }
+                message.append("\nMost expensive ships (mean ms per tick):");
+                metrics.getShipCostsSorted().stream()
+                    .limit(shipsToShow)
+                    .forEach(cost -> message.append(String.format("\n%s: %.3f over %d ticks", cost.getName(),
+                        cost.getAverageNanosPerTick() / 1e6, cost.getTicks())));
+                sender.sendMessage(new TextComponentString(message.toString()));
+            }
+
+            if (reset) {
+                metrics.reset();
+                sender.sendMessage(new TextComponentString("Reset the physics metrics"));
+            }
+        }
+    }
+
     @Command(name = "ship-physics")
     static class DisableShip implements Runnable {
 
@@ -51,6 +51,42 @@ public class VSConfig extends VSConfigTemplate {
     })
     public static double targetTps = 60;
 
+    @Name("Max Physics Substeps")
+    @Comment({
+        "The maximum number of physics ticks run back to back when the physics world is behind real time,",
+        "before it waits for the next tick again."
+    })
+    @RangeInt(min = 1)
+    public static int maxPhysicsSubsteps = 4;
+
+    @Name("Physics Overload Mode")
+    @Comment({
+        "What the physics world does when it can't keep up with the target TPS.",
+        "SUBSTEP runs up to Max Physics Substeps ticks at once and catches up with the lost time later.",
+        "DROP runs up to Max Physics Substeps ticks at once and forgets the rest of the lost time.",
+        "SLOW_TIME never runs more than one tick at once, so physics run in slow motion until the load goes down."
+    })
+    public static PhysicsOverloadMode physicsOverloadMode = PhysicsOverloadMode.SUBSTEP;
+
+    public enum PhysicsOverloadMode {
+        SUBSTEP, DROP, SLOW_TIME
+    }
+
+    @Name("Incremental Collision Cache Updates")
+    @Comment({
+        "When true the ship collision cache is only updated for the world blocks that changed or entered the ship's",
+        "bounding box since the last update, instead of being rebuilt from scratch every time.",
+        "The cache is still fully rebuilt whenever the ship has moved too far for this to be accurate."
+    })
+    public static boolean incrementalCollisionCacheUpdate = true;
+
+    @Name("Deterministic Collisions")
+    @Comment({
+        "When true the order collisions are processed in only depends on the ship and the physics tick,",
+        "so replaying the same physics ticks always produces the same result."
+    })
+    public static boolean deterministicCollisions = true;
+
     // @Name("Use dynamic steps")
     // @Comment("Step physics by time since last tick instead of a fixed number")
     // public static boolean useDynamicSteps = false;
@@ -77,6 +113,34 @@ public class VSConfig extends VSConfigTemplate {
     })
     public static int maxDetectedShipSize = 15000;
 
+    @Name("Ship Assembly Time Per Tick")
+    @Comment({
+            "How many milliseconds every tick can spend assembling ships.",
+            "Large ships take more ticks to assemble with smaller values.",
+            "Default is 10 milliseconds."
+    })
+    @RangeInt(min = 1)
+    public static int shipAssemblyMillisPerTick = 10;
+
+    @Name("Ship Interpolation Delay")
+    @Comment({
+            "How many seconds behind the newest received position ships are shown on the client at least.",
+            "Higher values keep ships smooth on worse connections, but make them lag behind more.",
+            "Ships that are updated less often, like far away ships, are shown further behind.",
+            "Default is 0.1 seconds."
+    })
+    @RangeDouble(min = 0)
+    public static double shipInterpolationDelay = .1;
+
+    @Name("Block Model Buffer Cache Size")
+    @Comment({
+            "How many block model vertex buffers the client keeps in gpu memory at most.",
+            "The least recently used buffers are deleted when there are more than this.",
+            "Default is 1024."
+    })
+    @RangeInt(min = 1)
+    public static int blockModelBufferCacheSize = 1024;
+
     @Name("Gravity Vector X")
     public static double gravityVecX = 0;
 
@@ -154,6 +218,9 @@ public class VSConfig extends VSConfigTemplate {
 
         public boolean multithreadCollisionCacheUpdate = true;
 
+        // Ships only collide with the world, so the collisions of every ship can be resolved in parallel
+        public boolean multithreadCollisionResolution = true;
+
     }
 
     public static class ShipLoadingSettings {
@@ -178,6 +245,17 @@ public class VSConfig extends VSConfigTemplate {
         @Comment("If there are no players within this XZ distance of a ship, then if that ship is currently loaded, it will unload itself.")
         public double unloadDistance = 192;
 
+        @Name("Full Rate Transform Update Distance")
+        @Comment("Players whose XZ distance to a ship is less than this receive every position update of that ship.")
+        public double fullRateTransformUpdateDistance = 64;
+
+        @Name("Reduced Rate Transform Update Distance")
+        @Comment({
+                "Players whose XZ distance to a ship is less than this receive every second position update of that ship.",
+                "Players further away receive every fourth position update."
+        })
+        public double reducedRateTransformUpdateDistance = 112;
+
         @Name("Permanently loaded")
         @Comment("If ships should be permanently. Warning: may have unforseen consequences")
         public boolean permanentlyLoaded = false;
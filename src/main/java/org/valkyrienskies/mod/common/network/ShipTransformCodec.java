@@ -0,0 +1,144 @@
+package org.valkyrienskies.mod.common.network;
+
+import java.util.UUID;
+import net.minecraft.network.PacketBuffer;
+import org.joml.Quaterniond;
+import org.joml.Quaterniondc;
+
+/**
+ * The constants and helpers shared by {@link ShipTransformEncoder} and {@link ShipTransformDecoder}.
+ * <p>
+ * A packet is a varint number of entries, followed by the entries. Every entry starts with the varint session id of
+ * the ship and a byte of flags. The flags say which of the following fields are in the entry:
+ * <ul>
+ *     <li>{@link #FLAG_FULL}: The UUID of the ship, followed by every other field as absolute values</li>
+ *     <li>{@link #FLAG_POSITION}: The change in the quantized position since the last entry of the ship</li>
+ *     <li>{@link #FLAG_ROTATION}: The rotation, using the smallest three encoding</li>
+ *     <li>{@link #FLAG_CENTER}: The center coord, as doubles</li>
+ *     <li>{@link #FLAG_AABB}: The change in the quantized AABB since the last entry of the ship</li>
+ *     <li>{@link #FLAG_REMOVED}: The ship won't be sent anymore, and its session id may be reused</li>
+ * </ul>
+ * Because the connection is reliable and ordered, the last entry of a ship is always known to the receiver, so it
+ * doesn't need to acknowledge anything.
+ */
+final class ShipTransformCodec {
+
+    static final int FLAG_FULL = 1;
+    static final int FLAG_POSITION = 1 << 1;
+    static final int FLAG_ROTATION = 1 << 2;
+    static final int FLAG_CENTER = 1 << 3;
+    static final int FLAG_AABB = 1 << 4;
+    static final int FLAG_REMOVED = 1 << 5;
+
+    // Positions are sent in units of 1/POSITION_SCALE blocks
+    static final double POSITION_SCALE = 4096;
+    // AABBs are sent relative to the ship position, in units of 1/AABB_SCALE blocks
+    static final double AABB_SCALE = 16;
+
+    // Every quaternion component except for the largest is stored with ROTATION_BITS bits
+    private static final int ROTATION_BITS = 15;
+    private static final int ROTATION_MAX = (1 << ROTATION_BITS) - 1;
+    private static final double SQRT_2 = Math.sqrt(2);
+
+    private ShipTransformCodec() {
+    }
+
+    /**
+     * The last state of a ship sent to, or received by, the other side. Positions, rotations, and AABBs are quantized.
+     */
+    static class ShipState {
+
+        final UUID shipID;
+        final int sessionID;
+        long posX, posY, posZ;
+        long rotation;
+        double centerX, centerY, centerZ;
+        int minX, minY, minZ, maxX, maxY, maxZ;
+        // Only used by the encoder, the packet index from which on the next write of this ship is a keyframe
+        int nextKeyframePacket;
+
+        ShipState(UUID shipID, int sessionID) {
+            this.shipID = shipID;
+            this.sessionID = sessionID;
+        }
+    }
+
+    static long quantizePosition(double position) {
+        return Math.round(position * POSITION_SCALE);
+    }
+
+    static double dequantizePosition(long position) {
+        return position / POSITION_SCALE;
+    }
+
+    /**
+     * Packs a unit quaternion into 47 bits, by storing the index of its largest component in 2 bits and the other
+     * three components in {@link #ROTATION_BITS} bits each. The largest component is recomputed from the others.
+     */
+    static long packRotation(Quaterniondc rotation) {
+        final double[] components = {rotation.x(), rotation.y(), rotation.z(), rotation.w()};
+        int largestIndex = 0;
+        for (int i = 1; i < 4; i++) {
+            if (Math.abs(components[i]) > Math.abs(components[largestIndex])) {
+                largestIndex = i;
+            }
+        }
+        // q and -q are the same rotation, so we can always make the largest component positive
+        final double sign = components[largestIndex] < 0 ? -1 : 1;
+        long packed = largestIndex;
+        for (int i = 0; i < 4; i++) {
+            if (i != largestIndex) {
+                // The other components are within [-1/sqrt(2), 1/sqrt(2)]
+                final double normalized = (components[i] * sign * SQRT_2 + 1) / 2;
+                final long quantized = Math.max(0, Math.min(ROTATION_MAX, Math.round(normalized * ROTATION_MAX)));
+                packed = (packed << ROTATION_BITS) | quantized;
+            }
+        }
+        return packed;
+    }
+
+    static Quaterniond unpackRotation(long packed, Quaterniond dest) {
+        final double[] components = new double[4];
+        final int largestIndex = (int) (packed >>> (3 * ROTATION_BITS)) & 3;
+        double sumOfSquares = 0;
+        int shift = 2 * ROTATION_BITS;
+        for (int i = 0; i < 4; i++) {
+            if (i != largestIndex) {
+                final long quantized = (packed >>> shift) & ROTATION_MAX;
+                components[i] = ((double) quantized / ROTATION_MAX * 2 - 1) / SQRT_2;
+                sumOfSquares += components[i] * components[i];
+                shift -= ROTATION_BITS;
+            }
+        }
+        components[largestIndex] = Math.sqrt(Math.max(0, 1 - sumOfSquares));
+        return dest.set(components[0], components[1], components[2], components[3]).normalize();
+    }
+
+    static void writeRotation(PacketBuffer buffer, long packed) {
+        buffer.writeInt((int) (packed >>> 16));
+        buffer.writeShort((int) packed);
+    }
+
+    static long readRotation(PacketBuffer buffer) {
+        return ((buffer.readInt() & 0xFFFFFFFFL) << 16) | buffer.readUnsignedShort();
+    }
+
+    static void writeSignedVarLong(PacketBuffer buffer, long value) {
+        // Zigzag encoding, so that small negative numbers are small as well
+        buffer.writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    static long readSignedVarLong(PacketBuffer buffer) {
+        final long value = buffer.readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeSignedVarInt(PacketBuffer buffer, int value) {
+        buffer.writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    static int readSignedVarInt(PacketBuffer buffer) {
+        final int value = buffer.readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,126 @@
+package org.valkyrienskies.mod.common.network;
+
+import static org.valkyrienskies.mod.common.network.ShipTransformCodec.*;
+
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import io.netty.buffer.Unpooled;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.Tuple;
+import net.minecraft.util.math.AxisAlignedBB;
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+
+/**
+ * Decodes the packets made by a {@link ShipTransformEncoder}. The packets must be decoded in the order they were
+ * encoded. Updates for ships that haven't been sent in full to this decoder yet are ignored.
+ * <p>
+ * Not thread safe.
+ */
+public class ShipTransformDecoder {
+
+    private final TIntObjectMap<ShipState> shipStates;
+
+    public ShipTransformDecoder() {
+        this.shipStates = new TIntObjectHashMap<>();
+    }
+
+    /**
+     * @return The transform and AABB of every ship that changed in this packet.
+     * @throws IllegalArgumentException If the packet is corrupt
+     */
+    public Map<UUID, Tuple<ShipTransform, AxisAlignedBB>> decode(byte[] packet) {
+        final PacketBuffer buffer = new PacketBuffer(Unpooled.wrappedBuffer(packet));
+        final Map<UUID, Tuple<ShipTransform, AxisAlignedBB>> updates = new HashMap<>();
+        try {
+            final int entryCount = buffer.readVarInt();
+            for (int i = 0; i < entryCount; i++) {
+                final int sessionID = buffer.readVarInt();
+                final int flags = buffer.readUnsignedByte();
+                if ((flags & FLAG_REMOVED) != 0) {
+                    final ShipState removed = shipStates.remove(sessionID);
+                    if (removed != null) {
+                        updates.remove(removed.shipID);
+                    }
+                    continue;
+                }
+
+                ShipState state = shipStates.get(sessionID);
+                if ((flags & FLAG_FULL) != 0) {
+                    state = new ShipState(buffer.readUniqueId(), sessionID);
+                    shipStates.put(sessionID, state);
+                    state.posX = readSignedVarLong(buffer);
+                    state.posY = readSignedVarLong(buffer);
+                    state.posZ = readSignedVarLong(buffer);
+                    state.rotation = readRotation(buffer);
+                    state.centerX = buffer.readDouble();
+                    state.centerY = buffer.readDouble();
+                    state.centerZ = buffer.readDouble();
+                    state.minX = readSignedVarInt(buffer);
+                    state.minY = readSignedVarInt(buffer);
+                    state.minZ = readSignedVarInt(buffer);
+                    state.maxX = readSignedVarInt(buffer);
+                    state.maxY = readSignedVarInt(buffer);
+                    state.maxZ = readSignedVarInt(buffer);
+                } else {
+                    // If we don't know this ship then we still have to read the entry, but we can't apply it.
+                    final ShipState target = state != null ? state : new ShipState(null, sessionID);
+                    if ((flags & FLAG_POSITION) != 0) {
+                        target.posX += readSignedVarLong(buffer);
+                        target.posY += readSignedVarLong(buffer);
+                        target.posZ += readSignedVarLong(buffer);
+                    }
+                    if ((flags & FLAG_ROTATION) != 0) {
+                        target.rotation = readRotation(buffer);
+                    }
+                    if ((flags & FLAG_CENTER) != 0) {
+                        target.centerX = buffer.readDouble();
+                        target.centerY = buffer.readDouble();
+                        target.centerZ = buffer.readDouble();
+                    }
+                    if ((flags & FLAG_AABB) != 0) {
+                        target.minX += readSignedVarInt(buffer);
+                        target.minY += readSignedVarInt(buffer);
+                        target.minZ += readSignedVarInt(buffer);
+                        target.maxX += readSignedVarInt(buffer);
+                        target.maxY += readSignedVarInt(buffer);
+                        target.maxZ += readSignedVarInt(buffer);
+                    }
+                    if (state == null) {
+                        continue;
+                    }
+                }
+                updates.put(state.shipID, new Tuple<>(createTransform(state), createAABB(state)));
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Corrupt ship transform packet", e);
+        }
+        return updates;
+    }
+
+    /**
+     * Forgets every ship, used when the packets we receive come from a new stream.
+     */
+    public void clear() {
+        shipStates.clear();
+    }
+
+    private static ShipTransform createTransform(ShipState state) {
+        return new ShipTransform(dequantizePosition(state.posX), dequantizePosition(state.posY),
+            dequantizePosition(state.posZ), unpackRotation(state.rotation, new Quaterniond()),
+            new Vector3d(state.centerX, state.centerY, state.centerZ));
+    }
+
+    private static AxisAlignedBB createAABB(ShipState state) {
+        final double posX = dequantizePosition(state.posX);
+        final double posY = dequantizePosition(state.posY);
+        final double posZ = dequantizePosition(state.posZ);
+        return new AxisAlignedBB(posX + state.minX / AABB_SCALE, posY + state.minY / AABB_SCALE,
+            posZ + state.minZ / AABB_SCALE, posX + state.maxX / AABB_SCALE, posY + state.maxY / AABB_SCALE,
+            posZ + state.maxZ / AABB_SCALE);
+    }
+}
@@ -0,0 +1,217 @@
+package org.valkyrienskies.mod.common.network;
+
+import static org.valkyrienskies.mod.common.network.ShipTransformCodec.*;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import io.netty.buffer.Unpooled;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.MathHelper;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import valkyrienwarfare.api.TransformType;
+
+/**
+ * Encodes ship transforms into the compact format described in {@link ShipTransformCodec}, for a single stream of
+ * packets that are all received in order by the same {@link ShipTransformDecoder}s. Only the parts of a ship
+ * transform that changed since the last packet are written, and ships that didn't change at all are skipped.
+ * <p>
+ * Not thread safe.
+ */
+public class ShipTransformEncoder {
+
+    // Every ship is sent in full at least every this many packets, so that receivers that started listening late catch
+    // up. If a ship isn't written in the packet its keyframe is due, the next write of it is the keyframe. If 0 ships
+    // are only sent in full the first time.
+    private final int keyframeInterval;
+    private final Map<UUID, ShipState> shipStates;
+    // Session ids that can be given to new ships
+    private final TIntList freeSessionIDs;
+    // Session ids of removed ships, they can't be reused until the next packet
+    private final TIntList removedSessionIDs;
+    private int nextSessionID;
+    private int packetIndex;
+    // The entries of the current packet
+    private final PacketBuffer entries;
+    private int entryCount;
+
+    public ShipTransformEncoder(int keyframeInterval) {
+        this.keyframeInterval = keyframeInterval;
+        this.shipStates = new HashMap<>();
+        this.freeSessionIDs = new TIntArrayList();
+        this.removedSessionIDs = new TIntArrayList();
+        this.nextSessionID = 0;
+        this.packetIndex = 0;
+        this.entries = new PacketBuffer(Unpooled.buffer());
+        this.entryCount = 0;
+    }
+
+    /**
+     * Adds the ship to the current packet, if it changed since the last time it was added.
+     */
+    public void writeShip(UUID shipID, ShipTransform transform, AxisAlignedBB shipBB) {
+        ShipState state = shipStates.get(shipID);
+        final boolean isNewShip = state == null;
+        if (isNewShip) {
+            state = new ShipState(shipID, allocateSessionID());
+            shipStates.put(shipID, state);
+        }
+
+        final long posX = quantizePosition(transform.getPosX());
+        final long posY = quantizePosition(transform.getPosY());
+        final long posZ = quantizePosition(transform.getPosZ());
+        final long rotation = packRotation(transform.rotationQuaternion(TransformType.SUBSPACE_TO_GLOBAL));
+        final double centerX = transform.getCenterCoord().x();
+        final double centerY = transform.getCenterCoord().y();
+        final double centerZ = transform.getCenterCoord().z();
+        // Round the AABB outwards, so the quantized AABB always contains the ship
+        final int minX = MathHelper.floor((shipBB.minX - dequantizePosition(posX)) * AABB_SCALE);
+        final int minY = MathHelper.floor((shipBB.minY - dequantizePosition(posY)) * AABB_SCALE);
+        final int minZ = MathHelper.floor((shipBB.minZ - dequantizePosition(posZ)) * AABB_SCALE);
+        final int maxX = MathHelper.ceil((shipBB.maxX - dequantizePosition(posX)) * AABB_SCALE);
+        final int maxY = MathHelper.ceil((shipBB.maxY - dequantizePosition(posY)) * AABB_SCALE);
+        final int maxZ = MathHelper.ceil((shipBB.maxZ - dequantizePosition(posZ)) * AABB_SCALE);
+
+        final boolean isKeyframe = isNewShip || (keyframeInterval > 0 && packetIndex >= state.nextKeyframePacket);
+        int flags = 0;
+        if (isKeyframe) {
+            flags = FLAG_FULL;
+            if (keyframeInterval > 0) {
+                if (isNewShip) {
+                    // Spread out the keyframes of ships that are added at the same time
+                    state.nextKeyframePacket = packetIndex + 1 + state.sessionID % keyframeInterval;
+                } else {
+                    state.nextKeyframePacket = packetIndex + keyframeInterval;
+                }
+            }
+        } else {
+            if (posX != state.posX || posY != state.posY || posZ != state.posZ) {
+                flags |= FLAG_POSITION;
+            }
+            if (rotation != state.rotation) {
+                flags |= FLAG_ROTATION;
+            }
+            if (centerX != state.centerX || centerY != state.centerY || centerZ != state.centerZ) {
+                flags |= FLAG_CENTER;
+            }
+            if (minX != state.minX || minY != state.minY || minZ != state.minZ
+                || maxX != state.maxX || maxY != state.maxY || maxZ != state.maxZ) {
+                flags |= FLAG_AABB;
+            }
+            if (flags == 0) {
+                // Nothing changed, don't send anything
+                return;
+            }
+        }
+
+        entries.writeVarInt(state.sessionID);
+        entries.writeByte(flags);
+        if (isKeyframe) {
+            entries.writeUniqueId(shipID);
+            writeSignedVarLong(entries, posX);
+            writeSignedVarLong(entries, posY);
+            writeSignedVarLong(entries, posZ);
+            writeRotation(entries, rotation);
+            entries.writeDouble(centerX);
+            entries.writeDouble(centerY);
+            entries.writeDouble(centerZ);
+            writeSignedVarInt(entries, minX);
+            writeSignedVarInt(entries, minY);
+            writeSignedVarInt(entries, minZ);
+            writeSignedVarInt(entries, maxX);
+            writeSignedVarInt(entries, maxY);
+            writeSignedVarInt(entries, maxZ);
+        } else {
+            if ((flags & FLAG_POSITION) != 0) {
+                writeSignedVarLong(entries, posX - state.posX);
+                writeSignedVarLong(entries, posY - state.posY);
+                writeSignedVarLong(entries, posZ - state.posZ);
+            }
+            if ((flags & FLAG_ROTATION) != 0) {
+                writeRotation(entries, rotation);
+            }
+            if ((flags & FLAG_CENTER) != 0) {
+                entries.writeDouble(centerX);
+                entries.writeDouble(centerY);
+                entries.writeDouble(centerZ);
+            }
+            if ((flags & FLAG_AABB) != 0) {
+                writeSignedVarInt(entries, minX - state.minX);
+                writeSignedVarInt(entries, minY - state.minY);
+                writeSignedVarInt(entries, minZ - state.minZ);
+                writeSignedVarInt(entries, maxX - state.maxX);
+                writeSignedVarInt(entries, maxY - state.maxY);
+                writeSignedVarInt(entries, maxZ - state.maxZ);
+            }
+        }
+        entryCount++;
+
+        state.posX = posX;
+        state.posY = posY;
+        state.posZ = posZ;
+        state.rotation = rotation;
+        state.centerX = centerX;
+        state.centerY = centerY;
+        state.centerZ = centerZ;
+        state.minX = minX;
+        state.minY = minY;
+        state.minZ = minZ;
+        state.maxX = maxX;
+        state.maxY = maxY;
+        state.maxZ = maxZ;
+    }
+
+    /**
+     * Tells the receivers to forget the ship, if it was ever added.
+     */
+    public void removeShip(UUID shipID) {
+        final ShipState state = shipStates.remove(shipID);
+        if (state != null) {
+            entries.writeVarInt(state.sessionID);
+            entries.writeByte(FLAG_REMOVED);
+            entryCount++;
+            removedSessionIDs.add(state.sessionID);
+        }
+    }
+
+    /**
+     * @return The ships that have been added, but not removed.
+     */
+    public Set<UUID> getKnownShips() {
+        return Collections.unmodifiableSet(shipStates.keySet());
+    }
+
+    public boolean hasEntries() {
+        return entryCount != 0;
+    }
+
+    /**
+     * @return The encoded packet of all the changes since the last call, and starts a new packet.
+     */
+    public byte[] finishPacket() {
+        final PacketBuffer packet = new PacketBuffer(Unpooled.buffer(entries.readableBytes() + 5));
+        packet.writeVarInt(entryCount);
+        packet.writeBytes(entries);
+        final byte[] bytes = new byte[packet.readableBytes()];
+        packet.readBytes(bytes);
+
+        entries.clear();
+        entryCount = 0;
+        packetIndex++;
+        freeSessionIDs.addAll(removedSessionIDs);
+        removedSessionIDs.resetQuick();
+        return bytes;
+    }
+
+    private int allocateSessionID() {
+        if (freeSessionIDs.isEmpty()) {
+            return nextSessionID++;
+        }
+        return freeSessionIDs.removeAt(freeSessionIDs.size() - 1);
+    }
+}
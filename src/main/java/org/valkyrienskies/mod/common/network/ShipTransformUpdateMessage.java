@@ -1,32 +1,30 @@
 package org.valkyrienskies.mod.common.network;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import io.netty.buffer.ByteBuf;
 import net.minecraft.network.PacketBuffer;
-import net.minecraft.util.Tuple;
-import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
-import org.valkyrienskies.mod.common.ships.ShipData;
-import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
-import org.valkyrienskies.mod.common.util.jackson.VSJacksonUtil;
-
-import java.io.IOException;
-import java.util.*;
 
+/**
+ * Sends the changes to the transforms of the ships a player watches, encoded by a {@link ShipTransformEncoder}.
+ * Decoding is left to the {@link ShipTransformUpdateMessageHandler}, because the decoder must run on the game thread.
+ */
 public class ShipTransformUpdateMessage implements IMessage {
 
-    private static final ObjectMapper serializer = VSJacksonUtil.getPacketMapper();
-    final Map<UUID, Tuple<ShipTransform, AxisAlignedBB>> shipTransforms;
+    byte[] encodedTransforms;
     int dimensionID;
+    // The time in seconds the transforms were sent, only meaningful relative to the send times of other messages
+    double sendTime;
 
     public ShipTransformUpdateMessage() {
-        this.shipTransforms = new HashMap<>();
+        this.encodedTransforms = new byte[0];
         this.dimensionID = -1;
+        this.sendTime = 0;
     }
 
-    public void addData(final UUID shipUUID, final ShipTransform shipTransform, final AxisAlignedBB alignedBB) {
-        shipTransforms.put(shipUUID, new Tuple<>(shipTransform, alignedBB));
+    public ShipTransformUpdateMessage(int dimensionID, byte[] encodedTransforms, double sendTime) {
+        this.encodedTransforms = encodedTransforms;
+        this.dimensionID = dimensionID;
+        this.sendTime = sendTime;
     }
 
     public void setDimensionID(int dimensionID) {
@@ -37,89 +35,23 @@ public class ShipTransformUpdateMessage implements IMessage {
         return dimensionID;
     }
 
+    public double getSendTime() {
+        return sendTime;
+    }
+
     @Override
     public void fromBytes(ByteBuf buf) {
         PacketBuffer packetBuffer = new PacketBuffer(buf);
-        int numberOfShips = packetBuffer.readInt();
-        for (int i = 0; i < numberOfShips; i++) {
-            UUID shipID = null;
-            ShipTransform shipTransform = null;
-            AxisAlignedBB axisAlignedBB = null;
-            // Read the UUID
-            {
-                int bytesSize = packetBuffer.readInt();
-                byte[] bytes = new byte[bytesSize];
-                packetBuffer.readBytes(bytes);
-                try {
-                    shipID = serializer.readValue(bytes, UUID.class);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-            // Read the ship transform
-            {
-                int bytesSize = packetBuffer.readInt();
-                byte[] bytes = new byte[bytesSize];
-                packetBuffer.readBytes(bytes);
-                try {
-                    shipTransform = serializer.readValue(bytes, ShipTransform.class);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-            // Read the ship aabb
-            {
-                int bytesSize = packetBuffer.readInt();
-                byte[] bytes = new byte[bytesSize];
-                packetBuffer.readBytes(bytes);
-                try {
-                    axisAlignedBB = serializer.readValue(bytes, AxisAlignedBB.class);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-            if (shipID == null || shipTransform == null || axisAlignedBB == null) {
-                // corrupt packet
-                shipTransforms.clear();
-                return;
-            }
-            shipTransforms.put(shipID, new Tuple<>(shipTransform, axisAlignedBB));
-        }
         dimensionID = packetBuffer.readInt();
+        sendTime = packetBuffer.readDouble();
+        encodedTransforms = packetBuffer.readByteArray();
     }
 
     @Override
     public void toBytes(ByteBuf buf) {
         PacketBuffer packetBuffer = new PacketBuffer(buf);
-        packetBuffer.writeInt(shipTransforms.size());
-        for (Map.Entry<UUID, Tuple<ShipTransform, AxisAlignedBB>> data : shipTransforms.entrySet()) {
-            // Write index data to the byte buffer.
-            try {
-                // Write the UUID
-                {
-                    byte[] dataBytes = serializer.writeValueAsBytes(data.getKey());
-                    int bytesSize = dataBytes.length;
-                    packetBuffer.writeInt(bytesSize);
-                    packetBuffer.writeBytes(dataBytes);
-                }
-                // Write the ship transform
-                {
-                    byte[] dataBytes = serializer.writeValueAsBytes(data.getValue().getFirst());
-                    int bytesSize = dataBytes.length;
-                    packetBuffer.writeInt(bytesSize);
-                    packetBuffer.writeBytes(dataBytes);
-                }
-                // Write the ship aabb
-                {
-                    byte[] dataBytes = serializer.writeValueAsBytes(data.getValue().getSecond());
-                    int bytesSize = dataBytes.length;
-                    packetBuffer.writeInt(bytesSize);
-                    packetBuffer.writeBytes(dataBytes);
-                }
-            } catch (JsonProcessingException e) {
-                e.printStackTrace();
-            }
-        }
         packetBuffer.writeInt(dimensionID);
+        packetBuffer.writeDouble(sendTime);
+        packetBuffer.writeByteArray(encodedTransforms);
     }
 }
@@ -1,5 +1,6 @@
 package org.valkyrienskies.mod.common.network;
 
+import lombok.extern.log4j.Log4j2;
 import net.minecraft.client.Minecraft;
 import net.minecraft.util.IThreadListener;
 import net.minecraft.util.Tuple;
@@ -8,18 +9,17 @@ import net.minecraft.world.World;
 import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
 import net.minecraftforge.fml.common.network.simpleimpl.IMessageHandler;
 import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
-import org.valkyrienskies.mod.common.ships.QueryableShipData;
-import org.valkyrienskies.mod.common.ships.ShipData;
 import org.valkyrienskies.mod.common.ships.interpolation.ITransformInterpolator;
 import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
 import org.valkyrienskies.mod.common.ships.ship_world.IPhysObjectWorld;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
+import org.valkyrienskies.mod.common.ships.ship_world.WorldClientShipManager;
 import org.valkyrienskies.mod.common.util.ValkyrienUtils;
 
 import java.util.Map;
-import java.util.Optional;
 import java.util.UUID;
 
+@Log4j2
 public class ShipTransformUpdateMessageHandler implements IMessageHandler<ShipTransformUpdateMessage, IMessage> {
 
     @Override
@@ -32,19 +32,33 @@ public class ShipTransformUpdateMessageHandler implements IMessageHandler<ShipTr
             @Override
             public void run() {
                 World world = Minecraft.getMinecraft().world;
+                if (world == null || world.provider.getDimension() != message.getDimensionID()) {
+                    // This message was sent before we changed dimension, ignore it
+                    return;
+                }
                 IPhysObjectWorld physObjectWorld = ValkyrienUtils.getPhysObjWorld(world);
-                QueryableShipData worldData = QueryableShipData.get(world);
+                ShipTransformDecoder transformDecoder = ((WorldClientShipManager) physObjectWorld).getTransformDecoder();
+
+                Map<UUID, Tuple<ShipTransform, AxisAlignedBB>> transformUpdates;
+                try {
+                    transformUpdates = transformDecoder.decode(message.encodedTransforms);
+                } catch (IllegalArgumentException e) {
+                    log.error("Failed to decode the ship transforms, waiting for the ships to be sent in full", e);
+                    // We don't know what state the ships are in anymore, wait for them to be sent in full again
+                    transformDecoder.clear();
+                    return;
+                }
 
-                for (Map.Entry<UUID, Tuple<ShipTransform, AxisAlignedBB>> transformUpdate : message.shipTransforms.entrySet()) {
+                for (Map.Entry<UUID, Tuple<ShipTransform, AxisAlignedBB>> transformUpdate : transformUpdates.entrySet()) {
                     final UUID shipID = transformUpdate.getKey();
                     final ShipTransform shipTransform = transformUpdate.getValue().getFirst();
                     final AxisAlignedBB shipBB = transformUpdate.getValue().getSecond();
 
-                    final PhysicsObject physicsObject = ValkyrienUtils.getPhysObjWorld(world).getPhysObjectFromUUID(shipID);
+                    final PhysicsObject physicsObject = physObjectWorld.getPhysObjectFromUUID(shipID);
                     if (physicsObject != null) {
                         // Do not update the transform in ShipData, that will be done by PhysicsObject.tick()
                         ITransformInterpolator interpolator = physicsObject.getTransformInterpolator();
-                        interpolator.onNewTransformPacket(shipTransform, shipBB);
+                        interpolator.onNewTransformPacket(shipTransform, shipBB, message.getSendTime());
                     }
                 }
             }
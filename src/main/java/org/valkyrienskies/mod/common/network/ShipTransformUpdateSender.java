@@ -0,0 +1,176 @@
+package org.valkyrienskies.mod.common.network;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.network.NetHandlerPlayServer;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.world.World;
+import org.valkyrienskies.mod.common.ValkyrienSkiesMod;
+import org.valkyrienskies.mod.common.config.VSConfig;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
+
+/**
+ * Sends the physics transforms of the ships in a world to the players watching them. Every player gets their own
+ * stream of {@link ShipTransformUpdateMessage}s, which only contains the ships in
+ * {@link PhysicsObject#getWatchingPlayersThreadSafe()}. Ships far away from a player are sent less often than ships
+ * close to them.
+ * <p>
+ * Only used by the physics thread.
+ */
+public class ShipTransformUpdateSender {
+
+    // Every ship is sent in full at least every this many packets of a player, plus its update interval, in case the
+    // client had to reset its decoder.
+    private static final int KEYFRAME_INTERVAL = 250;
+    // The update intervals of the distance tiers, in packets
+    private static final int REDUCED_RATE_INTERVAL = 2;
+    private static final int DISTANT_RATE_INTERVAL = 4;
+
+    private final World world;
+    // By connection instead of by player, because respawning makes a new player on the same connection, and the
+    // client keeps the state of its decoder when it respawns in the same world
+    private final Map<NetHandlerPlayServer, PlayerStream> playerStreams;
+
+    public ShipTransformUpdateSender(World world) {
+        this.world = world;
+        this.playerStreams = new HashMap<>();
+    }
+
+    /**
+     * Sends the changes to the current physics transforms of the given ships to the players watching them.
+     */
+    public void sendUpdates(Collection<PhysicsObject> ships) {
+        // First find the ships watched by every player
+        for (PhysicsObject ship : ships) {
+            for (EntityPlayerMP player : ship.getWatchingPlayersThreadSafe()) {
+                if (player.connection == null) {
+                    continue;
+                }
+                PlayerStream stream = playerStreams.get(player.connection);
+                if (player.isDead) {
+                    // The old player of a respawn, the new player will be watching the ships soon
+                    if (stream != null) {
+                        stream.respawning = true;
+                    }
+                    continue;
+                }
+                if (stream == null) {
+                    stream = new PlayerStream(player.connection);
+                    playerStreams.put(player.connection, stream);
+                }
+                stream.watchedShips.add(ship);
+            }
+        }
+
+        // Then send every player their packet
+        final int dimensionID = world.provider.getDimension();
+        // Lets clients space out the transforms by when they were sent, instead of when they arrived
+        final double sendTime = System.nanoTime() / 1e9;
+        final Iterator<PlayerStream> streamIterator = playerStreams.values().iterator();
+        while (streamIterator.hasNext()) {
+            final PlayerStream stream = streamIterator.next();
+            final EntityPlayerMP player = stream.connection.player;
+            if (player.hasDisconnected() || player.world != world) {
+                // The player left, if they come back they will get a new stream
+                streamIterator.remove();
+                continue;
+            }
+            if (stream.respawning) {
+                // Don't remove the ships of the old player, wait until the new player is watching them instead
+                stream.respawning = false;
+                stream.watchedShips.clear();
+                continue;
+            }
+            stream.sendUpdates(player, dimensionID, sendTime);
+            if (stream.encoder.getKnownShips().isEmpty()) {
+                // The player isn't watching any ships anymore
+                streamIterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return How many packets pass between the updates of a ship at this XZ distance from the player.
+     */
+    private static int getUpdateInterval(double distanceSqXZ) {
+        final double fullRateDistance = VSConfig.SHIP_LOADING_SETTINGS.fullRateTransformUpdateDistance;
+        final double reducedRateDistance = VSConfig.SHIP_LOADING_SETTINGS.reducedRateTransformUpdateDistance;
+        if (distanceSqXZ < fullRateDistance * fullRateDistance) {
+            return 1;
+        } else if (distanceSqXZ < reducedRateDistance * reducedRateDistance) {
+            return REDUCED_RATE_INTERVAL;
+        } else {
+            return DISTANT_RATE_INTERVAL;
+        }
+    }
+
+    /**
+     * The transform packets sent to a single player.
+     */
+    private static class PlayerStream {
+
+        final NetHandlerPlayServer connection;
+        final ShipTransformEncoder encoder;
+        // The ships the player watches this packet
+        final List<PhysicsObject> watchedShips;
+        final Set<UUID> watchedShipIDs;
+        int packetIndex;
+        // Whether the old player of a respawn was still watching ships this packet
+        boolean respawning;
+
+        PlayerStream(NetHandlerPlayServer connection) {
+            this.connection = connection;
+            this.encoder = new ShipTransformEncoder(KEYFRAME_INTERVAL);
+            this.watchedShips = new ArrayList<>();
+            this.watchedShipIDs = new HashSet<>();
+            this.packetIndex = 0;
+        }
+
+        void sendUpdates(EntityPlayerMP player, int dimensionID, double sendTime) {
+            for (PhysicsObject ship : watchedShips) {
+                final UUID shipID = ship.getUuid();
+                final ShipTransform shipTransform = ship.getShipTransformationManager().getCurrentPhysicsTransform();
+                final AxisAlignedBB shipBB = ship.getPhysicsTransformAABB();
+                if (shipBB == null) {
+                    continue;
+                }
+                watchedShipIDs.add(shipID);
+
+                final double xDif = player.posX - shipTransform.getPosX();
+                final double zDif = player.posZ - shipTransform.getPosZ();
+                final int updateInterval = getUpdateInterval(xDif * xDif + zDif * zDif);
+                // Spread the updates of distant ships over the packets, instead of sending them all at once
+                if (updateInterval == 1 || !encoder.getKnownShips().contains(shipID)
+                    || Math.floorMod(packetIndex + shipID.hashCode(), updateInterval) == 0) {
+                    encoder.writeShip(shipID, shipTransform, shipBB);
+                }
+            }
+
+            // Tell the player to forget the ships they stopped watching
+            for (UUID shipID : new ArrayList<>(encoder.getKnownShips())) {
+                if (!watchedShipIDs.contains(shipID)) {
+                    encoder.removeShip(shipID);
+                }
+            }
+
+            final boolean hasEntries = encoder.hasEntries();
+            final byte[] encodedTransforms = encoder.finishPacket();
+            if (hasEntries) {
+                ValkyrienSkiesMod.physWrapperTransformUpdateNetwork
+                    .sendTo(new ShipTransformUpdateMessage(dimensionID, encodedTransforms, sendTime), player);
+            }
+            packetIndex++;
+            watchedShips.clear();
+            watchedShipIDs.clear();
+        }
+    }
+}
@@ -18,6 +18,7 @@ import org.valkyrienskies.mod.common.block.IBlockTorqueProvider;
 import org.valkyrienskies.mod.common.collision.WorldPhysicsCollider;
 import org.valkyrienskies.mod.common.collision.WorldWaterCollider;
 import org.valkyrienskies.mod.common.config.VSConfig;
+import org.valkyrienskies.mod.common.ships.ShipData;
 import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
 import org.valkyrienskies.mod.common.ships.ship_world.ShipPilot;
@@ -152,8 +153,13 @@ public class PhysicsCalculations {
         getParent().getShipTransformationManager().updatePreviousPhysicsTransform();
         getParent().getShipTransformationManager().setCurrentPhysicsTransform(finalPhysTransform);
         // Save a copy of linear and angular velocity in parent's ShipData
-        getParent().getShipData().getPhysicsData().setAngularVelocity(new Vector3d(angularVelocity));
-        getParent().getShipData().getPhysicsData().setLinearVelocity(new Vector3d(linearVelocity));
+        ShipData shipData = getParent().getShipData();
+        if (!angularVelocity.equals(shipData.getPhysicsData().getAngularVelocity())
+            || !linearVelocity.equals(shipData.getPhysicsData().getLinearVelocity())) {
+            shipData.getPhysicsData().setAngularVelocity(new Vector3d(angularVelocity));
+            shipData.getPhysicsData().setLinearVelocity(new Vector3d(linearVelocity));
+            shipData.markDirty();
+        }
     }
 
     // If the ship is moving at these speeds, its likely something in the physics
@@ -240,7 +246,7 @@ public class PhysicsCalculations {
             BlockPos.MutableBlockPos mutablePos = new BlockPos.MutableBlockPos();
             // Note that iterating over "activeForcePositions" is not thread safe, so this could lead to problems.
             // However we're going to completely replace this code soon anyways, so its not a big deal.
-            parent.getShipData().activeForcePositions.forEachUnsafe((x, y, z) -> {
+            parent.getShipData().getActiveForcePositions().forEachUnsafe((x, y, z) -> {
                 mutablePos.setPos(x, y, z);
                 IBlockState state = getParent().getChunkAt(mutablePos.getX() >> 4, mutablePos.getZ() >> 4).getBlockState(mutablePos);
                 Block blockAt = state.getBlock();
@@ -8,10 +8,9 @@ import com.googlecode.cqengine.resultset.ResultSet;
 import lombok.extern.log4j.Log4j2;
 import mcp.MethodsReturnNonnullByDefault;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
 import org.valkyrienskies.mod.common.config.VSConfig;
-
+import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkIndex;
 import org.valkyrienskies.mod.common.ships.interpolation.ITransformInterpolator;
 import org.valkyrienskies.mod.common.ships.ship_world.IPhysObjectWorld;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
@@ -38,6 +37,8 @@ public class QueryableShipData implements Iterable<ShipData> {
     // Where every ship data instance is stored, regardless if the corresponding PhysicsObject is
     // loaded in the World or not.
     private ConcurrentUpdatableIndexedCollection<ShipData> allShips;
+    // Finds the ship that claims a chunk, without the cost of a CQEngine query. Must be kept in sync with allShips.
+    private final ShipChunkIndex chunkIndex;
 
     public QueryableShipData() {
         this(new ConcurrentUpdatableIndexedCollection<>());
@@ -72,6 +73,8 @@ public class QueryableShipData implements Iterable<ShipData> {
         this.allShips.addIndex(UpdatableUniqueIndex.onAttribute(ShipData.UUID));
         this.allShips.addIndex(UpdatableUniqueIndex.onAttribute(ShipData.CHUNKS));
 
+        this.chunkIndex = new ShipChunkIndex();
+        this.allShips.forEach(chunkIndex::add);
     }
 
     /**
@@ -97,7 +100,7 @@ public class QueryableShipData implements Iterable<ShipData> {
     }
 
     public Optional<ShipData> getShipFromChunk(int chunkX, int chunkZ) {
-        return getShipFromChunk(ChunkPos.asLong(chunkX, chunkZ));
+        return Optional.ofNullable(chunkIndex.getShipFromChunk(chunkX, chunkZ));
     }
 
     public Optional<ShipData> getShipFromBlock(BlockPos pos) {
@@ -105,19 +108,8 @@ public class QueryableShipData implements Iterable<ShipData> {
     }
 
     public Optional<ShipData> getShipFromChunk(long chunkLong) {
-        Query<ShipData> query = equal(ShipData.CHUNKS, chunkLong);
-        try (ResultSet<ShipData> resultSet = allShips.retrieve(query)) {
-            if (resultSet.size() > 1) {
-                throw new IllegalStateException(
-                    "How the heck did we get 2 or more ships both managing the chunk at "
-                        + chunkLong);
-            }
-            if (resultSet.isEmpty()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(resultSet.uniqueResult());
-            }
-        }
+        // Inverse of ChunkPos.asLong()
+        return getShipFromChunk((int) chunkLong, (int) (chunkLong >>> 32));
     }
 
     public Optional<ShipData> getShip(UUID uuid) {
@@ -143,11 +135,12 @@ public class QueryableShipData implements Iterable<ShipData> {
     }
 
     public void removeShip(UUID uuid) {
-        getShip(uuid).ifPresent(ship -> allShips.remove(ship));
+        getShip(uuid).ifPresent(this::removeShip);
     }
 
     public void removeShip(ShipData data) {
         allShips.remove(data);
+        chunkIndex.remove(data);
     }
 
     public void addShip(ShipData ship) {
@@ -155,6 +148,7 @@ public class QueryableShipData implements Iterable<ShipData> {
             System.out.println(ship.getName());
         }
         allShips.add(ship);
+        chunkIndex.add(ship);
     }
 
     /**
@@ -185,6 +179,7 @@ public class QueryableShipData implements Iterable<ShipData> {
             return old.get();
         } else {
             this.allShips.add(ship);
+            this.chunkIndex.add(ship);
             return ship;
         }
     }
@@ -202,6 +197,8 @@ public class QueryableShipData implements Iterable<ShipData> {
      */
     public void updateShipData(Iterable<ShipData> oldData, Iterable<ShipData> newData) {
         this.allShips.update(oldData, newData);
+        oldData.forEach(chunkIndex::remove);
+        newData.forEach(chunkIndex::add);
     }
 
     /**
@@ -16,14 +16,16 @@ import org.valkyrienskies.mod.common.ships.ship_world.IPhysObjectWorld;
 import org.valkyrienskies.mod.common.util.cqengine.ConcurrentUpdatableIndexedCollection;
 import org.valkyrienskies.mod.common.util.datastructures.IBlockPosSet;
 import org.valkyrienskies.mod.common.util.datastructures.IBlockPosSetAABB;
+import org.valkyrienskies.mod.common.util.datastructures.SectionBitmapBlockPosSetAABB;
 import org.valkyrienskies.mod.common.util.datastructures.SmallBlockPosSet;
-import org.valkyrienskies.mod.common.util.datastructures.SmallBlockPosSetAABB;
 import org.valkyrienskies.mod.common.util.jackson.annotations.PacketIgnore;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.googlecode.cqengine.query.QueryFactory.attribute;
 import static com.googlecode.cqengine.query.QueryFactory.nullableAttribute;
@@ -42,6 +44,12 @@ public class ShipData {
     @Getter(AccessLevel.NONE)
     private final transient ConcurrentUpdatableIndexedCollection<ShipData> owner;
 
+    /**
+     * Whether this has changed since it was last saved, see {@link #markDirty()}
+     */
+    @Getter(AccessLevel.NONE)
+    private final transient AtomicBoolean dirty = new AtomicBoolean(true);
+
     // region Data Fields
 
     /**
@@ -58,9 +66,9 @@ public class ShipData {
      */
     @PacketIgnore
     @Nullable
-    @JsonSerialize(as = SmallBlockPosSetAABB.class)
-    @JsonDeserialize(as = SmallBlockPosSetAABB.class)
-    public IBlockPosSetAABB blockPositions;
+    @JsonSerialize(as = SectionBitmapBlockPosSetAABB.class)
+    @JsonDeserialize(as = SectionBitmapBlockPosSetAABB.class)
+    private IBlockPosSetAABB blockPositions;
 
     /**
      * Do not use this for anything client side! Contains all the positions of force producing blocks on the ship.
@@ -69,21 +77,25 @@ public class ShipData {
     @Nullable
     @JsonSerialize(as = SmallBlockPosSet.class)
     @JsonDeserialize(as = SmallBlockPosSet.class)
-    public IBlockPosSet activeForcePositions;
+    private IBlockPosSet activeForcePositions;
+
+    /**
+     * Decodes {@link #blockPositions} and {@link #activeForcePositions} the first time they're used, null once they
+     * have been decoded. See {@link #setBlockPositionsDecoder(BlockPositionsDecoder)}
+     */
+    @Getter(AccessLevel.NONE)
+    @Nullable
+    private transient volatile BlockPositionsDecoder blockPositionsDecoder;
 
-    @Setter
     private ShipTransform shipTransform;
 
-    @Setter
     private ShipTransform prevTickShipTransform;
 
-    @Setter
     private AxisAlignedBB shipBB;
 
     /**
      * Whether or not physics are enabled on this physo
      */
-    @Setter
     private boolean physicsEnabled;
 
     /**
@@ -117,9 +129,23 @@ public class ShipData {
         this.uuid = uuid;
         this.name = name;
 
-        this.blockPositions = new SmallBlockPosSetAABB(chunkClaim.getCenterPos().getXStart(), 0,
-                chunkClaim.getCenterPos().getZStart(), 1024, 1024, 1024);
-        this.activeForcePositions = new SmallBlockPosSet(chunkClaim.getCenterPos().getXStart(), chunkClaim.getCenterPos().getZStart());
+        this.blockPositions = createBlockPositions(chunkClaim);
+        this.activeForcePositions = createActiveForcePositions(chunkClaim);
+    }
+
+    /**
+     * @return An empty set that can store the block positions of a ship with the given chunk claim.
+     */
+    public static IBlockPosSetAABB createBlockPositions(VSChunkClaim chunkClaim) {
+        return new SectionBitmapBlockPosSetAABB(chunkClaim.getCenterPos().getXStart(),
+                chunkClaim.getCenterPos().getZStart());
+    }
+
+    /**
+     * @return An empty set that can store the active force positions of a ship with the given chunk claim.
+     */
+    public static IBlockPosSet createActiveForcePositions(VSChunkClaim chunkClaim) {
+        return new SmallBlockPosSet(chunkClaim.getCenterPos().getXStart(), chunkClaim.getCenterPos().getZStart());
     }
 
     public static ShipData createData(ConcurrentUpdatableIndexedCollection<ShipData> owner,
@@ -136,9 +162,120 @@ public class ShipData {
     public ShipData setName(String name) {
         this.name = name;
         owner.updateObjectIndices(this, NAME);
+        markDirty();
         return this;
     }
 
+    public void setShipTransform(ShipTransform shipTransform) {
+        if (!Objects.equals(shipTransform, this.shipTransform)) {
+            this.shipTransform = shipTransform;
+            markDirty();
+        }
+    }
+
+    public void setPrevTickShipTransform(ShipTransform prevTickShipTransform) {
+        if (!Objects.equals(prevTickShipTransform, this.prevTickShipTransform)) {
+            this.prevTickShipTransform = prevTickShipTransform;
+            markDirty();
+        }
+    }
+
+    public void setShipBB(AxisAlignedBB shipBB) {
+        if (!Objects.equals(shipBB, this.shipBB)) {
+            this.shipBB = shipBB;
+            markDirty();
+        }
+    }
+
+    public void setPhysicsEnabled(boolean physicsEnabled) {
+        if (physicsEnabled != this.physicsEnabled) {
+            this.physicsEnabled = physicsEnabled;
+            markDirty();
+        }
+    }
+
+    // endregion
+
+    // region Block positions
+
+    /**
+     * Decodes the block positions if they haven't been decoded yet.
+     */
+    public IBlockPosSetAABB getBlockPositions() {
+        loadBlockPositions();
+        return blockPositions;
+    }
+
+    /**
+     * Decodes the block positions if they haven't been decoded yet.
+     */
+    public IBlockPosSet getActiveForcePositions() {
+        loadBlockPositions();
+        return activeForcePositions;
+    }
+
+    /**
+     * Sets the block positions to be decoded by the given decoder the first time they're used. Most ships in a world
+     * are far away from every player, so this saves us from keeping all of their block positions in memory.
+     */
+    public void setBlockPositionsDecoder(BlockPositionsDecoder blockPositionsDecoder) {
+        this.blockPositions = null;
+        this.activeForcePositions = null;
+        this.blockPositionsDecoder = blockPositionsDecoder;
+    }
+
+    /**
+     * @return False if the block positions are still waiting to be decoded.
+     */
+    public boolean areBlockPositionsLoaded() {
+        return blockPositionsDecoder == null;
+    }
+
+    /**
+     * Decodes the block positions if they haven't been decoded yet.
+     */
+    public void loadBlockPositions() {
+        if (blockPositionsDecoder == null) {
+            return;
+        }
+        synchronized (this) {
+            final BlockPositionsDecoder decoder = blockPositionsDecoder;
+            if (decoder != null) {
+                this.blockPositions = decoder.decodeBlockPositions(this);
+                this.activeForcePositions = decoder.decodeActiveForcePositions(this);
+                this.blockPositionsDecoder = null;
+            }
+        }
+    }
+
+    public interface BlockPositionsDecoder {
+
+        IBlockPosSetAABB decodeBlockPositions(ShipData shipData);
+
+        IBlockPosSet decodeActiveForcePositions(ShipData shipData);
+    }
+
+    // endregion
+
+    // region Dirty tracking
+
+    /**
+     * Marks this as changed, so that it gets written the next time the world saves. The setters call this, but code
+     * that modifies the mutable fields directly (such as the block positions) must call it as well.
+     */
+    public void markDirty() {
+        dirty.set(true);
+    }
+
+    /**
+     * Marks this as saved.
+     *
+     * @return True if this changed since the last call to this method. New ShipData always start out changed.
+     */
+    public boolean clearDirty() {
+        return dirty.getAndSet(false);
+    }
+
     // endregion
 
     // region Attributes
@@ -5,8 +5,8 @@ import net.minecraft.block.state.IBlockState;
 import net.minecraft.init.Blocks;
 import net.minecraft.util.math.BlockPos;
 import org.valkyrienskies.mod.common.physics.BlockPhysicsDetails;
-import org.valkyrienskies.mod.common.ships.physics_data.BasicCenterOfMassProvider;
 import org.valkyrienskies.mod.common.ships.physics_data.IPhysicsObjectCenterOfMassProvider;
+import org.valkyrienskies.mod.common.ships.physics_data.MomentsCenterOfMassProvider;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 
@@ -18,7 +18,7 @@ import javax.annotation.ParametersAreNonnullByDefault;
 public class ShipDataMethods {
 
     // Calculates the new center of mass and inertia matrices for ships after a block change.
-    private static final IPhysicsObjectCenterOfMassProvider centerOfMassProvider = new BasicCenterOfMassProvider();
+    private static final IPhysicsObjectCenterOfMassProvider centerOfMassProvider = new MomentsCenterOfMassProvider();
 
     /**
      * Updates the physics data/force positions of shipData.
@@ -37,11 +37,12 @@ public class ShipDataMethods {
         }
 
         if (BlockPhysicsDetails.isBlockProvidingForce(newState)) {
-            shipData.activeForcePositions.add(pos);
+            shipData.getActiveForcePositions().add(pos);
         } else {
-            shipData.activeForcePositions.remove(pos);
+            shipData.getActiveForcePositions().remove(pos);
         }
 
         centerOfMassProvider.onSetBlockState(shipData.getInertiaData(), pos, oldState, newState);
+        shipData.markDirty();
     }
 }
@@ -1,6 +1,7 @@
 package org.valkyrienskies.mod.common.ships.block_relocation;
 
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IBlockAccess;
 import net.minecraft.world.World;
 
 public class BlockFinder {
@@ -19,6 +20,24 @@ public class BlockFinder {
         }
     }
 
+    /**
+     * Same as {@link #getBlockFinderFor(BlockFinderType, BlockPos, World, int, boolean)}, but reads the blocks from
+     * blockAccess.
+     */
+    public static SpatialDetector getBlockFinderFor(BlockFinderType id, BlockPos start, World worldIn,
+                                                    IBlockAccess blockAccess, int maximum, boolean checkCorners) {
+        switch (id) {
+            case FIND_ALLOWED_BLOCKS:
+                return new ShipSpawnDetector(start, worldIn, blockAccess, maximum, checkCorners);
+            case FIND_ALL_BLOCKS:
+                return new ShipBlockPosFinder(start, worldIn, blockAccess, maximum, checkCorners);
+            case FIND_SINGLE_BLOCK:
+                return new SingleBlockPosDetector(start, worldIn, blockAccess, maximum, checkCorners);
+            default:
+                throw new IllegalArgumentException("Unrecognized detector");
+        }
+    }
+
     public enum BlockFinderType {
         FIND_ALLOWED_BLOCKS, FIND_ALL_BLOCKS, FIND_SINGLE_BLOCK
     }
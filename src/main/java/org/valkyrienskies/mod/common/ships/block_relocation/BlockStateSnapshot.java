@@ -0,0 +1,131 @@
+package org.valkyrienskies.mod.common.ships.block_relocation;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Biomes;
+import net.minecraft.init.Blocks;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.IBlockAccess;
+import net.minecraft.world.WorldType;
+import net.minecraft.world.biome.Biome;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.NibbleArray;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+
+/**
+ * A copy of the block states of some chunks, that can be read from any thread. Chunks are copied on the game thread
+ * with {@link #captureChunk(Chunk)}, and must not be captured anymore once other threads are reading.
+ * <p>
+ * Sections are copied the same way chunks are saved, which is a lot cheaper than reading every block state. Chunks
+ * that weren't captured read as air, and there are no tile entities.
+ */
+public class BlockStateSnapshot implements IBlockAccess {
+
+    private final WorldType worldType;
+    private final Map<Long, SectionSnapshot[]> chunks = new HashMap<>();
+
+    public BlockStateSnapshot(WorldType worldType) {
+        this.worldType = worldType;
+    }
+
+    public void captureChunk(Chunk chunk) {
+        final SectionSnapshot[] sections = new SectionSnapshot[chunk.storageArrays.length];
+        for (int i = 0; i < sections.length; i++) {
+            final ExtendedBlockStorage storage = chunk.storageArrays[i];
+            if (storage != Chunk.NULL_BLOCK_STORAGE && !storage.isEmpty()) {
+                final byte[] blockIds = new byte[4096];
+                final NibbleArray data = new NibbleArray();
+                final NibbleArray add = storage.getData().getDataForNBT(blockIds, data);
+                sections[i] = new SectionSnapshot(blockIds, data, add);
+            }
+        }
+        chunks.put(ChunkPos.asLong(chunk.x, chunk.z), sections);
+    }
+
+    public IBlockState getBlockState(int x, int y, int z) {
+        if (y < 0 || y > 255) {
+            return Blocks.AIR.getDefaultState();
+        }
+        final SectionSnapshot[] sections = chunks.get(ChunkPos.asLong(x >> 4, z >> 4));
+        if (sections == null || sections[y >> 4] == null) {
+            return Blocks.AIR.getDefaultState();
+        }
+        return sections[y >> 4].getBlockState((y & 15) << 8 | (z & 15) << 4 | (x & 15));
+    }
+
+    @Override
+    public IBlockState getBlockState(BlockPos pos) {
+        return getBlockState(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    @Nullable
+    @Override
+    public TileEntity getTileEntity(BlockPos pos) {
+        return null;
+    }
+
+    @Override
+    public int getCombinedLight(BlockPos pos, int lightValue) {
+        return 0;
+    }
+
+    @Override
+    public boolean isAirBlock(BlockPos pos) {
+        IBlockState state = getBlockState(pos);
+        return state.getBlock().isAir(state, this, pos);
+    }
+
+    @Override
+    public Biome getBiome(BlockPos pos) {
+        return Biomes.PLAINS;
+    }
+
+    @Override
+    public int getStrongPower(BlockPos pos, EnumFacing direction) {
+        return 0;
+    }
+
+    @Override
+    public WorldType getWorldType() {
+        return worldType;
+    }
+
+    @Override
+    public boolean isSideSolid(BlockPos pos, EnumFacing side, boolean _default) {
+        if (pos.getY() < 0 || pos.getY() > 255) {
+            return _default;
+        }
+        return getBlockState(pos).isSideSolid(this, pos, side);
+    }
+
+    private static class SectionSnapshot {
+
+        // The block state ids in the format of BlockStateContainer.getDataForNBT()
+        final byte[] blockIds;
+        final NibbleArray data;
+        @Nullable
+        final NibbleArray add;
+
+        SectionSnapshot(byte[] blockIds, NibbleArray data, @Nullable NibbleArray add) {
+            this.blockIds = blockIds;
+            this.data = data;
+            this.add = add;
+        }
+
+        IBlockState getBlockState(int index) {
+            int id = (blockIds[index] & 255) << 4 | data.getFromIndex(index);
+            if (add != null) {
+                id |= add.getFromIndex(index) << 12;
+            }
+            final IBlockState state = Block.BLOCK_STATE_IDS.getByValue(id);
+            return state != null ? state : Blocks.AIR.getDefaultState();
+        }
+    }
+
+}
@@ -10,8 +10,11 @@ import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import org.valkyrienskies.mod.common.physics.BlockPhysicsDetails;
 import org.valkyrienskies.mod.common.ships.ShipData;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
+import org.valkyrienskies.mod.common.util.datastructures.IBlockPosSet;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 public class MoveBlocks {
@@ -45,13 +48,53 @@ public class MoveBlocks {
 
         // If this block is force block, then add it to the activeForcePositions list of the ship.
         if (physicsObject != null && BlockPhysicsDetails.isBlockProvidingForce(newState)) {
-            physicsObject.getShipData().activeForcePositions.add(newPos);
+            physicsObject.getShipData().getActiveForcePositions().add(newPos);
+            physicsObject.getShipData().markDirty();
         }
 
         // Now that we've copied the block to the position, copy the tile entity
         copyTileEntityToPos(world, oldPos, newPos, physicsObject);
     }
 
+    /**
+     * Copies the blocks at all the given positions to those positions plus the offset, writing a whole section at a
+     * time instead of setting every block on its own. The tile entities are copied as well.
+     * <p>
+     * Nothing is sent to the clients yet, so the caller can relight the changed chunks first and then call
+     * {@link SectionBlockWriter#sendUpdates()} on the returned writer.
+     *
+     * @param physicsObject Used when we're using this to copy from world to physics object; should be null when other
+     *                      way around.
+     */
+    public static SectionBlockWriter copyBlocks(World world, IBlockPosSet positions, BlockPos offset,
+                                                @Nullable PhysicsObject physicsObject) {
+        final SectionBlockWriter writer = new SectionBlockWriter(world);
+        final List<BlockPos> tilePositions = new ArrayList<>();
+        positions.forEach((x, y, z) -> {
+            final IBlockState state = world.getChunk(x >> 4, z >> 4).getBlockState(x, y, z);
+            final int newX = x + offset.getX(), newY = y + offset.getY(), newZ = z + offset.getZ();
+            writer.setBlockState(newX, newY, newZ, state);
+
+            // If this block is force block, then add it to the activeForcePositions list of the ship.
+            if (physicsObject != null && BlockPhysicsDetails.isBlockProvidingForce(state)) {
+                physicsObject.getShipData().getActiveForcePositions().add(newX, newY, newZ);
+                physicsObject.getShipData().markDirty();
+            }
+            if (state.getBlock().hasTileEntity(state)) {
+                tilePositions.add(new BlockPos(x, y, z));
+            }
+        });
+        writer.writeBlocks();
+
+        // The tile entities can only be added once their blocks are there
+        for (BlockPos oldPos : tilePositions) {
+            if (oldPos.getY() + offset.getY() >= 0 && oldPos.getY() + offset.getY() <= 255) {
+                copyTileEntityToPos(world, oldPos, oldPos.add(offset), physicsObject);
+            }
+        }
+        return writer;
+    }
+
     public static void copyTileEntityToPos(World world, BlockPos oldPos, BlockPos newPos, PhysicsObject physicsObject) {
         // Make a copy of the tile entity at oldPos to newPos
         TileEntity worldTile = world.getTileEntity(oldPos);
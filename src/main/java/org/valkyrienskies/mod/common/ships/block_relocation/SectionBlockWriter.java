@@ -0,0 +1,171 @@
+package org.valkyrienskies.mod.common.ships.block_relocation;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.network.play.server.SPacketChunkData;
+import net.minecraft.network.play.server.SPacketMultiBlockChange;
+import net.minecraft.network.play.server.SPacketUpdateTileEntity;
+import net.minecraft.server.management.PlayerChunkMapEntry;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.math.BlockPos.MutableBlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import net.minecraftforge.common.ForgeModContainer;
+import org.valkyrienskies.mod.common.util.datastructures.ITerrainOctreeProvider;
+
+/**
+ * Sets many block states at once, without any block updates. Used to move whole ships in and out of the world.
+ * <p>
+ * The block states are queued with {@link #setBlockState(int, int, int, IBlockState)} and grouped by 16x16x16
+ * section. {@link #writeBlocks()} then writes every section in one go, so the octrees of each section are rebuilt
+ * once instead of after every block. {@link #sendUpdates()} sends one packet per chunk to the players watching it,
+ * instead of queueing a block update for every block.
+ */
+public class SectionBlockWriter {
+
+    private final World world;
+    // The queued block states of every section, by chunk
+    private final Map<Long, SectionWrite[]> queuedWrites = new LinkedHashMap<>();
+    // The chunks that were written to, and the bit mask of the sections that were written in each of them
+    private final Map<Long, ChunkUpdate> chunkUpdates = new LinkedHashMap<>();
+
+    public SectionBlockWriter(World world) {
+        this.world = world;
+    }
+
+    /**
+     * Queues a block state to be written by {@link #writeBlocks()}. Positions outside of the world are ignored.
+     */
+    public void setBlockState(int x, int y, int z, IBlockState state) {
+        if (y < 0 || y > 255) {
+            return;
+        }
+        final SectionWrite[] sections = queuedWrites
+            .computeIfAbsent(ChunkPos.asLong(x >> 4, z >> 4), k -> new SectionWrite[16]);
+        SectionWrite section = sections[y >> 4];
+        if (section == null) {
+            section = sections[y >> 4] = new SectionWrite();
+        }
+        section.states[(y & 15) << 8 | (z & 15) << 4 | (x & 15)] = state;
+    }
+
+    /**
+     * Writes all the queued block states into the world. Tile entities aren't touched, and only block states that
+     * have a tile entity can have one added afterwards.
+     */
+    public void writeBlocks() {
+        for (Map.Entry<Long, SectionWrite[]> entry : queuedWrites.entrySet()) {
+            final long chunkPos = entry.getKey();
+            final Chunk chunk = world.getChunk((int) chunkPos, (int) (chunkPos >> 32));
+            final ChunkUpdate update = chunkUpdates.computeIfAbsent(chunkPos, k -> new ChunkUpdate());
+            final SectionWrite[] sections = entry.getValue();
+            for (int storageIndex = 0; storageIndex < sections.length; storageIndex++) {
+                final SectionWrite section = sections[storageIndex];
+                if (section == null) {
+                    continue;
+                }
+                if (chunk.storageArrays[storageIndex] == Chunk.NULL_BLOCK_STORAGE) {
+                    chunk.storageArrays[storageIndex] = new ExtendedBlockStorage(storageIndex << 4,
+                        world.provider.hasSkyLight());
+                }
+                final ExtendedBlockStorage storage = chunk.storageArrays[storageIndex];
+                final ITerrainOctreeProvider octrees = (ITerrainOctreeProvider) storage.data;
+                for (int index = 0; index < section.states.length; index++) {
+                    if (section.states[index] != null) {
+                        octrees.setWithoutOctreeUpdate(index, section.states[index]);
+                        update.addBlock(index, storageIndex);
+                    }
+                }
+                octrees.rebuildOctrees();
+                // The block counts are usually updated by ExtendedBlockStorage.set()
+                storage.recalculateRefCounts();
+                update.sectionMask |= 1 << storageIndex;
+            }
+            chunk.markDirty();
+        }
+        queuedWrites.clear();
+    }
+
+    /**
+     * Sends the blocks written so far to the players watching their chunks. Should be called once the tile entities
+     * of the blocks have been added as well, so that they're sent along with the blocks.
+     */
+    public void sendUpdates() {
+        if (!(world instanceof WorldServer)) {
+            return;
+        }
+        final MutableBlockPos pos = new MutableBlockPos();
+        for (Map.Entry<Long, ChunkUpdate> entry : chunkUpdates.entrySet()) {
+            final long chunkPos = entry.getKey();
+            final ChunkUpdate update = entry.getValue();
+            final PlayerChunkMapEntry playerChunkMapEntry = ((WorldServer) world).getPlayerChunkMap()
+                .getEntry((int) chunkPos, (int) (chunkPos >> 32));
+            if (playerChunkMapEntry == null || update.blockCount == 0) {
+                continue;
+            }
+            final Chunk chunk = world.getChunk((int) chunkPos, (int) (chunkPos >> 32));
+            // The same threshold PlayerChunkMapEntry uses to send whole sections instead of single blocks
+            if (update.blockCount >= update.offsets.length) {
+                playerChunkMapEntry.sendPacket(new SPacketChunkData(chunk, update.sectionMask));
+            } else {
+                playerChunkMapEntry.sendPacket(new SPacketMultiBlockChange(update.blockCount, update.offsets, chunk));
+                // The chunk packet has the tile entities in it, but the block change packet doesn't. Send them the
+                // same way PlayerChunkMapEntry.sendBlockEntity() does.
+                for (int i = 0; i < update.blockCount; i++) {
+                    final short offset = update.offsets[i];
+                    pos.setPos(chunk.x << 4 | (offset >> 12 & 15), offset & 255, chunk.z << 4 | (offset >> 8 & 15));
+                    final TileEntity tileEntity = world.getTileEntity(pos);
+                    if (tileEntity != null) {
+                        final SPacketUpdateTileEntity packet = tileEntity.getUpdatePacket();
+                        if (packet != null) {
+                            playerChunkMapEntry.sendPacket(packet);
+                        }
+                    }
+                }
+            }
+            // Only send every block once
+            update.blockCount = 0;
+            update.sectionMask = 0;
+        }
+    }
+
+    /**
+     * @return The chunks that had blocks written into them.
+     */
+    public Set<ChunkPos> getChangedChunks() {
+        final Set<ChunkPos> changedChunks = new LinkedHashSet<>();
+        for (long chunkPos : chunkUpdates.keySet()) {
+            changedChunks.add(new ChunkPos((int) chunkPos, (int) (chunkPos >> 32)));
+        }
+        return changedChunks;
+    }
+
+    private static class SectionWrite {
+
+        // Indexed the same way as BlockStateContainer, null where nothing is written
+        final IBlockState[] states = new IBlockState[4096];
+    }
+
+    private static class ChunkUpdate {
+
+        int sectionMask = 0;
+        int blockCount = 0;
+        // The changed blocks in the format of SPacketMultiBlockChange, only filled until the clumping threshold
+        short[] offsets = new short[ForgeModContainer.clumpingThreshold];
+
+        void addBlock(int index, int storageIndex) {
+            if (blockCount < offsets.length) {
+                final int x = index & 15, z = (index >> 4) & 15, y = (storageIndex << 4) | (index >> 8);
+                offsets[blockCount] = (short) (x << 12 | z << 8 | y);
+            }
+            blockCount++;
+        }
+    }
+
+}
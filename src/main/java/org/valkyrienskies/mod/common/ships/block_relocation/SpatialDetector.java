@@ -7,6 +7,7 @@ import java.util.List;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.BlockPos.MutableBlockPos;
 import net.minecraft.world.ChunkCache;
+import net.minecraft.world.IBlockAccess;
 import net.minecraft.world.World;
 
 /**
@@ -23,7 +24,7 @@ public abstract class SpatialDetector {
     public final TIntHashSet foundSet = new TIntHashSet(250);
     public final BlockPos firstBlock;
     public final MutableBlockPos tempPos = new MutableBlockPos();
-    public final ChunkCache cache;
+    public final IBlockAccess cache;
     public final World worldObj;
     public final int maxSize;
     public final boolean corners;
@@ -32,13 +33,20 @@ public abstract class SpatialDetector {
     public boolean cleanHouse = false;
 
     public SpatialDetector(BlockPos start, World worldIn, int maximum, boolean checkCorners) {
+        this(start, worldIn, new ChunkCache(worldIn, new BlockPos(start.getX() - 128, 0, start.getZ() - 128),
+            new BlockPos(start.getX() + 128, 255, start.getZ() + 128), 0), maximum, checkCorners);
+    }
+
+    /**
+     * Reads the blocks from blockAccess instead of the world, so that detection can run off the game thread.
+     */
+    public SpatialDetector(BlockPos start, World worldIn, IBlockAccess blockAccess, int maximum,
+        boolean checkCorners) {
         firstBlock = start;
         worldObj = worldIn;
         maxSize = maximum;
         corners = checkCorners;
-        BlockPos minPos = new BlockPos(start.getX() - 128, 0, start.getZ() - 128);
-        BlockPos maxPos = new BlockPos(start.getX() + 128, 255, start.getZ() + 128);
-        cache = new ChunkCache(worldIn, minPos, maxPos, 0);
+        cache = blockAccess;
     }
 
     public static int getHashWithRespectTo(int realX, int realY, int realZ, BlockPos start) {
@@ -8,10 +8,13 @@ import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
 import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 import org.valkyrienskies.mod.common.config.VSConfig;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
+import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
+import org.valkyrienskies.mod.common.util.datastructures.ITerrainOctreeProvider;
 
 import javax.annotation.Nonnull;
 import java.util.*;
@@ -63,6 +66,29 @@ public class ClaimedChunkCacheController implements Iterable<Chunk> {
         return claimedChunks[chunkX - chunkBottomX][chunkZ - chunkBottomZ];
     }
 
+    /**
+     * @return The sum of the modification counts of the solid octrees of every cached chunk, which changes whenever a
+     * block of the ship becomes solid or stops being solid. Safe to call from the physics thread, see {@link
+     * IBitOctree#getModificationCount()}.
+     */
+    public int getSolidModificationCount() {
+        int modificationCount = 0;
+        for (Chunk[] chunks : claimedChunks) {
+            for (Chunk chunk : chunks) {
+                if (chunk == null) {
+                    continue;
+                }
+                for (ExtendedBlockStorage storage : chunk.storageArrays) {
+                    if (storage != null) {
+                        modificationCount += ((ITerrainOctreeProvider) storage.data).getSolidOctree()
+                            .getModificationCount();
+                    }
+                }
+            }
+        }
+        return modificationCount;
+    }
+
     /**
      * Retrieves a chunk from cache from its absolute position.
      *
@@ -37,6 +37,17 @@ public class ShipChunkAllocator {
     @Getter
     private int lastChunkZ = CHUNK_Z_START;
 
+    public ShipChunkAllocator() {
+    }
+
+    /**
+     * Creates an allocator that continues allocating after the given chunk.
+     */
+    public ShipChunkAllocator(int lastChunkX, int lastChunkZ) {
+        this.lastChunkX = lastChunkX;
+        this.lastChunkZ = lastChunkZ;
+    }
+
     /**
      * Determines whether or not a chunk is in the shipyard
      * @param chunkX The z position of the chunk
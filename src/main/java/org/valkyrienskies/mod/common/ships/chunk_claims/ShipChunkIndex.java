@@ -0,0 +1,156 @@
+package org.valkyrienskies.mod.common.ships.chunk_claims;
+
+import static org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator.CHUNK_X_START;
+import static org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator.CHUNK_Z_START;
+import static org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator.MAX_CHUNK_LENGTH;
+import static org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator.MAX_CHUNK_RADIUS;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.Nullable;
+import lombok.extern.log4j.Log4j2;
+import net.minecraft.util.math.ChunkPos;
+import org.valkyrienskies.mod.common.ships.ShipData;
+
+/**
+ * Finds the ship that claims a chunk in constant time, without allocating anything.
+ * <p>
+ * {@link ShipChunkAllocator} gives every ship its own square of the shipyard, centered at ({@link
+ * ShipChunkAllocator#CHUNK_X_START}, {@link ShipChunkAllocator#CHUNK_Z_START} + N * {@link
+ * ShipChunkAllocator#MAX_CHUNK_LENGTH}). We call N the claim slot of the ship, and store the ships in an array indexed
+ * by their claim slot. Chunks outside of the shipyard column are rejected by their X coordinate alone.
+ * <p>
+ * Ships whose claims don't fit in a single free claim slot, such as ships from worlds saved by older versions, are
+ * kept in a map by chunk instead. That map is only looked at when it isn't empty.
+ * <p>
+ * Reads are thread safe, writes are synchronized.
+ */
+@Log4j2
+public class ShipChunkIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private volatile AtomicReferenceArray<ShipData> shipsBySlot;
+    // The ships that aren't in shipsBySlot, by every chunk they claim
+    private final Map<Long, ShipData> offGridShipsByChunk = new ConcurrentHashMap<>();
+
+    public ShipChunkIndex() {
+        this.shipsBySlot = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return The claim slot the chunk is in, or -1 if the chunk isn't in the shipyard.
+     */
+    public static int getClaimSlot(int chunkX, int chunkZ) {
+        if (chunkX < CHUNK_X_START - MAX_CHUNK_RADIUS || chunkX > CHUNK_X_START + MAX_CHUNK_RADIUS) {
+            return -1;
+        }
+        final int slot = Math.floorDiv(chunkZ - CHUNK_Z_START + MAX_CHUNK_LENGTH / 2, MAX_CHUNK_LENGTH);
+        return slot < 0 ? -1 : slot;
+    }
+
+    /**
+     * @return The ship whose chunk claim contains the given chunk, or null if there is none.
+     */
+    @Nullable
+    public ShipData getShipFromChunk(int chunkX, int chunkZ) {
+        final ShipData shipData = getShipFromSlot(chunkX, chunkZ);
+        if (shipData != null || offGridShipsByChunk.isEmpty()) {
+            return shipData;
+        }
+        return offGridShipsByChunk.get(ChunkPos.asLong(chunkX, chunkZ));
+    }
+
+    @Nullable
+    private ShipData getShipFromSlot(int chunkX, int chunkZ) {
+        final int slot = getClaimSlot(chunkX, chunkZ);
+        if (slot == -1) {
+            return null;
+        }
+        final AtomicReferenceArray<ShipData> shipsBySlot = this.shipsBySlot;
+        if (slot >= shipsBySlot.length()) {
+            return null;
+        }
+        final ShipData shipData = shipsBySlot.get(slot);
+        if (shipData == null
+            || !shipData.getChunkClaim().getClaimedChunks().contains(ChunkPos.asLong(chunkX, chunkZ))) {
+            return null;
+        }
+        return shipData;
+    }
+
+    public synchronized void add(ShipData shipData) {
+        final int slot = getOnlyClaimSlot(shipData.getChunkClaim());
+        if (slot != -1) {
+            ensureCapacity(slot + 1);
+            final ShipData previous = shipsBySlot.get(slot);
+            if (previous == null || previous.getUuid().equals(shipData.getUuid())) {
+                shipsBySlot.set(slot, shipData);
+                return;
+            }
+        }
+        // Either the claim is off the grid, or another ship already has the slot. Only the chunks that are really
+        // claimed by another ship are left out.
+        ShipData conflictingShip = null;
+        int conflictingChunks = 0;
+        for (long chunkPos : shipData.getChunkClaim().getClaimedChunks()) {
+            final ShipData slotShip = getShipFromSlot((int) chunkPos, (int) (chunkPos >>> 32));
+            final ShipData previous = slotShip != null ? slotShip : offGridShipsByChunk.get(chunkPos);
+            if (previous == null || (slotShip == null && previous.getUuid().equals(shipData.getUuid()))) {
+                // Also replaces older ShipData of the same ship
+                offGridShipsByChunk.put(chunkPos, shipData);
+            } else if (!previous.getUuid().equals(shipData.getUuid())) {
+                conflictingShip = previous;
+                conflictingChunks++;
+            }
+        }
+        if (conflictingShip != null) {
+            log.error("Ship " + shipData.getName() + " claims " + conflictingChunks + " chunks that are already "
+                + "claimed by other ships, such as " + conflictingShip.getName());
+        }
+    }
+
+    public synchronized void remove(ShipData shipData) {
+        final int slot = getOnlyClaimSlot(shipData.getChunkClaim());
+        // Only remove the ship if it's the one in the slot, a newer ShipData with the same UUID may have replaced it
+        if (slot != -1 && slot < shipsBySlot.length() && shipsBySlot.compareAndSet(slot, shipData, null)) {
+            return;
+        }
+        if (!offGridShipsByChunk.isEmpty()) {
+            for (long chunkPos : shipData.getChunkClaim().getClaimedChunks()) {
+                offGridShipsByChunk.remove(chunkPos, shipData);
+            }
+        }
+    }
+
+    /**
+     * @return The claim slot every chunk of the claim is in, or -1 if they aren't all in the same slot.
+     */
+    private static int getOnlyClaimSlot(VSChunkClaim claim) {
+        final ChunkPos centerPos = claim.getCenterPos();
+        final int slot = getClaimSlot(centerPos.x, centerPos.z);
+        if (slot == -1) {
+            return -1;
+        }
+        for (long chunkPos : claim.getClaimedChunks()) {
+            if (getClaimSlot((int) chunkPos, (int) (chunkPos >>> 32)) != slot) {
+                return -1;
+            }
+        }
+        return slot;
+    }
+
+    private void ensureCapacity(int capacity) {
+        final AtomicReferenceArray<ShipData> oldShipsBySlot = this.shipsBySlot;
+        if (capacity <= oldShipsBySlot.length()) {
+            return;
+        }
+        final AtomicReferenceArray<ShipData> newShipsBySlot =
+            new AtomicReferenceArray<>(Math.max(capacity, oldShipsBySlot.length() * 2));
+        for (int i = 0; i < oldShipsBySlot.length(); i++) {
+            newShipsBySlot.set(i, oldShipsBySlot.get(i));
+        }
+        this.shipsBySlot = newShipsBySlot;
+    }
+}
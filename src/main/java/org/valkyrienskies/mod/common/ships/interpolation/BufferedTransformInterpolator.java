@@ -0,0 +1,286 @@
+package org.valkyrienskies.mod.common.ships.interpolation;
+
+import net.minecraft.util.math.AxisAlignedBB;
+import org.joml.Matrix4d;
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+
+import javax.annotation.Nonnull;
+import java.util.function.DoubleSupplier;
+
+/**
+ * An implementation of ITransformInterpolator that keeps the last few received transforms, and shows the ship where it
+ * was a short delay behind the newest one. Because the ship is always between two received transforms, it moves
+ * smoothly even when the packets arrive unevenly or the ship is only sent every few packets.
+ * <p>
+ * The position follows a cubic hermite spline through the received positions, and the rotation is slerped. When no new
+ * transforms arrive the ship keeps moving for at most {@link #MAX_EXTRAPOLATION} seconds, and then stops. Changes to
+ * the delay are spread out by playing the ship back slightly faster or slower, rather than making it jump.
+ * <p>
+ * Nothing is allocated per tick except for the ShipTransform and AxisAlignedBB this returns, because those are
+ * immutable.
+ */
+public class BufferedTransformInterpolator implements ITransformInterpolator {
+
+    private static final int BUFFER_SIZE = 16;
+    // The longest time in seconds the ship moves past the newest received transform
+    private static final double MAX_EXTRAPOLATION = .25;
+    // How fast the estimates of the clock offset and update interval follow new packets
+    private static final double ESTIMATE_ALPHA = .05;
+    // The delay is at least this many update intervals, so there is a newer transform to move towards most of the time
+    private static final double DELAY_UPDATE_INTERVALS = 1.5;
+    // The update interval assumed until two transforms have been received, in seconds
+    private static final double INITIAL_UPDATE_INTERVAL = .05;
+    // If a transform is sent this many seconds before the newest one, the sender must have restarted
+    private static final double RESET_THRESHOLD = 1;
+    // How much faster or slower than real time the ship may be played back while the delay is adjusted
+    private static final double MAX_PLAYBACK_SPEED_CHANGE = .1;
+
+    // Gives the minimum delay in seconds
+    private final DoubleSupplier minimumDelay;
+    // Gives the local time in seconds
+    private final DoubleSupplier clock;
+
+    // The received transforms in a ring buffer, the newest one is at newestIndex
+    private final double[] sendTimes = new double[BUFFER_SIZE];
+    private final ShipTransform[] transforms = new ShipTransform[BUFFER_SIZE];
+    private final AxisAlignedBB[] aabbs = new AxisAlignedBB[BUFFER_SIZE];
+    private final Quaterniond[] rotations = new Quaterniond[BUFFER_SIZE];
+    private int newestIndex = 0;
+    private int count = 0;
+
+    // Estimate of the local time minus the send time of the transforms, biased towards the fastest packets
+    private double clockOffset;
+    // Estimate of the time between received transforms, in seconds
+    private double updateInterval = INITIAL_UPDATE_INTERVAL;
+    // The local time minus the render time. Follows clockOffset plus the delay, but slowly enough that the ship never
+    // jumps when those estimates change.
+    private double playbackOffset;
+    private double lastTickTime = Double.NaN;
+
+    @Nonnull
+    private ShipTransform curTickTransform;
+    @Nonnull
+    private AxisAlignedBB curTickAABB;
+    // The newest received transform and render time the current transform was made for, to skip repeating the work
+    private int lastNewestIndex = -1;
+    private double lastRenderTime = Double.NaN;
+
+    // Objects reused every tick
+    private final Vector3d prevPos = new Vector3d();
+    private final Vector3d fromPos = new Vector3d();
+    private final Vector3d toPos = new Vector3d();
+    private final Vector3d nextPos = new Vector3d();
+    private final Vector3d fromTangent = new Vector3d();
+    private final Vector3d toTangent = new Vector3d();
+    private final Vector3d newPos = new Vector3d();
+    private final Quaterniond newRot = new Quaterniond();
+    private final Matrix4d receivedToCurrent = new Matrix4d();
+    private final Vector3d corner = new Vector3d();
+
+    /**
+     * @param minimumDelay Gives the minimum time in seconds the ship is shown behind the newest received transform.
+     */
+    public BufferedTransformInterpolator(@Nonnull ShipTransform initial, @Nonnull AxisAlignedBB initialAABB,
+                                         DoubleSupplier minimumDelay) {
+        this(initial, initialAABB, minimumDelay, () -> System.nanoTime() / 1e9);
+    }
+
+    BufferedTransformInterpolator(@Nonnull ShipTransform initial, @Nonnull AxisAlignedBB initialAABB,
+                                  DoubleSupplier minimumDelay, DoubleSupplier clock) {
+        this.curTickTransform = initial;
+        this.curTickAABB = initialAABB;
+        this.minimumDelay = minimumDelay;
+        this.clock = clock;
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            rotations[i] = new Quaterniond();
+        }
+    }
+
+    @Override
+    public void onNewTransformPacket(@Nonnull ShipTransform newTransform, @Nonnull AxisAlignedBB newAABB) {
+        // Without a send time, the best we have is the time it was received
+        onNewTransformPacket(newTransform, newAABB, clock.getAsDouble());
+    }
+
+    @Override
+    public void onNewTransformPacket(@Nonnull ShipTransform newTransform, @Nonnull AxisAlignedBB newAABB,
+                                     double sendTime) {
+        if (count > 0 && sendTime <= sendTimes[newestIndex]) {
+            if (sendTime > sendTimes[newestIndex] - RESET_THRESHOLD) {
+                // Arrived out of order, it's too late for this one
+                return;
+            }
+            count = 0;
+            lastTickTime = Double.NaN;
+        }
+
+        final double offset = clock.getAsDouble() - sendTime;
+        if (count == 0) {
+            clockOffset = offset;
+        } else {
+            final double interval = sendTime - sendTimes[newestIndex];
+            updateInterval += (interval - updateInterval) * (count == 1 ? 1 : ESTIMATE_ALPHA);
+            // Packets that took less time than usual are a better estimate of the clock offset
+            clockOffset = Math.min(offset, clockOffset + (offset - clockOffset) * ESTIMATE_ALPHA);
+        }
+
+        newestIndex = (newestIndex + 1) % BUFFER_SIZE;
+        count = Math.min(count + 1, BUFFER_SIZE);
+        sendTimes[newestIndex] = sendTime;
+        transforms[newestIndex] = newTransform;
+        aabbs[newestIndex] = newAABB;
+        newTransform.getSubspaceToGlobal().getNormalizedRotation(rotations[newestIndex]);
+    }
+
+    @Override
+    public void tickTransformInterpolator() {
+        if (count == 0) {
+            return;
+        }
+        final int oldestIndex = getIndex(count - 1);
+        final double now = clock.getAsDouble();
+        final double delay = Math.max(minimumDelay.getAsDouble(), updateInterval * DELAY_UPDATE_INTERVALS);
+        final double targetOffset = clockOffset + delay;
+        if (Double.isNaN(lastTickTime) || Math.abs(targetOffset - playbackOffset) > RESET_THRESHOLD) {
+            playbackOffset = targetOffset;
+        } else {
+            final double maxChange = (now - lastTickTime) * MAX_PLAYBACK_SPEED_CHANGE;
+            playbackOffset += Math.max(-maxChange, Math.min(maxChange, targetOffset - playbackOffset));
+        }
+        lastTickTime = now;
+
+        final double renderTime = Math.min(now - playbackOffset, sendTimes[newestIndex] + MAX_EXTRAPOLATION);
+        if (newestIndex == lastNewestIndex && renderTime == lastRenderTime) {
+            // Nothing changed, which happens when the ship stopped being sent
+            return;
+        }
+        lastNewestIndex = newestIndex;
+        lastRenderTime = renderTime;
+
+        if (count == 1 || renderTime <= sendTimes[oldestIndex]) {
+            // Too early to interpolate, just show the oldest transform
+            curTickTransform = transforms[oldestIndex];
+            curTickAABB = aabbs[oldestIndex];
+            return;
+        }
+
+        if (renderTime >= sendTimes[newestIndex]) {
+            extrapolate(getIndex(1), newestIndex, renderTime);
+        } else {
+            // Find the transforms before and after the render time
+            int age = 1;
+            while (sendTimes[getIndex(age)] > renderTime) {
+                age++;
+            }
+            interpolate(age, renderTime);
+        }
+        updateAABB(newestIndex);
+    }
+
+    @Override
+    @Nonnull
+    public ShipTransform getCurrentTickTransform() {
+        return curTickTransform;
+    }
+
+    @Override
+    @Nonnull
+    public AxisAlignedBB getCurrentAABB() {
+        return curTickAABB;
+    }
+
+    /**
+     * Interpolates between the transform with the given age (0 is the newest) and the one after it.
+     */
+    private void interpolate(int fromAge, double renderTime) {
+        final int from = getIndex(fromAge);
+        final int to = getIndex(fromAge - 1);
+        // Use the neighbours to find the tangents, or the transforms themselves at the ends of the buffer
+        final int prev = fromAge + 1 < count ? getIndex(fromAge + 1) : from;
+        final int next = fromAge - 2 >= 0 ? getIndex(fromAge - 2) : to;
+
+        // The center coord changes when blocks are added, so move every position to the same point of the ship
+        final Vector3dc centerCoord = transforms[to].getCenterCoord();
+        getPosition(prev, centerCoord, prevPos);
+        getPosition(from, centerCoord, fromPos);
+        getPosition(to, centerCoord, toPos);
+        getPosition(next, centerCoord, nextPos);
+        toPos.sub(prevPos, fromTangent).div(sendTimes[to] - sendTimes[prev]);
+        nextPos.sub(fromPos, toTangent).div(sendTimes[next] - sendTimes[from]);
+
+        // Cubic hermite spline, from https://en.wikipedia.org/wiki/Cubic_Hermite_spline
+        final double h = sendTimes[to] - sendTimes[from];
+        final double t = (renderTime - sendTimes[from]) / h;
+        final double t2 = t * t;
+        final double t3 = t2 * t;
+        final double h00 = 2 * t3 - 3 * t2 + 1;
+        final double h10 = t3 - 2 * t2 + t;
+        final double h01 = -2 * t3 + 3 * t2;
+        final double h11 = t3 - t2;
+        newPos.set(fromPos).mul(h00)
+            .fma(h10 * h, fromTangent)
+            .fma(h01, toPos)
+            .fma(h11 * h, toTangent);
+
+        rotations[from].slerp(rotations[to], t, newRot).normalize();
+        curTickTransform = new ShipTransform(newPos.x, newPos.y, newPos.z, newRot, centerCoord);
+    }
+
+    /**
+     * Moves the ship past the newest transform, at the velocity between the last two transforms.
+     */
+    private void extrapolate(int from, int to, double renderTime) {
+        final Vector3dc centerCoord = transforms[to].getCenterCoord();
+        getPosition(from, centerCoord, fromPos);
+        getPosition(to, centerCoord, toPos);
+        final double h = sendTimes[to] - sendTimes[from];
+        final double t = (renderTime - sendTimes[from]) / h;
+
+        toPos.sub(fromPos, newPos).mul(t).add(fromPos);
+        rotations[from].slerp(rotations[to], t, newRot).normalize();
+        curTickTransform = new ShipTransform(newPos.x, newPos.y, newPos.z, newRot, centerCoord);
+    }
+
+    /**
+     * Moves the AABB received with the given transform to the current transform.
+     */
+    private void updateAABB(int index) {
+        curTickTransform.getSubspaceToGlobal().mul(transforms[index].getGlobalToSubspace(), receivedToCurrent);
+        final AxisAlignedBB aabb = aabbs[index];
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < 8; i++) {
+            corner.set((i & 1) == 0 ? aabb.minX : aabb.maxX, (i & 2) == 0 ? aabb.minY : aabb.maxY,
+                (i & 4) == 0 ? aabb.minZ : aabb.maxZ);
+            receivedToCurrent.transformPosition(corner);
+            minX = Math.min(minX, corner.x);
+            minY = Math.min(minY, corner.y);
+            minZ = Math.min(minZ, corner.z);
+            maxX = Math.max(maxX, corner.x);
+            maxY = Math.max(maxY, corner.y);
+            maxZ = Math.max(maxZ, corner.z);
+        }
+        curTickAABB = new AxisAlignedBB(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * Sets dest to where the given point of the ship was in the transform at index.
+     */
+    private void getPosition(int index, Vector3dc shipPoint, Vector3d dest) {
+        final ShipTransform transform = transforms[index];
+        dest.set(shipPoint).sub(transform.getCenterCoord());
+        rotations[index].transform(dest);
+        dest.add(transform.getPosX(), transform.getPosY(), transform.getPosZ());
+    }
+
+    /**
+     * @return The buffer index of the transform received age transforms before the newest one.
+     */
+    private int getIndex(int age) {
+        return Math.floorMod(newestIndex - age, BUFFER_SIZE);
+    }
+
+}
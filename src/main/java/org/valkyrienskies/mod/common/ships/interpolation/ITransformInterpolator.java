@@ -15,6 +15,15 @@ public interface ITransformInterpolator {
      */
     void onNewTransformPacket(@Nonnull ShipTransform newTransform, @Nonnull AxisAlignedBB newAABB);
 
+    /**
+     * Sends the latest transform and AABB to the interpolator, along with the time in seconds the server sent them.
+     * The send times are only meaningful relative to each other.
+     */
+    default void onNewTransformPacket(@Nonnull ShipTransform newTransform, @Nonnull AxisAlignedBB newAABB,
+                                      double sendTime) {
+        onNewTransformPacket(newTransform, newAABB);
+    }
+
     /**
      * Moves the interpolator up 1 tick, moving the current transform closer to the latest transform.
      */
@@ -14,4 +14,11 @@ public interface IPhysicsObjectCenterOfMassProvider {
     @ParametersAreNonnullByDefault
     void onSetBlockState(ShipInertiaData data, BlockPos pos, IBlockState oldState, IBlockState newState);
 
+    /**
+     * Adds the mass change of a block to moments rather than to a ShipInertiaData. For changing many blocks at once,
+     * after which the moments are added with {@link ShipInertiaData#addMoments(InertiaMoments)}.
+     */
+    @ParametersAreNonnullByDefault
+    void onSetBlockState(InertiaMoments moments, int x, int y, int z, IBlockState oldState, IBlockState newState);
+
 }
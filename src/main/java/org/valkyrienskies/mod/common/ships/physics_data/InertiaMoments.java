@@ -0,0 +1,151 @@
+package org.valkyrienskies.mod.common.ships.physics_data;
+
+import org.joml.Matrix3d;
+import org.joml.Matrix3dc;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+
+/**
+ * The sums of m, m * r and m * r * r^T over a set of point masses. Adding or removing mass is just a few additions,
+ * and the center of mass and inertia tensor are only calculated from the sums when they are needed.
+ * <p>
+ * The positions are summed relative to a reference point, which is the first point added. Ship blocks are far from
+ * the origin, so summing their world positions would lose the precision the inertia tensor needs.
+ */
+public class InertiaMoments {
+
+    // The mass of a block is spread over its center and the 8 points INERTIA_OFFSET away on every axis
+    private static final double INERTIA_OFFSET = .4D;
+    private static final double BLOCK_SPREAD = 8.0 / 9.0 * INERTIA_OFFSET * INERTIA_OFFSET;
+
+    private boolean hasReference = false;
+    private double refX, refY, refZ;
+    private double mass;
+    // First moments
+    private double mx, my, mz;
+    // Second moments
+    private double mxx, myy, mzz, mxy, mxz, myz;
+
+    public double getMass() {
+        return mass;
+    }
+
+    /**
+     * Adds (or removes, if the mass is negative) a point mass.
+     */
+    public void addPointMass(double x, double y, double z, double addedMass) {
+        addMass(x, y, z, addedMass, 0);
+    }
+
+    /**
+     * Adds (or removes, if the mass is negative) the mass of the block at the given position.
+     */
+    public void addBlockMass(int x, int y, int z, double addedMass) {
+        addMass(x + .5, y + .5, z + .5, addedMass, BLOCK_SPREAD * addedMass);
+    }
+
+    /**
+     * Adds all the mass of other to this.
+     */
+    public void add(InertiaMoments other) {
+        if (!other.hasReference) {
+            return;
+        }
+        if (!hasReference) {
+            setReference(other.refX, other.refY, other.refZ);
+        }
+        // Move the sums of other to our reference point
+        final double dx = other.refX - refX, dy = other.refY - refY, dz = other.refZ - refZ;
+        final double m = other.mass;
+        mass += m;
+        mx += other.mx + m * dx;
+        my += other.my + m * dy;
+        mz += other.mz + m * dz;
+        mxx += other.mxx + 2 * other.mx * dx + m * dx * dx;
+        myy += other.myy + 2 * other.my * dy + m * dy * dy;
+        mzz += other.mzz + 2 * other.mz * dz + m * dz * dz;
+        mxy += other.mxy + other.mx * dy + other.my * dx + m * dx * dy;
+        mxz += other.mxz + other.mx * dz + other.mz * dx + m * dx * dz;
+        myz += other.myz + other.my * dz + other.mz * dy + m * dy * dz;
+    }
+
+    /**
+     * Replaces the sums with the ones of a body with the given mass, center of mass and inertia tensor.
+     */
+    public void set(double mass, Vector3dc centerOfMass, Matrix3dc inertiaTensor) {
+        clear();
+        if (mass <= 0) {
+            return;
+        }
+        setReference(centerOfMass.x(), centerOfMass.y(), centerOfMass.z());
+        this.mass = mass;
+        // The inertia tensor is trace(C) * I - C, where C is the second moments about the center of mass
+        final double halfTrace = (inertiaTensor.m00() + inertiaTensor.m11() + inertiaTensor.m22()) / 2;
+        mxx = halfTrace - inertiaTensor.m00();
+        myy = halfTrace - inertiaTensor.m11();
+        mzz = halfTrace - inertiaTensor.m22();
+        mxy = -inertiaTensor.m10();
+        mxz = -inertiaTensor.m20();
+        myz = -inertiaTensor.m21();
+    }
+
+    public void clear() {
+        hasReference = false;
+        refX = refY = refZ = 0;
+        mass = 0;
+        mx = my = mz = 0;
+        mxx = myy = mzz = mxy = mxz = myz = 0;
+    }
+
+    /**
+     * Only meaningful if the mass is positive.
+     */
+    public Vector3d getCenterOfMass(Vector3d dest) {
+        return dest.set(refX + mx / mass, refY + my / mass, refZ + mz / mass);
+    }
+
+    /**
+     * The inertia tensor about the center of mass. Only meaningful if the mass is positive.
+     * <p>
+     * Reference http://www.kwon3d.com/theory/moi/triten.html eqs. 13 & 14.
+     */
+    public Matrix3d getInertiaTensor(Matrix3d dest) {
+        // Second moments about the center of mass
+        final double cx = mx / mass, cy = my / mass, cz = mz / mass;
+        final double cxx = mxx - mx * cx;
+        final double cyy = myy - my * cy;
+        final double czz = mzz - mz * cz;
+        final double cxy = mxy - mx * cy;
+        final double cxz = mxz - mx * cz;
+        final double cyz = myz - my * cz;
+        return dest.set(
+            cyy + czz, -cxy, -cxz,
+            -cxy, cxx + czz, -cyz,
+            -cxz, -cyz, cxx + cyy);
+    }
+
+    private void addMass(double x, double y, double z, double addedMass, double spread) {
+        if (!hasReference) {
+            setReference(x, y, z);
+        }
+        final double rx = x - refX, ry = y - refY, rz = z - refZ;
+        mass += addedMass;
+        mx += rx * addedMass;
+        my += ry * addedMass;
+        mz += rz * addedMass;
+        mxx += rx * rx * addedMass + spread;
+        myy += ry * ry * addedMass + spread;
+        mzz += rz * rz * addedMass + spread;
+        mxy += rx * ry * addedMass;
+        mxz += rx * rz * addedMass;
+        myz += ry * rz * addedMass;
+    }
+
+    private void setReference(double x, double y, double z) {
+        hasReference = true;
+        refX = x;
+        refY = y;
+        refZ = z;
+    }
+
+}
@@ -0,0 +1,40 @@
+package org.valkyrienskies.mod.common.ships.physics_data;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.BlockPos;
+import org.valkyrienskies.mod.common.physics.BlockPhysicsDetails;
+
+/**
+ * Adds the mass of blocks to the {@link InertiaMoments} of ships, so a block change costs a few additions instead of
+ * rebuilding the inertia tensor.
+ */
+public class MomentsCenterOfMassProvider implements IPhysicsObjectCenterOfMassProvider {
+
+    @Override
+    public void onSetBlockState(ShipInertiaData inertiaData, BlockPos pos, IBlockState oldState, IBlockState newState) {
+        double deltaMass = getDeltaMass(oldState, newState);
+        if (deltaMass != 0) {
+            inertiaData.addBlockMass(pos.getX(), pos.getY(), pos.getZ(), deltaMass);
+        }
+    }
+
+    @Override
+    public void onSetBlockState(InertiaMoments moments, int x, int y, int z, IBlockState oldState,
+                                IBlockState newState) {
+        double deltaMass = getDeltaMass(oldState, newState);
+        if (deltaMass != 0) {
+            moments.addBlockMass(x, y, z, deltaMass);
+        }
+    }
+
+    private static double getDeltaMass(IBlockState oldState, IBlockState newState) {
+        if (newState.equals(oldState)) {
+            return 0;
+        }
+        double deltaMass = BlockPhysicsDetails.getMassFromState(newState)
+                - BlockPhysicsDetails.getMassFromState(oldState);
+        // Don't change anything if the mass is the same
+        return Math.abs(deltaMass) > .00001 ? deltaMass : 0;
+    }
+
+}
@@ -1,6 +1,8 @@
 package org.valkyrienskies.mod.common.ships.physics_data;
 
-import lombok.Data;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import org.joml.Matrix3d;
 import org.joml.Matrix3dc;
 import org.joml.Vector3d;
@@ -10,8 +12,13 @@ import javax.annotation.Nonnull;
 
 /**
  * Stores the data of the ship mas and inertia matrix.
+ * <p>
+ * Block changes are added to {@link InertiaMoments}, and the mass, center of mass and inertia matrix are only
+ * calculated from them the next time they're read. The getters are annotated with {@link JsonProperty} so that
+ * serializing never writes out of date values.
  */
-@Data
+@EqualsAndHashCode
+@ToString(of = {"gameTickMass", "gameMoITensor", "gameTickCenterOfMass"})
 public class ShipInertiaData {
 
     double gameTickMass = 0;
@@ -19,4 +26,92 @@ public class ShipInertiaData {
     Matrix3dc gameMoITensor = new Matrix3d();
     @Nonnull
     Vector3dc gameTickCenterOfMass = new Vector3d();
+
+    private final transient InertiaMoments moments = new InertiaMoments();
+    // Whether moments holds the same mass as the fields above
+    private transient boolean momentsValid = false;
+    // Whether moments has changed since the fields above were calculated
+    private transient boolean fieldsOutdated = false;
+
+    /**
+     * Adds (or removes, if the mass is negative) the mass of the block at the given position.
+     */
+    public synchronized void addBlockMass(int x, int y, int z, double addedMass) {
+        loadMoments();
+        moments.addBlockMass(x, y, z, addedMass);
+        fieldsOutdated = true;
+    }
+
+    /**
+     * Adds all the mass of the given moments at once, for when many blocks are changed together.
+     */
+    public synchronized void addMoments(InertiaMoments added) {
+        loadMoments();
+        moments.add(added);
+        fieldsOutdated = true;
+    }
+
+    @JsonProperty
+    public synchronized double getGameTickMass() {
+        updateFields();
+        return gameTickMass;
+    }
+
+    @Nonnull
+    @JsonProperty
+    public synchronized Matrix3dc getGameMoITensor() {
+        updateFields();
+        return gameMoITensor;
+    }
+
+    @Nonnull
+    @JsonProperty
+    public synchronized Vector3dc getGameTickCenterOfMass() {
+        updateFields();
+        return gameTickCenterOfMass;
+    }
+
+    public synchronized void setGameTickMass(double gameTickMass) {
+        updateFields();
+        this.gameTickMass = gameTickMass;
+        momentsValid = false;
+    }
+
+    public synchronized void setGameMoITensor(@Nonnull Matrix3dc gameMoITensor) {
+        updateFields();
+        this.gameMoITensor = gameMoITensor;
+        momentsValid = false;
+    }
+
+    public synchronized void setGameTickCenterOfMass(@Nonnull Vector3dc gameTickCenterOfMass) {
+        updateFields();
+        this.gameTickCenterOfMass = gameTickCenterOfMass;
+        momentsValid = false;
+    }
+
+    private void loadMoments() {
+        if (!momentsValid) {
+            moments.set(gameTickMass, gameTickCenterOfMass, gameMoITensor);
+            momentsValid = true;
+        }
+    }
+
+    private void updateFields() {
+        if (!fieldsOutdated) {
+            return;
+        }
+        fieldsOutdated = false;
+        // Do this to avoid a mass of zero, which runs the risk of dividing by zero and
+        // crashing the program.
+        if (moments.getMass() < .0001) {
+            moments.clear();
+            gameTickMass = 0;
+            gameMoITensor = new Matrix3d().zero();
+            return;
+        }
+        gameTickMass = moments.getMass();
+        // New objects every time, the physics thread may still be using the old ones
+        gameTickCenterOfMass = moments.getCenterOfMass(new Vector3d());
+        gameMoITensor = moments.getInertiaTensor(new Matrix3d());
+    }
 }
@@ -49,6 +49,14 @@ public interface IPhysObjectWorld {
     @Nonnull
     ImmutableList<PhysicsObject> getAllLoadedThreadSafe();
 
+    /**
+     * Can be called from any thread. The snapshot is only replaced when the loaded ships change, and can find ships by
+     * UUID or by chunk without locking. Like {@link #getAllLoadedThreadSafe()}, please do not modify the PhysicsObjects
+     * on other threads.
+     */
+    @Nonnull
+    LoadedShipsSnapshot getLoadedShipsThreadSafe();
+
     /**
      * Queues a ship load, must be called on the game thread.
      */
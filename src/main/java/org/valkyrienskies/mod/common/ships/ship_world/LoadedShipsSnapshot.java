@@ -0,0 +1,125 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import lombok.Getter;
+import net.minecraft.util.math.ChunkPos;
+import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkIndex;
+import org.valkyrienskies.mod.common.ships.chunk_claims.VSChunkClaim;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * An immutable copy of the PhysicsObjects loaded in a world, with lookup tables to find them by UUID and by chunk
+ * in constant time. Like in {@link ShipChunkIndex}, ships whose claims don't fit in a single free claim slot are
+ * searched one by one, only when there are any. The ship managers publish a new snapshot whenever the loaded ships
+ * change, so any thread can read the latest snapshot without locking.
+ * <p>
+ * Although the snapshot is immutable the PhysicsObjects are not, so please do not modify them on other threads.
+ */
+public final class LoadedShipsSnapshot {
+
+    public static final LoadedShipsSnapshot EMPTY = new LoadedShipsSnapshot(ImmutableList.of(), 0);
+
+    /**
+     * Incremented every time a new snapshot is published, so threads can cheaply check if the loaded ships changed.
+     */
+    @Getter
+    private final long version;
+    @Getter
+    private final ImmutableList<PhysicsObject> ships;
+    private final ImmutableMap<UUID, PhysicsObject> shipsByUUID;
+    // The ships indexed by their claim slot, see ShipChunkIndex
+    private final PhysicsObject[] shipsByClaimSlot;
+    // The ships that aren't in shipsByClaimSlot, because their claim doesn't fit in one slot or the slot was taken
+    private final ImmutableList<PhysicsObject> offGridShips;
+
+    private LoadedShipsSnapshot(ImmutableList<PhysicsObject> ships, long version) {
+        this.version = version;
+        this.ships = ships;
+        final ImmutableMap.Builder<UUID, PhysicsObject> shipsByUUIDBuilder = ImmutableMap.builder();
+        int maxClaimSlot = -1;
+        for (PhysicsObject ship : ships) {
+            shipsByUUIDBuilder.put(ship.getUuid(), ship);
+            maxClaimSlot = Math.max(maxClaimSlot, getClaimSlot(ship));
+        }
+        this.shipsByUUID = shipsByUUIDBuilder.build();
+        this.shipsByClaimSlot = new PhysicsObject[maxClaimSlot + 1];
+        final ImmutableList.Builder<PhysicsObject> offGridShipsBuilder = ImmutableList.builder();
+        for (PhysicsObject ship : ships) {
+            final int claimSlot = getClaimSlot(ship);
+            if (claimSlot != -1 && shipsByClaimSlot[claimSlot] == null) {
+                shipsByClaimSlot[claimSlot] = ship;
+            } else {
+                offGridShipsBuilder.add(ship);
+            }
+        }
+        this.offGridShips = offGridShipsBuilder.build();
+    }
+
+    /**
+     * @return A snapshot of the given ships, with a version newer than this one.
+     */
+    public LoadedShipsSnapshot withShips(@Nonnull Collection<PhysicsObject> ships) {
+        return new LoadedShipsSnapshot(ImmutableList.copyOf(ships), version + 1);
+    }
+
+    /**
+     * @return Null if there isn't a loaded ship with the given UUID.
+     */
+    @Nullable
+    public PhysicsObject getShip(@Nonnull UUID shipID) {
+        return shipsByUUID.get(shipID);
+    }
+
+    /**
+     * @return Null if the chunk isn't part of the chunk claim of a loaded ship.
+     */
+    @Nullable
+    public PhysicsObject getShipManagingChunk(int chunkX, int chunkZ) {
+        final PhysicsObject ship = getShipFromClaimSlot(chunkX, chunkZ);
+        if (ship != null || offGridShips.isEmpty()) {
+            return ship;
+        }
+        for (PhysicsObject offGridShip : offGridShips) {
+            if (offGridShip.getChunkClaim().containsChunk(chunkX, chunkZ)) {
+                return offGridShip;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private PhysicsObject getShipFromClaimSlot(int chunkX, int chunkZ) {
+        final int claimSlot = ShipChunkIndex.getClaimSlot(chunkX, chunkZ);
+        if (claimSlot == -1 || claimSlot >= shipsByClaimSlot.length) {
+            return null;
+        }
+        final PhysicsObject ship = shipsByClaimSlot[claimSlot];
+        if (ship == null || !ship.getChunkClaim().containsChunk(chunkX, chunkZ)) {
+            return null;
+        }
+        return ship;
+    }
+
+    /**
+     * @return The claim slot every chunk of the claim of the ship is in, or -1 if they aren't all in the same slot.
+     */
+    private static int getClaimSlot(PhysicsObject ship) {
+        final VSChunkClaim claim = ship.getChunkClaim();
+        final ChunkPos centerPos = claim.getCenterPos();
+        final int claimSlot = ShipChunkIndex.getClaimSlot(centerPos.x, centerPos.z);
+        if (claimSlot == -1) {
+            return -1;
+        }
+        for (long chunkPos : claim.getClaimedChunks()) {
+            if (ShipChunkIndex.getClaimSlot((int) chunkPos, (int) (chunkPos >>> 32)) != claimSlot) {
+                return -1;
+            }
+        }
+        return claimSlot;
+    }
+}
@@ -1,5 +1,6 @@
 package org.valkyrienskies.mod.common.ships.ship_world;
 
+import com.google.common.collect.ImmutableList;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Delegate;
@@ -9,7 +10,6 @@ import net.minecraft.network.play.server.SPacketUnloadChunk;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.BlockPos.MutableBlockPos;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.ChunkCache;
@@ -23,14 +23,16 @@ import org.joml.Vector3d;
 import org.joml.Vector3dc;
 import org.valkyrienskies.mod.client.render.PhysObjectRenderManager;
 import org.valkyrienskies.mod.common.collision.Polygon;
+import org.valkyrienskies.mod.common.config.VSConfig;
 import org.valkyrienskies.mod.common.physics.IPhysicsBlockController;
 import org.valkyrienskies.mod.common.physics.PhysicsCalculations;
 import org.valkyrienskies.mod.common.ships.ShipData;
 import org.valkyrienskies.mod.common.ships.block_relocation.MoveBlocks;
+import org.valkyrienskies.mod.common.ships.block_relocation.SectionBlockWriter;
 import org.valkyrienskies.mod.common.ships.chunk_claims.ClaimedChunkCacheController;
 import org.valkyrienskies.mod.common.ships.chunk_claims.SurroundingChunkCacheController;
+import org.valkyrienskies.mod.common.ships.interpolation.BufferedTransformInterpolator;
 import org.valkyrienskies.mod.common.ships.interpolation.ITransformInterpolator;
-import org.valkyrienskies.mod.common.ships.interpolation.SimpleEMATransformInterpolator;
 import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
 import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransformationManager;
 import valkyrienwarfare.api.IPhysicsEntity;
@@ -40,7 +42,6 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -59,6 +60,11 @@ public class PhysicsObject implements IPhysicsEntity {
     // region Fields
     @Getter
     private final List<EntityPlayerMP> watchingPlayers;
+    /**
+     * A copy of watchingPlayers that can be used from any thread, like the physics thread.
+     */
+    @Getter
+    private volatile ImmutableList<EntityPlayerMP> watchingPlayersThreadSafe;
     private final Set<IPhysicsBlockController> physicsControllers;
     private final Set<IPhysicsBlockController> physicsControllersImmutable;
     @Getter
@@ -145,6 +151,7 @@ public class PhysicsObject implements IPhysicsEntity {
         this.shipData = initial;
         this.referenceBlockPos = getShipData().getChunkClaim().getRegionCenter();
         this.watchingPlayers = new ArrayList<>();
+        this.watchingPlayersThreadSafe = ImmutableList.of();
         this.physicsControllers = ConcurrentHashMap.newKeySet();
         this.physicsControllersImmutable = Collections.unmodifiableSet(this.physicsControllers);
         this.claimedChunkCache = new ClaimedChunkCacheController(this);
@@ -161,7 +168,8 @@ public class PhysicsObject implements IPhysicsEntity {
         // Note how this is last.
         if (world.isRemote) {
             this.shipRenderer = new PhysObjectRenderManager(this, referenceBlockPos);
-            this.transformInterpolator = new SimpleEMATransformInterpolator(initial.getShipTransform(), initial.getShipBB(), .5);
+            this.transformInterpolator = new BufferedTransformInterpolator(initial.getShipTransform(),
+                initial.getShipBB(), () -> VSConfig.shipInterpolationDelay);
         } else {
             this.shipRenderer = null;
             this.getShipTransformationManager()
@@ -277,12 +285,11 @@ public class PhysicsObject implements IPhysicsEntity {
             // onPlayerUntracking(wachingPlayer);
         }
         getWatchingPlayers().clear();
+        updateWatchingPlayersThreadSafe();
 
         // Finally, copy all the blocks from the ship to the world
         if (!getBlockPositions().isEmpty()) {
             if (deconstructState.copyBlocks) {
-                MutableBlockPos newPos = new MutableBlockPos();
-
                 ShipTransform currentTransform = getShipTransformationManager().getCurrentTickTransform();
                 Vector3dc position = new Vector3d(currentTransform.getPosX(), currentTransform.getPosY(),
                         currentTransform.getPosZ());
@@ -292,30 +299,17 @@ public class PhysicsObject implements IPhysicsEntity {
                         Math.round(getCenterCoord().y() - position.y()),
                         Math.round(getCenterCoord().z() - position.z()));
 
-                for (BlockPos oldPos : this.getBlockPositions()) {
-                    newPos.setPos(oldPos.getX() - centerDifference.getX(),
-                            oldPos.getY() - centerDifference.getY(), oldPos.getZ() - centerDifference.getZ());
-                    MoveBlocks.copyBlockToPos(getWorld(), oldPos, newPos, null);
-                }
+                SectionBlockWriter blockWriter = MoveBlocks.copyBlocks(getWorld(), getBlockPositions(),
+                        BlockPos.ORIGIN.subtract(centerDifference), null);
 
                 // Then relight the chunks we just copied the blocks to
-                {
-                    Set<Long> chunksRelit = new HashSet<>();
-                    for (BlockPos changedPos : this.getBlockPositions()) {
-                        int changedChunkX = (changedPos.getX() - centerDifference.getX()) >> 4;
-                        int changedChunkZ = (changedPos.getZ() - centerDifference.getZ()) >> 4;
-                        long changedChunkPos = ChunkPos.asLong(changedChunkX, changedChunkZ);
-
-                        if (chunksRelit.contains(changedChunkPos)) {
-                            continue;
-                        }
-                        final Chunk chunk = world.getChunk(changedChunkX, changedChunkZ);
-                        chunk.generateSkylightMap();
-                        chunk.checkLight();
-                        chunk.markDirty();
-                        chunksRelit.add(changedChunkPos);
-                    }
+                for (ChunkPos changedChunkPos : blockWriter.getChangedChunks()) {
+                    final Chunk chunk = world.getChunk(changedChunkPos.x, changedChunkPos.z);
+                    chunk.generateSkylightMap();
+                    chunk.checkLight();
+                    chunk.markDirty();
                 }
+                blockWriter.sendUpdates();
             }
 
             // Just delete the tile entities in ship to prevent any dupe bugs.
@@ -357,6 +351,22 @@ public class PhysicsObject implements IPhysicsEntity {
         return claimedChunkCache.getChunkAt(chunkX, chunkZ);
     }
 
+    /**
+     * @see ClaimedChunkCacheController#getSolidModificationCount()
+     */
+    public int getSolidModificationCount() {
+        return claimedChunkCache.getSolidModificationCount();
+    }
+
+    /**
+     * Updates watchingPlayersThreadSafe to match watchingPlayers. Only call this from the game thread.
+     */
+    void updateWatchingPlayersThreadSafe() {
+        if (!watchingPlayersThreadSafe.equals(watchingPlayers)) {
+            watchingPlayersThreadSafe = ImmutableList.copyOf(watchingPlayers);
+        }
+    }
+
     public AxisAlignedBB getShipBoundingBox() {
         return getShipData().getShipBB();
     }
@@ -367,6 +377,7 @@ public class PhysicsObject implements IPhysicsEntity {
 
     void unload() {
         watchingPlayers.clear();
+        updateWatchingPlayersThreadSafe();
         if (!getWorld().isRemote) {
             ChunkProviderServer provider = (ChunkProviderServer) getWorld().getChunkProvider();
             for (ChunkPos chunkPos : getChunkClaim()) {
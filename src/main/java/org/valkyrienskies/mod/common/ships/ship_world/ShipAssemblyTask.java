@@ -0,0 +1,460 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import gnu.trove.iterator.TIntIterator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.init.Blocks;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.BlockPos.MutableBlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.text.TextComponentString;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import net.minecraft.world.gen.ChunkProviderServer;
+import org.valkyrienskies.mod.common.config.VSConfig;
+import org.valkyrienskies.mod.common.physics.BlockPhysicsDetails;
+import org.valkyrienskies.mod.common.ships.ShipData;
+import org.valkyrienskies.mod.common.ships.block_relocation.BlockFinder;
+import org.valkyrienskies.mod.common.ships.block_relocation.BlockStateSnapshot;
+import org.valkyrienskies.mod.common.ships.block_relocation.IRelocationAwareTile;
+import org.valkyrienskies.mod.common.ships.block_relocation.SectionBlockWriter;
+import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetector;
+import org.valkyrienskies.mod.common.ships.physics_data.IPhysicsObjectCenterOfMassProvider;
+import org.valkyrienskies.mod.common.ships.physics_data.InertiaMoments;
+import org.valkyrienskies.mod.common.ships.physics_data.MomentsCenterOfMassProvider;
+import org.valkyrienskies.mod.common.util.datastructures.ITerrainOctreeProvider;
+
+/**
+ * Assembles a ship from the blocks around a physics infuser over several ticks, so that large ships don't freeze the
+ * server. Call {@link #tick(long)} every tick until {@link #isDone()}.
+ * <p>
+ * The stages are:
+ * <ol>
+ *     <li>Copy the chunks around the physics infuser into a {@link BlockStateSnapshot}, a few every tick.</li>
+ *     <li>Detect the ship blocks and build the contents of the ship chunks from the snapshot, on a background
+ *     thread.</li>
+ *     <li>Put the ship chunks into the world, a few every tick.</li>
+ *     <li>Move the tile entities, remove the blocks from the world and add the ship, all in one tick. The world may
+ *     have changed since the snapshot, so every block is checked again. And doing it in one tick means that the
+ *     world is never saved with only some of the blocks removed.</li>
+ *     <li>Relight the chunks the ship was taken from, a few every tick, and then send them to the players.</li>
+ * </ol>
+ */
+@Log4j2
+public class ShipAssemblyTask {
+
+    // One thread for all worlds, ships are rarely assembled at the same time
+    private static final ExecutorService ASSEMBLY_THREAD = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("VS Ship Assembly").setDaemon(true).build());
+
+    // How far the ship blocks can be from the physics infuser, the same as the ChunkCache of SpatialDetector
+    private static final int DETECTION_RADIUS = 128;
+
+    // How many chunks are claimed in each direction from the center of the ship.
+    private static final int CLAIM_RADIUS = 7;
+
+    private enum Stage {
+        CAPTURING, DETECTING, PREPARING, COMMITTING, RELIGHTING, DONE
+    }
+
+    private final WorldServer world;
+    @Getter
+    private final ShipData shipData;
+    private final BlockPos physicsInfuserPos;
+    private final BlockFinder.BlockFinderType blockFinderType;
+    @Nullable
+    private final EntityPlayerMP creator;
+    // Adds the ship to the world once its blocks have been moved
+    private final Consumer<ShipData> onAssembled;
+    private final BlockPos centerDifference;
+    private final IPhysicsObjectCenterOfMassProvider centerOfMassProvider = new MomentsCenterOfMassProvider();
+
+    private Stage stage = Stage.CAPTURING;
+    // The chunks that are being worked on by the current stage
+    private final List<ChunkPos> chunks = new ArrayList<>();
+    private int nextChunk = 0;
+    private final BlockStateSnapshot snapshot;
+    @Nullable
+    private CompletableFuture<AssemblyPlan> planFuture;
+    @Nullable
+    private AssemblyPlan plan;
+    // Holds the block changes of the commit until the chunks they were made in have been relit
+    @Nullable
+    private SectionBlockWriter blockWriter;
+    // The last progress percentage shown to the creator
+    private int shownProgress = -1;
+
+    public ShipAssemblyTask(WorldServer world, ShipData shipData, BlockPos physicsInfuserPos,
+                            BlockFinder.BlockFinderType blockFinderType, @Nullable EntityPlayerMP creator,
+                            Consumer<ShipData> onAssembled) {
+        this.world = world;
+        this.shipData = shipData;
+        this.physicsInfuserPos = physicsInfuserPos;
+        this.blockFinderType = blockFinderType;
+        this.creator = creator;
+        this.onAssembled = onAssembled;
+        this.snapshot = new BlockStateSnapshot(world.getWorldType());
+
+        // TEMP CODE
+        // Eventually want to create mechanisms that control how many chunks are allocated to a ship
+        // But for now, lets just give them a bunch of chunks.
+        ChunkPos centerPos = shipData.getChunkClaim().getCenterPos();
+        for (int chunkX = -CLAIM_RADIUS; chunkX <= CLAIM_RADIUS; chunkX++) {
+            for (int chunkZ = -CLAIM_RADIUS; chunkZ <= CLAIM_RADIUS; chunkZ++) {
+                shipData.getChunkClaim().addChunkClaim(centerPos.x + chunkX, centerPos.z + chunkZ);
+            }
+        }
+        this.centerDifference = shipData.getChunkClaim().getRegionCenter().subtract(physicsInfuserPos);
+
+        for (int chunkX = (physicsInfuserPos.getX() - DETECTION_RADIUS) >> 4;
+             chunkX <= (physicsInfuserPos.getX() + DETECTION_RADIUS) >> 4; chunkX++) {
+            for (int chunkZ = (physicsInfuserPos.getZ() - DETECTION_RADIUS) >> 4;
+                 chunkZ <= (physicsInfuserPos.getZ() + DETECTION_RADIUS) >> 4; chunkZ++) {
+                chunks.add(new ChunkPos(chunkX, chunkZ));
+            }
+        }
+
+        if (VSConfig.showAnnoyingDebugOutput) {
+            System.out.println("Attempting to spawn " + shipData + " on the thread "
+                + Thread.currentThread().getName());
+        }
+    }
+
+    public boolean isDone() {
+        return stage == Stage.DONE;
+    }
+
+    /**
+     * Does as much work as possible until System.nanoTime() passes the deadline. At least a little work is always
+     * done, so that every task progresses even when others used up the time.
+     */
+    public void tick(long deadlineNanos) {
+        switch (stage) {
+            case CAPTURING:
+                captureChunks(deadlineNanos);
+                break;
+            case DETECTING:
+                if (planFuture.isDone()) {
+                    onPlanCreated();
+                }
+                break;
+            case PREPARING:
+                prepareShipChunks(deadlineNanos);
+                break;
+            case COMMITTING:
+                commit();
+                break;
+            case RELIGHTING:
+                relightChunks(deadlineNanos);
+                break;
+            case DONE:
+                break;
+        }
+    }
+
+    /**
+     * Stops the assembly, which leaves the world as it was if the blocks haven't been moved yet.
+     */
+    public void cancel() {
+        if (planFuture != null) {
+            planFuture.cancel(false);
+        }
+        if (blockWriter != null) {
+            // The blocks have already been moved, the clients have to know even if the light isn't right yet
+            blockWriter.sendUpdates();
+            blockWriter = null;
+        }
+        stage = Stage.DONE;
+    }
+
+    private void captureChunks(long deadlineNanos) {
+        final ChunkProviderServer provider = world.getChunkProvider();
+        do {
+            final ChunkPos pos = chunks.get(nextChunk++);
+            // Don't load any chunks, ships can't be built in unloaded chunks anyways
+            final Chunk chunk = provider.getLoadedChunk(pos.x, pos.z);
+            if (chunk != null) {
+                snapshot.captureChunk(chunk);
+            }
+        } while (nextChunk < chunks.size() && System.nanoTime() < deadlineNanos);
+
+        if (nextChunk < chunks.size()) {
+            showProgress("Scanning blocks", nextChunk, chunks.size());
+            return;
+        }
+        showProgress("Detecting blocks", 0, 1);
+        planFuture = CompletableFuture.supplyAsync(this::createPlan, ASSEMBLY_THREAD);
+        stage = Stage.DETECTING;
+    }
+
+    private void onPlanCreated() {
+        try {
+            plan = planFuture.join();
+        } catch (CompletionException e) {
+            log.error("Failed to assemble the ship " + shipData, e);
+            fail("Ship construction failed, see the server log for details.");
+            return;
+        }
+        if (plan == null) {
+            System.err.println("Ship too big or bedrock detected!");
+            fail("Ship construction canceled because its exceeding the ship size limit; "
+                + "or because it's attached to bedrock. "
+                + "Raise it with /physsettings maxshipsize [number]");
+            return;
+        }
+        chunks.clear();
+        shipData.getChunkClaim().forEach(chunks::add);
+        nextChunk = 0;
+        stage = Stage.PREPARING;
+    }
+
+    /**
+     * Runs on the assembly thread, and only reads the snapshot.
+     *
+     * @return Null if the ship is too big or is attached to bedrock.
+     */
+    @Nullable
+    private AssemblyPlan createPlan() {
+        final SpatialDetector detector = BlockFinder.getBlockFinderFor(
+            blockFinderType,
+            physicsInfuserPos,
+            world,
+            snapshot,
+            VSConfig.maxDetectedShipSize + 1,
+            true
+        );
+        if (detector.foundSet.size() > VSConfig.maxDetectedShipSize || detector.cleanHouse) {
+            return null;
+        }
+
+        final AssemblyPlan plan = new AssemblyPlan(detector.foundSet.size());
+        final MutableBlockPos srcPos = new MutableBlockPos();
+        final MutableBlockPos pastePos = new MutableBlockPos();
+        final TIntIterator blocksIterator = detector.foundSet.iterator();
+        while (blocksIterator.hasNext()) {
+            SpatialDetector.setPosWithRespectTo(blocksIterator.next(), detector.firstBlock, srcPos);
+            pastePos.setPos(srcPos.getX() + centerDifference.getX(), srcPos.getY() + centerDifference.getY(),
+                srcPos.getZ() + centerDifference.getZ());
+            // Leave the blocks that don't fit into the ship chunks in the world
+            if (pastePos.getY() < 0 || pastePos.getY() > 255 || !shipData.getChunkClaim().containsBlock(pastePos)) {
+                continue;
+            }
+            final IBlockState state = snapshot.getBlockState(srcPos);
+            plan.addBlock(srcPos, state);
+
+            // Then paste that IBlockState into the new ship chunk
+            final ExtendedBlockStorage[] storageArrays = plan.shipChunkStorage
+                .computeIfAbsent(ChunkPos.asLong(pastePos.getX() >> 4, pastePos.getZ() >> 4),
+                    k -> new ExtendedBlockStorage[16]);
+            final int storageIndex = pastePos.getY() >> 4;
+            if (storageArrays[storageIndex] == null) {
+                storageArrays[storageIndex] = new ExtendedBlockStorage(storageIndex << 4, true);
+            }
+            // The octrees are rebuilt once every section is filled
+            ((ITerrainOctreeProvider) storageArrays[storageIndex].data).setWithoutOctreeUpdate(
+                (pastePos.getY() & 15) << 8 | (pastePos.getZ() & 15) << 4 | (pastePos.getX() & 15), state);
+
+            // Nothing else can see the ship yet, so its data can be changed from this thread
+            shipData.getBlockPositions().add(pastePos.getX(), pastePos.getY(), pastePos.getZ());
+            if (BlockPhysicsDetails.isBlockProvidingForce(state)) {
+                shipData.getActiveForcePositions().add(pastePos);
+            }
+            centerOfMassProvider.onSetBlockState(plan.moments, pastePos.getX(), pastePos.getY(), pastePos.getZ(),
+                Blocks.AIR.getDefaultState(), state);
+        }
+        for (ExtendedBlockStorage[] storageArrays : plan.shipChunkStorage.values()) {
+            for (ExtendedBlockStorage storage : storageArrays) {
+                if (storage != null) {
+                    ((ITerrainOctreeProvider) storage.data).rebuildOctrees();
+                    storage.recalculateRefCounts();
+                }
+            }
+        }
+        return plan;
+    }
+
+    private void prepareShipChunks(long deadlineNanos) {
+        final ChunkProviderServer provider = world.getChunkProvider();
+        do {
+            final ChunkPos pos = chunks.get(nextChunk++);
+            final Chunk chunk = new Chunk(world, pos.x, pos.z);
+            final ExtendedBlockStorage[] storageArrays = plan.shipChunkStorage.get(ChunkPos.asLong(pos.x, pos.z));
+            if (storageArrays != null) {
+                System.arraycopy(storageArrays, 0, chunk.storageArrays, 0, storageArrays.length);
+                chunk.generateSkylightMap();
+            }
+            provider.loadedChunks.put(ChunkPos.asLong(pos.x, pos.z), chunk);
+            chunk.onLoad();
+            chunk.checkLight();
+            chunk.markDirty();
+        } while (nextChunk < chunks.size() && System.nanoTime() < deadlineNanos);
+
+        if (nextChunk < chunks.size()) {
+            showProgress("Building ship", nextChunk, chunks.size());
+            return;
+        }
+        stage = Stage.COMMITTING;
+    }
+
+    private void commit() {
+        final MutableBlockPos srcPos = new MutableBlockPos();
+        final MutableBlockPos pastePos = new MutableBlockPos();
+        blockWriter = new SectionBlockWriter(world);
+        for (int i = 0; i < plan.blockCount; i++) {
+            srcPos.setPos(plan.positions[i * 3], plan.positions[i * 3 + 1], plan.positions[i * 3 + 2]);
+            pastePos.setPos(srcPos.getX() + centerDifference.getX(), srcPos.getY() + centerDifference.getY(),
+                srcPos.getZ() + centerDifference.getZ());
+
+            final Chunk srcChunk = world.getChunk(srcPos);
+            final IBlockState srcState = srcChunk.getBlockState(srcPos);
+            if (srcState != plan.states[i]) {
+                // The block changed after the snapshot was taken
+                onBlockChanged(pastePos, plan.states[i], srcState);
+            }
+            if (srcState == Blocks.AIR.getDefaultState()) {
+                continue;
+            }
+
+            // Copy the TileEntity (if there is one)
+            final TileEntity srcTile = world.getTileEntity(srcPos);
+            if (srcTile != null) {
+                final TileEntity pasteTile;
+                if (srcTile instanceof IRelocationAwareTile) {
+                    pasteTile = ((IRelocationAwareTile) srcTile).createRelocatedTile(pastePos.toImmutable(), shipData);
+                } else {
+                    NBTTagCompound tileEntNBT = srcTile.writeToNBT(new NBTTagCompound());
+                    // Change the block position to be inside of the Ship
+                    tileEntNBT.setInteger("x", pastePos.getX());
+                    tileEntNBT.setInteger("y", pastePos.getY());
+                    tileEntNBT.setInteger("z", pastePos.getZ());
+                    pasteTile = TileEntity.create(world, tileEntNBT);
+                }
+                if (pasteTile != null) {
+                    world.getChunk(pastePos).addTileEntity(pasteTile);
+                }
+            }
+
+            // Finally, delete the old IBlockState and TileEntity from the old Chunk
+            blockWriter.setBlockState(srcPos.getX(), srcPos.getY(), srcPos.getZ(), Blocks.AIR.getDefaultState());
+            world.removeTileEntity(srcPos);
+        }
+        // The updates are sent once the chunks have been relit, because chunk packets include the light
+        blockWriter.writeBlocks();
+
+        // Then add the mass of all the moved blocks at once
+        shipData.getInertiaData().addMoments(plan.moments);
+        onAssembled.accept(shipData);
+
+        chunks.clear();
+        chunks.addAll(blockWriter.getChangedChunks());
+        nextChunk = 0;
+        plan = null;
+        stage = Stage.RELIGHTING;
+    }
+
+    /**
+     * Makes the ship match the world, when the block at the position the snapshot was taken has changed.
+     */
+    private void onBlockChanged(BlockPos pastePos, IBlockState oldState, IBlockState newState) {
+        final Chunk pasteChunk = world.getChunk(pastePos);
+        final int storageIndex = pastePos.getY() >> 4;
+        if (pasteChunk.storageArrays[storageIndex] == Chunk.NULL_BLOCK_STORAGE) {
+            pasteChunk.storageArrays[storageIndex] = new ExtendedBlockStorage(storageIndex << 4, true);
+        }
+        pasteChunk.storageArrays[storageIndex]
+            .set(pastePos.getX() & 15, pastePos.getY() & 15, pastePos.getZ() & 15, newState);
+
+        if (newState == Blocks.AIR.getDefaultState()) {
+            shipData.getBlockPositions().remove(pastePos);
+        } else {
+            shipData.getBlockPositions().add(pastePos);
+        }
+        if (BlockPhysicsDetails.isBlockProvidingForce(newState)) {
+            shipData.getActiveForcePositions().add(pastePos);
+        } else {
+            shipData.getActiveForcePositions().remove(pastePos);
+        }
+        centerOfMassProvider.onSetBlockState(plan.moments, pastePos.getX(), pastePos.getY(), pastePos.getZ(),
+            oldState, newState);
+    }
+
+    private void relightChunks(long deadlineNanos) {
+        while (nextChunk < chunks.size()) {
+            final ChunkPos pos = chunks.get(nextChunk++);
+            final Chunk chunk = world.getChunk(pos.x, pos.z);
+            chunk.generateSkylightMap();
+            chunk.checkLight();
+            chunk.markDirty();
+            if (System.nanoTime() >= deadlineNanos) {
+                return;
+            }
+        }
+        blockWriter.sendUpdates();
+        blockWriter = null;
+        showMessage("Assembled a ship with " + shipData.getBlockPositions().size() + " blocks", true);
+        stage = Stage.DONE;
+    }
+
+    private void fail(String message) {
+        showMessage(message, false);
+        stage = Stage.DONE;
+    }
+
+    private void showProgress(String step, int done, int total) {
+        final int progress = done * 100 / total;
+        if (progress != shownProgress) {
+            shownProgress = progress;
+            showMessage("Assembling ship: " + step + " (" + progress + "%)", true);
+        }
+    }
+
+    private void showMessage(String message, boolean actionBar) {
+        if (creator != null && !creator.hasDisconnected()) {
+            creator.sendStatusMessage(new TextComponentString(message), actionBar);
+        }
+    }
+
+    /**
+     * The blocks to move and the contents of the ship chunks, created by the assembly thread.
+     */
+    private static class AssemblyPlan {
+
+        // The positions of the blocks in the world as x, y, z triples, and their states in the snapshot
+        final int[] positions;
+        final IBlockState[] states;
+        int blockCount = 0;
+        final Map<Long, ExtendedBlockStorage[]> shipChunkStorage = new HashMap<>();
+        final InertiaMoments moments = new InertiaMoments();
+
+        AssemblyPlan(int maxBlocks) {
+            this.positions = new int[maxBlocks * 3];
+            this.states = new IBlockState[maxBlocks];
+        }
+
+        void addBlock(@Nonnull BlockPos pos, @Nonnull IBlockState state) {
+            positions[blockCount * 3] = pos.getX();
+            positions[blockCount * 3 + 1] = pos.getY();
+            positions[blockCount * 3 + 2] = pos.getZ();
+            states[blockCount] = state;
+            blockCount++;
+        }
+    }
+
+}
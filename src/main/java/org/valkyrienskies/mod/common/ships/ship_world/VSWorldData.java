@@ -8,9 +8,18 @@ import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator;
 public class VSWorldData {
 
     @Getter
-    private final QueryableShipData queryableShipData = new QueryableShipData();
+    private final QueryableShipData queryableShipData;
 
     @Getter
-    private final ShipChunkAllocator shipChunkAllocator = new ShipChunkAllocator();
+    private final ShipChunkAllocator shipChunkAllocator;
+
+    public VSWorldData() {
+        this(new QueryableShipData(), new ShipChunkAllocator());
+    }
+
+    public VSWorldData(QueryableShipData queryableShipData, ShipChunkAllocator shipChunkAllocator) {
+        this.queryableShipData = queryableShipData;
+        this.shipChunkAllocator = shipChunkAllocator;
+    }
 
 }
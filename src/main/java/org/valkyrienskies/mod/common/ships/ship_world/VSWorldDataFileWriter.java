@@ -0,0 +1,115 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Writes the saved data of a world to its own file on a background thread, so that saving doesn't stall the game
+ * thread on disk I/O.
+ * <p>
+ * Every write goes to a temporary file first, which is synced to disk and then moved over the old file. So if the game
+ * crashes while writing, the file still holds the previous save. If the game saves again before the last save was
+ * written, only the newest data is written.
+ */
+@Log4j2
+public class VSWorldDataFileWriter {
+
+    // One thread for all worlds, saves are rare enough that they don't need to be written in parallel
+    private static final ExecutorService WRITER_THREAD = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("VS World Data Writer").setDaemon(true).build());
+
+    @Getter
+    private final File file;
+    private final File tempFile;
+    // The newest data that hasn't been written yet
+    private final AtomicReference<byte[]> pendingData = new AtomicReference<>();
+    // Whether the file holds a complete save, either from an earlier run or from a finished write
+    private volatile boolean fileWritten;
+
+    public VSWorldDataFileWriter(File file) {
+        this.file = file;
+        this.tempFile = new File(file.getPath() + ".tmp");
+        this.fileWritten = file.exists();
+    }
+
+    /**
+     * @return True if the file exists and holds a complete save. Until then the data shouldn't only be kept in the
+     * file, because nothing has been written to disk yet.
+     */
+    public boolean hasWrittenFile() {
+        return fileWritten;
+    }
+
+    /**
+     * Writes the data in the background. The array must not be modified afterwards.
+     */
+    public void writeAsync(byte[] data) {
+        if (pendingData.getAndSet(data) == null) {
+            WRITER_THREAD.execute(this::writePendingData);
+        }
+    }
+
+    /**
+     * Blocks until all the data given to {@link #writeAsync(byte[])} has been written.
+     */
+    public void flush() {
+        try {
+            WRITER_THREAD.submit(this::writePendingData).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Failed to write " + file, e);
+        }
+    }
+
+    /**
+     * @return The contents of the file, or null if it doesn't exist.
+     */
+    @Nullable
+    public byte[] read() throws IOException {
+        flush();
+        if (!file.exists()) {
+            return null;
+        }
+        return Files.readAllBytes(file.toPath());
+    }
+
+    private void writePendingData() {
+        final byte[] data = pendingData.getAndSet(null);
+        if (data == null) {
+            return;
+        }
+        final long time = System.currentTimeMillis();
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                out.write(data);
+                out.getFD().sync();
+            }
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            fileWritten = true;
+            log.debug("Writing {} KB to {} took {} ms", data.length / Math.pow(2, 10), file,
+                System.currentTimeMillis() - time);
+        } catch (IOException e) {
+            log.fatal("Failed to write " + file + ", the ships saved there may be out of date", e);
+        }
+    }
+
+}
@@ -0,0 +1,327 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.annotation.Nullable;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.math.ChunkPos;
+import org.valkyrienskies.mod.common.ships.QueryableShipData;
+import org.valkyrienskies.mod.common.ships.ShipData;
+import org.valkyrienskies.mod.common.ships.chunk_claims.ShipChunkAllocator;
+import org.valkyrienskies.mod.common.ships.chunk_claims.VSChunkClaim;
+import org.valkyrienskies.mod.common.util.cqengine.ConcurrentUpdatableIndexedCollection;
+import org.valkyrienskies.mod.common.util.datastructures.IBlockPosSet;
+import org.valkyrienskies.mod.common.util.datastructures.IBlockPosSetAABB;
+import org.valkyrienskies.mod.common.util.jackson.VSJacksonUtil;
+
+/**
+ * Reads and writes {@link VSWorldData} in a compact binary format, instead of writing every block position of every
+ * ship as a CBOR number.
+ * <p>
+ * The format is:
+ * <pre>
+ * int      MAGIC
+ * int      FORMAT_VERSION
+ * int      lastChunkX of the ShipChunkAllocator
+ * int      lastChunkZ of the ShipChunkAllocator
+ * int      the number of ships
+ * The record table, for every ship:
+ *     long     UUID most significant bits
+ *     long     UUID least significant bits
+ *     int      length of the metadata section
+ *     int      length of the block positions section
+ *     int      length of the active force positions section
+ * The sections, for every ship in the same order as the record table:
+ *     metadata                 The ShipData as CBOR, without the block positions
+ *     block positions          See writeBlockPositions()
+ *     active force positions   See writeBlockPositions()
+ * </pre>
+ * Because the record table has the length of every section, any section can be found and read without reading the
+ * sections before it. The block position sections are only decoded once something uses them, see {@link
+ * ShipData#setBlockPositionsDecoder(ShipData.BlockPositionsDecoder)}.
+ * <p>
+ * Worlds saved before this format existed are plain CBOR, see {@link #isBinaryFormat(byte[])}.
+ */
+@Log4j2
+public class VSWorldDataSerializer {
+
+    // "VSWD"
+    private static final int MAGIC = 0x56535744;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4 * 5;
+    private static final int RECORD_SIZE = 8 * 2 + 4 * 3;
+
+    // Block positions are stored relative to the corner of the center chunk of the claim, offset so they're positive
+    private static final int HORIZONTAL_OFFSET = 2048;
+    private static final int HORIZONTAL_BITS = 12;
+    private static final int HORIZONTAL_MASK = (1 << HORIZONTAL_BITS) - 1;
+    private static final int Y_BITS = 8;
+    private static final int Y_MASK = (1 << Y_BITS) - 1;
+
+    /**
+     * The encoded sections of every ship this has written or read, so that ships that haven't changed since the last
+     * save don't have to be encoded again.
+     */
+    private final Map<UUID, ShipRecord> cachedRecords = new HashMap<>();
+
+    /**
+     * @return True if the data was written by {@link #write(VSWorldData)}, false if it's the old CBOR format.
+     */
+    public static boolean isBinaryFormat(byte[] data) {
+        return data.length >= 4 && Unpooled.wrappedBuffer(data).readInt() == MAGIC;
+    }
+
+    /**
+     * Only encodes the ships that changed since they were last written or read by this serializer, see {@link
+     * ShipData#markDirty()}. Because this clears the dirty flags of the ships, every world should only have one
+     * serializer.
+     * <p>
+     * If this throws, the ships are marked dirty again and nothing is cached, so the next write encodes them again.
+     */
+    public byte[] write(VSWorldData worldData) throws IOException {
+        final ObjectMapper mapper = getMetadataMapper();
+        final List<ShipData> ships = new ArrayList<>(worldData.getQueryableShipData().getShips());
+        final Map<UUID, ShipRecord> records = new HashMap<>();
+        // The ships whose dirty flags we cleared. The flags are cleared before encoding, so that changes made while
+        // encoding aren't lost.
+        final List<ShipData> changedShips = new ArrayList<>();
+        int sectionsLength = 0;
+        try {
+            for (ShipData shipData : ships) {
+                final boolean changed = shipData.clearDirty();
+                if (changed) {
+                    changedShips.add(shipData);
+                }
+                ShipRecord record = cachedRecords.get(shipData.getUuid());
+                if (changed || record == null) {
+                    record = encodeRecord(mapper, shipData, record);
+                }
+                records.put(shipData.getUuid(), record);
+                sectionsLength += record.getLength();
+            }
+        } catch (IOException | RuntimeException e) {
+            changedShips.forEach(ShipData::markDirty);
+            throw e;
+        }
+        // Forget the ships that were removed
+        cachedRecords.keySet().retainAll(records.keySet());
+        cachedRecords.putAll(records);
+
+        final ByteBuf buffer = Unpooled.buffer(HEADER_SIZE + ships.size() * RECORD_SIZE + sectionsLength);
+        buffer.writeInt(MAGIC);
+        buffer.writeInt(FORMAT_VERSION);
+        buffer.writeInt(worldData.getShipChunkAllocator().getLastChunkX());
+        buffer.writeInt(worldData.getShipChunkAllocator().getLastChunkZ());
+        buffer.writeInt(ships.size());
+        for (ShipData shipData : ships) {
+            final ShipRecord record = records.get(shipData.getUuid());
+            buffer.writeLong(shipData.getUuid().getMostSignificantBits());
+            buffer.writeLong(shipData.getUuid().getLeastSignificantBits());
+            buffer.writeInt(record.metadata.length);
+            buffer.writeInt(record.blockPositions.length);
+            buffer.writeInt(record.activeForcePositions.length);
+        }
+        for (ShipData shipData : ships) {
+            final ShipRecord record = records.get(shipData.getUuid());
+            buffer.writeBytes(record.metadata);
+            buffer.writeBytes(record.blockPositions);
+            buffer.writeBytes(record.activeForcePositions);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @throws IOException If the data isn't valid
+     */
+    public VSWorldData read(byte[] data) throws IOException {
+        final ObjectMapper mapper = getMetadataMapper();
+        final ByteBuf buffer = Unpooled.wrappedBuffer(data);
+        try {
+            if (buffer.readInt() != MAGIC) {
+                throw new IOException("Not VS world data");
+            }
+            final int formatVersion = buffer.readInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unknown VS world data format version " + formatVersion
+                    + ", was this world saved by a newer version of Valkyrien Skies?");
+            }
+            final ShipChunkAllocator allocator = new ShipChunkAllocator(buffer.readInt(), buffer.readInt());
+            final int shipCount = buffer.readInt();
+            if (shipCount < 0) {
+                throw new IOException("Invalid ship count " + shipCount);
+            }
+
+            final ConcurrentUpdatableIndexedCollection<ShipData> ships = new ConcurrentUpdatableIndexedCollection<>();
+            final Map<UUID, ShipRecord> records = new HashMap<>();
+            int sectionStart = HEADER_SIZE + shipCount * RECORD_SIZE;
+            for (int i = 0; i < shipCount; i++) {
+                final int recordStart = HEADER_SIZE + i * RECORD_SIZE;
+                final UUID shipID = new UUID(buffer.getLong(recordStart), buffer.getLong(recordStart + 8));
+                final int metadataLength = buffer.getInt(recordStart + 16);
+                final int blockPositionsLength = buffer.getInt(recordStart + 20);
+                final int activeForcePositionsLength = buffer.getInt(recordStart + 24);
+
+                final byte[] metadata = readSection(buffer, sectionStart, metadataLength);
+                sectionStart += metadataLength;
+                final byte[] blockPositions = readSection(buffer, sectionStart, blockPositionsLength);
+                sectionStart += blockPositionsLength;
+                final byte[] activeForcePositions = readSection(buffer, sectionStart, activeForcePositionsLength);
+                sectionStart += activeForcePositionsLength;
+                final ShipRecord record = new ShipRecord(metadata, blockPositions, activeForcePositions);
+
+                final ShipData shipData = mapper.readValue(record.metadata, ShipData.class);
+                if (!shipID.equals(shipData.getUuid())) {
+                    throw new IOException("Record of ship " + shipID + " has the metadata of ship "
+                        + shipData.getUuid());
+                }
+
+                // The block positions stay encoded until the ship is loaded
+                shipData.setBlockPositionsDecoder(record);
+
+                // The record we just read is what we would write, so there's no need to write it again
+                shipData.clearDirty();
+                records.put(shipID, record);
+                ships.add(shipData);
+            }
+            cachedRecords.clear();
+            cachedRecords.putAll(records);
+            return new VSWorldData(new QueryableShipData(ships), allocator);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("VS world data is truncated", e);
+        }
+    }
+
+    private static ShipRecord encodeRecord(ObjectMapper mapper, ShipData shipData, @Nullable ShipRecord cachedRecord)
+        throws IOException {
+        final byte[] metadata = mapper.writeValueAsBytes(shipData);
+        if (cachedRecord != null && !shipData.areBlockPositionsLoaded()) {
+            // The block positions can't have changed if nobody decoded them
+            return new ShipRecord(metadata, cachedRecord.blockPositions, cachedRecord.activeForcePositions);
+        }
+        final PacketBuffer blockPositions = new PacketBuffer(Unpooled.buffer());
+        writeBlockPositions(blockPositions, shipData.getChunkClaim(), shipData.getBlockPositions());
+        final PacketBuffer activeForcePositions = new PacketBuffer(Unpooled.buffer());
+        writeBlockPositions(activeForcePositions, shipData.getChunkClaim(), shipData.getActiveForcePositions());
+        return new ShipRecord(metadata, toByteArray(blockPositions), toByteArray(activeForcePositions));
+    }
+
+    private static byte[] readSection(ByteBuf buffer, int start, int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Invalid section length " + length);
+        }
+        final byte[] section = new byte[length];
+        buffer.getBytes(start, section);
+        return section;
+    }
+
+    private static byte[] toByteArray(ByteBuf buffer) {
+        final byte[] bytes = new byte[buffer.readableBytes()];
+        buffer.readBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes the number of positions, followed by the positions sorted by z, then y, then x, as varint differences
+     * between each position and the previous one. Solid ships are mostly rows of blocks, so most differences are 1.
+     */
+    private static void writeBlockPositions(PacketBuffer buffer, VSChunkClaim chunkClaim, IBlockPosSet positions) {
+        if (positions == null) {
+            buffer.writeVarInt(0);
+            return;
+        }
+        final ChunkPos centerPos = chunkClaim.getCenterPos();
+        final int originX = centerPos.getXStart();
+        final int originZ = centerPos.getZStart();
+        final long[] keys = new long[positions.size()];
+        final int[] count = {0};
+        positions.forEach((x, y, z) -> {
+            final int localX = x - originX + HORIZONTAL_OFFSET;
+            final int localZ = z - originZ + HORIZONTAL_OFFSET;
+            if ((localX & ~HORIZONTAL_MASK) != 0 || (y & ~Y_MASK) != 0 || (localZ & ~HORIZONTAL_MASK) != 0) {
+                throw new IllegalArgumentException("Cannot save block position <" + x + "," + y + "," + z + ">");
+            }
+            keys[count[0]++] = ((long) localZ << (HORIZONTAL_BITS + Y_BITS)) | ((long) y << HORIZONTAL_BITS) | localX;
+        });
+        if (count[0] != keys.length) {
+            throw new IllegalStateException("Block positions changed while saving");
+        }
+        Arrays.sort(keys);
+
+        buffer.writeVarInt(keys.length);
+        long previousKey = 0;
+        for (long key : keys) {
+            buffer.writeVarLong(key - previousKey);
+            previousKey = key;
+        }
+    }
+
+    private static void readBlockPositions(PacketBuffer buffer, VSChunkClaim chunkClaim, IBlockPosSet positions) {
+        final ChunkPos centerPos = chunkClaim.getCenterPos();
+        final int originX = centerPos.getXStart();
+        final int originZ = centerPos.getZStart();
+        final int positionCount = buffer.readVarInt();
+        long key = 0;
+        for (int i = 0; i < positionCount; i++) {
+            key += buffer.readVarLong();
+            final int x = (int) (key & HORIZONTAL_MASK) - HORIZONTAL_OFFSET + originX;
+            final int y = (int) ((key >> HORIZONTAL_BITS) & Y_MASK);
+            final int z = (int) (key >> (HORIZONTAL_BITS + Y_BITS)) - HORIZONTAL_OFFSET + originZ;
+            positions.add(x, y, z);
+        }
+    }
+
+    /**
+     * The packet mapper ignores the block positions, which we write ourselves.
+     */
+    private static ObjectMapper getMetadataMapper() {
+        return VSJacksonUtil.getPacketMapper();
+    }
+
+    /**
+     * The encoded sections of a ship, which also decodes the block positions of ships that were read.
+     */
+    @RequiredArgsConstructor
+    private static class ShipRecord implements ShipData.BlockPositionsDecoder {
+        private final byte[] metadata;
+        private final byte[] blockPositions;
+        private final byte[] activeForcePositions;
+
+        int getLength() {
+            return metadata.length + blockPositions.length + activeForcePositions.length;
+        }
+
+        @Override
+        public IBlockPosSetAABB decodeBlockPositions(ShipData shipData) {
+            final IBlockPosSetAABB positions = ShipData.createBlockPositions(shipData.getChunkClaim());
+            decodeSection(blockPositions, shipData, positions);
+            return positions;
+        }
+
+        @Override
+        public IBlockPosSet decodeActiveForcePositions(ShipData shipData) {
+            final IBlockPosSet positions = ShipData.createActiveForcePositions(shipData.getChunkClaim());
+            decodeSection(activeForcePositions, shipData, positions);
+            return positions;
+        }
+
+        private static void decodeSection(byte[] section, ShipData shipData, IBlockPosSet positions) {
+            try {
+                readBlockPositions(new PacketBuffer(Unpooled.wrappedBuffer(section)), shipData.getChunkClaim(),
+                    positions);
+            } catch (RuntimeException e) {
+                // This happens while the game is running, so keep whatever we could read rather than crashing
+                log.error("The saved block positions of ship " + shipData.getName() + " are corrupted", e);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.valkyrienskies.mod.common.ships.ship_world;
 
 import com.google.common.collect.ImmutableList;
+import lombok.Getter;
 import net.minecraft.client.Minecraft;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.world.World;
@@ -8,8 +9,10 @@ import net.minecraft.world.chunk.Chunk;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.valkyrienskies.mod.common.config.VSConfig;
+import org.valkyrienskies.mod.common.network.ShipTransformDecoder;
 import org.valkyrienskies.mod.common.ships.QueryableShipData;
 import org.valkyrienskies.mod.common.ships.ShipData;
+import org.valkyrienskies.mod.common.util.datastructures.DynamicAABBTree;
 import org.valkyrienskies.mod.common.util.multithreaded.CalledFromWrongThreadException;
 
 import javax.annotation.Nonnull;
@@ -18,11 +21,21 @@ import java.util.*;
 
 public class WorldClientShipManager implements IPhysObjectWorld {
 
+    // How far the AABBs in shipBBTree extend past the ship AABBs, so that ships moving slowly don't update the tree.
+    private static final double SHIP_BB_TREE_MARGIN = 4;
+
     private final World world;
     private final Map<UUID, PhysicsObject> loadedShips;
     // Use LinkedHashSet as a queue because it preserves order and doesn't allow duplicates
     private final LinkedHashSet<UUID> loadQueue, unloadQueue;
-    private ImmutableList<PhysicsObject> threadSafeLoadedShips;
+    private volatile LoadedShipsSnapshot threadSafeLoadedShips;
+    // True if loadedShips changed since threadSafeLoadedShips was last published
+    private boolean loadedShipsChanged;
+    // Used to quickly find the ships within an AABB, only used by the game thread.
+    private final DynamicAABBTree<PhysicsObject> shipBBTree;
+    // Decodes the ship transform packets sent by the server, only used by the game thread.
+    @Getter
+    private final ShipTransformDecoder transformDecoder;
     private static final Logger logger = LogManager.getLogger();
 
     public WorldClientShipManager(World world) {
@@ -30,7 +43,10 @@ public class WorldClientShipManager implements IPhysObjectWorld {
         this.loadedShips = new HashMap<>();
         this.loadQueue = new LinkedHashSet<>();
         this.unloadQueue = new LinkedHashSet<>();
-        this.threadSafeLoadedShips = ImmutableList.of();
+        this.threadSafeLoadedShips = LoadedShipsSnapshot.EMPTY;
+        this.loadedShipsChanged = false;
+        this.shipBBTree = new DynamicAABBTree<>(SHIP_BB_TREE_MARGIN);
+        this.transformDecoder = new ShipTransformDecoder();
     }
 
     private void enforceGameThread() throws CalledFromWrongThreadException {
@@ -45,10 +61,14 @@ public class WorldClientShipManager implements IPhysObjectWorld {
 
         for (PhysicsObject physicsObject : getAllLoadedPhysObj()) {
             physicsObject.onTick();
+            shipBBTree.update(physicsObject, physicsObject.getShipBB());
         }
 
-        // Update the thread safe ship list.
-        this.threadSafeLoadedShips = ImmutableList.copyOf(loadedShips.values());
+        // Update the thread safe ship list, if the loaded ships changed.
+        if (loadedShipsChanged) {
+            this.threadSafeLoadedShips = threadSafeLoadedShips.withShips(loadedShips.values());
+            loadedShipsChanged = false;
+        }
     }
 
     private void loadAndUnloadShips() {
@@ -73,6 +93,8 @@ public class WorldClientShipManager implements IPhysObjectWorld {
             }
 
             loadedShips.put(toLoadID, physicsObject);
+            loadedShipsChanged = true;
+            shipBBTree.update(physicsObject, physicsObject.getShipBB());
             if (VSConfig.showAnnoyingDebugOutput) {
                 System.out.println("Successfully loaded " + shipData);
             }
@@ -88,6 +110,8 @@ public class WorldClientShipManager implements IPhysObjectWorld {
             PhysicsObject removedShip = loadedShips.get(toUnloadID);
             removedShip.unload();
             loadedShips.remove(toUnloadID);
+            loadedShipsChanged = true;
+            shipBBTree.remove(removedShip);
             if (VSConfig.showAnnoyingDebugOutput) {
                 System.out.println("Successfully unloaded " + removedShip.getShipData());
             }
@@ -98,6 +122,8 @@ public class WorldClientShipManager implements IPhysObjectWorld {
     @Override
     public void onWorldUnload() {
         loadedShips.clear();
+        shipBBTree.clear();
+        this.threadSafeLoadedShips = threadSafeLoadedShips.withShips(Collections.emptyList());
     }
 
     @Nullable
@@ -112,11 +138,12 @@ public class WorldClientShipManager implements IPhysObjectWorld {
     public List<PhysicsObject> getPhysObjectsInAABB(@Nonnull AxisAlignedBB toCheck) throws CalledFromWrongThreadException {
         enforceGameThread();
         List<PhysicsObject> nearby = new ArrayList<>();
-        for (PhysicsObject physicsObject : getAllLoadedPhysObj()) {
+        // The tree AABBs are larger than the ship AABBs, so we still have to check the ship AABBs.
+        shipBBTree.forEachIntersecting(toCheck, physicsObject -> {
             if (toCheck.intersects(physicsObject.getShipBB())) {
                 nearby.add(physicsObject);
             }
-        }
+        });
         return nearby;
     }
 
@@ -130,6 +157,12 @@ public class WorldClientShipManager implements IPhysObjectWorld {
     @Nonnull
     @Override
     public ImmutableList<PhysicsObject> getAllLoadedThreadSafe() {
+        return threadSafeLoadedShips.getShips();
+    }
+
+    @Nonnull
+    @Override
+    public LoadedShipsSnapshot getLoadedShipsThreadSafe() {
         return threadSafeLoadedShips;
     }
 
@@ -1,39 +1,31 @@
 package org.valkyrienskies.mod.common.ships.ship_world;
 
 import com.google.common.collect.ImmutableList;
-import gnu.trove.iterator.TIntIterator;
 import lombok.Getter;
-import net.minecraft.block.state.IBlockState;
-import net.minecraft.init.Blocks;
-import net.minecraft.nbt.NBTTagCompound;
-import net.minecraft.tileentity.TileEntity;
+import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.BlockPos.MutableBlockPos;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
-import net.minecraft.world.chunk.Chunk;
-import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import net.minecraft.world.gen.ChunkProviderServer;
-import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.valkyrienskies.mod.common.config.VSConfig;
-import org.valkyrienskies.mod.common.physics.BlockPhysicsDetails;
 import org.valkyrienskies.mod.common.ships.QueryableShipData;
 import org.valkyrienskies.mod.common.ships.ShipData;
 import org.valkyrienskies.mod.common.ships.block_relocation.BlockFinder;
-import org.valkyrienskies.mod.common.ships.block_relocation.IRelocationAwareTile;
-import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetector;
-import org.valkyrienskies.mod.common.ships.physics_data.BasicCenterOfMassProvider;
-import org.valkyrienskies.mod.common.ships.physics_data.IPhysicsObjectCenterOfMassProvider;
+import org.valkyrienskies.mod.common.util.datastructures.DynamicAABBTree;
 import org.valkyrienskies.mod.common.util.multithreaded.CalledFromWrongThreadException;
 import org.valkyrienskies.mod.common.util.multithreaded.VSWorldPhysicsLoop;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.*;
 
 public class WorldServerShipManager implements IPhysObjectWorld {
 
+    // How far the AABBs in shipBBTree extend past the ship AABBs, so that ships moving slowly don't update the tree.
+    private static final double SHIP_BB_TREE_MARGIN = 4;
+
     @Getter
     private final WorldServer world;
     @Getter
@@ -41,23 +33,30 @@ public class WorldServerShipManager implements IPhysObjectWorld {
     private final Thread physicsThread;
     private final WorldShipLoadingController loadingController;
     private final Map<UUID, PhysicsObject> loadedShips;
+    // The ships being assembled, in the order they were queued
+    private final List<ShipAssemblyTask> assemblyTasks;
     // Use LinkedHashSet as a queue because it preserves order and doesn't allow duplicates
-    private final LinkedHashSet<ImmutableTriple<BlockPos, ShipData, BlockFinder.BlockFinderType>> spawnQueue;
     private final LinkedHashSet<UUID> loadQueue, unloadQueue, backgroundLoadQueue;
     private final Set<UUID> loadingInBackground;
-    private ImmutableList<PhysicsObject> threadSafeLoadedShips;
+    private volatile LoadedShipsSnapshot threadSafeLoadedShips;
+    // True if loadedShips changed since threadSafeLoadedShips was last published
+    private boolean loadedShipsChanged;
+    // Used to quickly find the ships within an AABB, only used by the game thread.
+    private final DynamicAABBTree<PhysicsObject> shipBBTree;
 
     public WorldServerShipManager(World world) {
         this.world = (WorldServer) world;
         this.physicsLoop = new VSWorldPhysicsLoop(world);
         this.loadingController = new WorldShipLoadingController(this);
         this.loadedShips = new HashMap<>();
-        this.spawnQueue = new LinkedHashSet<>();
+        this.assemblyTasks = new ArrayList<>();
         this.loadQueue = new LinkedHashSet<>();
         this.unloadQueue = new LinkedHashSet<>();
         this.backgroundLoadQueue = new LinkedHashSet<>();
         this.loadingInBackground = new HashSet<>();
-        this.threadSafeLoadedShips = ImmutableList.of();
+        this.threadSafeLoadedShips = LoadedShipsSnapshot.EMPTY;
+        this.loadedShipsChanged = false;
+        this.shipBBTree = new DynamicAABBTree<>(SHIP_BB_TREE_MARGIN);
 
         this.physicsThread = new Thread(physicsLoop);
         this.physicsThread.start();
@@ -72,6 +71,9 @@ public class WorldServerShipManager implements IPhysObjectWorld {
     @Override
     public void onWorldUnload() {
         this.physicsLoop.kill();
+        // Ships that haven't finished assembling yet are lost, but their blocks are left in the world
+        assemblyTasks.forEach(ShipAssemblyTask::cancel);
+        assemblyTasks.clear();
     }
 
     @Override
@@ -85,11 +87,12 @@ public class WorldServerShipManager implements IPhysObjectWorld {
     public List<PhysicsObject> getPhysObjectsInAABB(@Nonnull AxisAlignedBB toCheck) throws CalledFromWrongThreadException {
         enforceGameThread();
         List<PhysicsObject> nearby = new ArrayList<>();
-        for (PhysicsObject ship : getAllLoadedPhysObj()) {
+        // The tree AABBs are larger than the ship AABBs, so we still have to check the ship AABBs.
+        shipBBTree.forEachIntersecting(toCheck, ship -> {
             if (toCheck.intersects(ship.getShipBB())) {
                 nearby.add(ship);
             }
-        }
+        });
         return nearby;
     }
 
@@ -104,6 +107,8 @@ public class WorldServerShipManager implements IPhysObjectWorld {
                 // Then remove the ship from the world, and the ship map.
                 QueryableShipData.get(world).removeShip(physicsObject.getShipData());
                 iterator.remove();
+                loadedShipsChanged = true;
+                shipBBTree.remove(physicsObject);
             }
         }
 
@@ -111,6 +116,7 @@ public class WorldServerShipManager implements IPhysObjectWorld {
         spawnNewShips();
 
         // Then determine which ships to load and unload
+        loadingController.updatePlayerPositions();
         loadingController.determineLoadAndUnload();
 
         // Then execute queued ship load and unload operations
@@ -119,240 +125,50 @@ public class WorldServerShipManager implements IPhysObjectWorld {
         // Then tick all the loaded ships
         for (PhysicsObject ship : getAllLoadedPhysObj()) {
             ship.onTick();
+            shipBBTree.update(ship, ship.getShipBB());
         }
 
         // Finally, send the players updates about the ships.
         loadingController.sendUpdatesToPlayers();
 
-        // And then update the thread safe ship list.
-        this.threadSafeLoadedShips = ImmutableList.copyOf(loadedShips.values());
+        // And then update the thread safe ship list, if the loaded ships changed.
+        if (loadedShipsChanged) {
+            this.threadSafeLoadedShips = threadSafeLoadedShips.withShips(loadedShips.values());
+            loadedShipsChanged = false;
+        }
     }
 
+    /**
+     * Works on the queued ship assemblies, until the time they can use this tick runs out.
+     */
     private void spawnNewShips() {
-        for (final ImmutableTriple<BlockPos, ShipData, BlockFinder.BlockFinderType> spawnData : spawnQueue) {
-            final BlockPos physicsInfuserPos = spawnData.getLeft();
-            final ShipData toSpawn = spawnData.getMiddle();
-            final BlockFinder.BlockFinderType blockBlockFinderType = spawnData.getRight();
-
-            if (loadedShips.containsKey(toSpawn.getUuid())) {
-                throw new IllegalStateException("Tried spawning a ShipData that was already loaded?\n" + toSpawn);
-            }
-
-            final SpatialDetector detector = BlockFinder.getBlockFinderFor(
-                    blockBlockFinderType,
-                    physicsInfuserPos,
-                    world,
-                    VSConfig.maxDetectedShipSize + 1,
-                    true
-            );
-
-            if (VSConfig.showAnnoyingDebugOutput) {
-                System.out.println("Attempting to spawn " + toSpawn + " on the thread " + Thread.currentThread().getName());
-            }
-            if (detector.foundSet.size() > VSConfig.maxDetectedShipSize || detector.cleanHouse) {
-                System.err.println("Ship too big or bedrock detected!");
-
-                /*
-                if (creator != null) {
-                    creator.sendMessage(new TextComponentString(
-                            "Ship construction canceled because its exceeding the ship size limit; "
-                                    +
-                                    "or because it's attached to bedrock. " +
-                                    "Raise it with /physsettings maxshipsize [number]"));
-                }
-
-                 */
-                continue; // Skip ship construction
-            }
-
-            // Fill the chunk claims
-            int radius = 7;
-
-            // TEMP CODE
-            // Eventually want to create mechanisms that control how many chunks are allocated to a ship
-            // But for now, lets just give them a bunch of chunks.
-            ChunkPos centerPos = toSpawn.getChunkClaim().getCenterPos();
-            for (int chunkX = -radius; chunkX <= radius; chunkX++) {
-                for (int chunkZ = -radius; chunkZ <= radius; chunkZ++) {
-                    toSpawn.getChunkClaim().addChunkClaim(centerPos.x + chunkX, centerPos.z + chunkZ);
-                }
-            }
-
-            // When copying the ship chunks we want to keep track of the inertia and center of mass.
-            IPhysicsObjectCenterOfMassProvider centerOfMassProvider = new BasicCenterOfMassProvider();
-
-            // Then create the ship chunks
-            MutableBlockPos srcLocationPos = new MutableBlockPos();
-            BlockPos centerDifference = toSpawn.getChunkClaim().getRegionCenter().subtract(physicsInfuserPos);
-
-            MutableBlockPos pasteLocationPos = new MutableBlockPos();
-
-            Map<Long, Chunk> copiedChunksMap = new HashMap<>();
-
-            // First, copy the blocks and tiles to the new chunks
-            TIntIterator blocksIterator = detector.foundSet.iterator();
-            while (blocksIterator.hasNext()) {
-                int hashedPos = blocksIterator.next();
-                SpatialDetector.setPosWithRespectTo(hashedPos, detector.firstBlock, srcLocationPos);
-                // Get the BlockPos from the hashedPos
-                pasteLocationPos.setPos(srcLocationPos.getX() + centerDifference.getX(), srcLocationPos.getY() + centerDifference.getY(), srcLocationPos.getZ() + centerDifference.getZ());
-
-                // Then add it to the ShipData block positions set
-                toSpawn.blockPositions.add(pasteLocationPos.getX(), pasteLocationPos.getY(), pasteLocationPos.getZ());
-
-                // Then create a chunk to accommodate this block (if one does not already exist).
-                int newChunkX = pasteLocationPos.getX() >> 4;
-                int newChunkZ = pasteLocationPos.getZ() >> 4;
-
-                long newChunkPosLong = ChunkPos.asLong(newChunkX, newChunkZ);
-
-                if (!copiedChunksMap.containsKey(newChunkPosLong)) {
-                    Chunk chunk = new Chunk(world, newChunkX, newChunkZ);
-                    copiedChunksMap.put(newChunkPosLong, chunk);
-                }
-
-                // Then copy the IBlockState & TileEntity to the new Chunk
-                // Get the old world Chunk
-                Chunk chunkToSet = world.getChunk(srcLocationPos);
-
-                // Get the new Chunk
-                Chunk newChunk = copiedChunksMap.get(newChunkPosLong);
-
-                // Then get the old IBlockState, as efficiently as possible
-                int storageIndex = srcLocationPos.getY() >> 4;
-                // Check that we're placing the block in a valid position
-                if (storageIndex < 0 || storageIndex >= chunkToSet.storageArrays.length) {
-                    // Invalid position, abort!
-                    throw new IllegalStateException("Incorrect block copy!\n" + srcLocationPos);
-                }
-
-                IBlockState srcState = chunkToSet.storageArrays[storageIndex]
-                        .get(srcLocationPos.getX() & 15, srcLocationPos.getY() & 15, srcLocationPos.getZ() & 15);
-
-                // Then paste that IBlockState into the new ship chunk
-                int newChunkStorageIndex = pasteLocationPos.getY() >> 4;
-
-                if (newChunk.storageArrays[newChunkStorageIndex] == Chunk.NULL_BLOCK_STORAGE) {
-                    newChunk.storageArrays[newChunkStorageIndex] = new ExtendedBlockStorage(newChunkStorageIndex << 4,
-                            true);
-                }
-                newChunk.storageArrays[newChunkStorageIndex]
-                        .set(pasteLocationPos.getX() & 15, pasteLocationPos.getY() & 15, pasteLocationPos.getZ() & 15, srcState);
-
-                // If this block is force block, then add it to the activeForcePositions list of the ship.
-                if (BlockPhysicsDetails.isBlockProvidingForce(srcState)) {
-                    toSpawn.activeForcePositions.add(pasteLocationPos);
-                }
-
-                // Also update the center of mass and inertia provider
-                centerOfMassProvider.onSetBlockState(toSpawn.getInertiaData(), pasteLocationPos, Blocks.AIR.getDefaultState(), srcState);
-
-                // Then copy the TileEntity (if there is one)
-                TileEntity srcTile = world.getTileEntity(srcLocationPos);
-                if (srcTile != null) {
-                    TileEntity pasteTile;
-                    if (srcTile instanceof IRelocationAwareTile) {
-                        pasteTile = ((IRelocationAwareTile) srcTile).createRelocatedTile(pasteLocationPos, toSpawn);
-                    } else {
-                        NBTTagCompound tileEntNBT = srcTile.writeToNBT(new NBTTagCompound());
-                        // Change the block position to be inside of the Ship
-                        tileEntNBT.setInteger("x", pasteLocationPos.getX());
-                        tileEntNBT.setInteger("y", pasteLocationPos.getY());
-                        tileEntNBT.setInteger("z", pasteLocationPos.getZ());
-                        pasteTile = TileEntity.create(world, tileEntNBT);
-                    }
-
-                    // Finally, add the new TileEntity to the new ship chunk.
-                    newChunk.addTileEntity(pasteTile);
-                }
-            }
-
-            for (final Chunk chunk : copiedChunksMap.values()) {
-                chunk.generateSkylightMap();
-            }
-
-            // Then delete the copied blocks from the old chunks
-            blocksIterator = detector.foundSet.iterator();
-            while (blocksIterator.hasNext()) {
-                int hashedPos = blocksIterator.next();
-                SpatialDetector.setPosWithRespectTo(hashedPos, detector.firstBlock, srcLocationPos);
-
-                Chunk chunkToSet = world.getChunk(srcLocationPos);
-
-                // Then get the old IBlockState, as efficiently as possible
-                int storageIndex = srcLocationPos.getY() >> 4;
-                // Check that we're placing the block in a valid position
-                if (storageIndex < 0 || storageIndex >= chunkToSet.storageArrays.length) {
-                    // Invalid position, abort!
-                    throw new IllegalStateException("Incorrect block copy!\n" + srcLocationPos);
-                }
-
-                IBlockState srcState = chunkToSet.storageArrays[storageIndex]
-                        .get(srcLocationPos.getX() & 15, srcLocationPos.getY() & 15, srcLocationPos.getZ() & 15);
-
-                // THIS IS TEMP because its extremely inefficient.
-                // Come up with a clever way to let clients figure this out in the future.
-                world.notifyBlockUpdate(srcLocationPos, srcState, Blocks.AIR.getDefaultState(), 3);
-
-                // Finally, delete the old IBlockState and TileEntity from the old Chunk
-                chunkToSet.storageArrays[storageIndex]
-                        .set(srcLocationPos.getX() & 15, srcLocationPos.getY() & 15, srcLocationPos.getZ() & 15, Blocks.AIR.getDefaultState());
-
-                // Delete the TileEntity at this pos (if there is one)
-                world.removeTileEntity(srcLocationPos);
-
-                chunkToSet.markDirty();
-            }
-
-            // Then relight the original chunks
-            {
-                Set<Long> chunksRelit = new HashSet<>();
-                blocksIterator = detector.foundSet.iterator();
-                while (blocksIterator.hasNext()) {
-                    int hashedPos = blocksIterator.next();
-                    SpatialDetector.setPosWithRespectTo(hashedPos, detector.firstBlock, srcLocationPos);
-
-                    int changedChunkX = pasteLocationPos.getX() >> 4;
-                    int changedChunkZ = pasteLocationPos.getZ() >> 4;
-                    long changedChunkPos = ChunkPos.asLong(changedChunkX, changedChunkZ);
-
-                    if (chunksRelit.contains(changedChunkPos)) {
-                        continue;
-                    }
-                    final Chunk chunk = world.getChunk(changedChunkX, changedChunkZ);
-                    chunk.generateSkylightMap();
-                    chunk.checkLight();
-                    chunk.markDirty();
-                    chunksRelit.add(changedChunkPos);
-                }
+        final long deadline = System.nanoTime() + VSConfig.shipAssemblyMillisPerTick * 1_000_000L;
+        final Iterator<ShipAssemblyTask> iterator = assemblyTasks.iterator();
+        while (iterator.hasNext()) {
+            final ShipAssemblyTask task = iterator.next();
+            task.tick(deadline);
+            if (task.isDone()) {
+                iterator.remove();
             }
-
-            // Then inject the ship chunks into the world
-            toSpawn.getChunkClaim().forEach((x, z) -> {
-                long chunkLong = ChunkPos.asLong(x, z);
-                if (copiedChunksMap.containsKey(chunkLong)) {
-                    injectChunkIntoWorldServer(copiedChunksMap.get(chunkLong), x, z);
-                } else {
-                    injectChunkIntoWorldServer(new Chunk(world, x, z), x, z);
-                }
-            });
-
-            // Add shipData to the ShipData storage
-            QueryableShipData.get(world).addShip(toSpawn);
-
-            // Finally, instantiate the PhysicsObject representation of this ShipData
-            PhysicsObject physicsObject = new PhysicsObject(world, toSpawn);
-            loadedShips.put(toSpawn.getUuid(), physicsObject);
         }
-        spawnQueue.clear();
     }
 
-    private void injectChunkIntoWorldServer(@Nonnull Chunk chunk, int x, int z) {
-        ChunkProviderServer provider = world.getChunkProvider();
-        provider.loadedChunks.put(ChunkPos.asLong(x, z), chunk);
-        chunk.onLoad();
-        chunk.checkLight();
-        chunk.markDirty();
+    /**
+     * Called by {@link ShipAssemblyTask} once the blocks of toSpawn have been moved into its chunks.
+     */
+    private void onShipAssembled(ShipData toSpawn) {
+        if (loadedShips.containsKey(toSpawn.getUuid())) {
+            throw new IllegalStateException("Tried spawning a ShipData that was already loaded?\n" + toSpawn);
+        }
+
+        // Add shipData to the ShipData storage
+        QueryableShipData.get(world).addShip(toSpawn);
+
+        // Finally, instantiate the PhysicsObject representation of this ShipData
+        PhysicsObject physicsObject = new PhysicsObject(world, toSpawn);
+        loadedShips.put(toSpawn.getUuid(), physicsObject);
+        loadedShipsChanged = true;
+        shipBBTree.update(physicsObject, physicsObject.getShipBB());
     }
 
     private void loadAndUnloadShips() {
@@ -374,11 +190,15 @@ public class WorldServerShipManager implements IPhysObjectWorld {
             if (VSConfig.showAnnoyingDebugOutput) {
                 System.out.println("Attempting to load ship " + toLoad);
             }
+            // Decode the block positions now, the physics thread will need them
+            toLoad.loadBlockPositions();
             PhysicsObject physicsObject = new PhysicsObject(world, toLoad);
             PhysicsObject old = loadedShips.put(toLoad.getUuid(), physicsObject);
+            loadedShipsChanged = true;
             if (old != null) {
                 throw new IllegalStateException("How did we already have a ship loaded for " + toLoad);
             }
+            shipBBTree.update(physicsObject, physicsObject.getShipBB());
         }
         loadQueue.clear();
 
@@ -434,6 +254,8 @@ public class WorldServerShipManager implements IPhysObjectWorld {
             }
             physicsObject.unload();
             boolean success = loadedShips.remove(toUnloadID, physicsObject);
+            loadedShipsChanged = true;
+            shipBBTree.remove(physicsObject);
 
             if (!success) {
                 throw new IllegalStateException("How did we fail to unload " + physicsObject.getShipData());
@@ -452,6 +274,12 @@ public class WorldServerShipManager implements IPhysObjectWorld {
     @Nonnull
     @Override
     public ImmutableList<PhysicsObject> getAllLoadedThreadSafe() {
+        return threadSafeLoadedShips.getShips();
+    }
+
+    @Nonnull
+    @Override
+    public LoadedShipsSnapshot getLoadedShipsThreadSafe() {
         return threadSafeLoadedShips;
     }
 
@@ -459,8 +287,18 @@ public class WorldServerShipManager implements IPhysObjectWorld {
      * Thread safe way to queue a ship spawn. (Not the same as {@link #queueShipLoad(UUID)}.
      */
     public void queueShipSpawn(@Nonnull ShipData data, @Nonnull BlockPos spawnPos, @Nonnull BlockFinder.BlockFinderType blockFinderType) {
+        queueShipSpawn(data, spawnPos, blockFinderType, null);
+    }
+
+    /**
+     * Same as {@link #queueShipSpawn(ShipData, BlockPos, BlockFinder.BlockFinderType)}, but also shows the progress
+     * of the assembly to creator.
+     */
+    public void queueShipSpawn(@Nonnull ShipData data, @Nonnull BlockPos spawnPos,
+                               @Nonnull BlockFinder.BlockFinderType blockFinderType, @Nullable EntityPlayerMP creator) {
         enforceGameThread();
-        this.spawnQueue.add(ImmutableTriple.of(spawnPos, data, blockFinderType));
+        this.assemblyTasks.add(new ShipAssemblyTask(world, data, spawnPos, blockFinderType, creator,
+                this::onShipAssembled));
     }
 
     @Override
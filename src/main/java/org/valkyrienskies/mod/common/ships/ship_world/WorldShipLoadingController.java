@@ -4,7 +4,6 @@ import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.network.play.server.SPacketChunkData;
 import net.minecraft.util.math.Vec3d;
-import net.minecraft.world.World;
 import net.minecraft.world.chunk.Chunk;
 import org.valkyrienskies.mod.common.ValkyrienSkiesMod;
 import org.valkyrienskies.mod.common.config.VSConfig;
@@ -12,6 +11,7 @@ import org.valkyrienskies.mod.common.network.ShipIndexDataMessage;
 import org.valkyrienskies.mod.common.ships.QueryableShipData;
 import org.valkyrienskies.mod.common.ships.ShipData;
 import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.util.datastructures.SpatialHashGrid;
 
 import java.util.*;
 
@@ -22,12 +22,29 @@ import java.util.*;
  */
 class WorldShipLoadingController {
 
+    // The players are bucketed into regions of 16 by 16 chunks, about the size of the loading distances.
+    private static final double PLAYER_GRID_CELL_SIZE = 256;
+
     private final WorldServerShipManager shipManager;
     private Map<ShipData, Set<EntityPlayerMP>> shipToWatchingPlayers;
+    // The positions of the players in the world this tick, so we don't have to check every player for every ship
+    private final SpatialHashGrid<EntityPlayerMP> playerGrid;
 
     WorldShipLoadingController(WorldServerShipManager shipManager) {
         this.shipManager = shipManager;
         this.shipToWatchingPlayers = new HashMap<>();
+        this.playerGrid = new SpatialHashGrid<>(PLAYER_GRID_CELL_SIZE);
+    }
+
+    /**
+     * Updates the player positions used by {@link #determineLoadAndUnload()} and {@link #sendUpdatesToPlayers()}.
+     * Must be called once every tick before them.
+     */
+    void updatePlayerPositions() {
+        playerGrid.clear();
+        for (EntityPlayer player : shipManager.getWorld().playerEntities) {
+            playerGrid.insert((EntityPlayerMP) player, player.posX, player.posZ);
+        }
     }
 
     /**
@@ -38,17 +55,17 @@ class WorldShipLoadingController {
             ShipTransform transform = data.getShipTransform();
             Vec3d shipPos = transform.getShipPositionVec3d();
             if (shipManager.getPhysObjectFromUUID(data.getUuid()) == null) {
-                if (existsPlayerWithinDistanceXZ(shipManager.getWorld(), shipPos, VSConfig.SHIP_LOADING_SETTINGS.loadDistance)) {
+                if (playerGrid.anyWithinDistance(shipPos.x, shipPos.z, VSConfig.SHIP_LOADING_SETTINGS.loadDistance)) {
                     shipManager.queueShipLoad(data.getUuid());
                 } else {
                     if (VSConfig.SHIP_LOADING_SETTINGS.permanentlyLoaded ||
-                        existsPlayerWithinDistanceXZ(shipManager.getWorld(), shipPos, VSConfig.SHIP_LOADING_SETTINGS.loadBackgroundDistance)) {
+                        playerGrid.anyWithinDistance(shipPos.x, shipPos.z, VSConfig.SHIP_LOADING_SETTINGS.loadBackgroundDistance)) {
                         shipManager.queueShipLoadBackground(data.getUuid());
                     }
                 }
             } else {
                 if (!VSConfig.SHIP_LOADING_SETTINGS.permanentlyLoaded &&
-                    !existsPlayerWithinDistanceXZ(shipManager.getWorld(), shipPos, VSConfig.SHIP_LOADING_SETTINGS.unloadDistance)) {
+                    !playerGrid.anyWithinDistance(shipPos.x, shipPos.z, VSConfig.SHIP_LOADING_SETTINGS.unloadDistance)) {
                     shipManager.queueShipUnload(data.getUuid());
                 }
             }
@@ -69,6 +86,7 @@ class WorldShipLoadingController {
         for (PhysicsObject ship : shipManager.getAllLoadedPhysObj()) {
             ship.getWatchingPlayers().clear();
             ship.getWatchingPlayers().addAll(shipToWatchingPlayers.get(ship.getShipData()));
+            ship.updateWatchingPlayersThreadSafe();
         }
     }
 
@@ -77,18 +95,15 @@ class WorldShipLoadingController {
      */
     private Map<ShipData, Set<EntityPlayerMP>> updateWatchingPlayers() {
         Map<ShipData, Set<EntityPlayerMP>> newWatching = new HashMap<>();
+        Set<EntityPlayer> playersInWorld = new HashSet<>(shipManager.getWorld().playerEntities);
         // Copy the old watching to the new, making sure not to copy data from ships that got unloaded.
         for (PhysicsObject ship : shipManager.getAllLoadedPhysObj()) {
             ShipData shipData = ship.getShipData();
             if (shipToWatchingPlayers.containsKey(shipData)) {
                 Set<EntityPlayerMP> oldWatchingPlayers = shipToWatchingPlayers.get(shipData);
-                Set<EntityPlayerMP> newWatchingPlayers = new HashSet<>();
+                Set<EntityPlayerMP> newWatchingPlayers = new HashSet<>(oldWatchingPlayers);
                 // Do this to prevent players who left the game from propagating to future watching maps.
-                for (EntityPlayer player : shipManager.getWorld().playerEntities) {
-                    if (oldWatchingPlayers.contains(player)) {
-                        newWatchingPlayers.add((EntityPlayerMP) player);
-                    }
-                }
+                newWatchingPlayers.retainAll(playersInWorld);
                 newWatching.put(shipData, newWatchingPlayers);
             } else {
                 newWatching.put(shipData, new HashSet<>());
@@ -98,15 +113,12 @@ class WorldShipLoadingController {
         // Remove players that aren't watching anymore, and add new watching players
         for (PhysicsObject ship : shipManager.getAllLoadedPhysObj()) {
             Vec3d shipPos = ship.getShipTransform().getShipPositionVec3d();
+            Set<EntityPlayerMP> watchingPlayers = newWatching.get(ship.getShipData());
             // Remove players further than the unwatch distance
-            newWatching.get(ship.getShipData()).removeIf(watcher -> !isPlayerWithinDistanceXZ(watcher, shipPos, VSConfig.SHIP_LOADING_SETTINGS.unwatchDistance));
+            watchingPlayers.removeIf(watcher -> !isPlayerWithinDistanceXZ(watcher, shipPos, VSConfig.SHIP_LOADING_SETTINGS.unwatchDistance));
 
             // Add players closer than the watch distance
-            for (EntityPlayer player : shipManager.getWorld().playerEntities) {
-                if (isPlayerWithinDistanceXZ(player, shipPos, VSConfig.SHIP_LOADING_SETTINGS.watchDistance)) {
-                    newWatching.get(ship.getShipData()).add((EntityPlayerMP) player);
-                }
-            }
+            playerGrid.forEachWithinDistance(shipPos.x, shipPos.z, VSConfig.SHIP_LOADING_SETTINGS.watchDistance, watchingPlayers::add);
         }
 
         return newWatching;
@@ -194,16 +206,4 @@ class WorldShipLoadingController {
         return (xDif * xDif + zDif * zDif) < distance * distance;
     }
 
-    /**
-     * Returns true if there exists a player within world that is within distance of pos, only using XZ coordinates.
-     */
-    private static boolean existsPlayerWithinDistanceXZ(World world, Vec3d pos, double distance) {
-        for (EntityPlayer player : world.playerEntities) {
-            if (isPlayerWithinDistanceXZ(player, pos, distance)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
 }
@@ -67,12 +67,11 @@ public class ValkyrienUtils {
     }
 
     public Optional<PhysicsObject> getPhysoManagingBlockThreadSafe(@Nullable World world, @Nullable BlockPos pos) {
-        for (PhysicsObject physicsObject : getPhysObjWorld(world).getAllLoadedThreadSafe()) {
-            if (physicsObject.getChunkClaim().containsBlock(pos)) {
-                return Optional.of(physicsObject);
-            }
+        if (world == null || pos == null) {
+            return Optional.empty();
         }
-        return Optional.empty();
+        return Optional.ofNullable(getPhysObjWorld(world).getLoadedShipsThreadSafe()
+            .getShipManagingChunk(pos.getX() >> 4, pos.getZ() >> 4));
     }
 
     public Optional<ShipData> getShipManagingBlock(@Nullable World world, @Nullable BlockPos pos) {
@@ -201,7 +200,8 @@ public class ValkyrienUtils {
         ShipData shipData = createNewShip(world, physicsInfuserPos);
 
         // Queue the ship spawn operation
-        ((WorldServerShipManager) ValkyrienUtils.getPhysObjWorld(world)).queueShipSpawn(shipData, physicsInfuserPos, blockFinderType);
+        ((WorldServerShipManager) ValkyrienUtils.getPhysObjWorld(world))
+            .queueShipSpawn(shipData, physicsInfuserPos, blockFinderType, creator);
     }
 
     public IPhysObjectWorld getPhysObjWorld(World world) {
@@ -0,0 +1,110 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of non-negative long values, in the style of HdrHistogram. Values are put into buckets whose
+ * width grows with the magnitude of the value, so every value is stored with a relative error of at most 1/8 using a
+ * fixed amount of memory. Recording a value never allocates or blocks, so it can be done from any thread.
+ * <p>
+ * Reads are not atomic with respect to concurrent writes, so reads may be off by the values recorded while reading.
+ */
+public class ConcurrentHistogram {
+
+    // Every power of two is split into 2^SUB_BUCKET_BITS buckets
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final AtomicLong max;
+
+    public ConcurrentHistogram() {
+        this.buckets = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Records a value, negative values are recorded as 0.
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        buckets.incrementAndGet(getBucketIndex(value));
+        count.increment();
+        sum.add(value);
+        long currentMax;
+        while (value > (currentMax = max.get())) {
+            if (max.compareAndSet(currentMax, value)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        final long currentCount = count.sum();
+        return currentCount == 0 ? 0 : (double) sum.sum() / currentCount;
+    }
+
+    /**
+     * @param percentile A value between 0 and 100
+     * @return The highest value of the bucket the given percentile of the recorded values falls into, or 0 if no
+     * values were recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        final long currentCount = count.sum();
+        if (currentCount == 0) {
+            return 0;
+        }
+        final long targetCount = Math.max(1, (long) Math.ceil(currentCount * Math.min(percentile, 100) / 100));
+        long seenCount = 0;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            seenCount += buckets.get(index);
+            if (seenCount >= targetCount) {
+                return Math.min(getBucketMax(index), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            buckets.set(index, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    static int getBucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long getBucketMax(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_COUNT - 1;
+        final long bucketMin = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+        return bucketMin + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,327 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import net.minecraft.util.math.AxisAlignedBB;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A bounding volume hierarchy of AABBs that can be cheaply updated as the objects in it move, based on the dynamic
+ * tree used by Box2D.
+ * <p>
+ * Every object is stored in a leaf with a "fat" AABB that is slightly larger than the object's actual AABB, so that
+ * objects that only move a little don't change the tree at all. Because of this {@link #forEachIntersecting(AxisAlignedBB,
+ * Consumer)} may return objects that don't actually intersect, callers must check the real AABB of the objects
+ * themselves.
+ * <p>
+ * Not thread safe, each tree must only be used by one thread.
+ *
+ * @param <T> The type of the objects stored in the tree. Objects are compared using equals() and hashCode().
+ */
+public class DynamicAABBTree<T> {
+
+    // When an object moves outside of its fat AABB, the new fat AABB is extended by this many times the distance the
+    // object moved, in the direction it moved. This way fast moving objects don't update the tree every time.
+    private static final double DISPLACEMENT_MULTIPLIER = 2;
+
+    private final double fatMargin;
+    private final Map<T, Node<T>> leaves;
+    // Reused by queries to avoid allocating a new stack every time
+    private final Deque<Node<T>> queryStack;
+    private Node<T> root;
+
+    /**
+     * @param fatMargin The distance the fat AABBs extend past the actual AABB of the objects
+     */
+    public DynamicAABBTree(double fatMargin) {
+        this.fatMargin = fatMargin;
+        this.leaves = new HashMap<>();
+        this.queryStack = new ArrayDeque<>();
+        this.root = null;
+    }
+
+    /**
+     * Adds the object to the tree, or updates its AABB if its already in the tree.
+     *
+     * @return True if the structure of the tree was changed, false if the object stayed within its fat AABB.
+     */
+    public boolean update(@Nonnull T object, @Nonnull AxisAlignedBB aabb) {
+        Node<T> leaf = leaves.get(object);
+        if (leaf == null) {
+            leaf = new Node<>();
+            leaf.object = object;
+            leaf.tightAABB = aabb;
+            leaf.aabb = aabb.grow(fatMargin);
+            leaves.put(object, leaf);
+            insertLeaf(leaf);
+            return true;
+        }
+
+        final AxisAlignedBB oldAABB = leaf.tightAABB;
+        leaf.tightAABB = aabb;
+        if (contains(leaf.aabb, aabb)) {
+            return false;
+        }
+
+        final double displacementX = ((aabb.minX + aabb.maxX) - (oldAABB.minX + oldAABB.maxX)) / 2;
+        final double displacementY = ((aabb.minY + aabb.maxY) - (oldAABB.minY + oldAABB.maxY)) / 2;
+        final double displacementZ = ((aabb.minZ + aabb.maxZ) - (oldAABB.minZ + oldAABB.maxZ)) / 2;
+
+        removeLeaf(leaf);
+        leaf.aabb = aabb.grow(fatMargin).expand(displacementX * DISPLACEMENT_MULTIPLIER,
+            displacementY * DISPLACEMENT_MULTIPLIER, displacementZ * DISPLACEMENT_MULTIPLIER);
+        insertLeaf(leaf);
+        return true;
+    }
+
+    /**
+     * @return True if the object was in the tree.
+     */
+    public boolean remove(@Nonnull T object) {
+        final Node<T> leaf = leaves.remove(object);
+        if (leaf == null) {
+            return false;
+        }
+        removeLeaf(leaf);
+        return true;
+    }
+
+    public void clear() {
+        leaves.clear();
+        root = null;
+    }
+
+    public int size() {
+        return leaves.size();
+    }
+
+    /**
+     * Calls the consumer for every object whose fat AABB intersects toCheck.
+     */
+    public void forEachIntersecting(@Nonnull AxisAlignedBB toCheck, @Nonnull Consumer<T> consumer) {
+        if (root == null) {
+            return;
+        }
+        queryStack.clear();
+        queryStack.push(root);
+        while (!queryStack.isEmpty()) {
+            final Node<T> node = queryStack.pop();
+            if (!node.aabb.intersects(toCheck)) {
+                continue;
+            }
+            if (node.isLeaf()) {
+                consumer.accept(node.object);
+            } else {
+                queryStack.push(node.child1);
+                queryStack.push(node.child2);
+            }
+        }
+    }
+
+    /**
+     * @return The height of the tree, used to check that the tree stays balanced.
+     */
+    public int getHeight() {
+        return root == null ? 0 : root.height;
+    }
+
+    private void insertLeaf(Node<T> leaf) {
+        if (root == null) {
+            root = leaf;
+            leaf.parent = null;
+            return;
+        }
+
+        // Find the best sibling for the new leaf, using the surface area as the cost
+        final AxisAlignedBB leafAABB = leaf.aabb;
+        Node<T> sibling = root;
+        while (!sibling.isLeaf()) {
+            final double area = getSurfaceArea(sibling.aabb);
+            final double combinedArea = getSurfaceArea(sibling.aabb.union(leafAABB));
+
+            // Cost of creating a new parent for this node and the new leaf
+            final double cost = 2 * combinedArea;
+            // Minimum cost of pushing the leaf further down the tree
+            final double inheritanceCost = 2 * (combinedArea - area);
+
+            final double cost1 = getDescendCost(sibling.child1, leafAABB) + inheritanceCost;
+            final double cost2 = getDescendCost(sibling.child2, leafAABB) + inheritanceCost;
+
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            sibling = cost1 < cost2 ? sibling.child1 : sibling.child2;
+        }
+
+        // Create a new parent for the sibling and the leaf
+        final Node<T> oldParent = sibling.parent;
+        final Node<T> newParent = new Node<>();
+        newParent.parent = oldParent;
+        newParent.aabb = leafAABB.union(sibling.aabb);
+        newParent.height = sibling.height + 1;
+        replaceChild(oldParent, sibling, newParent);
+        newParent.child1 = sibling;
+        newParent.child2 = leaf;
+        sibling.parent = newParent;
+        leaf.parent = newParent;
+
+        refitAncestors(newParent);
+    }
+
+    private void removeLeaf(Node<T> leaf) {
+        if (leaf == root) {
+            root = null;
+            return;
+        }
+        final Node<T> parent = leaf.parent;
+        final Node<T> grandParent = parent.parent;
+        final Node<T> sibling = parent.child1 == leaf ? parent.child2 : parent.child1;
+
+        // Replace the parent with the sibling
+        replaceChild(grandParent, parent, sibling);
+        sibling.parent = grandParent;
+        leaf.parent = null;
+        if (grandParent != null) {
+            refitAncestors(grandParent);
+        }
+    }
+
+    /**
+     * Walks from the node up to the root, balancing the tree and updating the AABBs and heights along the way.
+     */
+    private void refitAncestors(Node<T> node) {
+        while (node != null) {
+            node = balance(node);
+            node.height = 1 + Math.max(node.child1.height, node.child2.height);
+            node.aabb = node.child1.aabb.union(node.child2.aabb);
+            node = node.parent;
+        }
+    }
+
+    /**
+     * Performs a rotation on node if its children heights differ by more than 1.
+     *
+     * @return The node that took the place of node in the tree.
+     */
+    private Node<T> balance(Node<T> a) {
+        if (a.isLeaf() || a.height < 2) {
+            return a;
+        }
+        final Node<T> b = a.child1;
+        final Node<T> c = a.child2;
+        final int balance = c.height - b.height;
+
+        if (balance > 1) {
+            // Rotate c up
+            final Node<T> f = c.child1;
+            final Node<T> g = c.child2;
+            c.child1 = a;
+            c.parent = a.parent;
+            a.parent = c;
+            replaceChild(c.parent, a, c);
+
+            if (f.height > g.height) {
+                c.child2 = f;
+                a.child2 = g;
+                g.parent = a;
+                a.aabb = b.aabb.union(g.aabb);
+                c.aabb = a.aabb.union(f.aabb);
+                a.height = 1 + Math.max(b.height, g.height);
+                c.height = 1 + Math.max(a.height, f.height);
+            } else {
+                c.child2 = g;
+                a.child2 = f;
+                f.parent = a;
+                a.aabb = b.aabb.union(f.aabb);
+                c.aabb = a.aabb.union(g.aabb);
+                a.height = 1 + Math.max(b.height, f.height);
+                c.height = 1 + Math.max(a.height, g.height);
+            }
+            return c;
+        }
+
+        if (balance < -1) {
+            // Rotate b up
+            final Node<T> d = b.child1;
+            final Node<T> e = b.child2;
+            b.child1 = a;
+            b.parent = a.parent;
+            a.parent = b;
+            replaceChild(b.parent, a, b);
+
+            if (d.height > e.height) {
+                b.child2 = d;
+                a.child1 = e;
+                e.parent = a;
+                a.aabb = c.aabb.union(e.aabb);
+                b.aabb = a.aabb.union(d.aabb);
+                a.height = 1 + Math.max(c.height, e.height);
+                b.height = 1 + Math.max(a.height, d.height);
+            } else {
+                b.child2 = e;
+                a.child1 = d;
+                d.parent = a;
+                a.aabb = c.aabb.union(d.aabb);
+                b.aabb = a.aabb.union(e.aabb);
+                a.height = 1 + Math.max(c.height, d.height);
+                b.height = 1 + Math.max(a.height, e.height);
+            }
+            return b;
+        }
+
+        return a;
+    }
+
+    /**
+     * Replaces oldChild with newChild in parent. If parent is null then oldChild was the root.
+     */
+    private void replaceChild(Node<T> parent, Node<T> oldChild, Node<T> newChild) {
+        if (parent == null) {
+            root = newChild;
+        } else if (parent.child1 == oldChild) {
+            parent.child1 = newChild;
+        } else {
+            parent.child2 = newChild;
+        }
+    }
+
+    private static double getDescendCost(Node<?> child, AxisAlignedBB leafAABB) {
+        if (child.isLeaf()) {
+            return getSurfaceArea(leafAABB.union(child.aabb));
+        } else {
+            return getSurfaceArea(leafAABB.union(child.aabb)) - getSurfaceArea(child.aabb);
+        }
+    }
+
+    private static double getSurfaceArea(AxisAlignedBB aabb) {
+        final double dx = aabb.maxX - aabb.minX;
+        final double dy = aabb.maxY - aabb.minY;
+        final double dz = aabb.maxZ - aabb.minZ;
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private static boolean contains(AxisAlignedBB outer, AxisAlignedBB inner) {
+        return outer.minX <= inner.minX && outer.minY <= inner.minY && outer.minZ <= inner.minZ
+            && outer.maxX >= inner.maxX && outer.maxY >= inner.maxY && outer.maxZ >= inner.maxZ;
+    }
+
+    private static class Node<T> {
+        // The fat AABB for leaves, or the union of the children AABBs for internal nodes
+        AxisAlignedBB aabb;
+        // The AABB of the object, only used by leaves
+        AxisAlignedBB tightAABB;
+        Node<T> parent, child1, child2;
+        // Leaf height is 0
+        int height;
+        // Only used by leaves
+        T object;
+
+        boolean isLeaf() {
+            return child1 == null;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.valkyrienskies.mod.common.util.datastructures;
 
+import org.valkyrienskies.mod.common.util.VSIterationUtils.IntTernaryConsumer;
+
 public interface IBitOctree {
 
     int BLOCKS_TOTAL = 4096;
@@ -12,6 +14,17 @@ public interface IBitOctree {
 
     boolean get(int x, int y, int z);
 
+    /**
+     * Sets a block bit without updating the levels of the octree above it. Much faster when many bits are changed
+     * at once, but {@link #rebuildOctree()} must be called before the octree is read again.
+     */
+    void setWithoutOctreeUpdate(int x, int y, int z, boolean bit);
+
+    /**
+     * Recalculates the level 1, 2 and 3 bits of the octree from the block bits.
+     */
+    void rebuildOctree();
+
     boolean getAtIndex(int index);
 
     int getOctreeLevelOneIndex(int levelTwoIndex, int offset);
@@ -20,6 +33,13 @@ public interface IBitOctree {
 
     int getOctreeLevelThreeIndex(int offset);
 
+    /**
+     * @return A counter that increases every time a bit in this octree changes. Used to detect if the octree has
+     * changed since it was last looked at, without having to compare every bit. Safe to read from any thread, and the
+     * bit changes counted by it are visible to the thread that read it.
+     */
+    int getModificationCount();
+
     /**
      * You'd think there would be clever way of doing this faster but NOPE!
      *
@@ -37,4 +57,78 @@ public interface IBitOctree {
         }
         return count;
     }
-}
\ No newline at end of file
+
+    /**
+     * Calls the consumer for every set bit between the min position (inclusive) and the max position (inclusive).
+     *
+     * Uses the level 3/2/1 bits of the octree to skip over 8x8x8, 4x4x4 and 2x2x2 cubes that have nothing set in
+     * them, so iterating over a mostly empty octree is much faster than calling get() on every position.
+     */
+    default void forEachSetBitInRange(int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+        IntTernaryConsumer consumer) {
+        minX = Math.max(minX, 0);
+        minY = Math.max(minY, 0);
+        minZ = Math.max(minZ, 0);
+        maxX = Math.min(maxX, 15);
+        maxY = Math.min(maxY, 15);
+        maxZ = Math.min(maxZ, 15);
+        if (minX > maxX || minY > maxY || minZ > maxZ) {
+            return;
+        }
+        for (int levelThreeOffset = 0; levelThreeOffset < 8; levelThreeOffset++) {
+            final int levelThreeX = (levelThreeOffset & 1) << 3;
+            final int levelThreeY = (levelThreeOffset & 2) << 2;
+            final int levelThreeZ = (levelThreeOffset & 4) << 1;
+            if (!isCubeInRange(levelThreeX, levelThreeY, levelThreeZ, 8, minX, minY, minZ, maxX, maxY, maxZ)) {
+                continue;
+            }
+            final int levelThreeIndex = getOctreeLevelThreeIndex(levelThreeOffset);
+            if (!getAtIndex(levelThreeIndex)) {
+                continue;
+            }
+            for (int levelTwoOffset = 0; levelTwoOffset < 8; levelTwoOffset++) {
+                final int levelTwoX = levelThreeX | ((levelTwoOffset & 1) << 2);
+                final int levelTwoY = levelThreeY | ((levelTwoOffset & 2) << 1);
+                final int levelTwoZ = levelThreeZ | (levelTwoOffset & 4);
+                if (!isCubeInRange(levelTwoX, levelTwoY, levelTwoZ, 4, minX, minY, minZ, maxX, maxY, maxZ)) {
+                    continue;
+                }
+                final int levelTwoIndex = getOctreeLevelTwoIndex(levelThreeIndex, levelTwoOffset);
+                if (!getAtIndex(levelTwoIndex)) {
+                    continue;
+                }
+                for (int levelOneOffset = 0; levelOneOffset < 8; levelOneOffset++) {
+                    final int levelOneX = levelTwoX | ((levelOneOffset & 1) << 1);
+                    final int levelOneY = levelTwoY | (levelOneOffset & 2);
+                    final int levelOneZ = levelTwoZ | ((levelOneOffset & 4) >> 1);
+                    if (!isCubeInRange(levelOneX, levelOneY, levelOneZ, 2, minX, minY, minZ, maxX, maxY, maxZ)) {
+                        continue;
+                    }
+                    if (!getAtIndex(getOctreeLevelOneIndex(levelTwoIndex, levelOneOffset))) {
+                        continue;
+                    }
+                    // Finally check the 8 blocks inside of this 2x2x2 cube
+                    for (int x = Math.max(levelOneX, minX); x <= Math.min(levelOneX + 1, maxX); x++) {
+                        for (int y = Math.max(levelOneY, minY); y <= Math.min(levelOneY + 1, maxY); y++) {
+                            for (int z = Math.max(levelOneZ, minZ); z <= Math.min(levelOneZ + 1, maxZ); z++) {
+                                if (get(x, y, z)) {
+                                    consumer.accept(x, y, z);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return True if the cube starting at (cubeX, cubeY, cubeZ) with side length cubeSize overlaps the given range.
+     */
+    static boolean isCubeInRange(int cubeX, int cubeY, int cubeZ, int cubeSize, int minX, int minY, int minZ,
+        int maxX, int maxY, int maxZ) {
+        return cubeX <= maxX && cubeX + cubeSize > minX
+            && cubeY <= maxY && cubeY + cubeSize > minY
+            && cubeZ <= maxZ && cubeZ + cubeSize > minZ;
+    }
+}
@@ -1,8 +1,22 @@
 package org.valkyrienskies.mod.common.util.datastructures;
 
+import net.minecraft.block.state.IBlockState;
+
 public interface ITerrainOctreeProvider {
 
     IBitOctree getSolidOctree();
 
     IBitOctree getLiquidOctree();
+
+    /**
+     * Sets a block state like BlockStateContainer.set(), but only updates the block bits of the octrees. Used to set
+     * many blocks at once, which must be followed by a call to {@link #rebuildOctrees()}.
+     */
+    void setWithoutOctreeUpdate(int index, IBlockState state);
+
+    /**
+     * Rebuilds the solid and liquid octrees after blocks were set with {@link #setWithoutOctreeUpdate(int,
+     * IBlockState)}.
+     */
+    void rebuildOctrees();
 }
@@ -0,0 +1,139 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import lombok.Getter;
+
+import javax.annotation.Nullable;
+import java.util.function.Consumer;
+
+/**
+ * A least recently used cache from long keys to values, which holds at most a fixed number of values. Values that are
+ * evicted, replaced or cleared are given to the eviction listener, so it can release whatever they hold.
+ * <p>
+ * The listener runs on the thread that caused the eviction. This class is not thread safe.
+ *
+ * @param <V> The type of the cached values
+ */
+public class LongKeyLRUCache<V> {
+
+    private final TLongObjectMap<Entry<V>> entries;
+    private final Consumer<? super V> evictionListener;
+    // Sentinel of a circular list of the entries, the most recently used one is after it and the least recently used
+    // one is before it
+    private final Entry<V> head;
+    @Getter
+    private int capacity;
+    @Getter
+    private long hits, misses, evictions;
+
+    public LongKeyLRUCache(int capacity, Consumer<? super V> evictionListener) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1, not " + capacity);
+        }
+        this.entries = new TLongObjectHashMap<>();
+        this.evictionListener = evictionListener;
+        this.head = new Entry<>(0, null);
+        this.head.previous = head;
+        this.head.next = head;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return The value for key, or null if it isn't cached. Counts as a use of the value.
+     */
+    @Nullable
+    public V get(long key) {
+        final Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        unlink(entry);
+        linkFirst(entry);
+        return entry.value;
+    }
+
+    /**
+     * Caches value for key, and evicts the least recently used values if the cache is over capacity.
+     */
+    public void put(long key, V value) {
+        final Entry<V> newEntry = new Entry<>(key, value);
+        final Entry<V> oldEntry = entries.put(key, newEntry);
+        if (oldEntry != null) {
+            unlink(oldEntry);
+            if (oldEntry.value != value) {
+                evictionListener.accept(oldEntry.value);
+            }
+        }
+        linkFirst(newEntry);
+        evictOverCapacity();
+    }
+
+    /**
+     * Changes the capacity, and evicts the least recently used values if the cache is over the new capacity.
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1, not " + capacity);
+        }
+        this.capacity = capacity;
+        evictOverCapacity();
+    }
+
+    /**
+     * Removes all values and gives them to the eviction listener. Doesn't count as evictions in the stats.
+     */
+    public void clear() {
+        for (Entry<V> entry = head.next; entry != head; entry = entry.next) {
+            evictionListener.accept(entry.value);
+        }
+        entries.clear();
+        head.previous = head;
+        head.next = head;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d/%d, %d hits, %d misses, %d evictions", size(), capacity, hits, misses, evictions);
+    }
+
+    private void evictOverCapacity() {
+        while (entries.size() > capacity) {
+            final Entry<V> leastRecentlyUsed = head.previous;
+            unlink(leastRecentlyUsed);
+            entries.remove(leastRecentlyUsed.key);
+            evictions++;
+            evictionListener.accept(leastRecentlyUsed.value);
+        }
+    }
+
+    private void linkFirst(Entry<V> entry) {
+        entry.previous = head;
+        entry.next = head.next;
+        head.next.previous = entry;
+        head.next = entry;
+    }
+
+    private void unlink(Entry<V> entry) {
+        entry.previous.next = entry.next;
+        entry.next.previous = entry.previous;
+    }
+
+    private static class Entry<V> {
+        final long key;
+        final V value;
+        Entry<V> previous, next;
+
+        Entry(long key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+}
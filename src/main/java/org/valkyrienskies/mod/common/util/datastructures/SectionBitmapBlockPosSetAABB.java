@@ -0,0 +1,425 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import lombok.Getter;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
+import org.valkyrienskies.mod.common.util.VSIterationUtils;
+import org.valkyrienskies.mod.common.util.datastructures.SectionBitmapBlockPosSetAABB.SectionBitmapBlockPosSetAABBDeserializer;
+import org.valkyrienskies.mod.common.util.datastructures.SectionBitmapBlockPosSetAABB.SectionBitmapBlockPosSetAABBSerializer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An IBlockPosSetAABB that stores the positions of every 16x16x16 section as a bitmap of 64 longs, using the same
+ * layout as the blocks of {@link SimpleBitOctree}. It can store the same positions as {@link SmallBlockPosSet}.
+ * <p>
+ * Ships are mostly solid, so this takes much less memory than a hash set, and iterating reads 64 bits at a time and
+ * skips empty sections entirely. The AABB is made from the bounds of each section, which are only recalculated for
+ * sections that changed.
+ * <p>
+ * Uses the same JSON format as {@link SmallBlockPosSetAABB}, so either can read what the other wrote.
+ */
+@JsonDeserialize(using = SectionBitmapBlockPosSetAABBDeserializer.class)
+@JsonSerialize(using = SectionBitmapBlockPosSetAABBSerializer.class)
+public class SectionBitmapBlockPosSetAABB implements IBlockPosSetAABB {
+
+    private static final int BOT_12_BITS = 0x00000FFF;
+    private static final int BOT_8_BITS = 0x000000FF;
+    private static final int WORDS_PER_SECTION = IBitOctree.BLOCKS_TOTAL / 64;
+
+    @Getter
+    private final int centerX, centerZ;
+    // The sections that have at least one position, keyed by getSectionKey()
+    private final TIntObjectMap<Section> sectionsByKey;
+    // The same sections as an array, for iterating without going through the map
+    private Section[] sections;
+    private int sectionCount;
+    private int size;
+    // The AABB made by the last call to makeAABB(), null if the set changed since then
+    @Nullable
+    private AxisAlignedBB cachedAABB;
+
+    public SectionBitmapBlockPosSetAABB(int centerX, int centerZ) {
+        this.centerX = centerX;
+        this.centerZ = centerZ;
+        this.sectionsByKey = new TIntObjectHashMap<>();
+        this.sections = new Section[16];
+        this.sectionCount = 0;
+        this.size = 0;
+    }
+
+    @Override
+    public boolean add(int x, int y, int z) throws IllegalArgumentException {
+        if (!canStore(x, y, z)) {
+            throw new IllegalArgumentException("Cannot store block position at <" + x + "," + y + "," + z + ">");
+        }
+        final int localX = x - centerX + 2048;
+        final int localZ = z - centerZ + 2048;
+        final int sectionKey = getSectionKey(localX, y, localZ);
+        Section section = sectionsByKey.get(sectionKey);
+        if (section == null) {
+            section = new Section(localX >> 4, y >> 4, localZ >> 4);
+            sectionsByKey.put(sectionKey, section);
+            addToSectionArray(section);
+        }
+        final int bitIndex = getBitIndex(localX, y, localZ);
+        final long bit = 1L << bitIndex;
+        final long word = section.words[bitIndex >>> 6];
+        if ((word & bit) != 0) {
+            return false;
+        }
+        section.words[bitIndex >>> 6] = word | bit;
+        section.count++;
+        section.boundsValid = false;
+        size++;
+        cachedAABB = null;
+        return true;
+    }
+
+    @Override
+    public boolean remove(int x, int y, int z) {
+        if (!canStore(x, y, z)) {
+            throw new IllegalArgumentException("Cannot remove block position at <" + x + "," + y + "," + z + ">");
+        }
+        final int localX = x - centerX + 2048;
+        final int localZ = z - centerZ + 2048;
+        final int sectionKey = getSectionKey(localX, y, localZ);
+        final Section section = sectionsByKey.get(sectionKey);
+        if (section == null) {
+            return false;
+        }
+        final int bitIndex = getBitIndex(localX, y, localZ);
+        final long bit = 1L << bitIndex;
+        final long word = section.words[bitIndex >>> 6];
+        if ((word & bit) == 0) {
+            return false;
+        }
+        section.words[bitIndex >>> 6] = word & ~bit;
+        section.count--;
+        section.boundsValid = false;
+        size--;
+        cachedAABB = null;
+        if (section.count == 0) {
+            sectionsByKey.remove(sectionKey);
+            removeFromSectionArray(section);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(int x, int y, int z) {
+        if (!canStore(x, y, z)) {
+            // This pos cannot exist in this set
+            return false;
+        }
+        final int localX = x - centerX + 2048;
+        final int localZ = z - centerZ + 2048;
+        final Section section = sectionsByKey.get(getSectionKey(localX, y, localZ));
+        if (section == null) {
+            return false;
+        }
+        final int bitIndex = getBitIndex(localX, y, localZ);
+        return (section.words[bitIndex >>> 6] & (1L << bitIndex)) != 0;
+    }
+
+    @Override
+    public boolean canStore(int x, int y, int z) {
+        int xLocal = x - centerX;
+        int zLocal = z - centerZ;
+        return !(y < 0 | y > 255 | xLocal < -2048 | xLocal > 2047 | zLocal < -2048 | zLocal > 2047);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        sectionsByKey.clear();
+        sections = new Section[16];
+        sectionCount = 0;
+        size = 0;
+        cachedAABB = null;
+    }
+
+    @Nullable
+    @Override
+    public AxisAlignedBB makeAABB() {
+        if (size == 0) {
+            return null;
+        }
+        if (cachedAABB != null) {
+            return cachedAABB;
+        }
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (int i = 0; i < sectionCount; i++) {
+            final Section section = sections[i];
+            final int baseX = section.sectionX << 4, baseY = section.sectionY << 4, baseZ = section.sectionZ << 4;
+            // Skip calculating the bounds of sections that can't extend the AABB
+            if (baseX >= minX && baseX + 15 <= maxX && baseY >= minY && baseY + 15 <= maxY
+                && baseZ >= minZ && baseZ + 15 <= maxZ) {
+                continue;
+            }
+            if (!section.boundsValid) {
+                section.updateBounds();
+            }
+            minX = Math.min(minX, baseX + section.minX);
+            minY = Math.min(minY, baseY + section.minY);
+            minZ = Math.min(minZ, baseZ + section.minZ);
+            maxX = Math.max(maxX, baseX + section.maxX);
+            maxY = Math.max(maxY, baseY + section.maxY);
+            maxZ = Math.max(maxZ, baseZ + section.maxZ);
+        }
+        cachedAABB = new AxisAlignedBB(minX + centerX - 2048, minY, minZ + centerZ - 2048,
+            maxX + centerX - 2048, maxY, maxZ + centerZ - 2048);
+        return cachedAABB;
+    }
+
+    @Override
+    public void forEach(@Nonnull VSIterationUtils.IntTernaryConsumer action) {
+        final Section[] sections = this.sections;
+        final int sectionCount = this.sectionCount;
+        for (int i = 0; i < sectionCount; i++) {
+            final Section section = sections[i];
+            if (section == null) {
+                // Only happens if another thread is modifying this, see forEachUnsafe()
+                continue;
+            }
+            final int baseX = (section.sectionX << 4) + centerX - 2048;
+            final int baseY = section.sectionY << 4;
+            final int baseZ = (section.sectionZ << 4) + centerZ - 2048;
+            final long[] words = section.words;
+            for (int wordIndex = 0; wordIndex < WORDS_PER_SECTION; wordIndex++) {
+                long word = words[wordIndex];
+                while (word != 0) {
+                    final int bitIndex = (wordIndex << 6) | Long.numberOfTrailingZeros(word);
+                    // Clear the lowest set bit
+                    word &= word - 1;
+                    action.accept(baseX + (bitIndex & 15), baseY + ((bitIndex >> 4) & 15), baseZ + (bitIndex >> 8));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void forEachUnsafe(@Nonnull VSIterationUtils.IntTernaryConsumer action) {
+        // forEach() keeps reading the sections it started with, so another thread modifying this can at worst make us
+        // miss or repeat positions.
+        forEach(action);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<BlockPos> iterator() {
+        return new SectionBitmapIterator();
+    }
+
+    /**
+     * Section coordinates are 8 bits for x and z, and 4 bits for y.
+     */
+    private static int getSectionKey(int localX, int y, int localZ) {
+        return (localX >> 4) | ((y >> 4) << 8) | ((localZ >> 4) << 12);
+    }
+
+    /**
+     * The same layout as the blocks of {@link SimpleBitOctree}.
+     */
+    private static int getBitIndex(int localX, int y, int localZ) {
+        return (localX & 15) | ((y & 15) << 4) | ((localZ & 15) << 8);
+    }
+
+    private void addToSectionArray(Section section) {
+        if (sectionCount == sections.length) {
+            sections = Arrays.copyOf(sections, sections.length * 2);
+        }
+        section.arrayIndex = sectionCount;
+        sections[sectionCount++] = section;
+    }
+
+    private void removeFromSectionArray(Section section) {
+        // Move the last section into the gap
+        final Section last = sections[--sectionCount];
+        sections[section.arrayIndex] = last;
+        last.arrayIndex = section.arrayIndex;
+        sections[sectionCount] = null;
+    }
+
+    private static class Section {
+        final int sectionX, sectionY, sectionZ;
+        final long[] words = new long[WORDS_PER_SECTION];
+        int count;
+        int arrayIndex;
+        // The bounds of the set bits in this section, only correct if boundsValid is true
+        boolean boundsValid;
+        int minX, minY, minZ, maxX, maxY, maxZ;
+
+        Section(int sectionX, int sectionY, int sectionZ) {
+            this.sectionX = sectionX;
+            this.sectionY = sectionY;
+            this.sectionZ = sectionZ;
+        }
+
+        /**
+         * Every word holds 4 rows of 16 x positions. The rows are at the 4 y positions of the word, while the index of
+         * the word gives the rest of y and z.
+         */
+        void updateBounds() {
+            long allRows = 0;
+            minY = minZ = 15;
+            maxY = maxZ = 0;
+            for (int wordIndex = 0; wordIndex < WORDS_PER_SECTION; wordIndex++) {
+                final long word = words[wordIndex];
+                if (word == 0) {
+                    continue;
+                }
+                final int z = wordIndex >> 2;
+                minZ = Math.min(minZ, z);
+                maxZ = Math.max(maxZ, z);
+                final int yBase = (wordIndex & 3) << 2;
+                for (int row = 0; row < 4; row++) {
+                    if (((word >>> (row << 4)) & 0xFFFF) != 0) {
+                        minY = Math.min(minY, yBase + row);
+                        maxY = Math.max(maxY, yBase + row);
+                    }
+                }
+                allRows |= word;
+            }
+            final int xBits = (int) ((allRows | (allRows >>> 16) | (allRows >>> 32) | (allRows >>> 48)) & 0xFFFF);
+            minX = Integer.numberOfTrailingZeros(xBits);
+            maxX = 31 - Integer.numberOfLeadingZeros(xBits);
+            boundsValid = true;
+        }
+    }
+
+    private class SectionBitmapIterator implements Iterator<BlockPos> {
+
+        private int sectionIndex = 0;
+        private int wordIndex = 0;
+        private long word = sectionCount > 0 ? sections[0].words[0] : 0;
+
+        @Override
+        public boolean hasNext() {
+            while (word == 0) {
+                if (sectionIndex >= sectionCount) {
+                    return false;
+                }
+                if (++wordIndex == WORDS_PER_SECTION) {
+                    wordIndex = 0;
+                    if (++sectionIndex >= sectionCount) {
+                        return false;
+                    }
+                }
+                word = sections[sectionIndex].words[wordIndex];
+            }
+            return true;
+        }
+
+        @Override
+        public BlockPos next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Section section = sections[sectionIndex];
+            final int bitIndex = (wordIndex << 6) | Long.numberOfTrailingZeros(word);
+            word &= word - 1;
+            return new BlockPos((section.sectionX << 4) + (bitIndex & 15) + centerX - 2048,
+                (section.sectionY << 4) + ((bitIndex >> 4) & 15),
+                (section.sectionZ << 4) + (bitIndex >> 8) + centerZ - 2048);
+        }
+
+    }
+
+    public static class SectionBitmapBlockPosSetAABBSerializer extends StdSerializer<SectionBitmapBlockPosSetAABB> {
+
+        public SectionBitmapBlockPosSetAABBSerializer() {
+            super((Class<SectionBitmapBlockPosSetAABB>) null);
+        }
+
+        @Override
+        public void serialize(SectionBitmapBlockPosSetAABB value, JsonGenerator gen,
+                              SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+
+            // A SmallBlockPosSet
+            gen.writeObjectFieldStart("blockPosSet");
+            gen.writeFieldName("positions");
+            gen.writeStartArray(value.size());
+            final IOException[] exception = {null};
+            value.forEach((x, y, z) -> {
+                // The position compression of SmallBlockPosSet
+                final int xBits = (x - value.centerX) & BOT_12_BITS;
+                final int yBits = y & BOT_8_BITS;
+                final int zBits = (z - value.centerZ) & BOT_12_BITS;
+                try {
+                    gen.writeNumber(xBits | (yBits << 12) | (zBits << 20));
+                } catch (IOException e) {
+                    exception[0] = e;
+                }
+            });
+            if (exception[0] != null) {
+                throw exception[0];
+            }
+            gen.writeEndArray();
+            gen.writeNumberField("centerX", value.centerX);
+            gen.writeNumberField("centerZ", value.centerZ);
+            gen.writeEndObject();
+
+            // The rest of SmallBlockPosSetAABB, which we don't need ourselves
+            gen.writeNumberField("centerX", value.centerX);
+            gen.writeNumberField("centerY", 0);
+            gen.writeNumberField("centerZ", value.centerZ);
+            gen.writeNumberField("xSize", 1024);
+            gen.writeNumberField("ySize", 1024);
+            gen.writeNumberField("zSize", 1024);
+            gen.writeEndObject();
+        }
+    }
+
+    public static class SectionBitmapBlockPosSetAABBDeserializer
+        extends StdDeserializer<SectionBitmapBlockPosSetAABB> {
+
+        public SectionBitmapBlockPosSetAABBDeserializer() {
+            super((Class<?>) null);
+        }
+
+        @Override
+        public SectionBitmapBlockPosSetAABB deserialize(JsonParser p, DeserializationContext ctxt)
+            throws IOException {
+            JsonNode root = p.getCodec().readTree(p);
+            JsonNode node = root.get("blockPosSet");
+
+            int centerX = node.get("centerX").asInt();
+            int centerZ = node.get("centerZ").asInt();
+
+            SectionBitmapBlockPosSetAABB set = new SectionBitmapBlockPosSetAABB(centerX, centerZ);
+
+            for (JsonNode elem : node.get("positions")) {
+                int compressed = elem.asInt();
+                int z = compressed >> 20;
+                int y = (compressed >> 12) & BOT_8_BITS;
+                int x = (compressed & BOT_12_BITS) << 20 >> 20;
+                set.add(x + centerX, y, z + centerZ);
+            }
+
+            return set;
+        }
+    }
+}
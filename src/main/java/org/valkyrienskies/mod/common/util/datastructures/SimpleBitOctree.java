@@ -3,6 +3,9 @@ package org.valkyrienskies.mod.common.util.datastructures;
 public class SimpleBitOctree implements IBitOctree {
 
     private final IBitSet bitbuffer;
+    // Volatile so that the physics thread sees the bits that were set before the count changed. Only the game
+    // thread changes octrees, so the increments don't have to be atomic.
+    private volatile int modificationCount;
 
     public SimpleBitOctree() {
         bitbuffer = new SmallBitSet(BITS_TOTAL);
@@ -15,9 +18,45 @@ public class SimpleBitOctree implements IBitOctree {
         if (bitbuffer.get(index) != bit) {
             bitbuffer.set(index, bit);
             updateOctrees(x, y, z, bit);
+            modificationCount++;
         }
     }
 
+    @Override
+    public void setWithoutOctreeUpdate(int x, int y, int z, boolean bit) {
+        int index = getBlockIndex(x, y, z);
+        ensureCapacity(index);
+        if (bitbuffer.get(index) != bit) {
+            bitbuffer.set(index, bit);
+            modificationCount++;
+        }
+    }
+
+    @Override
+    public void rebuildOctree() {
+        for (int levelThreeOffset = 0; levelThreeOffset < 8; levelThreeOffset++) {
+            final int levelThreeIndex = getOctreeLevelThreeIndex(levelThreeOffset);
+            for (int levelTwoOffset = 0; levelTwoOffset < 8; levelTwoOffset++) {
+                final int levelTwoIndex = getOctreeLevelTwoIndex(levelThreeIndex, levelTwoOffset);
+                for (int levelOneOffset = 0; levelOneOffset < 8; levelOneOffset++) {
+                    // The same offset bits as the ones used by IBitOctree.forEachSetBitInRange()
+                    final int x = ((levelThreeOffset & 1) << 3) | ((levelTwoOffset & 1) << 2)
+                        | ((levelOneOffset & 1) << 1);
+                    final int y = ((levelThreeOffset & 2) << 2) | ((levelTwoOffset & 2) << 1)
+                        | (levelOneOffset & 2);
+                    final int z = ((levelThreeOffset & 4) << 1) | (levelTwoOffset & 4)
+                        | ((levelOneOffset & 4) >> 1);
+                    updateOctreeLevelOne(getOctreeLevelOneIndex(levelTwoIndex, levelOneOffset), x, y, z);
+                }
+                updateOctreeLevelTwo(levelTwoIndex);
+            }
+            updateOctreeLevelThree(levelThreeIndex);
+        }
+        // The count already changed when the bits were set, but the summary levels were stale until now. Without
+        // this, another thread could have looked at the stale levels under the new count and never look again.
+        modificationCount++;
+    }
+
     @Override
     public boolean get(int x, int y, int z) {
         return getAtIndex(getBlockIndex(x, y, z));
@@ -29,6 +68,11 @@ public class SimpleBitOctree implements IBitOctree {
         return bitbuffer.get(index);
     }
 
+    @Override
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
     @Override
     public int getOctreeLevelOneIndex(int levelTwoIndex, int offset) {
         return levelTwoIndex + offset + 1;
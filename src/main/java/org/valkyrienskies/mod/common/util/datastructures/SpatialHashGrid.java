@@ -0,0 +1,196 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Stores objects at points on the XZ plane, bucketed into square cells, so that the objects within a distance of a
+ * point can be found by only looking at the few cells around that point. Queries are fastest when the cell size is
+ * about the same as the distances queried.
+ * <p>
+ * Meant to be cleared and refilled every tick, the cells are kept between ticks to avoid allocating them again.
+ * <p>
+ * Not thread safe.
+ *
+ * @param <T> The type of the objects stored in the grid.
+ */
+public class SpatialHashGrid<T> {
+
+    // When there are more empty cells than this they are all removed, so the grid doesn't grow forever as the objects
+    // in it move around.
+    private static final int MAX_EMPTY_CELLS = 256;
+
+    private final double cellSize;
+    private final TLongObjectMap<Cell<T>> cells;
+    // The cells that have objects in them
+    private final List<Cell<T>> nonEmptyCells;
+    private int size;
+
+    public SpatialHashGrid(double cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive, got " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.cells = new TLongObjectHashMap<>();
+        this.nonEmptyCells = new ArrayList<>();
+        this.size = 0;
+    }
+
+    /**
+     * Removes every object from the grid.
+     */
+    public void clear() {
+        if (cells.size() - nonEmptyCells.size() > MAX_EMPTY_CELLS) {
+            cells.clear();
+        }
+        for (Cell<T> cell : nonEmptyCells) {
+            cell.clear();
+        }
+        nonEmptyCells.clear();
+        size = 0;
+    }
+
+    public void insert(T object, double x, double z) {
+        final long key = getCellKey(getCellCoord(x), getCellCoord(z));
+        Cell<T> cell = cells.get(key);
+        if (cell == null) {
+            cell = new Cell<>();
+            cells.put(key, cell);
+        }
+        if (cell.size == 0) {
+            nonEmptyCells.add(cell);
+        }
+        cell.add(object, x, z);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return True if there is an object whose XZ distance to (x, z) is less than distance.
+     */
+    public boolean anyWithinDistance(double x, double z, double distance) {
+        final double distanceSq = distance * distance;
+        if (isCheaperToCheckEveryCell(x, z, distance)) {
+            for (Cell<T> cell : nonEmptyCells) {
+                if (cell.anyWithinDistanceSq(x, z, distanceSq)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        final int maxCellX = getCellCoord(x + distance);
+        final int maxCellZ = getCellCoord(z + distance);
+        for (int cellX = getCellCoord(x - distance); cellX <= maxCellX; cellX++) {
+            for (int cellZ = getCellCoord(z - distance); cellZ <= maxCellZ; cellZ++) {
+                final Cell<T> cell = cells.get(getCellKey(cellX, cellZ));
+                if (cell != null && cell.anyWithinDistanceSq(x, z, distanceSq)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs consumer on every object whose XZ distance to (x, z) is less than distance.
+     */
+    public void forEachWithinDistance(double x, double z, double distance, Consumer<T> consumer) {
+        final double distanceSq = distance * distance;
+        if (isCheaperToCheckEveryCell(x, z, distance)) {
+            for (Cell<T> cell : nonEmptyCells) {
+                cell.forEachWithinDistanceSq(x, z, distanceSq, consumer);
+            }
+            return;
+        }
+        final int maxCellX = getCellCoord(x + distance);
+        final int maxCellZ = getCellCoord(z + distance);
+        for (int cellX = getCellCoord(x - distance); cellX <= maxCellX; cellX++) {
+            for (int cellZ = getCellCoord(z - distance); cellZ <= maxCellZ; cellZ++) {
+                final Cell<T> cell = cells.get(getCellKey(cellX, cellZ));
+                if (cell != null) {
+                    cell.forEachWithinDistanceSq(x, z, distanceSq, consumer);
+                }
+            }
+        }
+    }
+
+    /**
+     * If the distance is very large compared to the cell size, then there are more cells in range than there are
+     * cells with objects in them.
+     */
+    private boolean isCheaperToCheckEveryCell(double x, double z, double distance) {
+        final long cellsX = (long) getCellCoord(x + distance) - getCellCoord(x - distance) + 1;
+        final long cellsZ = (long) getCellCoord(z + distance) - getCellCoord(z - distance) + 1;
+        return cellsX * cellsZ > nonEmptyCells.size();
+    }
+
+    private int getCellCoord(double coord) {
+        return (int) Math.floor(coord / cellSize);
+    }
+
+    private static long getCellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+
+    private static class Cell<T> {
+
+        private final List<T> objects;
+        private double[] xs;
+        private double[] zs;
+        private int size;
+
+        Cell() {
+            this.objects = new ArrayList<>();
+            this.xs = new double[4];
+            this.zs = new double[4];
+            this.size = 0;
+        }
+
+        void add(T object, double x, double z) {
+            if (size == xs.length) {
+                final double[] newXs = new double[size * 2];
+                final double[] newZs = new double[size * 2];
+                System.arraycopy(xs, 0, newXs, 0, size);
+                System.arraycopy(zs, 0, newZs, 0, size);
+                xs = newXs;
+                zs = newZs;
+            }
+            objects.add(object);
+            xs[size] = x;
+            zs[size] = z;
+            size++;
+        }
+
+        void clear() {
+            objects.clear();
+            size = 0;
+        }
+
+        boolean anyWithinDistanceSq(double x, double z, double distanceSq) {
+            for (int i = 0; i < size; i++) {
+                final double xDif = xs[i] - x;
+                final double zDif = zs[i] - z;
+                if (xDif * xDif + zDif * zDif < distanceSq) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void forEachWithinDistanceSq(double x, double z, double distanceSq, Consumer<T> consumer) {
+            for (int i = 0; i < size; i++) {
+                final double xDif = xs[i] - x;
+                final double zDif = zs[i] - z;
+                if (xDif * xDif + zDif * zDif < distanceSq) {
+                    consumer.accept(objects.get(i));
+                }
+            }
+        }
+    }
+}
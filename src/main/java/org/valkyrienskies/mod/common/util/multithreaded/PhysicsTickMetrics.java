@@ -0,0 +1,250 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import lombok.Getter;
+import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
+import org.valkyrienskies.mod.common.util.datastructures.ConcurrentHistogram;
+
+/**
+ * Keeps track of how long every phase of the physics ticks of a world takes, and how much time is spent on every
+ * ship. Recording is lock free and can be done from any thread, the metrics can be read from any thread as well.
+ */
+public class PhysicsTickMetrics {
+
+    public enum Phase {
+        // Computing the forces on the ships before collision
+        PRE_COLLISION,
+        // Updating the water collision cache and creating the water force tasks
+        WATER_CACHE,
+        // Updating the world collision cache and creating the collision tasks
+        COLLISION_CACHE,
+        // Running the collision detection and water force tasks on the physics thread pool
+        PARALLEL_TASKS,
+        // Applying the collision impulses to the ships
+        COLLISION_RESOLUTION,
+        // Integrating the ship velocities and transforms after collision
+        POST_COLLISION,
+        // Sending the ship transforms to the players
+        PACKET_SEND,
+        // The whole physics tick
+        TOTAL
+    }
+
+    private final Map<Phase, ConcurrentHistogram> phaseTimes;
+    private final Map<UUID, ShipCost> shipCosts;
+
+    public PhysicsTickMetrics() {
+        this.phaseTimes = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values()) {
+            this.phaseTimes.put(phase, new ConcurrentHistogram());
+        }
+        this.shipCosts = new ConcurrentHashMap<>();
+    }
+
+    public void recordPhase(Phase phase, long nanos) {
+        phaseTimes.get(phase).record(nanos);
+    }
+
+    public ConcurrentHistogram getPhaseTimes(Phase phase) {
+        return phaseTimes.get(phase);
+    }
+
+    /**
+     * @return The cost counters of the given ship, created if they don't exist yet.
+     */
+    public ShipCost getShipCost(PhysicsObject ship) {
+        ShipCost cost = shipCosts.get(ship.getUuid());
+        if (cost == null) {
+            cost = shipCosts.computeIfAbsent(ship.getUuid(), ShipCost::new);
+        }
+        cost.name = ship.getName();
+        return cost;
+    }
+
+    /**
+     * Removes the cost counters of every ship that isn't in the given collection.
+     */
+    public void retainShips(Collection<PhysicsObject> ships) {
+        if (shipCosts.size() <= ships.size()) {
+            return;
+        }
+        final Set<UUID> shipIds = new HashSet<>();
+        for (PhysicsObject ship : ships) {
+            shipIds.add(ship.getUuid());
+        }
+        shipCosts.keySet().retainAll(shipIds);
+    }
+
+    /**
+     * @return A snapshot of the costs of every ship, the most expensive ships first. The physics thread keeps adding
+     * to the live counters, so they're copied before sorting.
+     */
+    public List<ShipCostSnapshot> getShipCostsSorted() {
+        final List<ShipCostSnapshot> costs = new ArrayList<>(shipCosts.size());
+        for (ShipCost cost : shipCosts.values()) {
+            costs.add(cost.snapshot());
+        }
+        costs.sort(Comparator.comparingLong(ShipCostSnapshot::getTotalNanos).reversed());
+        return costs;
+    }
+
+    public void reset() {
+        phaseTimes.values().forEach(ConcurrentHistogram::reset);
+        shipCosts.clear();
+    }
+
+    /**
+     * @return All of the metrics as maps, lists, and numbers. Meant to be written as JSON.
+     */
+    public Map<String, Object> toMachineReadable() {
+        final Map<String, Object> phases = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            final ConcurrentHistogram histogram = phaseTimes.get(phase);
+            final Map<String, Object> phaseData = new LinkedHashMap<>();
+            phaseData.put("count", histogram.getCount());
+            phaseData.put("meanNanos", histogram.getMean());
+            phaseData.put("p50Nanos", histogram.getValueAtPercentile(50));
+            phaseData.put("p90Nanos", histogram.getValueAtPercentile(90));
+            phaseData.put("p99Nanos", histogram.getValueAtPercentile(99));
+            phaseData.put("p999Nanos", histogram.getValueAtPercentile(99.9));
+            phaseData.put("maxNanos", histogram.getMax());
+            phases.put(phase.name(), phaseData);
+        }
+
+        final List<Object> ships = new ArrayList<>();
+        for (ShipCostSnapshot cost : getShipCostsSorted()) {
+            final Map<String, Object> shipData = new LinkedHashMap<>();
+            shipData.put("uuid", cost.getUuid().toString());
+            shipData.put("name", cost.getName());
+            shipData.put("ticks", cost.getTicks());
+            shipData.put("totalNanos", cost.getTotalNanos());
+            final Map<String, Object> shipPhases = new LinkedHashMap<>();
+            for (Phase phase : Phase.values()) {
+                if (phase != Phase.TOTAL) {
+                    shipPhases.put(phase.name(), cost.getPhaseNanos(phase));
+                }
+            }
+            shipData.put("phaseNanos", shipPhases);
+            ships.add(shipData);
+        }
+
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("phases", phases);
+        metrics.put("ships", ships);
+        return metrics;
+    }
+
+    /**
+     * The time spent on a single ship, split by phase. Time spent on work shared between every ship, like sending
+     * packets, isn't counted.
+     */
+    public static class ShipCost {
+
+        @Getter
+        private final UUID uuid;
+        @Getter
+        private volatile String name;
+        private final AtomicLongArray phaseNanos;
+        private final AtomicLong ticks;
+
+        private ShipCost(UUID uuid) {
+            this.uuid = uuid;
+            this.phaseNanos = new AtomicLongArray(Phase.values().length);
+            this.ticks = new AtomicLong();
+        }
+
+        public void add(Phase phase, long nanos) {
+            phaseNanos.addAndGet(phase.ordinal(), nanos);
+        }
+
+        /**
+         * Counts one physics tick for this ship.
+         */
+        public void addTick() {
+            ticks.incrementAndGet();
+        }
+
+        public long getPhaseNanos(Phase phase) {
+            return phaseNanos.get(phase.ordinal());
+        }
+
+        /**
+         * @return The number of physics ticks this ship was counted in.
+         */
+        public long getTicks() {
+            return ticks.get();
+        }
+
+        public long getTotalNanos() {
+            long total = 0;
+            for (int i = 0; i < phaseNanos.length(); i++) {
+                total += phaseNanos.get(i);
+            }
+            return total;
+        }
+
+        public double getAverageNanosPerTick() {
+            final long ticks = getTicks();
+            return ticks == 0 ? 0 : (double) getTotalNanos() / ticks;
+        }
+
+        /**
+         * @return A copy of the current counters of this ship that won't change anymore.
+         */
+        public ShipCostSnapshot snapshot() {
+            final long[] phaseNanos = new long[this.phaseNanos.length()];
+            for (int i = 0; i < phaseNanos.length; i++) {
+                phaseNanos[i] = this.phaseNanos.get(i);
+            }
+            return new ShipCostSnapshot(uuid, name, ticks.get(), phaseNanos);
+        }
+    }
+
+    /**
+     * An immutable copy of the {@link ShipCost} of a ship at some point in time.
+     */
+    public static class ShipCostSnapshot {
+
+        @Getter
+        private final UUID uuid;
+        @Getter
+        private final String name;
+        @Getter
+        private final long ticks;
+        @Getter
+        private final long totalNanos;
+        private final long[] phaseNanos;
+
+        private ShipCostSnapshot(UUID uuid, String name, long ticks, long[] phaseNanos) {
+            this.uuid = uuid;
+            this.name = name;
+            this.ticks = ticks;
+            this.phaseNanos = phaseNanos;
+            long total = 0;
+            for (long nanos : phaseNanos) {
+                total += nanos;
+            }
+            this.totalNanos = total;
+        }
+
+        public long getPhaseNanos(Phase phase) {
+            return phaseNanos[phase.ordinal()];
+        }
+
+        public double getAverageNanosPerTick() {
+            return ticks == 0 ? 0 : (double) totalNanos / ticks;
+        }
+    }
+}
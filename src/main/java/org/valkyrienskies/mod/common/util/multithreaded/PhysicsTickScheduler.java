@@ -0,0 +1,80 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import org.valkyrienskies.mod.common.config.VSConfig.PhysicsOverloadMode;
+
+/**
+ * Decides how many fixed length physics ticks to run, based on how much real time has passed. Time that passed is
+ * added to an accumulator, and every physics tick run removes one tick length from it. What happens when the physics
+ * ticks can't keep up with real time depends on the {@link PhysicsOverloadMode}.
+ * <p>
+ * Not thread safe, only to be used by the physics thread that owns it.
+ */
+public class PhysicsTickScheduler {
+
+    // Time that has passed but hasn't been simulated yet
+    private long accumulatedNanos;
+    // The last time we looked at the clock, or -1 if we haven't started yet
+    private long lastTimeNanos;
+
+    public PhysicsTickScheduler() {
+        this.accumulatedNanos = 0;
+        this.lastTimeNanos = -1;
+    }
+
+    /**
+     * Adds the time passed since the last call to the accumulator, and removes the time of the ticks that must be run
+     * now.
+     *
+     * @param nowNanos     The current time, from {@link System#nanoTime()}
+     * @param tickNanos    The length of a physics tick
+     * @param maxSubsteps  The maximum number of ticks that may be returned
+     * @param overloadMode What to do with the time we can't simulate because we're behind
+     * @return The number of physics ticks to run now
+     */
+    public int advance(long nowNanos, long tickNanos, int maxSubsteps, PhysicsOverloadMode overloadMode) {
+        if (lastTimeNanos == -1) {
+            // The first tick always runs immediately
+            lastTimeNanos = nowNanos;
+            accumulatedNanos = tickNanos;
+        }
+        accumulatedNanos += nowNanos - lastTimeNanos;
+        lastTimeNanos = nowNanos;
+
+        final int maxTicks = overloadMode == PhysicsOverloadMode.SLOW_TIME ? 1 : Math.max(1, maxSubsteps);
+        final long ticksBehind = accumulatedNanos / tickNanos;
+        final int ticks = (int) Math.min(ticksBehind, maxTicks);
+        accumulatedNanos -= ticks * tickNanos;
+
+        if (ticksBehind > maxTicks) {
+            switch (overloadMode) {
+                case SUBSTEP:
+                    // Keep the time we're behind so we can catch up later, but never more than one more iteration of
+                    // substeps, otherwise we'd never catch up if we're always overloaded.
+                    accumulatedNanos = Math.min(accumulatedNanos, maxTicks * tickNanos);
+                    break;
+                case DROP:
+                case SLOW_TIME:
+                    // Forget the time we're behind by, only keeping the progress into the next tick.
+                    accumulatedNanos %= tickNanos;
+                    break;
+            }
+        }
+        return ticks;
+    }
+
+    /**
+     * @return The number of nanoseconds until the next tick must run, assuming no time passed since the last call to
+     * {@link #advance(long, long, int, PhysicsOverloadMode)}.
+     */
+    public long getNanosUntilNextTick(long tickNanos) {
+        return Math.max(0, tickNanos - accumulatedNanos);
+    }
+
+    /**
+     * Forgets all the time that passed, used when physics are paused so we don't try to catch up afterwards.
+     */
+    public void reset() {
+        accumulatedNanos = 0;
+        lastTimeNanos = -1;
+    }
+}
@@ -5,22 +5,25 @@ import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import net.minecraft.client.Minecraft;
 import net.minecraft.server.MinecraftServer;
-import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.world.World;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 import org.valkyrienskies.mod.common.ValkyrienSkiesMod;
 import org.valkyrienskies.mod.common.collision.ShipCollisionTask;
 import org.valkyrienskies.mod.common.collision.WaterForcesTask;
+import org.valkyrienskies.mod.common.collision.WorldPhysicsCollider;
 import org.valkyrienskies.mod.common.config.VSConfig;
-import org.valkyrienskies.mod.common.network.ShipTransformUpdateMessage;
-import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.network.ShipTransformUpdateSender;
 import org.valkyrienskies.mod.common.ships.ship_world.IHasShipManager;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
+import org.valkyrienskies.mod.common.util.multithreaded.PhysicsTickMetrics.Phase;
+import org.valkyrienskies.mod.common.util.multithreaded.PhysicsTickMetrics.ShipCost;
 
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Handles the physics for a given world. This is run on a separate thread, not on the game tick.
@@ -29,11 +32,17 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public class VSWorldPhysicsLoop implements Runnable {
 
     // The number of physics ticks to be considered in the average tick time.
-    private final static long TICK_TIME_QUEUE = 100;
+    private final static int TICK_TIME_QUEUE = 100;
     // Used to give each VS thread a unique name
     private static int worldPhysicsLoopId = 0;
     private final World hostWorld;
-    private final Queue<Long> latestPhysicsTickTimes;
+    // The times between the last TICK_TIME_QUEUE physics ticks, as a ring buffer. Only used by the physics thread.
+    private final long[] latestPhysicsTickTimes;
+    private int latestPhysicsTickTimesIndex;
+    private int latestPhysicsTickTimesCount;
+    private long latestPhysicsTickTimesSum;
+    // The average of latestPhysicsTickTimes, or 0 if we don't have enough tick times yet.
+    private volatile long averagePhysicsTickTimeNano;
     // The ships we will be ticking physics for every tick, and sending those
     // updates to players.
     // Used by the game thread to mark this thread for death.
@@ -42,6 +51,17 @@ public class VSWorldPhysicsLoop implements Runnable {
     private final Queue<Runnable> taskQueue;
     private ImmutableList<PhysicsObject> immutableShipsList;
     private final ConcurrentLinkedQueue<IPhysTimeTask> recurringTasks;
+    // Decides when to run physics ticks, only used by the physics thread.
+    private final PhysicsTickScheduler tickScheduler;
+    /**
+     * The time spent on the phases of the physics ticks of this world, and on every ship.
+     */
+    @Getter
+    private final PhysicsTickMetrics tickMetrics;
+    // The time spent on every phase in the current physics tick, summed over every ship. Only used by the physics thread.
+    private final long[] tickPhaseNanos;
+    // Sends the ship transforms to the players watching the ships, only used by the physics thread.
+    private final ShipTransformUpdateSender transformUpdateSender;
 
     @Getter
     private final String name;
@@ -51,10 +71,18 @@ public class VSWorldPhysicsLoop implements Runnable {
         worldPhysicsLoopId++;
         this.hostWorld = host;
         this.threadRunning = true;
-        this.latestPhysicsTickTimes = new ConcurrentLinkedQueue<>();
+        this.latestPhysicsTickTimes = new long[TICK_TIME_QUEUE];
+        this.latestPhysicsTickTimesIndex = 0;
+        this.latestPhysicsTickTimesCount = 0;
+        this.latestPhysicsTickTimesSum = 0;
+        this.averagePhysicsTickTimeNano = 0;
+        this.tickMetrics = new PhysicsTickMetrics();
+        this.tickPhaseNanos = new long[PhysicsTickMetrics.Phase.values().length];
         this.taskQueue = new ConcurrentLinkedQueue<>();
         this.immutableShipsList = ImmutableList.of();
         this.recurringTasks = new ConcurrentLinkedQueue<>();
+        this.tickScheduler = new PhysicsTickScheduler();
+        this.transformUpdateSender = new ShipTransformUpdateSender(host);
         log.trace(name + " created.");
     }
 
@@ -81,6 +109,8 @@ public class VSWorldPhysicsLoop implements Runnable {
      */
     @Override
     public void run() {
+        // The start time of the last physics tick, or -1 if physics weren't running
+        long lastPhysTickStartTime = -1;
         while (threadRunning) {
             final MinecraftServer mcServer = hostWorld.getMinecraftServer();
             assert mcServer != null;
@@ -91,33 +121,34 @@ public class VSWorldPhysicsLoop implements Runnable {
                 // The number of seconds the physics engine will move forward
                 final double timeToSimulate = VSConfig.getTimeSimulatedPerTick();
                 // The number of nanoseconds we want our physics engine tick to take
-                final long idealTickTime = (long) (1E9 / VSConfig.targetTps);
-
-                final long physTickStartTime = System.nanoTime();
-                // Run the physics engine tick
-                physicsTick(timeToSimulate);
-                final long physTickEndTime = System.nanoTime();
-                final long physTickDuration = physTickEndTime - physTickStartTime;
-
-                // If the physics tick ran faster than the ideal tick time, then pretend it took the ideal tick time by
-                // waiting.
-                if (physTickDuration < idealTickTime) {
-                    final long sleepMillis = (idealTickTime - physTickDuration) / 1_000_000L;
-                    try {
-                        Thread.sleep(sleepMillis);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
+                final long idealTickTime = getNsPerTick();
+
+                final long currentTime = System.nanoTime();
+                final int ticksToRun = tickScheduler.advance(currentTime, idealTickTime,
+                    VSConfig.maxPhysicsSubsteps, VSConfig.physicsOverloadMode);
+                final long nextTickTime = currentTime + tickScheduler.getNanosUntilNextTick(idealTickTime);
+
+                for (int i = 0; i < ticksToRun && threadRunning; i++) {
+                    final long physTickStartTime = System.nanoTime();
+                    // Keep track of the time between physics ticks, including the time we spent waiting.
+                    if (lastPhysTickStartTime != -1) {
+                        recordPhysicsTickTime(physTickStartTime - lastPhysTickStartTime);
                     }
+                    lastPhysTickStartTime = physTickStartTime;
+                    // Run the physics engine tick
+                    physicsTick(timeToSimulate);
                 }
 
-                // Keep track of the time it took to run the physics tick, including the time we spent sleeping.
-                final long physTickDurationIncludingSleep = System.nanoTime() - physTickStartTime;
-                latestPhysicsTickTimes.add(physTickDurationIncludingSleep);
-                // Ensure that latestPhysicsTickTimes only has TICK_TIME_QUEUE # of elements
-                if (latestPhysicsTickTimes.size() > TICK_TIME_QUEUE) {
-                    latestPhysicsTickTimes.remove();
+                // Wait until the next tick is due. Unlike Thread.sleep() this doesn't truncate the wait time to
+                // milliseconds. parkNanos() may return early, so keep parking until we reach the next tick time.
+                long waitTime;
+                while (threadRunning && (waitTime = nextTickTime - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(waitTime);
                 }
             } else {
+                // Don't try to catch up on the time that passed while physics were disabled
+                tickScheduler.reset();
+                lastPhysTickStartTime = -1;
                 // If physics are disabled then sleep for 100 ms.
                 // If we don't sleep then we waste a ton of CPU just being in this while(true) loop.
                 try {
@@ -132,9 +163,22 @@ public class VSWorldPhysicsLoop implements Runnable {
         log.trace(name + " killed");
     }
 
+    private void recordPhysicsTickTime(long tickTime) {
+        latestPhysicsTickTimesSum += tickTime - latestPhysicsTickTimes[latestPhysicsTickTimesIndex];
+        latestPhysicsTickTimes[latestPhysicsTickTimesIndex] = tickTime;
+        latestPhysicsTickTimesIndex = (latestPhysicsTickTimesIndex + 1) % TICK_TIME_QUEUE;
+        if (latestPhysicsTickTimesCount < TICK_TIME_QUEUE) {
+            latestPhysicsTickTimesCount++;
+        }
+        if (latestPhysicsTickTimesCount == TICK_TIME_QUEUE) {
+            averagePhysicsTickTimeNano = latestPhysicsTickTimesSum / TICK_TIME_QUEUE;
+        }
+    }
+
     private long lastPacketSendTime = 0;
 
     private void physicsTick(double delta) {
+        final long tickStartTime = System.nanoTime();
         // Update the immutable ship list.
         immutableShipsList = ((IHasShipManager) hostWorld).getManager().getAllLoadedThreadSafe();
 
@@ -162,25 +206,20 @@ public class VSWorldPhysicsLoop implements Runnable {
         if (secondsSinceLastPacket > .04) {
             // Update the last update time
             lastPacketSendTime = currentTimeMillis;
+            final long packetSendStartTime = System.nanoTime();
 
             try {
-                // At the end, send the transform update packets
-                final ShipTransformUpdateMessage shipTransformUpdateMessage = new ShipTransformUpdateMessage();
-                final int dimensionID = hostWorld.provider.getDimension();
-
-                shipTransformUpdateMessage.setDimensionID(dimensionID);
-                for (final PhysicsObject physicsObject : immutableShipsList) {
-                    final UUID shipUUID = physicsObject.getUuid();
-                    final ShipTransform shipTransform = physicsObject.getShipTransformationManager().getCurrentPhysicsTransform();
-                    final AxisAlignedBB shipBB = physicsObject.getPhysicsTransformAABB();
-
-                    shipTransformUpdateMessage.addData(shipUUID, shipTransform, shipBB);
-                }
-                ValkyrienSkiesMod.physWrapperTransformUpdateNetwork.sendToDimension(shipTransformUpdateMessage, shipTransformUpdateMessage.getDimensionID());
+                // At the end, send the transform update packets to the players watching the ships
+                transformUpdateSender.sendUpdates(immutableShipsList);
             } catch (Exception e) {
                 e.printStackTrace();
             }
+            tickMetrics.recordPhase(Phase.PACKET_SEND, System.nanoTime() - packetSendStartTime);
         }
+
+        // Forget the costs of the ships that were unloaded
+        tickMetrics.retainShips(immutableShipsList);
+        tickMetrics.recordPhase(Phase.TOTAL, System.nanoTime() - tickStartTime);
     }
 
     /**
@@ -190,28 +229,43 @@ public class VSWorldPhysicsLoop implements Runnable {
         final List<ShipCollisionTask> collisionTasks = new ArrayList<>(
             shipsWithPhysics.size() * 2);
         final List<WaterForcesTask> waterForcesTasks = new ArrayList<>();
+        Arrays.fill(tickPhaseNanos, 0);
         for (PhysicsObject wrapper : shipsWithPhysics) {
+            final ShipCost shipCost = tickMetrics.getShipCost(wrapper);
+            shipCost.addTick();
             // Update the physics simulation
             try {
+                long phaseStartTime = System.nanoTime();
                 wrapper.getPhysicsCalculations().rawPhysTickPreCol(timeStep);
+                phaseStartTime = recordShipPhase(shipCost, Phase.PRE_COLLISION, phaseStartTime);
                 // Do water collision and buoyancy
                 wrapper.getPhysicsCalculations().getWorldWaterCollider().tickUpdatingTheCollisionCache();
                 // Add water forces tasks to be processed in parallel
                 waterForcesTasks.addAll(wrapper.getPhysicsCalculations().getWorldWaterCollider().generateWaterForceTasks());
+                phaseStartTime = recordShipPhase(shipCost, Phase.WATER_CACHE, phaseStartTime);
                 // Update the collision task if necessary
                 wrapper.getPhysicsCalculations().getWorldCollision()
                         .tickUpdatingTheCollisionCache();
                 // Take the big collision and split into tiny ones
                 wrapper.getPhysicsCalculations().getWorldCollision()
                         .splitIntoCollisionTasks(collisionTasks);
+                recordShipPhase(shipCost, Phase.COLLISION_CACHE, phaseStartTime);
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
+        tickMetrics.recordPhase(Phase.PRE_COLLISION, tickPhaseNanos[Phase.PRE_COLLISION.ordinal()]);
+        tickMetrics.recordPhase(Phase.WATER_CACHE, tickPhaseNanos[Phase.WATER_CACHE.ordinal()]);
+        tickMetrics.recordPhase(Phase.COLLISION_CACHE, tickPhaseNanos[Phase.COLLISION_CACHE.ordinal()]);
 
+        final long parallelTasksStartTime = System.nanoTime();
         final List<Callable<Void>> allTasks = new ArrayList<>();
-        allTasks.addAll(collisionTasks);
-        allTasks.addAll(waterForcesTasks);
+        for (ShipCollisionTask collisionTask : collisionTasks) {
+            allTasks.add(timeShipTask(collisionTask, collisionTask.getToTask().getParent(), Phase.PARALLEL_TASKS));
+        }
+        for (WaterForcesTask waterForcesTask : waterForcesTasks) {
+            allTasks.add(timeShipTask(waterForcesTask, waterForcesTask.getParent(), Phase.PARALLEL_TASKS));
+        }
 
         try {
             // Run all the block collision and water physics tasks
@@ -224,20 +278,90 @@ public class VSWorldPhysicsLoop implements Runnable {
         for (final WaterForcesTask waterForcesTask : waterForcesTasks) {
             waterForcesTask.addForcesToShip();
         }
+        final long resolutionStartTime = System.nanoTime();
+        tickMetrics.recordPhase(Phase.PARALLEL_TASKS, resolutionStartTime - parallelTasksStartTime);
 
-        // Then those collision points have to be processed sequentially afterwards, all in
-        // this thread. Thankfully this step is not cpu intensive.
-        for (ShipCollisionTask task : collisionTasks) {
-            task.getToTask().processCollisionTask(task);
-        }
+        // Then those collision points have to be processed sequentially afterwards for every ship.
+        resolveCollisions(collisionTasks, VSConfig.MULTITHREADING_SETTINGS.multithreadCollisionResolution);
+        tickMetrics.recordPhase(Phase.COLLISION_RESOLUTION, System.nanoTime() - resolutionStartTime);
 
         for (PhysicsObject wrapper : shipsWithPhysics) {
             try {
+                final long phaseStartTime = System.nanoTime();
                 wrapper.getPhysicsCalculations().rawPhysTickPostCol();
+                recordShipPhase(tickMetrics.getShipCost(wrapper), Phase.POST_COLLISION, phaseStartTime);
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
+        tickMetrics.recordPhase(Phase.POST_COLLISION, tickPhaseNanos[Phase.POST_COLLISION.ordinal()]);
+    }
+
+    /**
+     * Adds the time since phaseStartTime to the cost of the ship, and the time spent on that phase in this tick.
+     *
+     * @return The current time
+     */
+    private long recordShipPhase(ShipCost shipCost, Phase phase, long phaseStartTime) {
+        final long phaseEndTime = System.nanoTime();
+        shipCost.add(phase, phaseEndTime - phaseStartTime);
+        tickPhaseNanos[phase.ordinal()] += phaseEndTime - phaseStartTime;
+        return phaseEndTime;
+    }
+
+    /**
+     * Wraps a task so that the time it takes to run is added to the cost of the given ship.
+     */
+    private Callable<Void> timeShipTask(Callable<Void> task, PhysicsObject ship, Phase phase) {
+        final ShipCost shipCost = tickMetrics.getShipCost(ship);
+        return () -> {
+            final long taskStartTime = System.nanoTime();
+            try {
+                return task.call();
+            } finally {
+                shipCost.add(phase, System.nanoTime() - taskStartTime);
+            }
+        };
+    }
+
+    /**
+     * Processes the collision points of every ship. Ships only collide with the world, so the collision points of
+     * every ship can be processed in parallel with the other ships. The collision points of each ship are still
+     * processed in the same order as they would be on a single thread, so the result doesn't depend on how the tasks
+     * are scheduled.
+     */
+    private void resolveCollisions(List<ShipCollisionTask> collisionTasks, boolean inParallel) {
+        final List<Callable<Void>> resolutionTasks = new ArrayList<>();
+        int taskIndex = 0;
+        while (taskIndex < collisionTasks.size()) {
+            // The collision tasks of a ship are always next to each other in the list
+            final WorldPhysicsCollider collider = collisionTasks.get(taskIndex).getToTask();
+            final int shipStartIndex = taskIndex;
+            while (taskIndex < collisionTasks.size() && collisionTasks.get(taskIndex).getToTask() == collider) {
+                taskIndex++;
+            }
+            final List<ShipCollisionTask> shipTasks = collisionTasks.subList(shipStartIndex, taskIndex);
+            resolutionTasks.add(timeShipTask(() -> {
+                for (ShipCollisionTask task : shipTasks) {
+                    collider.processCollisionTask(task);
+                }
+                return null;
+            }, collider.getParent(), Phase.COLLISION_RESOLUTION));
+        }
+
+        try {
+            if (inParallel) {
+                for (Future<Void> result : ValkyrienSkiesMod.getPhysicsThreadPool().invokeAll(resolutionTasks)) {
+                    result.get();
+                }
+            } else {
+                for (Callable<Void> resolutionTask : resolutionTasks) {
+                    resolutionTask.call();
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
     }
 
     /**
@@ -253,12 +377,9 @@ public class VSWorldPhysicsLoop implements Runnable {
      * @return The average runtime of the last 100 physics ticks in nanoseconds.
      */
     public long getAveragePhysicsTickTimeNano() {
-        if (latestPhysicsTickTimes.size() >= TICK_TIME_QUEUE) {
-            long average = 0;
-            for (Long tickTime : latestPhysicsTickTimes) {
-                average += tickTime;
-            }
-            return average / TICK_TIME_QUEUE;
+        final long average = averagePhysicsTickTimeNano;
+        if (average != 0) {
+            return average;
         }
         // If we don't have enough data to get an average, just assume its the ideal
         // tick time.
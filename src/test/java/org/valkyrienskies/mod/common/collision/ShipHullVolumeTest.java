@@ -0,0 +1,77 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
+import org.valkyrienskies.mod.common.util.datastructures.SimpleBitOctree;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class ShipHullVolumeTest {
+
+    @Test
+    public void testRunsCoverSolidBlocks() {
+        final Random random = new Random(0);
+        final Set<String> expected = new HashSet<>();
+        final IBitOctree[] octrees = new IBitOctree[16];
+        for (int storageY = 3; storageY < 6; storageY++) {
+            octrees[storageY] = new SimpleBitOctree();
+        }
+        // A hull with a few holes, spread over several sections
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                for (int y = 48; y < 96; y++) {
+                    if (random.nextDouble() < .8) {
+                        octrees[y >> 4].set(x, y & 15, z, true);
+                        expected.add(key(-32 + x, y, 48 + z));
+                    }
+                }
+            }
+        }
+
+        final ShipHullVolume hullVolume = new ShipHullVolume();
+        hullVolume.addChunk(-2, 3, octrees);
+
+        final Set<String> actual = new HashSet<>();
+        for (int run = 0; run < hullVolume.getRunCount(); run++) {
+            assertThat(hullVolume.getRunLength(run), lessThanOrEqualTo(ShipHullVolume.MAX_RUN_LENGTH));
+            for (int i = 0; i < hullVolume.getRunLength(run); i++) {
+                actual.add(key(hullVolume.getRunX(run), hullVolume.getRunMinY(run) + i, hullVolume.getRunZ(run)));
+            }
+        }
+        assertThat(actual, equalTo(expected));
+        assertThat(hullVolume.getBlockCount(), equalTo(expected.size()));
+
+        hullVolume.clear();
+        assertThat(hullVolume.getRunCount(), equalTo(0));
+    }
+
+    @Test
+    public void testWaterHeightfield() {
+        final WaterHeightfield heightfield = new WaterHeightfield();
+        heightfield.reset(-5, 10, 5, 20);
+        heightfield.addLiquidBlock(0, 62, 15);
+        heightfield.addLiquidBlock(0, 50, 15);
+        // Outside of the heightfield
+        heightfield.addLiquidBlock(6, 62, 15);
+
+        assertThat(heightfield.hasWater(0, 15), equalTo(true));
+        assertThat(heightfield.getWaterBottom(0, 15), equalTo(50));
+        assertThat(heightfield.getWaterTop(0, 15), equalTo(63));
+        assertThat(heightfield.hasWater(1, 15), equalTo(false));
+        assertThat(heightfield.hasWater(6, 15), equalTo(false));
+
+        heightfield.clear();
+        assertThat(heightfield.hasWater(), equalTo(false));
+        assertThat(heightfield.hasWater(0, 15), equalTo(false));
+    }
+
+    private static String key(int x, int y, int z) {
+        return x + "," + y + "," + z;
+    }
+}
@@ -0,0 +1,182 @@
+package org.valkyrienskies.mod.common.network;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.aMapWithSize;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.util.Map;
+import java.util.UUID;
+import net.minecraft.util.Tuple;
+import net.minecraft.util.math.AxisAlignedBB;
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import valkyrienwarfare.api.TransformType;
+
+public class ShipTransformCodecTest {
+
+    private static final UUID SHIP_A = new UUID(1, 2);
+    private static final UUID SHIP_B = new UUID(3, 4);
+
+    private static ShipTransform createTransform(double x, double y, double z, double angle) {
+        return new ShipTransform(x, y, z, new Quaterniond().rotateXYZ(angle, angle / 2, -angle),
+            new Vector3d(8.5, 64.5, 8.5));
+    }
+
+    private static AxisAlignedBB createAABB(double x, double y, double z) {
+        return new AxisAlignedBB(x - 3.3, y - 2.1, z - 5, x + 3.3, y + 2.1, z + 5);
+    }
+
+    private static void assertTransformEquals(ShipTransform expected, ShipTransform actual) {
+        assertThat(actual.getPosX(), closeTo(expected.getPosX(), 1e-3));
+        assertThat(actual.getPosY(), closeTo(expected.getPosY(), 1e-3));
+        assertThat(actual.getPosZ(), closeTo(expected.getPosZ(), 1e-3));
+        // Two unit quaternions are the same rotation if their dot product is 1 or -1
+        final double dot = Math.abs(expected.rotationQuaternion(TransformType.SUBSPACE_TO_GLOBAL)
+            .dot(actual.rotationQuaternion(TransformType.SUBSPACE_TO_GLOBAL)));
+        assertThat(dot, closeTo(1, 1e-6));
+        assertThat(actual.getCenterCoord().distance(expected.getCenterCoord()), equalTo(0.0));
+    }
+
+    private static void assertContains(AxisAlignedBB outer, AxisAlignedBB inner) {
+        assertThat(outer.minX, lessThanOrEqualTo(inner.minX));
+        assertThat(outer.minY, lessThanOrEqualTo(inner.minY));
+        assertThat(outer.minZ, lessThanOrEqualTo(inner.minZ));
+        assertThat(inner.maxX, lessThanOrEqualTo(outer.maxX));
+        assertThat(inner.maxY, lessThanOrEqualTo(outer.maxY));
+        assertThat(inner.maxZ, lessThanOrEqualTo(outer.maxZ));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        ShipTransformEncoder encoder = new ShipTransformEncoder(0);
+        ShipTransformDecoder decoder = new ShipTransformDecoder();
+
+        for (int i = 0; i < 50; i++) {
+            final double x = 1000 + i * 0.37, y = 70 - i * 0.01, z = -25000 + i * 1.1;
+            final ShipTransform transform = createTransform(x, y, z, i * 0.05);
+            final AxisAlignedBB shipBB = createAABB(x, y, z);
+            encoder.writeShip(SHIP_A, transform, shipBB);
+
+            final Map<UUID, Tuple<ShipTransform, AxisAlignedBB>> decoded = decoder.decode(encoder.finishPacket());
+            assertThat(decoded, hasKey(SHIP_A));
+            assertTransformEquals(transform, decoded.get(SHIP_A).getFirst());
+            assertContains(decoded.get(SHIP_A).getSecond(), shipBB);
+        }
+    }
+
+    @Test
+    public void testSkipsUnchangedShips() {
+        ShipTransformEncoder encoder = new ShipTransformEncoder(0);
+        ShipTransformDecoder decoder = new ShipTransformDecoder();
+        final ShipTransform transformA = createTransform(10, 20, 30, 1);
+        final ShipTransform transformB = createTransform(-10, 20, -30, 2);
+
+        encoder.writeShip(SHIP_A, transformA, createAABB(10, 20, 30));
+        encoder.writeShip(SHIP_B, transformB, createAABB(-10, 20, -30));
+        assertThat(decoder.decode(encoder.finishPacket()), aMapWithSize(2));
+
+        encoder.writeShip(SHIP_A, transformA, createAABB(10, 20, 30));
+        encoder.writeShip(SHIP_B, createTransform(-9, 20, -30, 2), createAABB(-9, 20, -30));
+        final Map<UUID, Tuple<ShipTransform, AxisAlignedBB>> decoded = decoder.decode(encoder.finishPacket());
+        assertThat(decoded, aMapWithSize(1));
+        assertThat(decoded, hasKey(SHIP_B));
+        assertThat(decoded.get(SHIP_B).getFirst().getPosX(), closeTo(-9, 1e-3));
+    }
+
+    @Test
+    public void testDeltasAreSmallerThanKeyframes() {
+        ShipTransformEncoder encoder = new ShipTransformEncoder(0);
+        encoder.writeShip(SHIP_A, createTransform(10, 20, 30, 1), createAABB(10, 20, 30));
+        final int keyframeSize = encoder.finishPacket().length;
+
+        encoder.writeShip(SHIP_A, createTransform(10.1, 20, 30, 1), createAABB(10.1, 20, 30));
+        final int deltaSize = encoder.finishPacket().length;
+        assertThat(deltaSize, lessThanOrEqualTo(keyframeSize / 4));
+    }
+
+    @Test
+    public void testRemovedShips() {
+        ShipTransformEncoder encoder = new ShipTransformEncoder(0);
+        ShipTransformDecoder decoder = new ShipTransformDecoder();
+
+        encoder.writeShip(SHIP_A, createTransform(10, 20, 30, 1), createAABB(10, 20, 30));
+        decoder.decode(encoder.finishPacket());
+
+        encoder.removeShip(SHIP_A);
+        assertThat(encoder.getKnownShips().isEmpty(), equalTo(true));
+        assertThat(decoder.decode(encoder.finishPacket()), aMapWithSize(0));
+
+        // The session id of ship A is reused, the decoder must not confuse the ships
+        final ShipTransform transformB = createTransform(-10, 20, -30, 2);
+        encoder.writeShip(SHIP_B, transformB, createAABB(-10, 20, -30));
+        final Map<UUID, Tuple<ShipTransform, AxisAlignedBB>> decoded = decoder.decode(encoder.finishPacket());
+        assertThat(decoded, aMapWithSize(1));
+        assertTransformEquals(transformB, decoded.get(SHIP_B).getFirst());
+    }
+
+    @Test
+    public void testLateDecoderCatchesUpOnKeyframe() {
+        final int keyframeInterval = 10;
+        ShipTransformEncoder encoder = new ShipTransformEncoder(keyframeInterval);
+        // Ship A is sent in full the first packet, then it only sends deltas
+        encoder.writeShip(SHIP_A, createTransform(0, 0, 0, 0), createAABB(0, 0, 0));
+        encoder.finishPacket();
+
+        ShipTransformDecoder lateDecoder = new ShipTransformDecoder();
+        ShipTransform lastTransform = null;
+        int packetsUntilKnown = -1;
+        for (int i = 1; i <= keyframeInterval; i++) {
+            lastTransform = createTransform(i, i, i, i * 0.1);
+            encoder.writeShip(SHIP_A, lastTransform, createAABB(i, i, i));
+            final Map<UUID, Tuple<ShipTransform, AxisAlignedBB>> decoded = lateDecoder.decode(encoder.finishPacket());
+            if (decoded.containsKey(SHIP_A)) {
+                assertTransformEquals(lastTransform, decoded.get(SHIP_A).getFirst());
+                if (packetsUntilKnown == -1) {
+                    packetsUntilKnown = i;
+                }
+            } else {
+                assertThat(packetsUntilKnown, equalTo(-1));
+            }
+        }
+        assertThat(packetsUntilKnown, lessThanOrEqualTo(keyframeInterval));
+        assertThat(packetsUntilKnown == -1, equalTo(false));
+    }
+
+    @Test
+    public void testKeyframesOfShipsNotWrittenEveryPacket() {
+        final int keyframeInterval = 250;
+        final int updateInterval = 4;
+        ShipTransformEncoder encoder = new ShipTransformEncoder(keyframeInterval);
+        ShipTransformDecoder decoder = new ShipTransformDecoder();
+        int lastKeyframePacket = 0;
+        for (int packet = 0; packet < keyframeInterval * 4; packet++) {
+            // A distant ship that is only written on odd packets, while the keyframe interval is even
+            if (packet % updateInterval == 1) {
+                final ShipTransform transform = createTransform(packet, 64, 0, packet * 0.01);
+                encoder.writeShip(SHIP_A, transform, createAABB(packet, 64, 0));
+            }
+            // Reset the decoder every packet, so it only knows the ship if this packet is a keyframe
+            decoder.clear();
+            if (decoder.decode(encoder.finishPacket()).containsKey(SHIP_A)) {
+                lastKeyframePacket = packet;
+            }
+            assertThat(packet - lastKeyframePacket, lessThanOrEqualTo(keyframeInterval + updateInterval));
+        }
+    }
+
+    @Test
+    public void testRotationPrecision() {
+        final Quaterniond rotation = new Quaterniond();
+        final Quaterniond unpacked = new Quaterniond();
+        for (int i = 0; i < 1000; i++) {
+            rotation.identity().rotateXYZ(i * 0.37, i * -1.3, i * 2.9);
+            ShipTransformCodec.unpackRotation(ShipTransformCodec.packRotation(rotation), unpacked);
+            assertThat(Math.abs(rotation.dot(unpacked)), closeTo(1, 1e-6));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.valkyrienskies.mod.common.ships.chunk_claims;
+
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.ChunkPos;
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.ships.ShipData;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.util.cqengine.ConcurrentUpdatableIndexedCollection;
+
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class ShipChunkIndexTest {
+
+    private static final int CLAIM_RADIUS = 7;
+
+    private static ShipData createShip(VSChunkClaim claim) {
+        ChunkPos centerPos = claim.getCenterPos();
+        for (int chunkX = -CLAIM_RADIUS; chunkX <= CLAIM_RADIUS; chunkX++) {
+            for (int chunkZ = -CLAIM_RADIUS; chunkZ <= CLAIM_RADIUS; chunkZ++) {
+                claim.addChunkClaim(centerPos.x + chunkX, centerPos.z + chunkZ);
+            }
+        }
+        ShipTransform transform = new ShipTransform(new Vector3d(), new Vector3d());
+        return ShipData.createData(new ConcurrentUpdatableIndexedCollection<>(), "ship", claim, UUID.randomUUID(),
+            transform, new AxisAlignedBB(0, 0, 0, 0, 0, 0));
+    }
+
+    @Test
+    public void testFindsShipsByChunk() {
+        ShipChunkAllocator allocator = new ShipChunkAllocator();
+        ShipChunkIndex index = new ShipChunkIndex();
+        // More ships than the initial capacity of the index
+        ShipData[] ships = new ShipData[100];
+        for (int i = 0; i < ships.length; i++) {
+            ships[i] = createShip(allocator.allocateNextChunkClaim());
+            index.add(ships[i]);
+        }
+
+        for (ShipData ship : ships) {
+            ChunkPos centerPos = ship.getChunkClaim().getCenterPos();
+            assertThat(index.getShipFromChunk(centerPos.x, centerPos.z), sameInstance(ship));
+            assertThat(index.getShipFromChunk(centerPos.x - CLAIM_RADIUS, centerPos.z + CLAIM_RADIUS),
+                sameInstance(ship));
+            // Chunks in the shipyard, but outside the claim
+            assertThat(index.getShipFromChunk(centerPos.x + CLAIM_RADIUS + 1, centerPos.z), nullValue());
+            assertThat(index.getShipFromChunk(centerPos.x, centerPos.z - CLAIM_RADIUS - 1), nullValue());
+        }
+    }
+
+    @Test
+    public void testRejectsChunksOutsideShipyard() {
+        assertThat(ShipChunkIndex.getClaimSlot(0, 0), equalTo(-1));
+        assertThat(ShipChunkIndex.getClaimSlot(-5000, 3200), equalTo(-1));
+        assertThat(ShipChunkIndex.getClaimSlot(ShipChunkAllocator.CHUNK_X_START, -5000), equalTo(-1));
+        assertThat(ShipChunkIndex.getClaimSlot(ShipChunkAllocator.CHUNK_X_START,
+            ShipChunkAllocator.CHUNK_Z_START + 2 * ShipChunkAllocator.MAX_CHUNK_LENGTH), equalTo(2));
+
+        ShipChunkIndex index = new ShipChunkIndex();
+        assertThat(index.getShipFromChunk(0, 0), nullValue());
+        assertThat(index.getShipFromChunk(ShipChunkAllocator.CHUNK_X_START, 100_000_000), nullValue());
+    }
+
+    @Test
+    public void testFindsOffGridShips() {
+        ShipChunkIndex index = new ShipChunkIndex();
+        int slotOneZ = ShipChunkAllocator.CHUNK_Z_START + ShipChunkAllocator.MAX_CHUNK_LENGTH;
+        ShipData slotShip = createShip(new VSChunkClaim(new ChunkPos(ShipChunkAllocator.CHUNK_X_START, slotOneZ)));
+        // Claims chunks in both slot 0 and slot 1
+        ShipData betweenSlotsShip = createShip(new VSChunkClaim(new ChunkPos(ShipChunkAllocator.CHUNK_X_START,
+            ShipChunkAllocator.CHUNK_Z_START + ShipChunkAllocator.MAX_CHUNK_LENGTH / 2)));
+        // In slot 1, which is already taken, but doesn't claim any of the same chunks
+        ShipData sharedSlotShip = createShip(new VSChunkClaim(
+            new ChunkPos(ShipChunkAllocator.CHUNK_X_START + 100, slotOneZ)));
+        // Claims the same chunks as slotShip
+        ShipData conflictingShip = createShip(new VSChunkClaim(
+            new ChunkPos(ShipChunkAllocator.CHUNK_X_START, slotOneZ)));
+        index.add(slotShip);
+        index.add(betweenSlotsShip);
+        index.add(sharedSlotShip);
+        index.add(conflictingShip);
+
+        for (ShipData ship : new ShipData[] {slotShip, betweenSlotsShip, sharedSlotShip}) {
+            ChunkPos centerPos = ship.getChunkClaim().getCenterPos();
+            assertThat(index.getShipFromChunk(centerPos.x - CLAIM_RADIUS, centerPos.z - CLAIM_RADIUS),
+                sameInstance(ship));
+            assertThat(index.getShipFromChunk(centerPos.x + CLAIM_RADIUS, centerPos.z + CLAIM_RADIUS),
+                sameInstance(ship));
+        }
+
+        index.remove(betweenSlotsShip);
+        ChunkPos centerPos = betweenSlotsShip.getChunkClaim().getCenterPos();
+        assertThat(index.getShipFromChunk(centerPos.x, centerPos.z), nullValue());
+        assertThat(index.getShipFromChunk(sharedSlotShip.getChunkClaim().getCenterPos().x, slotOneZ),
+            sameInstance(sharedSlotShip));
+    }
+
+    @Test
+    public void testRemove() {
+        ShipChunkAllocator allocator = new ShipChunkAllocator();
+        ShipChunkIndex index = new ShipChunkIndex();
+        ShipData ship = createShip(allocator.allocateNextChunkClaim());
+        ChunkPos centerPos = ship.getChunkClaim().getCenterPos();
+
+        index.add(ship);
+        index.remove(ship);
+        assertThat(index.getShipFromChunk(centerPos.x, centerPos.z), nullValue());
+    }
+}
@@ -0,0 +1,100 @@
+package org.valkyrienskies.mod.common.ships.interpolation;
+
+import net.minecraft.util.math.AxisAlignedBB;
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+
+public class BufferedTransformInterpolatorTest {
+
+    private static final double SPEED = 10;
+    private static final double PACKET_INTERVAL = .05;
+    private static final double TICK_INTERVAL = .05;
+    // The most time in seconds a packet arrives later than the fastest one
+    private static final double JITTER = .12;
+
+    @Test
+    public void testSmoothWithUnevenPackets() {
+        final Random random = new Random(0);
+        final double[] clock = {100};
+        final BufferedTransformInterpolator interpolator = new BufferedTransformInterpolator(
+            createTransform(0), createAABB(0), () -> .1, () -> clock[0]);
+
+        int sentPackets = 0;
+        double nextPacketArrival = 100 + random.nextDouble() * JITTER;
+        double lastX = Double.NaN;
+        for (int tick = 0; tick < 200; tick++) {
+            clock[0] = 100 + tick * TICK_INTERVAL;
+            // Deliver every packet that has arrived by now, some of them late and some of them at once
+            while (nextPacketArrival <= clock[0]) {
+                final double sendTime = sentPackets * PACKET_INTERVAL;
+                interpolator.onNewTransformPacket(createTransform(sendTime * SPEED), createAABB(sendTime * SPEED),
+                    sendTime);
+                sentPackets++;
+                nextPacketArrival = 100 + sentPackets * PACKET_INTERVAL + random.nextDouble() * JITTER;
+            }
+            interpolator.tickTransformInterpolator();
+
+            final double x = interpolator.getCurrentTickTransform().getPosX();
+            if (tick > 20) {
+                // The ship moves about the same distance every tick, the delay changes make it at most 10% faster or
+                // slower
+                assertThat(x - lastX, closeTo(SPEED * TICK_INTERVAL, SPEED * TICK_INTERVAL * .1 + 1e-6));
+                assertThat(interpolator.getCurrentAABB().minX, closeTo(x, 1e-6));
+            }
+            lastX = x;
+        }
+    }
+
+    @Test
+    public void testExtrapolationStops() {
+        final double[] clock = {0};
+        final BufferedTransformInterpolator interpolator = new BufferedTransformInterpolator(
+            createTransform(0), createAABB(0), () -> .1, () -> clock[0]);
+        for (int packet = 0; packet <= 20; packet++) {
+            clock[0] = packet * PACKET_INTERVAL;
+            interpolator.onNewTransformPacket(createTransform(clock[0] * SPEED), createAABB(clock[0] * SPEED),
+                clock[0]);
+            interpolator.tickTransformInterpolator();
+        }
+        // No more packets arrive, the ship keeps going for a bit and then stops
+        for (int tick = 0; tick < 40; tick++) {
+            clock[0] += TICK_INTERVAL;
+            interpolator.tickTransformInterpolator();
+        }
+        assertThat(interpolator.getCurrentTickTransform().getPosX(), closeTo(1.25 * SPEED, 1e-6));
+    }
+
+    @Test
+    public void testCenterCoordChange() {
+        final double[] clock = {0};
+        final BufferedTransformInterpolator interpolator = new BufferedTransformInterpolator(
+            createTransform(0), createAABB(0), () -> .1, () -> clock[0]);
+        for (int packet = 0; packet <= 20; packet++) {
+            clock[0] = packet * PACKET_INTERVAL;
+            // Halfway through the center coord moves one block, which moves the position as well
+            final double centerX = packet < 10 ? 0 : 1;
+            interpolator.onNewTransformPacket(
+                new ShipTransform(centerX, 0, 0, new Quaterniond(), new Vector3d(centerX, 0, 0)),
+                createAABB(0), clock[0]);
+            interpolator.tickTransformInterpolator();
+            // The ship itself never moves
+            final ShipTransform transform = interpolator.getCurrentTickTransform();
+            assertThat(transform.getPosX() - transform.getCenterCoord().x(), closeTo(0, 1e-6));
+        }
+    }
+
+    private static ShipTransform createTransform(double x) {
+        return new ShipTransform(x, 64, 0, new Quaterniond(), new Vector3d());
+    }
+
+    private static AxisAlignedBB createAABB(double x) {
+        return new AxisAlignedBB(x, 60, -4, x + 8, 68, 4);
+    }
+}
@@ -0,0 +1,127 @@
+package org.valkyrienskies.mod.common.ships.physics_data;
+
+import org.joml.Matrix3d;
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+
+public class InertiaMomentsTest {
+
+    private static final double EPSILON = 1e-6;
+
+    @Test
+    public void testMatchesPointMassFormula() {
+        final Random random = new Random(0);
+        final InertiaMoments moments = new InertiaMoments();
+        final double[][] points = new double[200][];
+        for (int i = 0; i < points.length; i++) {
+            // Far from the origin, like ship blocks
+            points[i] = new double[] {320000 + random.nextInt(64), random.nextInt(64), 3200 + random.nextInt(64),
+                1 + random.nextDouble() * 100};
+            moments.addPointMass(points[i][0], points[i][1], points[i][2], points[i][3]);
+        }
+
+        double mass = 0, cx = 0, cy = 0, cz = 0;
+        for (double[] point : points) {
+            mass += point[3];
+            cx += point[0] * point[3];
+            cy += point[1] * point[3];
+            cz += point[2] * point[3];
+        }
+        cx /= mass;
+        cy /= mass;
+        cz /= mass;
+        final double[] expected = new double[9];
+        for (double[] point : points) {
+            final double rx = point[0] - cx, ry = point[1] - cy, rz = point[2] - cz, m = point[3];
+            expected[0] += (ry * ry + rz * rz) * m;
+            expected[4] += (rx * rx + rz * rz) * m;
+            expected[8] += (rx * rx + ry * ry) * m;
+            expected[1] -= rx * ry * m;
+            expected[2] -= rx * rz * m;
+            expected[5] -= ry * rz * m;
+        }
+        expected[3] = expected[1];
+        expected[6] = expected[2];
+        expected[7] = expected[5];
+
+        assertThat(moments.getMass(), closeTo(mass, EPSILON));
+        final Vector3d centerOfMass = moments.getCenterOfMass(new Vector3d());
+        assertThat(centerOfMass.x, closeTo(cx, EPSILON));
+        assertThat(centerOfMass.y, closeTo(cy, EPSILON));
+        assertThat(centerOfMass.z, closeTo(cz, EPSILON));
+        assertTensorEquals(moments.getInertiaTensor(new Matrix3d()), expected);
+    }
+
+    @Test
+    public void testBatchesMatchSingleAdds() {
+        final Random random = new Random(1);
+        final InertiaMoments single = new InertiaMoments();
+        final InertiaMoments batch = new InertiaMoments();
+        final InertiaMoments combined = new InertiaMoments();
+        single.addBlockMass(320010, 40, 3210, 500);
+        combined.addBlockMass(320010, 40, 3210, 500);
+        for (int i = 0; i < 1000; i++) {
+            final int x = 320000 + random.nextInt(32), y = random.nextInt(32), z = 3200 + random.nextInt(32);
+            single.addBlockMass(x, y, z, 100);
+            batch.addBlockMass(x, y, z, 100);
+        }
+        // The batch starts from a different reference point
+        combined.add(batch);
+
+        assertThat(combined.getMass(), closeTo(single.getMass(), EPSILON));
+        final Vector3d expectedCenter = single.getCenterOfMass(new Vector3d());
+        final Vector3d center = combined.getCenterOfMass(new Vector3d());
+        assertThat(center.distance(expectedCenter), closeTo(0, EPSILON));
+        final double[] expected = new double[9];
+        single.getInertiaTensor(new Matrix3d()).get(expected);
+        assertTensorEquals(combined.getInertiaTensor(new Matrix3d()), expected);
+    }
+
+    @Test
+    public void testSetRestoresMoments() {
+        final InertiaMoments moments = new InertiaMoments();
+        moments.addBlockMass(320000, 10, 3200, 300);
+        moments.addBlockMass(320003, 12, 3201, 100);
+        moments.addBlockMass(319998, 10, 3205, 200);
+        final Matrix3d tensor = moments.getInertiaTensor(new Matrix3d());
+        final double[] expected = new double[9];
+        tensor.get(expected);
+
+        final InertiaMoments restored = new InertiaMoments();
+        restored.set(moments.getMass(), moments.getCenterOfMass(new Vector3d()), tensor);
+        assertThat(restored.getMass(), closeTo(moments.getMass(), EPSILON));
+        assertTensorEquals(restored.getInertiaTensor(new Matrix3d()), expected);
+    }
+
+    @Test
+    public void testRemovingAllMass() {
+        final ShipInertiaData inertiaData = new ShipInertiaData();
+        inertiaData.addBlockMass(320000, 10, 3200, 300);
+        inertiaData.addBlockMass(320001, 10, 3200, 300);
+        assertThat(inertiaData.getGameTickMass(), closeTo(600, EPSILON));
+        assertThat(inertiaData.getGameTickCenterOfMass().x(), closeTo(320001, EPSILON));
+
+        inertiaData.addBlockMass(320000, 10, 3200, -300);
+        inertiaData.addBlockMass(320001, 10, 3200, -300);
+        assertThat(inertiaData.getGameTickMass(), equalTo(0.0));
+
+        // Adding mass again starts over from that block
+        inertiaData.addBlockMass(320005, 20, 3205, 300);
+        assertThat(inertiaData.getGameTickMass(), closeTo(300, EPSILON));
+        assertThat(inertiaData.getGameTickCenterOfMass().y(), closeTo(20.5, EPSILON));
+    }
+
+    private static void assertTensorEquals(Matrix3d tensor, double[] expected) {
+        final double[] actual = new double[9];
+        tensor.get(actual);
+        for (int i = 0; i < 9; i++) {
+            assertThat(actual[i], closeTo(expected[i], EPSILON * Math.max(1, Math.abs(expected[i]))));
+        }
+    }
+}
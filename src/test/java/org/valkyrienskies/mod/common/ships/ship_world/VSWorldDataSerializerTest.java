@@ -0,0 +1,183 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.ships.ShipData;
+import org.valkyrienskies.mod.common.ships.chunk_claims.VSChunkClaim;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.util.datastructures.IBlockPosSet;
+import org.valkyrienskies.mod.common.util.datastructures.IBlockPosSetAABB;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class VSWorldDataSerializerTest {
+
+    private static ShipData createShip(VSWorldData worldData, String name) {
+        VSChunkClaim claim = worldData.getShipChunkAllocator().allocateNextChunkClaim();
+        ChunkPos centerPos = claim.getCenterPos();
+        claim.addChunkClaim(centerPos.x, centerPos.z);
+        ShipTransform transform = new ShipTransform(new Vector3d(1, 2, 3), new Vector3d(4, 5, 6));
+        ShipData shipData = ShipData.createData(worldData.getQueryableShipData().getAllShips(), name, claim,
+            UUID.randomUUID(), transform, new AxisAlignedBB(0, 0, 0, 1, 1, 1));
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 500; i++) {
+            int x = centerPos.getXStart() + random.nextInt(-100, 100);
+            int y = random.nextInt(256);
+            int z = centerPos.getZStart() + random.nextInt(-100, 100);
+            shipData.getBlockPositions().add(x, y, z);
+            if (i % 10 == 0) {
+                shipData.getActiveForcePositions().add(x, y, z);
+            }
+        }
+        worldData.getQueryableShipData().addShip(shipData);
+        return shipData;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        VSWorldData worldData = new VSWorldData();
+        for (int i = 0; i < 5; i++) {
+            createShip(worldData, "ship" + i);
+        }
+
+        byte[] bytes = new VSWorldDataSerializer().write(worldData);
+        assertThat(VSWorldDataSerializer.isBinaryFormat(bytes), equalTo(true));
+        VSWorldData read = new VSWorldDataSerializer().read(bytes);
+
+        assertThat(read.getShipChunkAllocator().getLastChunkX(),
+            equalTo(worldData.getShipChunkAllocator().getLastChunkX()));
+        assertThat(read.getShipChunkAllocator().getLastChunkZ(),
+            equalTo(worldData.getShipChunkAllocator().getLastChunkZ()));
+        assertThat(read.getQueryableShipData().getShips().size(), equalTo(5));
+
+        for (ShipData expected : worldData.getQueryableShipData()) {
+            ShipData actual = read.getQueryableShipData().getShip(expected.getUuid()).get();
+            assertThat(actual.getName(), equalTo(expected.getName()));
+            assertThat(actual.getChunkClaim(), equalTo(expected.getChunkClaim()));
+            assertThat(actual.getShipTransform(), equalTo(expected.getShipTransform()));
+            assertThat(new HashSet<>(actual.getBlockPositions()), equalTo(new HashSet<BlockPos>(expected.getBlockPositions())));
+            assertThat(new HashSet<>(actual.getActiveForcePositions()),
+                equalTo(new HashSet<BlockPos>(expected.getActiveForcePositions())));
+        }
+    }
+
+    @Test
+    public void testOnlyWritesChangedShips() throws IOException {
+        VSWorldData worldData = new VSWorldData();
+        ShipData changedShip = createShip(worldData, "changed");
+        ShipData removedShip = createShip(worldData, "removed");
+        createShip(worldData, "unchanged");
+
+        VSWorldDataSerializer serializer = new VSWorldDataSerializer();
+        byte[] firstSave = serializer.write(worldData);
+        assertThat(changedShip.clearDirty(), equalTo(false));
+        assertThat(serializer.write(worldData), equalTo(firstSave));
+
+        // Changes made without marking the ship dirty aren't written
+        changedShip.getBlockPositions().add(changedShip.getChunkClaim().getCenterPos().getXStart(), 0,
+            changedShip.getChunkClaim().getCenterPos().getZStart());
+        assertThat(serializer.write(worldData), equalTo(firstSave));
+
+        changedShip.markDirty();
+        worldData.getQueryableShipData().removeShip(removedShip);
+        VSWorldData read = new VSWorldDataSerializer().read(serializer.write(worldData));
+        assertThat(read.getQueryableShipData().getShips().size(), equalTo(2));
+        assertThat(new HashSet<>(read.getQueryableShipData().getShip(changedShip.getUuid()).get().getBlockPositions()),
+            equalTo(new HashSet<BlockPos>(changedShip.getBlockPositions())));
+    }
+
+    @Test
+    public void testFailedWriteKeepsChanges() throws IOException {
+        VSWorldData worldData = new VSWorldData();
+        List<ShipData> changedShips = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            changedShips.add(createShip(worldData, "changed" + i));
+        }
+        VSWorldDataSerializer serializer = new VSWorldDataSerializer();
+        serializer.write(worldData);
+
+        for (ShipData ship : changedShips) {
+            ship.setName(ship.getName() + " renamed");
+        }
+        // A new ship whose block positions fail to decode, which is encoded somewhere in between the changed ships
+        ShipData failingShip = createShip(worldData, "failing");
+        boolean[] failing = {true};
+        failingShip.setBlockPositionsDecoder(new ShipData.BlockPositionsDecoder() {
+            @Override
+            public IBlockPosSetAABB decodeBlockPositions(ShipData shipData) {
+                if (failing[0]) {
+                    throw new IllegalStateException("Failing on purpose");
+                }
+                return ShipData.createBlockPositions(shipData.getChunkClaim());
+            }
+
+            @Override
+            public IBlockPosSet decodeActiveForcePositions(ShipData shipData) {
+                return ShipData.createActiveForcePositions(shipData.getChunkClaim());
+            }
+        });
+        assertThrows(IllegalStateException.class, () -> serializer.write(worldData));
+
+        failing[0] = false;
+        VSWorldData read = new VSWorldDataSerializer().read(serializer.write(worldData));
+        assertThat(read.getQueryableShipData().getShips().size(), equalTo(11));
+        for (ShipData ship : changedShips) {
+            assertThat(read.getQueryableShipData().getShip(ship.getUuid()).get().getName(),
+                equalTo(ship.getName()));
+        }
+    }
+
+    @Test
+    public void testDecodesBlockPositionsOnDemand() throws IOException {
+        VSWorldData worldData = new VSWorldData();
+        ShipData ship = createShip(worldData, "ship");
+        byte[] bytes = new VSWorldDataSerializer().write(worldData);
+
+        VSWorldDataSerializer serializer = new VSWorldDataSerializer();
+        VSWorldData readWorldData = serializer.read(bytes);
+        ShipData read = readWorldData.getQueryableShipData().getShip(ship.getUuid()).get();
+        assertThat(read.areBlockPositionsLoaded(), equalTo(false));
+
+        // Renaming the ship doesn't decode the block positions to save them again
+        read.setName("renamed");
+        serializer.write(readWorldData);
+        assertThat(read.areBlockPositionsLoaded(), equalTo(false));
+
+        assertThat(new HashSet<>(read.getBlockPositions()), equalTo(new HashSet<BlockPos>(ship.getBlockPositions())));
+        assertThat(read.areBlockPositionsLoaded(), equalTo(true));
+    }
+
+    @Test
+    public void testEmptyWorld() throws IOException {
+        VSWorldDataSerializer serializer = new VSWorldDataSerializer();
+        VSWorldData read = serializer.read(serializer.write(new VSWorldData()));
+        assertThat(read.getQueryableShipData().getShips().size(), equalTo(0));
+    }
+
+    @Test
+    public void testRejectsInvalidData() throws IOException {
+        VSWorldDataSerializer serializer = new VSWorldDataSerializer();
+        byte[] bytes = serializer.write(new VSWorldData());
+        // Pretend it's from a newer version
+        bytes[7]++;
+        byte[] newerVersion = bytes;
+        assertThrows(IOException.class, () -> serializer.read(newerVersion));
+
+        assertThat(VSWorldDataSerializer.isBinaryFormat(new byte[] {(byte) 0xbf, 0x69}), equalTo(false));
+        assertThrows(IOException.class, () -> serializer.read(new byte[] {1, 2, 3, 4, 5, 6}));
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class ConcurrentHistogramTest {
+
+    @Test
+    public void testBucketsCoverValues() {
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE - 1, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = ConcurrentHistogram.getBucketIndex(value);
+            assertThat(ConcurrentHistogram.getBucketMax(index), greaterThanOrEqualTo(value));
+            if (index > 0) {
+                assertThat(ConcurrentHistogram.getBucketMax(index - 1), lessThanOrEqualTo(value - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testPercentilesAreAccurate() {
+        Random random = new Random(0);
+        ConcurrentHistogram histogram = new ConcurrentHistogram();
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (random.nextDouble() * 10_000_000);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[] {1, 50, 90, 99, 99.9}) {
+            long expected = values[(int) Math.ceil(values.length * percentile / 100) - 1];
+            long actual = histogram.getValueAtPercentile(percentile);
+            assertThat(actual, greaterThanOrEqualTo(expected));
+            assertThat((double) actual, lessThanOrEqualTo(expected * 1.125 + 1));
+        }
+        assertThat(histogram.getValueAtPercentile(100), equalTo(values[values.length - 1]));
+        assertThat(histogram.getMax(), equalTo(values[values.length - 1]));
+        assertThat(histogram.getMean(), closeTo(Arrays.stream(values).average().getAsDouble(), 1e-3));
+    }
+
+    @Test
+    public void testConcurrentRecording() {
+        ConcurrentHistogram histogram = new ConcurrentHistogram();
+        IntStream.range(0, 100_000).parallel().forEach(histogram::record);
+
+        assertThat(histogram.getCount(), equalTo(100_000L));
+        assertThat(histogram.getMax(), equalTo(99_999L));
+        assertThat(histogram.getMean(), closeTo(49_999.5, 1e-6));
+
+        histogram.reset();
+        assertThat(histogram.getCount(), equalTo(0L));
+        assertThat(histogram.getValueAtPercentile(50), equalTo(0L));
+    }
+}
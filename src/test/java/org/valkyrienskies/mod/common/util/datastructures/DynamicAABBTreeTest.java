@@ -0,0 +1,77 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import net.minecraft.util.math.AxisAlignedBB;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.lessThan;
+
+public class DynamicAABBTreeTest {
+
+    @Test
+    public void testQueriesMatchBruteForce() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final DynamicAABBTree<Integer> tree = new DynamicAABBTree<>(4);
+        final Map<Integer, AxisAlignedBB> objects = new HashMap<>();
+
+        for (int i = 0; i < 10000; i++) {
+            final int object = random.nextInt(250);
+            if (random.nextInt(10) < 8) {
+                AxisAlignedBB aabb;
+                if (objects.containsKey(object) && random.nextBoolean()) {
+                    // Move the object a little bit
+                    aabb = objects.get(object).offset(random.nextDouble(-3, 3), random.nextDouble(-1, 1),
+                        random.nextDouble(-3, 3));
+                } else {
+                    aabb = randomAABB(random);
+                }
+                objects.put(object, aabb);
+                tree.update(object, aabb);
+            } else {
+                objects.remove(object);
+                tree.remove(object);
+            }
+
+            if (i % 250 == 0) {
+                assertThat(tree.size(), equalTo(objects.size()));
+
+                // Every object that intersects must be returned by the query
+                final AxisAlignedBB toCheck = randomAABB(random);
+                final Set<Integer> found = new HashSet<>();
+                tree.forEachIntersecting(toCheck, found::add);
+                for (final Map.Entry<Integer, AxisAlignedBB> entry : objects.entrySet()) {
+                    if (entry.getValue().intersects(toCheck)) {
+                        assertThat(found, hasItem(entry.getKey()));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTreeStaysBalanced() {
+        final DynamicAABBTree<Integer> tree = new DynamicAABBTree<>(0);
+        // Inserting objects in order along a line is the worst case for an unbalanced tree
+        for (int i = 0; i < 1024; i++) {
+            tree.update(i, new AxisAlignedBB(i * 2, 0, 0, i * 2 + 1, 1, 1));
+        }
+        assertThat(tree.getHeight(), lessThan(30));
+    }
+
+    private static AxisAlignedBB randomAABB(ThreadLocalRandom random) {
+        final double x = random.nextDouble(0, 500);
+        final double y = random.nextDouble(0, 100);
+        final double z = random.nextDouble(0, 500);
+        return new AxisAlignedBB(x, y, z, x + random.nextDouble(1, 30), y + random.nextDouble(1, 30),
+            z + random.nextDouble(1, 30));
+    }
+
+}
@@ -0,0 +1,83 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class LongKeyLRUCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        final List<String> evicted = new ArrayList<>();
+        final LongKeyLRUCache<String> cache = new LongKeyLRUCache<>(3, evicted::add);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(3, "c");
+        // Using 1 makes 2 the least recently used
+        assertThat(cache.get(1), equalTo("a"));
+        cache.put(4, "d");
+        assertThat(evicted, contains("b"));
+        assertThat(cache.get(2), nullValue());
+
+        cache.put(5, "e");
+        assertThat(evicted, contains("b", "c"));
+        assertThat(cache.size(), equalTo(3));
+        assertThat(cache.get(1), equalTo("a"));
+        assertThat(cache.get(4), equalTo("d"));
+        assertThat(cache.get(5), equalTo("e"));
+
+        assertThat(cache.getHits(), equalTo(4L));
+        assertThat(cache.getMisses(), equalTo(1L));
+        assertThat(cache.getEvictions(), equalTo(2L));
+    }
+
+    @Test
+    public void testReplaceAndClear() {
+        final List<String> evicted = new ArrayList<>();
+        final LongKeyLRUCache<String> cache = new LongKeyLRUCache<>(2, evicted::add);
+        // Keys that only differ in the high bits
+        cache.put(1L << 32, "a");
+        cache.put(2L << 32, "b");
+        cache.put(1L << 32, "c");
+        assertThat(evicted, contains("a"));
+        assertThat(cache.get(1L << 32), equalTo("c"));
+        assertThat(cache.getEvictions(), equalTo(0L));
+
+        // Replacing made 1 the most recently used, so 2 is evicted
+        cache.put(3L << 32, "d");
+        assertThat(evicted, contains("a", "b"));
+
+        evicted.clear();
+        cache.clear();
+        assertThat(evicted, containsInAnyOrder("c", "d"));
+        assertThat(cache.size(), equalTo(0));
+        assertThat(cache.get(3L << 32), nullValue());
+    }
+
+    @Test
+    public void testShrinkCapacity() {
+        final List<Integer> evicted = new ArrayList<>();
+        final LongKeyLRUCache<Integer> cache = new LongKeyLRUCache<>(100, evicted::add);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, i);
+        }
+        assertThat(evicted, empty());
+        cache.setCapacity(10);
+        assertThat(cache.size(), equalTo(10));
+        assertThat(evicted.size(), equalTo(90));
+        for (int i = 0; i < 90; i++) {
+            assertThat(evicted.get(i), equalTo(i));
+        }
+        for (int i = 90; i < 100; i++) {
+            assertThat(cache.get(i), equalTo(i));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.minecraft.util.math.BlockPos;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.util.jackson.VSJacksonUtil;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class SectionBitmapBlockPosSetAABBTest {
+
+    @Test
+    public void testMatchesHashSet() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final SectionBitmapBlockPosSetAABB set = new SectionBitmapBlockPosSetAABB(320000, 3200);
+        final ExtremelyNaiveVoxelFieldAABBMaker aabbMaker = new ExtremelyNaiveVoxelFieldAABBMaker(320000, 3200);
+        final Set<BlockPos> expected = new HashSet<>();
+        for (int i = 0; i < 20000; i++) {
+            // Spans a few sections, so that sections are created and emptied many times
+            final int x = 320000 + random.nextInt(-20, 20);
+            final int y = random.nextInt(10, 40);
+            final int z = 3200 + random.nextInt(-20, 20);
+            final BlockPos pos = new BlockPos(x, y, z);
+            if (random.nextInt(3) != 0) {
+                assertThat(set.add(x, y, z), equalTo(expected.add(pos)));
+                aabbMaker.addVoxel(pos);
+            } else {
+                assertThat(set.remove(x, y, z), equalTo(expected.remove(pos)));
+                aabbMaker.removeVoxel(pos);
+            }
+            assertThat(set.size(), equalTo(expected.size()));
+            if (i % 100 == 0) {
+                assertThat(set.makeAABB(), equalTo(aabbMaker.makeVoxelFieldAABB()));
+            }
+        }
+        assertThat(set.makeAABB(), equalTo(aabbMaker.makeVoxelFieldAABB()));
+
+        final Set<BlockPos> iterated = new HashSet<>();
+        set.forEach(pos -> assertThat(iterated.add(pos), equalTo(true)));
+        assertThat(iterated, equalTo(expected));
+        final Set<BlockPos> forEachPositions = new HashSet<>();
+        set.forEach((x, y, z) -> forEachPositions.add(new BlockPos(x, y, z)));
+        assertThat(forEachPositions, equalTo(expected));
+        for (BlockPos pos : expected) {
+            assertThat(set.contains(pos), equalTo(true));
+        }
+
+        set.clear();
+        assertThat(set.size(), equalTo(0));
+        assertThat(set.makeAABB(), equalTo(null));
+        assertThat(set.iterator().hasNext(), equalTo(false));
+    }
+
+    @Test
+    public void testEdgesOfSet() {
+        final SectionBitmapBlockPosSetAABB set = new SectionBitmapBlockPosSetAABB(0, 0);
+        final BlockPos[] corners = {
+            new BlockPos(-2048, 0, -2048),
+            new BlockPos(2047, 255, 2047),
+            new BlockPos(-2048, 255, 2047),
+            new BlockPos(2047, 0, -2048)
+        };
+        for (BlockPos corner : corners) {
+            assertThat(set.add(corner), equalTo(true));
+        }
+        assertThat(set.canStore(2048, 0, 0), equalTo(false));
+        assertThat(set.contains(2048, 0, 0), equalTo(false));
+        assertThat(set.size(), equalTo(corners.length));
+        final Set<BlockPos> iterated = new HashSet<>();
+        set.forEach(iterated::add);
+        for (BlockPos corner : corners) {
+            assertThat(iterated.contains(corner), equalTo(true));
+        }
+    }
+
+    @Test
+    public void testSameJsonAsSmallBlockPosSetAABB() throws Exception {
+        final ObjectMapper mapper = VSJacksonUtil.getDefaultMapper();
+        final SmallBlockPosSetAABB small = new SmallBlockPosSetAABB(320000, 0, 3200, 1024, 1024, 1024);
+        final SectionBitmapBlockPosSetAABB bitmap = new SectionBitmapBlockPosSetAABB(320000, 3200);
+        for (int i = 0; i < 100; i++) {
+            small.add(320000 + i, 64 + i % 7, 3200 - i);
+            bitmap.add(320000 + i, 64 + i % 7, 3200 - i);
+        }
+
+        final SectionBitmapBlockPosSetAABB fromSmall = mapper.readValue(
+            mapper.writeValueAsBytes(small), SectionBitmapBlockPosSetAABB.class);
+        final SmallBlockPosSetAABB fromBitmap = mapper.readValue(
+            mapper.writeValueAsBytes(bitmap), SmallBlockPosSetAABB.class);
+
+        final Set<BlockPos> expected = new HashSet<>();
+        small.forEach(expected::add);
+        final Set<BlockPos> readFromSmall = new HashSet<>();
+        fromSmall.forEach(readFromSmall::add);
+        final Set<BlockPos> readFromBitmap = new HashSet<>();
+        fromBitmap.forEach(readFromBitmap::add);
+        assertThat(readFromSmall, equalTo(expected));
+        assertThat(readFromBitmap, equalTo(expected));
+        assertThat(fromSmall.makeAABB(), equalTo(small.makeAABB()));
+    }
+}
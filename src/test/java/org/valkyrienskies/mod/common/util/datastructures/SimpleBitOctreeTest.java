@@ -0,0 +1,104 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+
+public class SimpleBitOctreeTest {
+
+    @ParameterizedTest
+    @MethodSource("octreeAndRangeGenerator")
+    public void testForEachSetBitInRange(IBitOctree octree, int minX, int minY, int minZ, int maxX, int maxY,
+        int maxZ) {
+        List<Vector3i> expected = new ArrayList<>();
+        for (int x = Math.max(minX, 0); x <= Math.min(maxX, 15); x++) {
+            for (int y = Math.max(minY, 0); y <= Math.min(maxY, 15); y++) {
+                for (int z = Math.max(minZ, 0); z <= Math.min(maxZ, 15); z++) {
+                    if (octree.get(x, y, z)) {
+                        expected.add(new Vector3i(x, y, z));
+                    }
+                }
+            }
+        }
+
+        List<Vector3i> actual = new ArrayList<>();
+        octree.forEachSetBitInRange(minX, minY, minZ, maxX, maxY, maxZ,
+            (x, y, z) -> actual.add(new Vector3i(x, y, z)));
+
+        assertThat(actual, containsInAnyOrder(expected.toArray()));
+    }
+
+    private static Stream<Arguments> octreeAndRangeGenerator() {
+        final int testIterations = 200;
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        return IntStream.range(0, testIterations)
+            .mapToObj(ignore -> {
+                IBitOctree octree = new SimpleBitOctree();
+                // Vary the density so that both sparse and dense octrees get tested
+                double density = random.nextDouble() * random.nextDouble();
+                for (int x = 0; x < 16; x++) {
+                    for (int y = 0; y < 16; y++) {
+                        for (int z = 0; z < 16; z++) {
+                            octree.set(x, y, z, random.nextDouble() < density);
+                        }
+                    }
+                }
+                // Clear some of the bits afterwards, to make sure the upper levels of the octree are updated
+                for (int i = 0; i < 500; i++) {
+                    octree.set(random.nextInt(16), random.nextInt(16), random.nextInt(16), false);
+                }
+                int minX = random.nextInt(-4, 16);
+                int minY = random.nextInt(-4, 16);
+                int minZ = random.nextInt(-4, 16);
+                return Arguments.arguments(octree, minX, minY, minZ, minX + random.nextInt(0, 20),
+                    minY + random.nextInt(0, 20), minZ + random.nextInt(0, 20));
+            });
+    }
+
+    @Test
+    public void testRebuildOctreeMatchesSet() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final IBitOctree expected = new SimpleBitOctree();
+        final IBitOctree rebuilt = new SimpleBitOctree();
+        for (int i = 0; i < 3; i++) {
+            // Start from the previous bits, so that the rebuild also has to clear bits
+            final double density = random.nextDouble() * random.nextDouble();
+            for (int x = 0; x < 16; x++) {
+                for (int y = 0; y < 16; y++) {
+                    for (int z = 0; z < 16; z++) {
+                        final boolean bit = random.nextDouble() < density;
+                        expected.set(x, y, z, bit);
+                        rebuilt.setWithoutOctreeUpdate(x, y, z, bit);
+                    }
+                }
+            }
+            rebuilt.rebuildOctree();
+            for (int index = 0; index < IBitOctree.BITS_TOTAL; index++) {
+                assertThat(rebuilt.getAtIndex(index), equalTo(expected.getAtIndex(index)));
+            }
+        }
+    }
+
+    @Test
+    public void testRebuildOctreeChangesModificationCount() {
+        final IBitOctree octree = new SimpleBitOctree();
+        octree.setWithoutOctreeUpdate(1, 2, 3, true);
+        final int countBeforeRebuild = octree.getModificationCount();
+        // Whoever looked at the octree before the rebuild saw stale summary levels, so they have to look again
+        octree.rebuildOctree();
+        assertThat(octree.getModificationCount() != countBeforeRebuild, equalTo(true));
+    }
+
+}
@@ -1,10 +1,13 @@
 package org.valkyrienskies.mod.common.util.datastructures;
 
 import net.minecraft.util.math.BlockPos;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -22,6 +25,40 @@ public class SmallBlockPosSetTest {
         assertThat(set.iterator().next(), equalTo(new BlockPos(x, y, z)));
     }
 
+    @Test
+    public void testMatchesHashSet() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final SmallBlockPosSet set = new SmallBlockPosSet(320000, 3200);
+        final Set<BlockPos> expected = new HashSet<>();
+        for (int i = 0; i < 100000; i++) {
+            // A small region so that positions are added and removed many times, including the center position
+            final int x = 320000 + random.nextInt(-8, 8);
+            final int y = random.nextInt(0, 4);
+            final int z = 3200 + random.nextInt(-8, 8);
+            final BlockPos pos = new BlockPos(x, y, z);
+            if (random.nextBoolean()) {
+                assertThat(set.add(x, y, z), equalTo(expected.add(pos)));
+            } else {
+                assertThat(set.remove(x, y, z), equalTo(expected.remove(pos)));
+            }
+            assertThat(set.size(), equalTo(expected.size()));
+        }
+
+        final Set<BlockPos> iterated = new HashSet<>();
+        set.forEach(pos -> assertThat(iterated.add(pos), equalTo(true)));
+        assertThat(iterated, equalTo(expected));
+        final Set<BlockPos> forEachPositions = new HashSet<>();
+        set.forEach((x, y, z) -> forEachPositions.add(new BlockPos(x, y, z)));
+        assertThat(forEachPositions, equalTo(expected));
+        for (BlockPos pos : expected) {
+            assertThat(set.contains(pos), equalTo(true));
+        }
+
+        set.clear();
+        assertThat(set.size(), equalTo(0));
+        assertThat(set.iterator().hasNext(), equalTo(false));
+    }
+
     private static Stream<Arguments> coordsAndCenterGenerator() {
         final int testIterations = 500;
         final ThreadLocalRandom random = ThreadLocalRandom.current();
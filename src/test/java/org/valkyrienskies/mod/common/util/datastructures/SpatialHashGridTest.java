@@ -0,0 +1,87 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+
+public class SpatialHashGridTest {
+
+    @Test
+    public void testQueriesMatchBruteForce() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final SpatialHashGrid<Integer> grid = new SpatialHashGrid<>(256);
+
+        for (int tick = 0; tick < 50; tick++) {
+            // Refill the grid every tick, like the ship loading controller does
+            grid.clear();
+            final int objectCount = random.nextInt(100);
+            final double[] xs = new double[objectCount];
+            final double[] zs = new double[objectCount];
+            for (int i = 0; i < objectCount; i++) {
+                xs[i] = random.nextDouble(-5000, 5000);
+                zs[i] = random.nextDouble(-5000, 5000);
+                grid.insert(i, xs[i], zs[i]);
+            }
+            assertThat(grid.size(), equalTo(objectCount));
+
+            for (int query = 0; query < 100; query++) {
+                final double x = random.nextDouble(-5500, 5500);
+                final double z = random.nextDouble(-5500, 5500);
+                // Mostly distances around the cell size, sometimes huge ones
+                final double distance = random.nextInt(10) == 0 ? random.nextDouble(20000) : random.nextDouble(600);
+
+                final Set<Integer> expected = new HashSet<>();
+                for (int i = 0; i < objectCount; i++) {
+                    final double xDif = xs[i] - x;
+                    final double zDif = zs[i] - z;
+                    if (xDif * xDif + zDif * zDif < distance * distance) {
+                        expected.add(i);
+                    }
+                }
+
+                final List<Integer> found = new ArrayList<>();
+                grid.forEachWithinDistance(x, z, distance, found::add);
+                assertThat(found.size(), equalTo(expected.size()));
+                assertThat(new HashSet<>(found), equalTo(expected));
+                assertThat(grid.anyWithinDistance(x, z, distance), equalTo(!expected.isEmpty()));
+            }
+        }
+    }
+
+    @Test
+    public void testClear() {
+        final SpatialHashGrid<String> grid = new SpatialHashGrid<>(16);
+        grid.insert("a", 0, 0);
+        grid.insert("b", 1, 1);
+        grid.insert("c", -100, 40);
+        assertThat(grid.anyWithinDistance(0, 0, 2), equalTo(true));
+
+        grid.clear();
+        assertThat(grid.size(), equalTo(0));
+        assertThat(grid.anyWithinDistance(0, 0, 1000), equalTo(false));
+        final List<String> found = new ArrayList<>();
+        grid.forEachWithinDistance(0, 0, 1000, found::add);
+        assertThat(found, empty());
+
+        grid.insert("d", 0.5, 0.5);
+        grid.forEachWithinDistance(0, 0, 1, found::add);
+        assertThat(found, equalTo(Collections.singletonList("d")));
+    }
+
+    @Test
+    public void testDistanceIsExclusive() {
+        final SpatialHashGrid<String> grid = new SpatialHashGrid<>(16);
+        grid.insert("a", 10, 0);
+        assertThat(grid.anyWithinDistance(0, 0, 10), equalTo(false));
+        assertThat(grid.anyWithinDistance(0, 0, 10.001), equalTo(true));
+    }
+}
@@ -0,0 +1,79 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.config.VSConfig.PhysicsOverloadMode;
+
+public class PhysicsTickSchedulerTest {
+
+    private static final long TICK = 1_000_000L;
+    private static final int MAX_SUBSTEPS = 4;
+
+    @Test
+    public void testRunsOneTickPerTickLength() {
+        PhysicsTickScheduler scheduler = new PhysicsTickScheduler();
+        assertThat(scheduler.advance(0, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.SUBSTEP), equalTo(1));
+        assertThat(scheduler.getNanosUntilNextTick(TICK), equalTo(TICK));
+
+        // Waking up early doesn't run a tick
+        assertThat(scheduler.advance(TICK / 2, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.SUBSTEP), equalTo(0));
+        assertThat(scheduler.getNanosUntilNextTick(TICK), equalTo(TICK / 2));
+
+        // Sub-tick remainders are kept, instead of being truncated
+        long time = TICK / 2;
+        int ticks = 0;
+        for (int i = 0; i < 1000; i++) {
+            time += TICK * 3 / 4;
+            ticks += scheduler.advance(time, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.SUBSTEP);
+        }
+        assertThat(ticks, equalTo(750));
+    }
+
+    @Test
+    public void testSubstepCatchesUp() {
+        PhysicsTickScheduler scheduler = new PhysicsTickScheduler();
+        scheduler.advance(0, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.SUBSTEP);
+
+        // 6 ticks behind, we run the max substeps now and the rest later
+        assertThat(scheduler.advance(6 * TICK, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.SUBSTEP), equalTo(4));
+        assertThat(scheduler.advance(6 * TICK, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.SUBSTEP), equalTo(2));
+        assertThat(scheduler.advance(6 * TICK, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.SUBSTEP), equalTo(0));
+
+        // But we never stay behind by more than 2 iterations of substeps
+        assertThat(scheduler.advance(106 * TICK, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.SUBSTEP), equalTo(4));
+        assertThat(scheduler.advance(106 * TICK, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.SUBSTEP), equalTo(4));
+        assertThat(scheduler.advance(106 * TICK, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.SUBSTEP), equalTo(0));
+    }
+
+    @Test
+    public void testDropForgetsLostTime() {
+        PhysicsTickScheduler scheduler = new PhysicsTickScheduler();
+        scheduler.advance(0, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.DROP);
+
+        assertThat(scheduler.advance(6 * TICK + TICK / 4, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.DROP), equalTo(4));
+        assertThat(scheduler.getNanosUntilNextTick(TICK), equalTo(TICK * 3 / 4));
+        assertThat(scheduler.advance(6 * TICK + TICK / 4, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.DROP), equalTo(0));
+    }
+
+    @Test
+    public void testSlowTimeRunsOneTick() {
+        PhysicsTickScheduler scheduler = new PhysicsTickScheduler();
+        scheduler.advance(0, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.SLOW_TIME);
+
+        assertThat(scheduler.advance(6 * TICK, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.SLOW_TIME), equalTo(1));
+        assertThat(scheduler.advance(6 * TICK, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.SLOW_TIME), equalTo(0));
+    }
+
+    @Test
+    public void testResetForgetsTime() {
+        PhysicsTickScheduler scheduler = new PhysicsTickScheduler();
+        scheduler.advance(0, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.SUBSTEP);
+        scheduler.reset();
+
+        // Only the first tick after a reset runs, the time passed while paused is ignored
+        assertThat(scheduler.advance(100 * TICK, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.SUBSTEP), equalTo(1));
+        assertThat(scheduler.advance(100 * TICK, TICK, MAX_SUBSTEPS, PhysicsOverloadMode.SUBSTEP), equalTo(0));
+    }
+}